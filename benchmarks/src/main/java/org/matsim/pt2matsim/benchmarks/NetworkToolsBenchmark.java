@@ -0,0 +1,74 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2016 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.pt2matsim.benchmarks;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.pt2matsim.tools.NetworkTools;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the search for link candidates around stop facilities.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NetworkToolsBenchmark {
+
+	@Param({"50", "200"})
+	public int gridSize;
+
+	private Network network;
+	private Coord[] coords;
+	private final Set<String> modes = Collections.singleton(SyntheticScenario.MODE);
+	private int i = 0;
+
+	@Setup
+	public void setup() {
+		network = SyntheticScenario.createGridNetwork(gridSize);
+		Random random = new Random(SyntheticScenario.SEED);
+		double extent = (gridSize - 1) * SyntheticScenario.SPACING;
+		coords = new Coord[1024];
+		for(int c = 0; c < coords.length; c++) {
+			coords[c] = new Coord(random.nextDouble() * extent, random.nextDouble() * extent);
+		}
+	}
+
+	private Coord nextCoord() {
+		i = (i + 1) & (coords.length - 1);
+		return coords[i];
+	}
+
+	@Benchmark
+	public Map<Double, Set<Link>> findClosestLinks() {
+		return NetworkTools.findClosestLinks(network, nextCoord(), SyntheticScenario.SPACING, modes);
+	}
+
+	@Benchmark
+	public List<Link> findClosestLinksSorted() {
+		return NetworkTools.findClosestLinksSorted(network, nextCoord(), SyntheticScenario.SPACING, modes);
+	}
+}
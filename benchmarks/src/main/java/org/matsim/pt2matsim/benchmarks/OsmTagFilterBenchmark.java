@@ -0,0 +1,88 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2016 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.pt2matsim.benchmarks;
+
+import org.matsim.pt2matsim.examples.ZVVexample;
+import org.matsim.pt2matsim.osm.lib.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks tag filters on all elements of a real osm extract. The file is read
+ * without filter, each invocation checks every node, way and relation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OsmTagFilterBenchmark {
+
+	/**
+	 * osm file, relative to the benchmarks folder
+	 */
+	@Param({"../test/osm/WaterlooCityCentre.osm"})
+	public String osmFile;
+
+	private Osm.Element[] elements;
+	private AllowedTagsFilter networkFilter;
+	private AllowedTagsFilter ptFilter;
+
+	@Setup
+	public void setup() {
+		OsmData osmData = new OsmDataImpl();
+		new OsmFileReader(osmData).readFile(osmFile);
+		List<Osm.Element> all = new ArrayList<>();
+		all.addAll(osmData.getNodes().values());
+		all.addAll(osmData.getWays().values());
+		all.addAll(osmData.getRelations().values());
+		elements = all.toArray(new Osm.Element[0]);
+
+		// filter used by Osm2MultimodalNetwork
+		networkFilter = new AllowedTagsFilter();
+		networkFilter.add(Osm.ElementType.WAY, Osm.Key.HIGHWAY, null);
+		networkFilter.add(Osm.ElementType.WAY, Osm.Key.RAILWAY, null);
+
+		ptFilter = ZVVexample.createDefaultPTFilter();
+	}
+
+	@Benchmark
+	public int networkFilter() {
+		return count(networkFilter);
+	}
+
+	@Benchmark
+	public int ptFilter() {
+		return count(ptFilter);
+	}
+
+	private int count(AllowedTagsFilter filter) {
+		int n = 0;
+		for(Osm.Element element : elements) {
+			if(filter.matches(element)) {
+				n++;
+			}
+		}
+		return n;
+	}
+}
@@ -0,0 +1,72 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2016 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.pt2matsim.benchmarks;
+
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.config.Config;
+import org.matsim.pt.transitSchedule.api.TransitSchedule;
+import org.matsim.pt2matsim.config.PublicTransitMappingConfigGroup;
+import org.matsim.pt2matsim.mapping.PTMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks mapping a complete schedule. Since the mapper modifies network and
+ * schedule, both are created again before each invocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PTMapperBenchmark {
+
+	@Param({"30", "100"})
+	public int gridSize;
+
+	@Param({"20", "200"})
+	public int nLines;
+
+	@Param({"20"})
+	public int nStops;
+
+	@Param({"1", "4"})
+	public int numOfThreads;
+
+	private Network network;
+	private TransitSchedule schedule;
+	private PublicTransitMappingConfigGroup config;
+	private Config mainConfig;
+
+	@Setup(Level.Invocation)
+	public void setup() {
+		network = SyntheticScenario.createGridNetwork(gridSize);
+		schedule = SyntheticScenario.createSchedule(network, nLines, nStops, SyntheticScenario.SEED);
+		config = SyntheticScenario.createConfig(numOfThreads);
+		mainConfig = SyntheticScenario.createMainConfig(config);
+	}
+
+	@Benchmark
+	public TransitSchedule run() {
+		new PTMapper(schedule, network, null).run(config, mainConfig);
+		return schedule;
+	}
+}
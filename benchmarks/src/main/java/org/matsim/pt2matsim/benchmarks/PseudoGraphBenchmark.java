@@ -0,0 +1,111 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2016 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.pt2matsim.benchmarks;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.utils.geometry.CoordUtils;
+import org.matsim.pt.transitSchedule.api.TransitLine;
+import org.matsim.pt.transitSchedule.api.TransitRoute;
+import org.matsim.pt.transitSchedule.api.TransitRouteStop;
+import org.matsim.pt.transitSchedule.api.TransitSchedule;
+import org.matsim.pt2matsim.mapping.linkCandidateCreation.LinkCandidate;
+import org.matsim.pt2matsim.mapping.linkCandidateCreation.LinkCandidateImpl;
+import org.matsim.pt2matsim.mapping.linkCandidateCreation.PublicTransitStopImpl;
+import org.matsim.pt2matsim.mapping.pseudoRouter.PseudoGraph;
+import org.matsim.pt2matsim.mapping.pseudoRouter.PseudoGraphImpl;
+import org.matsim.pt2matsim.tools.NetworkTools;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks building a pseudo graph for a transit route and calculating its least
+ * cost stop sequence. Link candidates and edge costs are calculated beforehand, so
+ * only the pseudo graph itself is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PseudoGraphBenchmark {
+
+	@Param({"20", "100"})
+	public int nStops;
+
+	@Param({"4", "8"})
+	public int nCandidates;
+
+	private List<TransitRouteStop> routeStops;
+	private List<List<LinkCandidate>> candidates;
+	private double[][][] edgeCosts;
+	private final List<Link> edgeLinks = Collections.emptyList();
+
+	@Setup
+	public void setup() {
+		Network network = SyntheticScenario.createGridNetwork(100);
+		TransitSchedule schedule = SyntheticScenario.createSchedule(network, 1, nStops, SyntheticScenario.SEED);
+		TransitLine transitLine = schedule.getTransitLines().values().iterator().next();
+		TransitRoute transitRoute = transitLine.getRoutes().values().iterator().next();
+		routeStops = transitRoute.getStops();
+
+		candidates = new ArrayList<>(nStops);
+		for(TransitRouteStop routeStop : routeStops) {
+			List<Link> closest = NetworkTools.findClosestLinksSorted(network, routeStop.getStopFacility().getCoord(), 2 * SyntheticScenario.SPACING, Collections.singleton(SyntheticScenario.MODE));
+			List<LinkCandidate> stopCandidates = new ArrayList<>(nCandidates);
+			for(Link link : closest.subList(0, Math.min(nCandidates, closest.size()))) {
+				stopCandidates.add(new LinkCandidateImpl(link, new PublicTransitStopImpl(transitLine, transitRoute, routeStop)));
+			}
+			candidates.add(stopCandidates);
+		}
+
+		// beeline distance between candidates as edge cost
+		edgeCosts = new double[nStops - 1][][];
+		for(int s = 0; s < nStops - 1; s++) {
+			List<LinkCandidate> from = candidates.get(s);
+			List<LinkCandidate> to = candidates.get(s + 1);
+			edgeCosts[s] = new double[from.size()][to.size()];
+			for(int a = 0; a < from.size(); a++) {
+				for(int b = 0; b < to.size(); b++) {
+					edgeCosts[s][a][b] = CoordUtils.calcEuclideanDistance(from.get(a).getLink().getCoord(), to.get(b).getLink().getCoord());
+				}
+			}
+		}
+	}
+
+	@Benchmark
+	public List<Id<Link>> leastCostStopSequence() {
+		PseudoGraph pseudoGraph = new PseudoGraphImpl();
+		for(int s = 0; s < nStops - 1; s++) {
+			List<LinkCandidate> from = candidates.get(s);
+			List<LinkCandidate> to = candidates.get(s + 1);
+			for(int a = 0; a < from.size(); a++) {
+				for(int b = 0; b < to.size(); b++) {
+					pseudoGraph.addEdge(s, routeStops.get(s), from.get(a), routeStops.get(s + 1), to.get(b), edgeCosts[s][a][b], edgeLinks);
+				}
+			}
+		}
+		pseudoGraph.addDummyEdges(routeStops, candidates.get(0), candidates.get(nStops - 1));
+		return pseudoGraph.getNetworkLinkIds();
+	}
+}
@@ -0,0 +1,84 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2016 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.pt2matsim.benchmarks;
+
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.pt.transitSchedule.api.TransitLine;
+import org.matsim.pt.transitSchedule.api.TransitRoute;
+import org.matsim.pt.transitSchedule.api.TransitSchedule;
+import org.matsim.pt2matsim.config.PublicTransitMappingConfigGroup;
+import org.matsim.pt2matsim.mapping.networkRouter.ScheduleRouters;
+import org.matsim.pt2matsim.mapping.networkRouter.ScheduleRoutersStandard;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks least cost path calculations between link candidates. The paths have
+ * a length of {@link #pathLength} links (following a random walk), the router has
+ * to find the least cost path for each pair.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScheduleRoutersBenchmark {
+
+	@Param({"50", "200"})
+	public int gridSize;
+
+	@Param({"5", "30"})
+	public int pathLength;
+
+	private ScheduleRouters scheduleRouters;
+	private TransitLine transitLine;
+	private TransitRoute transitRoute;
+	private Link[][] linkPairs;
+	private int i = 0;
+
+	@Setup
+	public void setup() {
+		Network network = SyntheticScenario.createGridNetwork(gridSize);
+		TransitSchedule schedule = SyntheticScenario.createSchedule(network, 1, 2, SyntheticScenario.SEED);
+		transitLine = schedule.getTransitLines().values().iterator().next();
+		transitRoute = transitLine.getRoutes().values().iterator().next();
+
+		PublicTransitMappingConfigGroup config = SyntheticScenario.createConfig(1);
+		scheduleRouters = new ScheduleRoutersStandard.Factory(schedule, SyntheticScenario.createMainConfig(config), network, config).createInstance();
+
+		Random random = new Random(SyntheticScenario.SEED);
+		linkPairs = new Link[256][];
+		for(int p = 0; p < linkPairs.length; p++) {
+			List<Link> walk = SyntheticScenario.randomWalk(network, pathLength, random);
+			linkPairs[p] = new Link[]{walk.get(0), walk.get(walk.size() - 1)};
+		}
+	}
+
+	@Benchmark
+	public LeastCostPathCalculator.Path calcLeastCostPath() {
+		i = (i + 1) & (linkPairs.length - 1);
+		return scheduleRouters.calcLeastCostPath(linkPairs[i][0], linkPairs[i][1], transitLine, transitRoute);
+	}
+}
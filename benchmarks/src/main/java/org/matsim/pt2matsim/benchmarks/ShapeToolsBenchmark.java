@@ -0,0 +1,81 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2016 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.pt2matsim.benchmarks;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.pt2matsim.tools.ShapeTools;
+import org.matsim.pt2matsim.tools.lib.RouteShape;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks distance calculations between links or coordinates and route shapes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShapeToolsBenchmark {
+
+	/**
+	 * number of links the shape follows
+	 */
+	@Param({"50", "500"})
+	public int shapeLength;
+
+	private RouteShape shape;
+	private Link[] links;
+	private Coord[] coords;
+	private int i = 0;
+
+	@Setup
+	public void setup() {
+		Network network = SyntheticScenario.createGridNetwork(100);
+		Random random = new Random(SyntheticScenario.SEED);
+		shape = SyntheticScenario.createShape("shape", SyntheticScenario.randomWalk(network, shapeLength, random));
+
+		List<Link> allLinks = new ArrayList<>(network.getLinks().values());
+		links = new Link[1024];
+		coords = new Coord[links.length];
+		for(int c = 0; c < links.length; c++) {
+			links[c] = allLinks.get(random.nextInt(allLinks.size()));
+			coords[c] = links[c].getCoord();
+		}
+	}
+
+	@Benchmark
+	public double minDistanceCoordToShape() {
+		i = (i + 1) & (coords.length - 1);
+		return ShapeTools.calcMinDistanceToShape(coords[i], shape);
+	}
+
+	@Benchmark
+	public double minDistanceLinkToShape() {
+		i = (i + 1) & (links.length - 1);
+		return ShapeTools.calcMinDistanceToShape(links[i], shape);
+	}
+}
@@ -0,0 +1,199 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2016 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.pt2matsim.benchmarks;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.utils.geometry.CoordUtils;
+import org.matsim.pt.transitSchedule.api.*;
+import org.matsim.pt2matsim.config.PublicTransitMappingConfigGroup;
+import org.matsim.pt2matsim.gtfs.lib.GtfsShape;
+import org.matsim.pt2matsim.mapping.PTMapper;
+import org.matsim.pt2matsim.tools.NetworkTools;
+import org.matsim.pt2matsim.tools.ScheduleTools;
+import org.matsim.pt2matsim.tools.lib.RouteShape;
+
+import java.util.*;
+
+/**
+ * Creates reproducible synthetic inputs for the benchmarks: a grid network with
+ * bidirectional car/bus links and an unmapped bus schedule whose routes follow
+ * random walks on the grid. The same size and seed always result in the same
+ * network and schedule.
+ */
+public final class SyntheticScenario {
+
+	public static final String MODE = "bus";
+	public static final double SPACING = 200;
+	public static final long SEED = 4711;
+
+	/** offset of stop facilities from the link they are placed at */
+	private static final double STOP_OFFSET = 12;
+
+	private SyntheticScenario() {}
+
+	private static Id<Node> nodeId(int x, int y) {
+		return Id.createNodeId(x + "_" + y);
+	}
+
+	/**
+	 * @return a grid network with size x size nodes
+	 */
+	public static Network createGridNetwork(int size) {
+		Network network = NetworkTools.createNetwork();
+		NetworkFactory factory = network.getFactory();
+		for(int x = 0; x < size; x++) {
+			for(int y = 0; y < size; y++) {
+				network.addNode(factory.createNode(nodeId(x, y), new Coord(x * SPACING, y * SPACING)));
+			}
+		}
+		Set<String> modes = new HashSet<>(Arrays.asList("car", MODE));
+		for(int x = 0; x < size; x++) {
+			for(int y = 0; y < size; y++) {
+				if(x + 1 < size) {
+					addLinks(network, nodeId(x, y), nodeId(x + 1, y), modes);
+				}
+				if(y + 1 < size) {
+					addLinks(network, nodeId(x, y), nodeId(x, y + 1), modes);
+				}
+			}
+		}
+		return network;
+	}
+
+	private static void addLinks(Network network, Id<Node> a, Id<Node> b, Set<String> modes) {
+		Node nodeA = network.getNodes().get(a);
+		Node nodeB = network.getNodes().get(b);
+		for(Node[] n : new Node[][]{{nodeA, nodeB}, {nodeB, nodeA}}) {
+			Link link = network.getFactory().createLink(Id.createLinkId(n[0].getId() + "-" + n[1].getId()), n[0], n[1]);
+			link.setLength(SPACING);
+			link.setFreespeed(13.9);
+			link.setCapacity(1000);
+			link.setNumberOfLanes(1);
+			link.setAllowedModes(modes);
+			network.addLink(link);
+		}
+	}
+
+	/**
+	 * Random walk without u-turns on the network
+	 *
+	 * @return the link sequence
+	 */
+	public static List<Link> randomWalk(Network network, int nLinks, Random random) {
+		List<Link> allLinks = new ArrayList<>(network.getLinks().values());
+		List<Link> walk = new ArrayList<>(nLinks);
+		Link current = allLinks.get(random.nextInt(allLinks.size()));
+		walk.add(current);
+		while(walk.size() < nLinks) {
+			List<Link> next = new ArrayList<>();
+			for(Link outLink : current.getToNode().getOutLinks().values()) {
+				if(outLink.getToNode() != current.getFromNode()) {
+					next.add(outLink);
+				}
+			}
+			current = next.get(random.nextInt(next.size()));
+			walk.add(current);
+		}
+		return walk;
+	}
+
+	/**
+	 * Creates an unmapped schedule with one route per line. A stop facility is placed
+	 * next to every second link of the random walk of a route.
+	 */
+	public static TransitSchedule createSchedule(Network network, int nLines, int nStops, long seed) {
+		Random random = new Random(seed);
+		TransitSchedule schedule = ScheduleTools.createSchedule();
+		TransitScheduleFactory factory = schedule.getFactory();
+
+		for(int l = 0; l < nLines; l++) {
+			List<Link> walk = randomWalk(network, 2 * nStops, random);
+			List<TransitRouteStop> routeStops = new ArrayList<>(nStops);
+			for(int s = 0; s < nStops; s++) {
+				Link link = walk.get(2 * s);
+				TransitStopFacility stopFacility = factory.createTransitStopFacility(Id.create(l + "_" + s, TransitStopFacility.class), stopCoord(link), false);
+				stopFacility.setName("stop " + l + "_" + s);
+				schedule.addStopFacility(stopFacility);
+				double offset = s * 60.0;
+				routeStops.add(factory.createTransitRouteStop(stopFacility, offset, offset));
+			}
+			TransitLine transitLine = factory.createTransitLine(Id.create("line" + l, TransitLine.class));
+			TransitRoute transitRoute = factory.createTransitRoute(Id.create("route" + l, TransitRoute.class), null, routeStops, MODE);
+			transitRoute.addDeparture(factory.createDeparture(Id.create("dep" + l, Departure.class), 6 * 3600 + l * 60));
+			transitLine.addRoute(transitRoute);
+			schedule.addTransitLine(transitLine);
+		}
+		return schedule;
+	}
+
+	/**
+	 * @return a coordinate to the right of the link center
+	 */
+	private static Coord stopCoord(Link link) {
+		Coord from = link.getFromNode().getCoord();
+		Coord to = link.getToNode().getCoord();
+		Coord center = CoordUtils.getCenter(from, to);
+		double dx = (to.getX() - from.getX()) / link.getLength();
+		double dy = (to.getY() - from.getY()) / link.getLength();
+		return new Coord(center.getX() + dy * STOP_OFFSET, center.getY() - dx * STOP_OFFSET);
+	}
+
+	/**
+	 * @return a shape following the given links with one point per node
+	 */
+	public static RouteShape createShape(String id, List<Link> links) {
+		GtfsShape shape = new GtfsShape(id);
+		int pos = 0;
+		shape.addPoint(links.get(0).getFromNode().getCoord(), pos++);
+		for(Link link : links) {
+			shape.addPoint(link.getToNode().getCoord(), pos++);
+		}
+		return shape;
+	}
+
+	/**
+	 * @return a mapping config for bus routes on car/bus links
+	 */
+	public static PublicTransitMappingConfigGroup createConfig(int numOfThreads) {
+		PublicTransitMappingConfigGroup config = new PublicTransitMappingConfigGroup();
+		config.getModesToKeepOnCleanUp().add("car");
+		config.setNumOfThreads(numOfThreads);
+		config.setNLinkThreshold(4);
+		config.setMaxLinkCandidateDistance(SPACING);
+		config.setCandidateDistanceMultiplier(1.6);
+
+		PublicTransitMappingConfigGroup.TransportModeAssignment mraBus = new PublicTransitMappingConfigGroup.TransportModeAssignment(MODE);
+		mraBus.setNetworkModesStr("car," + MODE);
+		config.addParameterSet(mraBus);
+		return config;
+	}
+
+	public static Config createMainConfig(PublicTransitMappingConfigGroup config) {
+		Config mainConfig = ConfigUtils.createConfig();
+		PTMapper.matchInfo(mainConfig, config);
+		return mainConfig;
+	}
+}
@@ -49,9 +49,12 @@ public class PublicTransitMappingConfigGroup extends ReflectiveConfigGroup {
 
 	private static final String INPUT_NETWORK_FILE = "inputNetworkFile";
 	private static final String INPUT_SCHEDULE_FILE = "inputScheduleFile";
+	private static final String PREVIOUS_MAPPED_SCHEDULE_FILE = "previousMappedScheduleFile";
 	private static final String OUTPUT_NETWORK_FILE = "outputNetworkFile";
 	private static final String OUTPUT_SCHEDULE_FILE = "outputScheduleFile";
 	private static final String OUTPUT_STREET_NETWORK_FILE = "outputStreetNetworkFile";
+	private static final String OUTPUT_SNAPSHOT_FILE = "outputSnapshotFile";
+	private static final String OUTPUT_METRICS_FILE = "outputMetricsFile";
 
 	private static final String TRAVEL_COST_TYPE = "travelCostType";
 	private static final String MAX_TRAVEL_COST_FACTOR = "maxTravelCostFactor";
@@ -65,6 +68,9 @@ public class PublicTransitMappingConfigGroup extends ReflectiveConfigGroup {
 	private static final String CANDIDATE_DISTANCE_MULTIPLIER = "candidateDistanceMultiplier";
 	private static final String MAX_LINK_CANDIDATE_DISTANCE = "maxLinkCandidateDistance";
 
+	private static final String PARTITION_TILE_SIZE = "partitionTileSize";
+	private static final String PARTITION_BUFFER = "partitionBuffer";
+
 	private static final String ROUTING_WITH_CANDIDATE_DISTANCE = "routingWithCandidateDistance";
 
 	// default values
@@ -77,14 +83,19 @@ public class PublicTransitMappingConfigGroup extends ReflectiveConfigGroup {
 
 	private String inputNetworkFile = null;
 	private String inputScheduleFile = null;
+	private String previousMappedScheduleFile = null;
 	private String outputNetworkFile = null;
 	private String outputStreetNetworkFile = null;
 	private String outputScheduleFile = null;
+	private String outputSnapshotFile = null;
+	private String outputMetricsFile = null;
 	private TravelCostType travelCostType = TravelCostType.linkLength;
 
 	private boolean routingWithCandidateDistance = true;
 	private int nLinkThreshold = 6;
 	private double maxLinkCandidateDistance = 90;
+	private double partitionTileSize = 0;
+	private double partitionBuffer = 5000;
 	private double candiateDistanceMulitplier = 1.6;
 
 	public PublicTransitMappingConfigGroup() {
@@ -150,10 +161,21 @@ public class PublicTransitMappingConfigGroup extends ReflectiveConfigGroup {
 				"Defines the number of numOfThreads that should be used for pseudoRouting. Default: 2.");
 		map.put(INPUT_NETWORK_FILE, "Path to the input network file. Not needed if PTMapper is called within another class.");
 		map.put(INPUT_SCHEDULE_FILE, "Path to the input schedule file. Not needed if PTMapper is called within another class.");
+		map.put(PREVIOUS_MAPPED_SCHEDULE_FILE, "Path to a previously mapped schedule (optional). If set, only transit routes whose stop sequence \n" +
+				"\t\tor stop coordinates changed are mapped, all other routes keep their previous link sequence and child \n" +
+				"\t\tstop facilities. The input network should be the network the previous schedule has been mapped to. \n" +
+				"\t\tChanged routes are mapped on this network as well: links removed by the previous run (e.g. rail \n" +
+				"\t\ttracks not used by any route and not in modesToKeepOnCleanUp) are not available to them.");
 		map.put(OUTPUT_NETWORK_FILE, "Path to the output network file. Not needed if PTMapper is used within another class.");
 		map.put(OUTPUT_STREET_NETWORK_FILE, "Path to the output car only network file. The input multimodal map is filtered. \n" +
 				"\t\tNot needed if PTMapper is used within another class.");
 		map.put(OUTPUT_SCHEDULE_FILE, "Path to the output schedule file. Not needed if PTMapper is used within another class.");
+		map.put(OUTPUT_SNAPSHOT_FILE, "Path to an output binary snapshot containing the mapped schedule and network (optional). \n" +
+				"\t\tSnapshots can be read by all tools instead of network and schedule files and load considerably faster.");
+		map.put(OUTPUT_METRICS_FILE, "Path to an output json file with performance metrics of the mapping (optional): wall and cpu \n" +
+				"\t\ttime per phase, router calls and latencies and number of artificial links. Router calls are only measured \n" +
+				"\t\tif this file is set. Cache hit ratios are not available: the mapping does not cache paths, only \n" +
+				"\t\tScheduleTools.routeSchedule shares paths between routes, which is not part of the mapping.");
 		map.put(REMOVE_NOT_USED_STOP_FACILITIES,
 				"If true, stop facilities that are not used by any transit route are removed from the schedule. Default: true");
 		map.put(ROUTING_WITH_CANDIDATE_DISTANCE,
@@ -173,6 +195,13 @@ public class PublicTransitMappingConfigGroup extends ReflectiveConfigGroup {
 		map.put(MAX_LINK_CANDIDATE_DISTANCE,
 				"The maximal distance [meter] a link candidate is allowed to have from the stop facility.\n" +
 				"\t\tNo link candidates beyond this distance are added.");
+		map.put(PARTITION_TILE_SIZE,
+				"Size [meter] of the square tiles used to partition the schedule (optional, 0 disables partitioning). Transit routes \n" +
+				"\t\tare grouped by the tile containing the center of their stop extent, each partition is mapped separately on \n" +
+				"\t\ta network cut around its routes. Reduces memory for large schedules. Default: 0");
+		map.put(PARTITION_BUFFER,
+				"Buffer distance [meter] around the stop extents of a partition's transit routes. Network parts within \n" +
+				"\t\tthe buffer are available for link candidates and routing. Should be well above " + MAX_LINK_CANDIDATE_DISTANCE + ". Default: " + partitionBuffer);
 		return map;
 	}
 
@@ -371,6 +400,20 @@ public class PublicTransitMappingConfigGroup extends ReflectiveConfigGroup {
 		this.inputScheduleFile = inputScheduleFile.equals("") ? null : inputScheduleFile;
 	}
 
+	@StringGetter(PREVIOUS_MAPPED_SCHEDULE_FILE)
+	public String getPreviousMappedScheduleFileStr() {
+		return this.previousMappedScheduleFile == null ? "" : this.previousMappedScheduleFile;
+	}
+
+	public String getPreviousMappedScheduleFile() {
+		return this.previousMappedScheduleFile;
+	}
+
+	@StringSetter(PREVIOUS_MAPPED_SCHEDULE_FILE)
+	public void setPreviousMappedScheduleFile(String previousMappedScheduleFile) {
+		this.previousMappedScheduleFile = previousMappedScheduleFile.equals("") ? null : previousMappedScheduleFile;
+	}
+
 	@StringGetter(OUTPUT_NETWORK_FILE)
 	public String getOutputNetworkFile() {
 		return this.outputNetworkFile == null ? "" : this.outputNetworkFile;
@@ -413,6 +456,34 @@ public class PublicTransitMappingConfigGroup extends ReflectiveConfigGroup {
 		return old;
 	}
 
+	public String getOutputSnapshotFile() {
+		return this.outputSnapshotFile;
+	}
+
+	@StringGetter(OUTPUT_SNAPSHOT_FILE)
+	public String getOutputSnapshotFileStr() {
+		return this.outputSnapshotFile == null ? "" : this.outputSnapshotFile;
+	}
+
+	@StringSetter(OUTPUT_SNAPSHOT_FILE)
+	public void setOutputSnapshotFile(String outputSnapshotFile) {
+		this.outputSnapshotFile = outputSnapshotFile.equals("") ? null : outputSnapshotFile;
+	}
+
+	public String getOutputMetricsFile() {
+		return this.outputMetricsFile;
+	}
+
+	@StringGetter(OUTPUT_METRICS_FILE)
+	public String getOutputMetricsFileStr() {
+		return this.outputMetricsFile == null ? "" : this.outputMetricsFile;
+	}
+
+	@StringSetter(OUTPUT_METRICS_FILE)
+	public void setOutputMetricsFile(String outputMetricsFile) {
+		this.outputMetricsFile = outputMetricsFile.equals("") ? null : outputMetricsFile;
+	}
+
 	@StringGetter(ROUTING_WITH_CANDIDATE_DISTANCE)
 	public boolean getRoutingWithCandidateDistance() {
 		return routingWithCandidateDistance;
@@ -454,6 +525,29 @@ public class PublicTransitMappingConfigGroup extends ReflectiveConfigGroup {
 		this.maxLinkCandidateDistance = maxLinkCandidateDistance;
 	}
 
+	/**
+	 * tile size for partitioned mapping, 0 if the schedule is mapped at once
+	 */
+	@StringGetter(PARTITION_TILE_SIZE)
+	public double getPartitionTileSize() {
+		return partitionTileSize;
+	}
+
+	@StringSetter(PARTITION_TILE_SIZE)
+	public void setPartitionTileSize(double partitionTileSize) {
+		this.partitionTileSize = partitionTileSize;
+	}
+
+	@StringGetter(PARTITION_BUFFER)
+	public double getPartitionBuffer() {
+		return partitionBuffer;
+	}
+
+	@StringSetter(PARTITION_BUFFER)
+	public void setPartitionBuffer(double partitionBuffer) {
+		this.partitionBuffer = partitionBuffer;
+	}
+
 	/**
 	 * Defines the radius [meter] from a stop facility within nodes are searched.
 	 * Mainly a maximum value for performance.
@@ -490,9 +490,7 @@ public class BasicScheduleEditor implements ScheduleEditor {
 				throw new IllegalArgumentException("stop facility " + routeStops.get(i - 1).getStopFacility().getName() + " (" + routeStops.get(i + 1).getStopFacility().getId() + " not referenced!");
 			}
 
-			Id<Link> currentLinkId = Id.createLinkId(routeStops.get(i).getStopFacility().getLinkId().toString());
-
-			Link currentLink = network.getLinks().get(currentLinkId);
+			Link currentLink = network.getLinks().get(routeStops.get(i).getStopFacility().getLinkId());
 			Link nextLink = network.getLinks().get(routeStops.get(i + 1).getStopFacility().getLinkId());
 // change due to inverted network
 			List<Id<Link>> path = PTMapperTools.getLinkIdsFromPath(routers.calcLeastCostPath(currentLink, nextLink, transitLine, transitRoute));
@@ -27,7 +27,7 @@ import org.matsim.pt2matsim.gtfs.lib.*;
 import org.matsim.pt2matsim.tools.GtfsTools;
 import org.matsim.pt2matsim.tools.ScheduleTools;
 import org.matsim.pt2matsim.tools.debug.ScheduleCleaner;
-import org.matsim.pt2matsim.tools.lib.RouteShape;
+import org.matsim.pt2matsim.tools.debug.TransitRouteDeduplicator;
 import org.matsim.vehicles.*;
 
 import java.time.LocalDate;
@@ -86,10 +86,9 @@ public class GtfsConverter {
 	 * <ol>
 	 * <li>generate transitStopFacilities from gtfsStops</li>
 	 * <li>Create a transitLine for each Route</li>
-	 * <li>Generate a transitRoute for each trip</li>
-	 * <li>Get the stop sequence of the trip</li>
-	 * <li>Calculate departures from stopTimes or frequencies</li>
-	 * <li>add transitRoute to the transitLine and thus to the schedule</li>
+	 * <li>Get the stop sequence of each trip</li>
+	 * <li>Generate a transitRoute for each distinct stop/time sequence of a transitLine</li>
+	 * <li>Calculate departures from stopTimes or frequencies and add them to the transitRoute</li>
 	 * </ol>
 	 */
 	public void convert(String serviceIdsParam, String transformation, TransitSchedule schedule, Vehicles vehicles) {
@@ -109,12 +108,9 @@ public class GtfsConverter {
 		// create transfers
 		createTransfers(schedule);
 
-		// Creating TransitLines from routes and TransitRoutes from trips
+		// Creating TransitLines from routes and TransitRoutes from trips with identical stop/time sequences
 		createTransitLines(schedule, extractDate);
 
-		// combine TransitRoutes with identical stop/time sequences, add departures
-		combineTransitRoutes(schedule);
-
 		// clean the schedule
 		cleanSchedule(schedule);
 
@@ -177,6 +173,11 @@ public class GtfsConverter {
 		return stopFacility;
 	}
 
+	/**
+	 * Creates a transit line per GTFS route. Trips with identical stop sequences and offsets
+	 * share one transit route: the route is created by {@link #createTransitRoute(Trip, List)}
+	 * for the first trip, the departures of the other trips are added with {@link #addDepartures(TransitRoute, Trip)}.
+	 */
 	protected void createTransitLines(TransitSchedule schedule, LocalDate extractDate) {
 		// info
 		log.info("    Creating TransitLines from routes and TransitRoutes from trips...");
@@ -187,13 +188,24 @@ public class GtfsConverter {
 			if(newTransitLine != null) {
 				schedule.addTransitLine(newTransitLine);
 
-				// create TransitRoute for each trip
+				// create a TransitRoute for each stop/time sequence, add departures of trips
+				TransitRouteDeduplicator.RouteIndex routeIndex = new TransitRouteDeduplicator.RouteIndex();
 				for(Trip trip : gtfsRoute.getTrips().values()) {
 					// check if the trip actually runs on the extract date
 					if(trip.getService().runsOnDate(extractDate)) {
-						TransitRoute transitRoute = createTransitRoute(trip, schedule.getFacilities());
-						if(transitRoute != null) {
-							newTransitLine.addRoute(transitRoute);
+						List<TransitRouteStop> transitRouteStops = createTransitRouteStops(trip, schedule.getFacilities());
+						if(transitRouteStops != null) {
+							int[] profile = TransitRouteDeduplicator.pack(transitRouteStops, true);
+							TransitRoute transitRoute = routeIndex.get(profile);
+							if(transitRoute != null) {
+								addDepartures(transitRoute, trip);
+							} else {
+								transitRoute = createTransitRoute(trip, transitRouteStops);
+								if(transitRoute != null) {
+									newTransitLine.addRoute(transitRoute);
+									routeIndex.add(profile, transitRoute);
+								}
+							}
 						}
 					}
 				}
@@ -220,17 +232,26 @@ public class GtfsConverter {
 
 	/**
 	 * @return null if route should not be converted
+	 * @deprecated not called by {@link #createTransitLines}, which groups trips with identical stop
+	 * sequences. Override {@link #createTransitRouteStops} or {@link #createTransitRoute(Trip, List)} instead.
 	 */
+	@Deprecated
 	protected TransitRoute createTransitRoute(Trip trip, Map<Id<TransitStopFacility>, TransitStopFacility> stopFacilities) {
-		Id<RouteShape> shapeId = trip.getShape() != null ? trip.getShape().getId() : null;
+		List<TransitRouteStop> transitRouteStops = createTransitRouteStops(trip, stopFacilities);
+		return transitRouteStops == null ? null : createTransitRoute(trip, transitRouteStops);
+	}
 
+	/**
+	 * @return the stop sequence (with arrivalOffset and departureOffset) of the trip,
+	 * null if the trip should not be converted
+	 */
+	protected List<TransitRouteStop> createTransitRouteStops(Trip trip, Map<Id<TransitStopFacility>, TransitStopFacility> stopFacilities) {
 		if(trip.getStopTimes().size() <= 1) {
 			noStopTimeTrips++;
 			return null;
 		}
 
-		// Get the stop sequence (with arrivalOffset and departureOffset) of the trip.
-		List<TransitRouteStop> transitRouteStops = new ArrayList<>();
+		List<TransitRouteStop> transitRouteStops = new ArrayList<>(trip.getStopTimes().size());
 
 		// create transit route stops
 		boolean hasStopPairsWithoutOffset = false;
@@ -246,27 +267,39 @@ public class GtfsConverter {
 		}
 		if(hasStopPairsWithoutOffset) stopPairsWithoutOffset++;
 
-		// Calculate departures from frequencies (if available)
-		TransitRoute transitRoute;
-		if(trip.getFrequencies().size() > 0) {
-			transitRoute = this.scheduleFactory.createTransitRoute(createTransitRouteId(trip), null, transitRouteStops, trip.getRoute().getRouteType().name);
+		return transitRouteStops;
+	}
+
+	/**
+	 * @return a new transit route for the trip with the given stop sequence, null if route should not be converted
+	 */
+	protected TransitRoute createTransitRoute(Trip trip, List<TransitRouteStop> transitRouteStops) {
+		TransitRoute transitRoute = this.scheduleFactory.createTransitRoute(createTransitRouteId(trip), null, transitRouteStops, trip.getRoute().getRouteType().name);
+		addDepartures(transitRoute, trip);
+		if(trip.getShape() != null) ScheduleTools.setShapeId(transitRoute, trip.getShape().getId());
+		return transitRoute;
+	}
 
+	/**
+	 * Adds the departures of a trip to the given transit route. Departures are calculated
+	 * from frequencies (if available) or from the stop times. Departure ids are based on
+	 * the trip's transit route id, so trips sharing a transit route keep distinct departures.
+	 */
+	protected void addDepartures(TransitRoute transitRoute, Trip trip) {
+		Id<TransitRoute> tripRouteId = createTransitRouteId(trip);
+		if(trip.getFrequencies().size() > 0) {
 			for(Frequency frequency : trip.getFrequencies()) {
 				for(int t = frequency.getStartTime(); t < frequency.getEndTime(); t += frequency.getHeadWaySecs()) {
-					Departure newDeparture = this.scheduleFactory.createDeparture(createDepartureId(transitRoute, t), t);
+					Departure newDeparture = this.scheduleFactory.createDeparture(createDepartureId(tripRouteId, t), t);
 					transitRoute.addDeparture(newDeparture);
 				}
 			}
 		} else {
 			// Calculate departures from stopTimes
 			int routeStartTime = trip.getStopTimes().first().getDepartureTime();
-
-			transitRoute = this.scheduleFactory.createTransitRoute(createTransitRouteId(trip), null, transitRouteStops, trip.getRoute().getRouteType().name);
-			Departure newDeparture = this.scheduleFactory.createDeparture(createDepartureId(transitRoute, routeStartTime), routeStartTime);
+			Departure newDeparture = this.scheduleFactory.createDeparture(createDepartureId(tripRouteId, routeStartTime), routeStartTime);
 			transitRoute.addDeparture(newDeparture);
 		}
-		if(shapeId != null) ScheduleTools.setShapeId(transitRoute, trip.getShape().getId());
-		return transitRoute;
 	}
 
 	protected TransitRouteStop createTransitRouteStop(StopTime stopTime, Trip trip, Map<Id<TransitStopFacility>, TransitStopFacility> stopFacilities) {
@@ -293,6 +326,11 @@ public class GtfsConverter {
 		return newTransitRouteStop;
 	}
 
+	/**
+	 * @deprecated not called by {@link #convert}, trips with identical stop sequences are
+	 * already combined in {@link #createTransitLines}.
+	 */
+	@Deprecated
 	protected void combineTransitRoutes(TransitSchedule schedule) {
 		ScheduleCleaner.combineIdenticalTransitRoutes(schedule);
 	}
@@ -316,7 +354,11 @@ public class GtfsConverter {
 	}
 
 	protected Id<Departure> createDepartureId(TransitRoute route, int time) {
-		String str = route.getId().toString() + "_" + Time.writeTime(time, "HH:mm:ss");
+		return createDepartureId(route.getId(), time);
+	}
+
+	protected Id<Departure> createDepartureId(Id<TransitRoute> routeId, int time) {
+		String str = routeId.toString() + "_" + Time.writeTime(time, "HH:mm:ss");
 		return Id.create(str, Departure.class);
 	}
 
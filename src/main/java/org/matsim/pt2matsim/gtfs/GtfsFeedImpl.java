@@ -28,17 +28,18 @@ import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
-import org.matsim.core.utils.geometry.CoordinateTransformation;
 import org.matsim.core.utils.geometry.transformations.TransformationFactory;
 import org.matsim.core.utils.misc.Time;
 import org.matsim.pt2matsim.gtfs.lib.*;
 import org.matsim.pt2matsim.gtfs.lib.GtfsDefinitions.ExtendedRouteType;
 import org.matsim.pt2matsim.gtfs.lib.GtfsDefinitions.RouteType;
+import org.matsim.pt2matsim.tools.lib.BatchCoordinateTransformation;
 import org.matsim.pt2matsim.tools.lib.RouteShape;
 
 import java.io.*;
 import java.util.*;
 import java.nio.charset.StandardCharsets;
+import java.util.stream.Collectors;
 
 
 /**
@@ -720,9 +721,11 @@ public class GtfsFeedImpl implements GtfsFeed {
 	public double[] transform(String targetCoordinateSystem) {
 		double minE = Double.MAX_VALUE, minN = Double.MAX_VALUE, maxE = Double.MIN_VALUE, maxN = Double.MIN_VALUE;
 
-		CoordinateTransformation transformation = TransformationFactory.getCoordinateTransformation(coordSys, targetCoordinateSystem);
-		for(Stop stop : stops.values()) {
-			((StopImpl) stop).setCoord(transformation.transform(stop.getCoord()));
+		BatchCoordinateTransformation transformation = new BatchCoordinateTransformation(coordSys, targetCoordinateSystem);
+		List<Stop> stopList = new ArrayList<>(stops.values());
+		Iterator<Coord> transformedStopCoords = transformation.transform(stopList.stream().map(Stop::getCoord).collect(Collectors.toList())).iterator();
+		for(Stop stop : stopList) {
+			((StopImpl) stop).setCoord(transformedStopCoords.next());
 
 			if(stop.getCoord().getX() > maxE) maxE = stop.getCoord().getX();
 			if(stop.getCoord().getY() > maxN) maxN = stop.getCoord().getY();
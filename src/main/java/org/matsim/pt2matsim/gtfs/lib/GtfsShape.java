@@ -23,6 +23,7 @@ package org.matsim.pt2matsim.gtfs.lib;
 import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.core.utils.geometry.CoordinateTransformation;
+import org.matsim.pt2matsim.tools.lib.BatchCoordinateTransformation;
 import org.matsim.pt2matsim.tools.lib.RouteShape;
 
 import java.util.*;
@@ -66,6 +67,13 @@ public class GtfsShape implements RouteShape {
 		return new ArrayList<>(coordSorted.values());
 	}
 
+	public void transformCoords(BatchCoordinateTransformation transformation) {
+		Iterator<Coord> transformedCoords = transformation.transform(this.coordSorted.values()).iterator();
+		for(Map.Entry<Integer, Coord> entry : this.coordSorted.entrySet()) {
+			entry.setValue(transformedCoords.next());
+		}
+	}
+
 	public void transformCoords(CoordinateTransformation transformation) {
 		for(Map.Entry<Integer, Coord> entry : this.coordSorted.entrySet()) {
 			Coord transformedCoord = transformation.transform(entry.getValue());
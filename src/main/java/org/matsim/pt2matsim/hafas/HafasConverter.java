@@ -29,21 +29,32 @@ import org.matsim.core.utils.geometry.CoordinateTransformation;
 import org.matsim.core.utils.misc.Counter;
 import org.matsim.pt.transitSchedule.api.*;
 import org.matsim.pt2matsim.hafas.lib.*;
+import org.matsim.pt2matsim.mapping.Progress;
 import org.matsim.pt2matsim.tools.VehicleTypeDefaults;
 import org.matsim.pt2matsim.tools.debug.ScheduleCleaner;
+import org.matsim.vehicles.Vehicle;
 import org.matsim.vehicles.VehicleCapacity;
 import org.matsim.vehicles.VehicleType;
 import org.matsim.vehicles.Vehicles;
 import org.matsim.vehicles.VehiclesFactory;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
 import java.time.format.DateTimeParseException;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+import java.util.function.IntPredicate;
 
 /**
  * Converts hafas files to a matsim transit schedule.
@@ -54,6 +65,10 @@ public class HafasConverter {
 
 	protected static Logger log = LogManager.getLogger(HafasConverter.class);
 
+	private static final int NUM_READER_THREADS = 4;
+
+	public static final String DEPARTURE_ATTRIBUTE_VALID_DAYS = "validDays";
+
 	public static void run(String hafasFolder, TransitSchedule schedule, CoordinateTransformation transformation, Vehicles vehicles) throws IOException {
 		run(hafasFolder, schedule, transformation, vehicles, -1);
 	}
@@ -85,46 +100,39 @@ public class HafasConverter {
 
 	public static void run(String hafasFolder, TransitSchedule schedule, CoordinateTransformation transformation, Vehicles vehicles, int dayNr) throws IOException {
 		if(!hafasFolder.endsWith("/")) hafasFolder += "/";
+		final String folder = hafasFolder;
 
 		log.info("Creating the schedule based on HAFAS...");
 
-		// 1. Read and create stop facilities
-		log.info("  Read transit stops...");
-		StopReader.run(schedule, transformation, hafasFolder + "BFKOORD_GEO");
-		log.info("  Read transit stops... done.");
-
-		// 1.a Read minimal transfer times
-		log.info("  Read minimal transfer times...");
-		MinimalTransferTimesReader.run(schedule, hafasFolder, "UMSTEIGB","METABHF");
-		log.info("  Read minimal transfer times... done.");
-
-		// 2. Read all operators from BETRIEB_DE
-		log.info("  Read operators...");
-		Map<String, String> operators = OperatorReader.readOperators(hafasFolder + "BETRIEB_DE");
-		log.info("  Read operators... done.");
-
-		// 3. Read all ids for work-day-routes from HAFAS-BITFELD
-		log.info("  Read bitfeld numbers...");
-		Set<Integer> bitfeldNummern;
-		if (dayNr < 0) {
-			bitfeldNummern = BitfeldAnalyzer.findBitfeldnumbersOfBusiestDay(hafasFolder + "FPLAN", hafasFolder + "BITFELD");
-			log.info("      nb of bitfields at busiest day: " + bitfeldNummern.size());
-		} else {
-			// TODO: check if dayNr is within the timetable period defined in ECKDATEN
-			bitfeldNummern = BitfeldAnalyzer.getBitfieldsAtValidDay(dayNr, hafasFolder);
-			log.info("      nb of bitfields valid at day " + dayNr + ": " + bitfeldNummern.size());
+		ExecutorService executor = Executors.newFixedThreadPool(NUM_READER_THREADS);
+		List<FPLANRoute> routes;
+		try {
+			// 3. Read all ids for work-day-routes from HAFAS-BITFELD
+			CompletableFuture<byte[]> fplan = runAsync(executor, "FPLAN file", () -> FPLANReader.readFPLAN(folder + "FPLAN"));
+			CompletableFuture<Set<Integer>> bitfeldNummern;
+			if (dayNr < 0) {
+				bitfeldNummern = fplan.thenCompose(buffer -> runAsync(executor, "bitfeld numbers", () -> {
+					Set<Integer> b = BitfeldAnalyzer.findBitfeldnumbersOfBusiestDay(buffer, folder + "BITFELD");
+					log.info("      nb of bitfields at busiest day: " + b.size());
+					return b;
+				}));
+			} else {
+				// TODO: check if dayNr is within the timetable period defined in ECKDATEN
+				bitfeldNummern = runAsync(executor, "bitfeld numbers", () -> {
+					Set<Integer> b = BitfeldAnalyzer.getBitfieldsAtValidDay(dayNr, folder);
+					log.info("      nb of bitfields valid at day " + dayNr + ": " + b.size());
+					return b;
+				});
+			}
+			routes = readFiles(executor, folder, schedule, transformation, fplan, bitfeldNummern.thenApply(b -> b::contains));
+		} finally {
+			executor.shutdown();
 		}
-		log.info("  Read bitfeld numbers... done.");
-
-		// 4. Create all lines from HAFAS-Schedule
-		log.info("  Read transit lines...");
-		List<FPLANRoute> routes = FPLANReader.parseFPLAN(bitfeldNummern, operators, hafasFolder + "FPLAN");
-		log.info("  Read transit lines... done.");
 
 		// TODO another important HAFAS-file is DURCHBI. This feature is not supported by MATSim yet (but in Switzerland, for example, locally very important.
 
 		log.info("  Creating transit routes...");
-		createTransitRoutesFromFPLAN(routes, schedule, vehicles);
+		createTransitRoutesFromFPLAN(routes, schedule, vehicles, null);
 		log.info("  Creating transit routes... done.");
 
 		// 5. Clean schedule
@@ -137,7 +145,118 @@ public class HafasConverter {
 		log.info("Creating the schedule based on HAFAS... done.");
 	}
 
-	private static void createTransitRoutesFromFPLAN(List<FPLANRoute> routes, TransitSchedule schedule, Vehicles vehicles) {
+	/**
+	 * Creates a schedule containing all routes valid on at least one of the given days. FPLAN and BITFELD
+	 * are only read once. Each departure gets the attribute {@value #DEPARTURE_ATTRIBUTE_VALID_DAYS} listing
+	 * the given days on which it runs (comma separated day numbers, day 0 is the first day of the timetable
+	 * period). Departures of a transit route with the same departure time are combined.
+	 *
+	 * @param dayNrs days of the timetable period (see ECKDATEN), starting with 0
+	 */
+	public static void run(String hafasFolder, TransitSchedule schedule, CoordinateTransformation transformation, Vehicles vehicles, int[] dayNrs) throws IOException {
+		if(!hafasFolder.endsWith("/")) hafasFolder += "/";
+		final String folder = hafasFolder;
+		final long[] selectedDays = BitfeldTable.daysMask(dayNrs);
+
+		log.info("Creating the schedule based on HAFAS for days " + BitfeldTable.toString(selectedDays) + "...");
+
+		ExecutorService executor = Executors.newFixedThreadPool(NUM_READER_THREADS);
+		List<FPLANRoute> routes;
+		BitfeldTable bitfeldTable;
+		try {
+			// 3. Read and decode all bitfelds
+			CompletableFuture<byte[]> fplan = runAsync(executor, "FPLAN file", () -> FPLANReader.readFPLAN(folder + "FPLAN"));
+			CompletableFuture<BitfeldTable> table = runAsync(executor, "bitfeld table", () -> {
+				BitfeldTable t = BitfeldTable.read(folder + "BITFELD");
+				log.info("      nb of bitfields: " + t.size());
+				return t;
+			});
+			routes = readFiles(executor, folder, schedule, transformation, fplan, table.thenApply(t -> nr -> t.isValidOnAny(nr, selectedDays)));
+			bitfeldTable = join(table);
+		} finally {
+			executor.shutdown();
+		}
+
+		log.info("  Creating transit routes...");
+		Map<Departure, long[]> validDays = new HashMap<>();
+		createTransitRoutesFromFPLAN(routes, schedule, vehicles, (route, departure) ->
+				validDays.put(departure, bitfeldTable.getValidDays(route.getBitfeldNummer(), selectedDays)));
+		log.info("  Creating transit routes... done.");
+
+		// 5. Clean schedule
+		ScheduleCleaner.removeNotUsedStopFacilities(schedule);
+		ScheduleCleaner.removeNotUsedMinimalTransferTimes(schedule);
+		ScheduleCleaner.combineIdenticalTransitRoutes(schedule);
+		combineDepartures(schedule, validDays);
+		ScheduleCleaner.cleanVehicles(schedule, vehicles);
+
+		log.info("Creating the schedule based on HAFAS... done.");
+	}
+
+	/**
+	 * Reads stops, minimal transfer times and operators concurrently and parses the FPLAN routes
+	 * once operators, the FPLAN buffer and the bitfeld filter are available:
+	 * stops | transfer times | operators | FPLAN -> bitfeld filter
+	 */
+	private static List<FPLANRoute> readFiles(ExecutorService executor, String folder, TransitSchedule schedule, CoordinateTransformation transformation, CompletableFuture<byte[]> fplan, CompletableFuture<IntPredicate> acceptBitfeld) throws IOException {
+		// 1. Read and create stop facilities
+		CompletableFuture<Void> stops = runAsync(executor, "transit stops", () -> {
+			StopReader.run(schedule, transformation, folder + "BFKOORD_GEO");
+			return null;
+		});
+
+		// 1.a Read minimal transfer times
+		CompletableFuture<Void> transferTimes = runAsync(executor, "minimal transfer times", () -> {
+			MinimalTransferTimesReader.run(schedule, folder, "UMSTEIGB", "METABHF");
+			return null;
+		});
+
+		// 2. Read all operators from BETRIEB_DE
+		CompletableFuture<Map<String, String>> operators = runAsync(executor, "operators", () -> OperatorReader.readOperators(folder + "BETRIEB_DE"));
+
+		// 4. Create all lines from HAFAS-Schedule
+		CompletableFuture<List<FPLANRoute>> fplanRoutes = CompletableFuture.allOf(fplan, operators, acceptBitfeld)
+				.thenCompose(v -> runAsync(executor, "transit lines", () -> FPLANReader.parseFPLAN(acceptBitfeld.join(), operators.join(), fplan.join())));
+
+		List<FPLANRoute> routes = join(fplanRoutes);
+		join(stops);
+		join(transferTimes);
+		return routes;
+	}
+
+	/**
+	 * Combines departures of a transit route with the same departure time, their valid days are united.
+	 * Sets the {@value #DEPARTURE_ATTRIBUTE_VALID_DAYS} attribute of the remaining departures.
+	 */
+	private static void combineDepartures(TransitSchedule schedule, Map<Departure, long[]> validDays) {
+		for(TransitLine transitLine : schedule.getTransitLines().values()) {
+			for(TransitRoute transitRoute : transitLine.getRoutes().values()) {
+				Map<Double, Departure> departuresByTime = new HashMap<>();
+				List<Departure> departuresToRemove = new ArrayList<>();
+				for(Departure departure : transitRoute.getDepartures().values()) {
+					Departure first = departuresByTime.putIfAbsent(departure.getDepartureTime(), departure);
+					if(first != null) {
+						validDays.put(first, BitfeldTable.union(validDays.get(first), validDays.get(departure)));
+						departuresToRemove.add(departure);
+					}
+				}
+				departuresToRemove.forEach(transitRoute::removeDeparture);
+
+				for(Departure departure : transitRoute.getDepartures().values()) {
+					departure.getAttributes().putAttribute(DEPARTURE_ATTRIBUTE_VALID_DAYS, BitfeldTable.toString(validDays.get(departure)));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates the transit lines and routes. Ids, vehicle types and departures are assigned
+	 * in the order of the FPLAN routes. The transit routes themselves are built in parallel
+	 * per operator and added to the schedule afterwards, again in the order of the FPLAN routes.
+	 *
+	 * @param departureListener called for each departure added to the schedule, may be <tt>null</tt>
+	 */
+	private static void createTransitRoutesFromFPLAN(List<FPLANRoute> routes, TransitSchedule schedule, Vehicles vehicles, BiConsumer<FPLANRoute, Departure> departureListener) {
 		TransitScheduleFactory scheduleFactory = schedule.getFactory();
 		VehiclesFactory vehicleFactory = vehicles.getFactory();
 		Map<Id<TransitLine>, Integer> routeNrs = new HashMap<>();
@@ -147,6 +266,9 @@ public class HafasConverter {
 		// set schedule so fplanRoutes have stopfacilities available
 		FPLANRoute.setSchedule(schedule);
 
+		// assign ids and vehicle types
+		List<RouteTask> tasks = new ArrayList<>();
+		Map<String, List<RouteTask>> tasksPerOperator = new LinkedHashMap<>();
 		for(FPLANRoute fplanRoute : routes) {
 			Id<VehicleType> vehicleTypeId = fplanRoute.getVehicleTypeId();
 
@@ -160,20 +282,8 @@ public class HafasConverter {
 
 			// get wheter the route using this vehicle type should be added & set transport mode
 			if(defaultVehicleType.addToSchedule) {
-				String transportMode = defaultVehicleType.transportMode.name;
-
 				Id<TransitLine> lineId = createLineId(fplanRoute);
 
-				// create or get TransitLine
-				TransitLine transitLine;
-				if(!schedule.getTransitLines().containsKey(lineId)) {
-					transitLine = scheduleFactory.createTransitLine(lineId);
-					schedule.addTransitLine(transitLine);
-					lineCounter.incCounter();
-				} else {
-					transitLine = schedule.getTransitLines().get(lineId);
-				}
-
 				// create vehicle type if needed
 				VehicleType vehicleType = vehicles.getVehicleTypes().get(vehicleTypeId);
 				if(vehicleType == null) {
@@ -199,22 +309,111 @@ public class HafasConverter {
 				Id<TransitRoute> routeId = createRouteId(fplanRoute, ++routeNr);
 				routeNrs.put(lineId, routeNr);
 
-				// create actual TransitRoute
-				TransitRoute transitRoute = scheduleFactory.createTransitRoute(routeId, null, fplanRoute.getTransitRouteStops(), fplanRoute.getMode());
-				for(Departure departure : fplanRoute.getDepartures()) {
-					transitRoute.addDeparture(departure);
-					try {
-						vehicles.addVehicle(vehicleFactory.createVehicle(departure.getVehicleId(), vehicleType));
-					} catch (Exception e) {
-						e.printStackTrace();
-						fplanRoute.getDepartures();
+				// departure ids are numbered consecutively and thus created in order
+				RouteTask task = new RouteTask(fplanRoute, lineId, routeId, defaultVehicleType.transportMode.name, vehicleType, fplanRoute.getDepartures());
+				tasks.add(task);
+				MapUtils.getList(String.valueOf(fplanRoute.getOperator()), tasksPerOperator).add(task);
+			}
+		}
+
+		// create actual TransitRoutes, in parallel per operator
+		try(Progress progress = new Progress(tasks.size(), "Creating transit routes ...")) {
+			tasksPerOperator.values().parallelStream().forEach(operatorTasks -> {
+				for(RouteTask task : operatorTasks) {
+					task.transitRoute = scheduleFactory.createTransitRoute(task.routeId, null, task.fplanRoute.getTransitRouteStops(), task.fplanRoute.getMode());
+					for(Departure departure : task.departures) {
+						task.transitRoute.addDeparture(departure);
+						task.vehicles.add(vehicleFactory.createVehicle(departure.getVehicleId(), task.vehicleType));
 					}
+					task.transitRoute.setTransportMode(task.transportMode);
+					progress.update();
+				}
+			});
+		}
+
+		// add lines, routes and vehicles to schedule
+		for(RouteTask task : tasks) {
+			// create or get TransitLine
+			TransitLine transitLine;
+			if(!schedule.getTransitLines().containsKey(task.lineId)) {
+				transitLine = scheduleFactory.createTransitLine(task.lineId);
+				schedule.addTransitLine(transitLine);
+				lineCounter.incCounter();
+			} else {
+				transitLine = schedule.getTransitLines().get(task.lineId);
+			}
+
+			for(Vehicle vehicle : task.vehicles) {
+				try {
+					vehicles.addVehicle(vehicle);
+				} catch (Exception e) {
+					e.printStackTrace();
 				}
+			}
 
-				transitRoute.setTransportMode(transportMode);
+			transitLine.addRoute(task.transitRoute);
 
-				transitLine.addRoute(transitRoute);
+			if(departureListener != null) {
+				task.departures.forEach(departure -> departureListener.accept(task.fplanRoute, departure));
+			}
+		}
+	}
+
+	/**
+	 * A transit route to be created from a FPLANRoute
+	 */
+	private static class RouteTask {
+		private final FPLANRoute fplanRoute;
+		private final Id<TransitLine> lineId;
+		private final Id<TransitRoute> routeId;
+		private final String transportMode;
+		private final VehicleType vehicleType;
+		private final List<Departure> departures;
+
+		private TransitRoute transitRoute;
+		private final List<Vehicle> vehicles = new ArrayList<>();
+
+		private RouteTask(FPLANRoute fplanRoute, Id<TransitLine> lineId, Id<TransitRoute> routeId, String transportMode, VehicleType vehicleType, List<Departure> departures) {
+			this.fplanRoute = fplanRoute;
+			this.lineId = lineId;
+			this.routeId = routeId;
+			this.transportMode = transportMode;
+			this.vehicleType = vehicleType;
+			this.departures = departures;
+		}
+	}
+
+	private interface IOTask<T> {
+		T call() throws IOException;
+	}
+
+	private static <T> CompletableFuture<T> runAsync(ExecutorService executor, String description, IOTask<T> task) {
+		return CompletableFuture.supplyAsync(() -> {
+			log.info("  Read " + description + "...");
+			try {
+				T result = task.call();
+				log.info("  Read " + description + "... done.");
+				return result;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}, executor);
+	}
+
+	/**
+	 * Waits for the future, unwraps IOExceptions thrown by the reader
+	 */
+	private static <T> T join(CompletableFuture<T> future) throws IOException {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) cause).getCause();
+			} else if(cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
 			}
+			throw e;
 		}
 	}
 
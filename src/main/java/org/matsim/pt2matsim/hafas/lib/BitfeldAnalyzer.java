@@ -28,7 +28,6 @@ import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.math.BigInteger;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -44,8 +43,15 @@ public class BitfeldAnalyzer {
 	protected static Logger log = LogManager.getLogger(BitfeldAnalyzer.class);
 
 	public static Set<Integer> findBitfeldnumbersOfBusiestDay(String FPLAN, String BITFELD) throws IOException {
+		return findBitfeldnumbersOfBusiestDay(FPLANReader.readFPLAN(FPLAN), BITFELD);
+	}
+
+	/**
+	 * @param fplan the content of the FPLAN file, see {@link FPLANReader#readFPLAN(String)}
+	 */
+	public static Set<Integer> findBitfeldnumbersOfBusiestDay(byte[] fplan, String BITFELD) throws IOException {
 		final Set<Integer> bitfeldNummern = new HashSet<>();
-		final int posMaxFVals = find4DayBlockWithMostFVals(FPLAN, BITFELD);
+		final int posMaxFVals = find4DayBlockWithMostFVals(fplan, BITFELD);
 			BufferedReader readsLines = new BufferedReader(new InputStreamReader(new FileInputStream(BITFELD), "latin1"));
 			String newLine = readsLines.readLine();
 			while (newLine != null) {
@@ -81,37 +87,22 @@ public class BitfeldAnalyzer {
 	 * Monday-Tuesday-Wednesday-Thursday or a Tuesday-Wednesday-Thursday-Friday block because all other blocks have
 	 * at least one Weekend-Day and therefore are less like to produce an F (an F means traveling at all four days).
 	 */
-	private static int find4DayBlockWithMostFVals(String FPLAN, String BITFELD) {
+	private static int find4DayBlockWithMostFVals(byte[] fplan, String BITFELD) {
 		Map<Integer, Integer> departuresPerBitfeld = new HashMap<>();
-		try {
-			BufferedReader readsLines = new BufferedReader(new InputStreamReader(new FileInputStream(FPLAN), "latin1"));
-			String newLine = readsLines.readLine();
-			int numberOfDepartures = 0;
-			while (newLine != null) {
-				if (newLine.charAt(0) == '*') {
-					if (newLine.charAt(1) == 'Z') {
-						try {
-							numberOfDepartures = Integer.parseInt(newLine.substring(22, 25)) + 1;
-						} catch (Exception e) {
-							numberOfDepartures = 1;
-						}
-					}
-					if (newLine.charAt(1) == 'A' && newLine.charAt(3) == 'V') {
-						if (newLine.substring(22, 28).trim().length() > 0) {
-							int bitfeldNumber = Integer.parseInt(newLine.substring(22, 28));
-							int bitfeldValue = numberOfDepartures;
-							if (departuresPerBitfeld.containsKey(bitfeldNumber)) {
-								bitfeldValue += departuresPerBitfeld.get(bitfeldNumber);
-							}
-							departuresPerBitfeld.put(bitfeldNumber, bitfeldValue);
-						}
+		FixedWidthFile line = new FixedWidthFile(fplan);
+		int numberOfDepartures = 0;
+		while (line.nextLine()) {
+			if (line.charAt(0) == '*') {
+				if (line.charAt(1) == 'Z') {
+					numberOfDepartures = line.parseInt(22, 25, 0) + 1;
+				}
+				if (line.charAt(1) == 'A' && line.charAt(3) == 'V') {
+					int bitfeldNumber = line.parseInt(22, 28, -1);
+					if (bitfeldNumber >= 0) {
+						departuresPerBitfeld.merge(bitfeldNumber, numberOfDepartures, Integer::sum);
 					}
 				}
-				newLine = readsLines.readLine();
 			}
-			readsLines.close();
-		} catch (IOException e) {
-			e.printStackTrace();
 		}
 
 		int[] bitfeldStats = new int[96];
@@ -151,28 +142,10 @@ public class BitfeldAnalyzer {
 	}
 
 	public static Set<Integer> getBitfieldsAtValidDay(final int dayNr, final String hafasFolder) throws IOException {
-        /*
-        Spalte          Typ                 Bedeutung                                                       Hinweis
-        1-6             INT32               Bitfeldnummer                                                   Nicht durchgehend nummeriert.
-        8-103           CHAR                Bitfeld, bestehend aus 96 hexadezimalen Ziffern (ASCII-lesbar)  Die Bitfelder korrespondieren mit der in der Datei [ECKDATEN] hinterlegten Fahrplanperiode.
-         */
-		int offset_bitstring = 2; // number of bits to ignore at start of each bitfield
 		log.info("start: Read bitfields (BITFELD) at day: " + dayNr);
-		String pathFile = hafasFolder + "BITFELD";
-
-		Set<Integer> validBitfields = new HashSet<>();
-
-		BufferedReader readsLines = new BufferedReader(new InputStreamReader(new FileInputStream(pathFile), "utf-8"));
-		String newLine = readsLines.readLine();
-		while (newLine != null) {
-			int id = Integer.parseInt(newLine.substring(0, 6));
-			String bitfield = new BigInteger(newLine.substring(7), 16).toString(2).substring(offset_bitstring);
-			if (bitfield.charAt(dayNr)== '1') validBitfields.add(id);
-			newLine = readsLines.readLine();
-		}
-		readsLines.close();
-        // TODO this error-prone and should be removed by a stable solution
-        validBitfields.add(0); // default if bitfield is not defined in *A VE line of FPLAN, see parseFPLAN from FPLANReader
+		BitfeldTable bitfeldTable = BitfeldTable.read(hafasFolder + "BITFELD");
+		// includes 0, the default if bitfield is not defined in *A VE line of FPLAN, see parseFPLAN from FPLANReader
+		Set<Integer> validBitfields = bitfeldTable.getBitfeldNummern(dayNr);
 		log.info("end: Read bitfields (BITFELD) at day: " + dayNr);
 		return validBitfields;
 	}
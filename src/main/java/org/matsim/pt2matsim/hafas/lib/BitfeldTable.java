@@ -0,0 +1,220 @@
+/*
+ * *********************************************************************** *
+ * project: org.matsim.*                                                   *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2015 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.pt2matsim.hafas.lib;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The decoded content of a HAFAS BITFELD file: bitfeld number -> days of the timetable
+ * period on which a route with this bitfeld runs. Days are stored as a bit mask in a
+ * <tt>long[]</tt>, bit <tt>d</tt> stands for day <tt>d</tt> counted from the start of the
+ * timetable period (see ECKDATEN).
+ * <p>
+ * Each bitfeld consists of 96 hex digits (384 bits). The first {@link #FILL_BITS} bits are
+ * fill bits and are ignored. This is the same as the decoding previously done in
+ * {@link BitfeldAnalyzer#getBitfieldsAtValidDay(int, String)} as long as the first fill bit
+ * is set, which is the case for valid HRDF files.
+ * <p>
+ * Bitfeld number 0 (no bitfeld defined in the <tt>*A VE</tt> line of FPLAN) means the
+ * route runs daily.
+ */
+public final class BitfeldTable {
+
+	public static final int FILL_BITS = 2;
+	public static final int HEX_DIGITS = 96;
+	public static final int NUMBER_OF_DAYS = HEX_DIGITS * 4 - FILL_BITS;
+
+	private static final int WORDS = (NUMBER_OF_DAYS + 63) / 64;
+	private static final long[] DAILY = daysRange(0, NUMBER_OF_DAYS);
+
+	private final Map<Integer, long[]> days;
+
+	private BitfeldTable(Map<Integer, long[]> days) {
+		this.days = days;
+	}
+
+	/**
+	 * Reads and decodes the BITFELD file.
+	 */
+	public static BitfeldTable read(String BITFELD) throws IOException {
+		/*
+		Spalte          Typ                 Bedeutung
+		1-6             INT32               Bitfeldnummer
+		8-103           CHAR                Bitfeld, bestehend aus 96 hexadezimalen Ziffern (ASCII-lesbar)
+		 */
+		Map<Integer, long[]> days = new HashMap<>();
+		FixedWidthFile line = new FixedWidthFile(FixedWidthFile.read(BITFELD));
+		while(line.nextLine()) {
+			if(line.isEmpty()) {
+				continue;
+			}
+			int bitfeldNummer = line.parseInt(0, 6, -1);
+			if(bitfeldNummer < 0) {
+				throw new IllegalArgumentException("Invalid bitfeld number in line " + line.raw(0, 103) + " of " + BITFELD);
+			}
+			days.put(bitfeldNummer, decode(line));
+		}
+		return new BitfeldTable(days);
+	}
+
+	private static long[] decode(FixedWidthFile line) {
+		long[] mask = new long[WORDS];
+		for(int i = 0; i < HEX_DIGITS; i++) {
+			int digit = Character.digit(line.charAt(7 + i), 16);
+			if(digit <= 0) {
+				continue;
+			}
+			for(int k = 0; k < 4; k++) {
+				int day = i * 4 + k - FILL_BITS;
+				if(day >= 0 && (digit & (8 >> k)) != 0) {
+					mask[day >>> 6] |= 1L << day;
+				}
+			}
+		}
+		return mask;
+	}
+
+	/**
+	 * @return a day mask containing the given days
+	 */
+	public static long[] daysMask(int... dayNrs) {
+		long[] mask = new long[WORDS];
+		for(int d : dayNrs) {
+			checkDay(d);
+			mask[d >>> 6] |= 1L << d;
+		}
+		return mask;
+	}
+
+	/**
+	 * @return a day mask containing the days [from, to)
+	 */
+	public static long[] daysRange(int from, int to) {
+		long[] mask = new long[WORDS];
+		for(int d = from; d < to; d++) {
+			checkDay(d);
+			mask[d >>> 6] |= 1L << d;
+		}
+		return mask;
+	}
+
+	private static void checkDay(int dayNr) {
+		if(dayNr < 0 || dayNr >= NUMBER_OF_DAYS) {
+			throw new IllegalArgumentException("Day " + dayNr + " is outside the bitfeld range [0, " + NUMBER_OF_DAYS + ")");
+		}
+	}
+
+	/**
+	 * @return the day mask of the bitfeld, <tt>null</tt> if the bitfeld is not defined. Must not be modified.
+	 */
+	public long[] getDays(int bitfeldNummer) {
+		long[] mask = days.get(bitfeldNummer);
+		if(mask == null && bitfeldNummer == 0) {
+			return DAILY;
+		}
+		return mask;
+	}
+
+	public boolean isValid(int bitfeldNummer, int dayNr) {
+		long[] mask = getDays(bitfeldNummer);
+		return mask != null && dayNr >= 0 && dayNr < NUMBER_OF_DAYS && (mask[dayNr >>> 6] & (1L << dayNr)) != 0;
+	}
+
+	/**
+	 * @return true if the bitfeld is valid on at least one of the days in the mask
+	 */
+	public boolean isValidOnAny(int bitfeldNummer, long[] daysMask) {
+		long[] mask = getDays(bitfeldNummer);
+		if(mask != null) {
+			for(int i = 0; i < WORDS; i++) {
+				if((mask[i] & daysMask[i]) != 0) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the days of the mask on which the bitfeld is valid (a new array)
+	 */
+	public long[] getValidDays(int bitfeldNummer, long[] daysMask) {
+		long[] result = new long[WORDS];
+		long[] mask = getDays(bitfeldNummer);
+		if(mask != null) {
+			for(int i = 0; i < WORDS; i++) {
+				result[i] = mask[i] & daysMask[i];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return all bitfeld numbers valid at the given day, including 0
+	 */
+	public Set<Integer> getBitfeldNummern(int dayNr) {
+		Set<Integer> bitfeldNummern = new HashSet<>();
+		for(Map.Entry<Integer, long[]> e : days.entrySet()) {
+			if(isValid(e.getKey(), dayNr)) {
+				bitfeldNummern.add(e.getKey());
+			}
+		}
+		bitfeldNummern.add(0);
+		return bitfeldNummern;
+	}
+
+	public int size() {
+		return days.size();
+	}
+
+	/**
+	 * @return the days of the mask as comma separated list, e.g. "0,1,5"
+	 */
+	public static String toString(long[] daysMask) {
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < daysMask.length; i++) {
+			long word = daysMask[i];
+			while(word != 0) {
+				int d = i * 64 + Long.numberOfTrailingZeros(word);
+				if(sb.length() > 0) sb.append(',');
+				sb.append(d);
+				word &= word - 1;
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return a new mask with the days of both masks
+	 */
+	public static long[] union(long[] a, long[] b) {
+		long[] result = Arrays.copyOf(a, WORDS);
+		for(int i = 0; i < WORDS; i++) {
+			result[i] |= b[i];
+		}
+		return result;
+	}
+}
@@ -27,23 +27,33 @@ import org.matsim.api.core.v01.Id;
 import org.matsim.core.utils.misc.Counter;
 import org.matsim.vehicles.VehicleType;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.IntPredicate;
 
 /**
  * Reads the transit lines from a given FPLAN file.
+ * <p>
+ * The file is parsed in a single pass over its bytes. Whether a route is accepted
+ * is decided with its first <tt>*A VE</tt> line (or its first stop if there's none),
+ * {@link FPLANRoute}s are only created for accepted routes.
  *
  * @author polettif
  */
 public class FPLANReader {
 	protected static Logger log = LogManager.getLogger(FPLANReader.class);
 
+	/**
+	 * Reads the whole FPLAN file into memory. The returned buffer can be passed to
+	 * {@link BitfeldAnalyzer} and {@link #parseFPLAN(Set, Map, byte[])} so the file is only read once.
+	 */
+	public static byte[] readFPLAN(String FPLANfile) throws IOException {
+		return FixedWidthFile.read(FPLANfile);
+	}
+
 	/**
 	 * Only reads the PtRoutes and leaves line/route
 	 * separation to a later process
@@ -51,170 +61,263 @@ public class FPLANReader {
 	 * @return the list of FPLANRoutes
 	 */
 	public static List<FPLANRoute> parseFPLAN(Set<Integer> bitfeldNummern, Map<String, String> operators, String FPLANfile) throws IOException {
-		List<FPLANRoute> hafasRoutes = new ArrayList<>();
+		return parseFPLAN(bitfeldNummern, operators, readFPLAN(FPLANfile));
+	}
 
-			FPLANRoute currentFPLANRoute = null;
-
-			Counter counter = new Counter("FPLAN line # ");
-			BufferedReader readsLines = new BufferedReader(new InputStreamReader(new FileInputStream(FPLANfile), "utf-8"));
-
-			String newLine = readsLines.readLine();
-			while(newLine != null) {
-				if(newLine.charAt(0) == '*') {
-
-					/*
-					 Initialzeile neue Fahrt
-					 1−2 	CHAR 	*Z
-					 4−8 	INT32 	Fahrtnummer
-					 10−15 	CHAR 	Verwaltung (6-stellig); Die Verwaltungsangabe darf keine Leerzeichen enthalten.
-					 17−21 	INT16 	leer // Tatsächlich unterscheidet dieser Eintrag noch verschiedene Fahrtvarianten...
-					 23−25 	INT16 	Taktanzahl; gibt die Anzahl der noch folgenden Takte an.
-					 27−29 	INT16 	Taktzeit in Minuten (Abstand zwischen zwei Fahrten).
-					 */
-					if(newLine.charAt(1) == 'Z') {
-						// get operator
-						String operator = operators.get(newLine.substring(9, 15).trim());
-
-						// get the fahrtnummer
-						String fahrtnummer = newLine.substring(3, 8).trim();
-
-						int numberOfDepartures = 0;
-						int cycleTime = 0;
-						try {
-							numberOfDepartures = Integer.parseInt(newLine.substring(22, 25));
-							cycleTime = Integer.parseInt(newLine.substring(26, 29));
-						} catch (Exception ignored) {
-						}
-						currentFPLANRoute = new FPLANRoute(operator, fahrtnummer, numberOfDepartures, cycleTime);
-						hafasRoutes.add(currentFPLANRoute);
-					}
+	/**
+	 * Only reads the PtRoutes and leaves line/route
+	 * separation to a later process
+	 *
+	 * @param fplan the content of the FPLAN file, see {@link #readFPLAN(String)}
+	 * @return the list of FPLANRoutes
+	 */
+	public static List<FPLANRoute> parseFPLAN(Set<Integer> bitfeldNummern, Map<String, String> operators, byte[] fplan) {
+		return parseFPLAN(bitfeldNummern::contains, operators, fplan);
+	}
 
-					/*
-					 Verkehrsmittelzeile
-					 1−2 	CHAR 		*G
-					 4−6 	CHAR 		Verkehrsmittel bzw. Gattung
-					 8−14 	[#]INT32 	(optional) Laufwegsindex oder Haltestellennummer,
-					 					ab der die Gattung gilt.
-					 16−22 	[#]INT32 	(optional) Laufwegsindex oder Haltestellennummer,
-					 					bis zu der die Gattung gilt.
-					 24−29 [#]INT32 	(optional) Index für das x. Auftreten oder Abfahrtszeitpunkt // 26-27 hour, 28-29 minute
-					 31−36 [#]INT32 	(optional) Index für das x. Auftreten oder Ankunftszeitpunkt
-					 */
-					else if(newLine.charAt(1) == 'G') {
-						if(currentFPLANRoute != null) {
-							// Vehicle Id:
-							Id<VehicleType> typeId = Id.create(newLine.substring(3, 6).trim(), VehicleType.class);
-							currentFPLANRoute.setVehicleTypeId(typeId);
-						}
-					}
+	/**
+	 * Only reads the PtRoutes and leaves line/route
+	 * separation to a later process
+	 *
+	 * @param acceptBitfeld decides whether a route with the given bitfeld number (0 if not defined) is kept
+	 * @param fplan the content of the FPLAN file, see {@link #readFPLAN(String)}
+	 * @return the list of FPLANRoutes
+	 */
+	public static List<FPLANRoute> parseFPLAN(IntPredicate acceptBitfeld, Map<String, String> operators, byte[] fplan) {
+		List<FPLANRoute> hafasRoutes = new ArrayList<>();
+		FixedWidthFile line = new FixedWidthFile(fplan);
+		Block block = new Block(operators);
 
-					/*
-					 1-5 	CHAR 		*A VE
-					 7-13 	[#]INT32 	(optional) Laufwegsindex oder Haltestellennummer, ab der die Verkehrstage im Laufweg gelten.
-					 15-21 	[#]INT32 	(optional) Laufwegsindex oder Haltestellennummer, bis zu der die Verkehrstage im Laufweg gelten.
-					 23-28 	INT16 		(optional) Verkehrstagenummer für die Tage, an denen die Fahrt stattfindet. Fehlt diese Angabe, so verkehrt diese Fahrt täglich (entspricht dann 000000).
-					 30-35 	[#]INT32 	(optional) Index für das x. Auftreten oder Abfahrtszeitpunkt.
-					 37-42 	[#]INT32 	(optional) Index für das x. Auftreten oder Ankunftszeitpunkt.
-					 */
-					else if(newLine.charAt(1) == 'A' && newLine.charAt(3) == 'V' && newLine.charAt(4) == 'E') {
-						if(currentFPLANRoute != null) {
-							int localBitfeldnr = 0;
-							if(newLine.substring(22, 28).trim().length() > 0) {
-								localBitfeldnr = Integer.parseInt(newLine.substring(22, 28));
-								// TODO there may be more than one *A VE line per *Z block (when the bitfield changes during the route). This is an important issue in HAFAS!
-							}
-							if(!bitfeldNummern.contains(localBitfeldnr)) {
-								// Linie gefunden, die nicht werktäglich verkehrt... => Ignorieren wir...
-								hafasRoutes.remove(currentFPLANRoute);
-								currentFPLANRoute = null;
-							}
-						}
-					}
+		Counter counter = new Counter("FPLAN line # ");
+		while(line.nextLine()) {
+			if(line.isEmpty()) {
+				counter.incCounter();
+				continue;
+			}
+			if(line.charAt(0) == '*') {
 
-					/*
-					 1-2 CHAR *L
-					 4-11 CHAR Liniennummer
-					 */
-					else if(newLine.charAt(1) == 'L') {
-						if(currentFPLANRoute != null) {
-							currentFPLANRoute.setRouteDescription(newLine.substring(3, 11).trim());
-						}
-					}
+				/*
+				 Initialzeile neue Fahrt
+				 1−2 	CHAR 	*Z
+				 4−8 	INT32 	Fahrtnummer
+				 10−15 	CHAR 	Verwaltung (6-stellig); Die Verwaltungsangabe darf keine Leerzeichen enthalten.
+				 17−21 	INT16 	leer // Tatsächlich unterscheidet dieser Eintrag noch verschiedene Fahrtvarianten...
+				 23−25 	INT16 	Taktanzahl; gibt die Anzahl der noch folgenden Takte an.
+				 27−29 	INT16 	Taktzeit in Minuten (Abstand zwischen zwei Fahrten).
+				 */
+				if(line.charAt(1) == 'Z') {
+					block.finish(hafasRoutes);
+					block.start(line);
+				}
 
-					/*
-					 Initialzeile neue freie Fahrt (Linien welche nicht nach Taktfahrplan fahren)
-					 */
-					else if(newLine.charAt(1) == 'T') {
-						log.error("*T-Line in HAFAS discovered. Please implement appropriate read out.");
-					}
+				/*
+				 Verkehrsmittelzeile
+				 1−2 	CHAR 		*G
+				 4−6 	CHAR 		Verkehrsmittel bzw. Gattung
+				 8−14 	[#]INT32 	(optional) Laufwegsindex oder Haltestellennummer,
+				 					ab der die Gattung gilt.
+				 16−22 	[#]INT32 	(optional) Laufwegsindex oder Haltestellennummer,
+				 					bis zu der die Gattung gilt.
+				 24−29 [#]INT32 	(optional) Index für das x. Auftreten oder Abfahrtszeitpunkt // 26-27 hour, 28-29 minute
+				 31−36 [#]INT32 	(optional) Index für das x. Auftreten oder Ankunftszeitpunkt
+				 */
+				else if(line.charAt(1) == 'G') {
+					block.setVehicleType(line.pos(3), line.pos(6));
 				}
 
 				/*
-				 Regionszeile (Bedarfsfahrten)
-				 We don't have this transport mode in  MATSim (yet). => Delete Route and if Line now empty, delete Line.
+				 1-5 	CHAR 		*A VE
+				 7-13 	[#]INT32 	(optional) Laufwegsindex oder Haltestellennummer, ab der die Verkehrstage im Laufweg gelten.
+				 15-21 	[#]INT32 	(optional) Laufwegsindex oder Haltestellennummer, bis zu der die Verkehrstage im Laufweg gelten.
+				 23-28 	INT16 		(optional) Verkehrstagenummer für die Tage, an denen die Fahrt stattfindet. Fehlt diese Angabe, so verkehrt diese Fahrt täglich (entspricht dann 000000).
+				 30-35 	[#]INT32 	(optional) Index für das x. Auftreten oder Abfahrtszeitpunkt.
+				 37-42 	[#]INT32 	(optional) Index für das x. Auftreten oder Ankunftszeitpunkt.
 				 */
-				else if(newLine.charAt(0) == '+') {
-					log.error("+-Line in HRDF discovered. Please implement appropriate read out.");
+				else if(line.charAt(1) == 'A' && line.charAt(3) == 'V' && line.charAt(4) == 'E') {
+					int localBitfeldnr = line.parseInt(22, 28, 0);
+					// TODO there may be more than one *A VE line per *Z block (when the bitfield changes during the route). This is an important issue in HAFAS!
+					// Linie gefunden, die nicht werktäglich verkehrt... => Ignorieren wir...
+					block.decide(localBitfeldnr, acceptBitfeld.test(localBitfeldnr));
 				}
 
 				/*
-				 Laufwegzeile
-				 1−7 	INT32 Haltestellennummer
-				 9−29 	CHAR (optional zur Lesbarkeit) Haltestellenname
-				 30−35 	INT32 Ankunftszeit an der Haltestelle (lt. Ortszeit der Haltestelle) // 32-33 hour, 34-35 minute
-				 37−42 	INT32 Abfahrtszeit an Haltestelle (lt. Ortszeit der Haltestelle) // 39-40 hour, 41-42 minute
-				 44−48 	INT32 Ab dem Halt gültige Fahrtnummer (optional)
-				 50−55 	CHAR Ab dem Halt gültige Verwaltung (optional)
-				 57−57 	CHAR (optional) "X", falls diese Haltestelle auf dem Laufschild der Fahrt aufgeführt wird.
+				 1-2 CHAR *L
+				 4-11 CHAR Liniennummer
 				 */
-				else {
-					boolean arrivalTimeNegative = newLine.charAt(29) == '-';
-					boolean departureTimeNegative = newLine.charAt(36) == '-';
-
-					if(currentFPLANRoute != null) {
-						int arrivalTime;
-						int departureTime;
-
-						try {
-							arrivalTime = Integer.parseInt(newLine.substring(31, 33)) * 3600 +
-									Integer.parseInt(newLine.substring(33, 35)) * 60;
-						} catch (Exception e) {
-							arrivalTime = -1;
-						}
-						try {
-							departureTime = Integer.parseInt(newLine.substring(38, 40)) * 3600 +
-									Integer.parseInt(newLine.substring(40, 42)) * 60;
-						} catch (Exception e) {
-							departureTime = -1;
-						}
-
-						if(arrivalTime < 0) {
-							arrivalTime = departureTime;
-						}
-						else if(departureTime < 0) {
-							departureTime = arrivalTime;
-						}
-
-
-						// if no departure has been set yet
-						if(currentFPLANRoute.getFirstDepartureTime() < 0) {
-							currentFPLANRoute.setFirstDepartureTime(departureTime);
-						}
-
-						// only add if stop is not "Durchfahrt" or "Diensthalt"
-						if(!(arrivalTimeNegative && departureTimeNegative)) {
-							currentFPLANRoute.addRouteStop(newLine.substring(0, 7), arrivalTime, departureTime);
-						}
-					}
+				else if(line.charAt(1) == 'L') {
+					block.setRouteDescription(line.pos(3), line.pos(11));
 				}
 
-				newLine = readsLines.readLine();
-				counter.incCounter();
+				/*
+				 Initialzeile neue freie Fahrt (Linien welche nicht nach Taktfahrplan fahren)
+				 */
+				else if(line.charAt(1) == 'T') {
+					log.error("*T-Line in HAFAS discovered. Please implement appropriate read out.");
+				}
 			}
-			readsLines.close();
-			counter.printCounter();
+
+			/*
+			 Regionszeile (Bedarfsfahrten)
+			 We don't have this transport mode in  MATSim (yet). => Delete Route and if Line now empty, delete Line.
+			 */
+			else if(line.charAt(0) == '+') {
+				log.error("+-Line in HRDF discovered. Please implement appropriate read out.");
+			}
+
+			/*
+			 Laufwegzeile
+			 1−7 	INT32 Haltestellennummer
+			 9−29 	CHAR (optional zur Lesbarkeit) Haltestellenname
+			 30−35 	INT32 Ankunftszeit an der Haltestelle (lt. Ortszeit der Haltestelle) // 32-33 hour, 34-35 minute
+			 37−42 	INT32 Abfahrtszeit an Haltestelle (lt. Ortszeit der Haltestelle) // 39-40 hour, 41-42 minute
+			 44−48 	INT32 Ab dem Halt gültige Fahrtnummer (optional)
+			 50−55 	CHAR Ab dem Halt gültige Verwaltung (optional)
+			 57−57 	CHAR (optional) "X", falls diese Haltestelle auf dem Laufschild der Fahrt aufgeführt wird.
+			 */
+			else {
+				// a route without *A VE line runs daily
+				block.decide(0, true);
+				FPLANRoute currentFPLANRoute = block.route;
+
+				if(currentFPLANRoute != null) {
+					boolean arrivalTimeNegative = line.charAt(29) == '-';
+					boolean departureTimeNegative = line.charAt(36) == '-';
+
+					int arrivalTime = parseTime(line, 31);
+					int departureTime = parseTime(line, 38);
+
+					if(arrivalTime < 0) {
+						arrivalTime = departureTime;
+					}
+					else if(departureTime < 0) {
+						departureTime = arrivalTime;
+					}
+
+					// if no departure has been set yet
+					if(currentFPLANRoute.getFirstDepartureTime() < 0) {
+						currentFPLANRoute.setFirstDepartureTime(departureTime);
+					}
+
+					// only add if stop is not "Durchfahrt" or "Diensthalt"
+					if(!(arrivalTimeNegative && departureTimeNegative)) {
+						currentFPLANRoute.addRouteStop(line.raw(0, 7), arrivalTime, departureTime);
+					}
+				}
+			}
+
+			counter.incCounter();
+		}
+		block.finish(hafasRoutes);
+		counter.printCounter();
 
 		return hafasRoutes;
 	}
 
+	/**
+	 * @return the time (hhmm at the given column) in seconds, -1 if not defined
+	 */
+	private static int parseTime(FixedWidthFile line, int col) {
+		int hours = line.parseInt(col, col + 2, -1);
+		int minutes = line.parseInt(col + 2, col + 4, -1);
+		if(hours < 0 || minutes < 0) {
+			return -1;
+		}
+		return hours * 3600 + minutes * 60;
+	}
+
+	/**
+	 * State of the current *Z block. Fields read before the block is accepted are
+	 * kept as byte positions and only converted to strings if the route is created.
+	 */
+	private static class Block {
+
+		private enum State {NONE, PENDING, ACCEPTED, REJECTED}
+
+		private final Map<String, String> operators;
+		private FixedWidthFile line;
+		private State state = State.NONE;
+		private FPLANRoute route;
+
+		private int fahrtnummerStart, fahrtnummerEnd;
+		private int operatorStart, operatorEnd;
+		private int numberOfDepartures, cycleTime;
+		private int vehicleTypeStart = -1, vehicleTypeEnd;
+		private int descriptionStart = -1, descriptionEnd;
+
+		private Block(Map<String, String> operators) {
+			this.operators = operators;
+		}
+
+		private void start(FixedWidthFile line) {
+			this.line = line;
+			this.state = State.PENDING;
+			this.route = null;
+			this.fahrtnummerStart = line.pos(3);
+			this.fahrtnummerEnd = line.pos(8);
+			this.operatorStart = line.pos(9);
+			this.operatorEnd = line.pos(15);
+			this.vehicleTypeStart = -1;
+			this.descriptionStart = -1;
+
+			// cycle time is only read if the number of departures is defined
+			int nDep = line.parseInt(22, 25, -1);
+			int cycle = nDep < 0 ? -1 : line.parseInt(26, 29, -1);
+			this.numberOfDepartures = Math.max(nDep, 0);
+			this.cycleTime = Math.max(cycle, 0);
+		}
+
+		/**
+		 * @param bitfeldNummer the bitfeld number of the route, only used for the first decision of a block
+		 */
+		private void decide(int bitfeldNummer, boolean accept) {
+			if(state == State.PENDING) {
+				if(accept) {
+					String operator = operators.get(line.string(operatorStart, operatorEnd, true));
+					String fahrtnummer = line.string(fahrtnummerStart, fahrtnummerEnd, true);
+					route = new FPLANRoute(operator, fahrtnummer, numberOfDepartures, cycleTime);
+					route.setBitfeldNummer(bitfeldNummer);
+					state = State.ACCEPTED;
+					if(vehicleTypeStart >= 0) setVehicleType(vehicleTypeStart, vehicleTypeEnd);
+					if(descriptionStart >= 0) setRouteDescription(descriptionStart, descriptionEnd);
+				} else {
+					state = State.REJECTED;
+				}
+			} else if(state == State.ACCEPTED && !accept) {
+				route = null;
+				state = State.REJECTED;
+			}
+		}
+
+		private void setVehicleType(int start, int end) {
+			if(state == State.ACCEPTED) {
+				// Vehicle Id:
+				route.setVehicleTypeId(Id.create(line.string(start, end, true), VehicleType.class));
+			} else if(state == State.PENDING) {
+				vehicleTypeStart = start;
+				vehicleTypeEnd = end;
+			}
+		}
+
+		private void setRouteDescription(int start, int end) {
+			if(state == State.ACCEPTED) {
+				route.setRouteDescription(line.string(start, end, true));
+			} else if(state == State.PENDING) {
+				descriptionStart = start;
+				descriptionEnd = end;
+			}
+		}
+
+		/**
+		 * Adds the route of the block to the list if it has been accepted. A block
+		 * without any *A VE or stop line is kept as well.
+		 */
+		private void finish(List<FPLANRoute> hafasRoutes) {
+			decide(0, true);
+			if(state == State.ACCEPTED) {
+				hafasRoutes.add(route);
+			}
+			state = State.NONE;
+			route = null;
+		}
+	}
 }
@@ -60,6 +60,8 @@ public class FPLANRoute {
 
 	private Id<VehicleType> vehicleTypeId;
 
+	private int bitfeldNummer = 0; // 0: runs daily
+
 	public static void setSchedule(TransitSchedule schedule) {
 		FPLANRoute.schedule = schedule;
 		FPLANRoute.scheduleFactory = schedule.getFactory();
@@ -236,4 +238,15 @@ public class FPLANRoute {
 	public Id<VehicleType> getVehicleTypeId() {
 		return vehicleTypeId;
 	}
+
+	/**
+	 * @param bitfeldNummer the bitfeld number of the (first) <tt>*A VE</tt> line, 0 if not defined
+	 */
+	public void setBitfeldNummer(int bitfeldNummer) {
+		this.bitfeldNummer = bitfeldNummer;
+	}
+
+	public int getBitfeldNummer() {
+		return bitfeldNummer;
+	}
 }
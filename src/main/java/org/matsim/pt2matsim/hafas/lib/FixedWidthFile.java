@@ -0,0 +1,154 @@
+/*
+ * *********************************************************************** *
+ * project: org.matsim.*                                                   *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2015 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.pt2matsim.hafas.lib;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Line cursor over a fixed-width HAFAS file held in memory as bytes. Fields are
+ * addressed by 0-based character columns (i.e. the column in the HRDF documentation
+ * minus one, same as the <tt>substring</tt> indices used in the readers) and parsed
+ * directly from the byte array without creating intermediate strings.
+ * <p>
+ * Lines containing multi-byte UTF-8 characters (usually stop names) are handled by
+ * counting characters instead of bytes, so columns after a name are found correctly.
+ * Columns beyond the end of a line are treated as blanks.
+ */
+final class FixedWidthFile {
+
+	private final byte[] buf;
+	private int next = 0;
+	private int lineStart = 0;
+	private int lineEnd = 0;
+	private boolean ascii = true;
+
+	FixedWidthFile(byte[] buf) {
+		this.buf = buf;
+	}
+
+	static byte[] read(String file) throws IOException {
+		return Files.readAllBytes(Paths.get(file));
+	}
+
+	/**
+	 * Moves the cursor to the next line.
+	 *
+	 * @return false if the end of the buffer has been reached
+	 */
+	boolean nextLine() {
+		if(next >= buf.length) {
+			return false;
+		}
+		lineStart = next;
+		boolean a = true;
+		int i = lineStart;
+		while(i < buf.length && buf[i] != '\n') {
+			if(buf[i] < 0) a = false;
+			i++;
+		}
+		next = i + 1;
+		if(i > lineStart && buf[i - 1] == '\r') i--;
+		lineEnd = i;
+		ascii = a;
+		return true;
+	}
+
+	boolean isEmpty() {
+		return lineStart == lineEnd;
+	}
+
+	/**
+	 * @return the byte position of a character column in the current line (at most the line end)
+	 */
+	int pos(int col) {
+		if(ascii) {
+			return Math.min(lineStart + col, lineEnd);
+		}
+		int p = lineStart;
+		int c = 0;
+		while(p < lineEnd) {
+			// skip UTF-8 continuation bytes (10xxxxxx)
+			if((buf[p] & 0xC0) != 0x80) {
+				if(c == col) return p;
+				c++;
+			}
+			p++;
+		}
+		return lineEnd;
+	}
+
+	/**
+	 * @return the character at the given column, a blank if the column is beyond the line end
+	 */
+	char charAt(int col) {
+		int p = pos(col);
+		return p < lineEnd ? (char) (buf[p] & 0xFF) : ' ';
+	}
+
+	/**
+	 * Parses the integer in columns [from, to). Surrounding blanks are ignored.
+	 *
+	 * @return the parsed value or <tt>fallback</tt> if the field is empty or not a number
+	 */
+	int parseInt(int from, int to, int fallback) {
+		int p = pos(from);
+		int end = pos(to);
+		while(p < end && buf[p] == ' ') p++;
+		while(end > p && buf[end - 1] == ' ') end--;
+		if(p == end) return fallback;
+
+		boolean negative = false;
+		if(buf[p] == '-' || buf[p] == '+') {
+			negative = buf[p] == '-';
+			p++;
+			if(p == end) return fallback;
+		}
+		int value = 0;
+		for(; p < end; p++) {
+			int d = buf[p] - '0';
+			if(d < 0 || d > 9) return fallback;
+			value = value * 10 + d;
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * @return the content of the columns [from, to)
+	 */
+	String raw(int from, int to) {
+		return string(pos(from), pos(to), false);
+	}
+
+	/**
+	 * @return the content between the absolute byte positions [start, end), e.g. previously
+	 * obtained via {@link #pos(int)} on another line.
+	 */
+	String string(int start, int end, boolean trim) {
+		if(trim) {
+			while(start < end && buf[start] == ' ') start++;
+			while(end > start && buf[end - 1] == ' ') end--;
+		}
+		return new String(buf, start, end - start, StandardCharsets.UTF_8);
+	}
+}
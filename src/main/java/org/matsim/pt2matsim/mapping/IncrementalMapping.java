@@ -0,0 +1,190 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2016 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.pt2matsim.mapping;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.pt.transitSchedule.api.*;
+import org.matsim.pt2matsim.tools.PTMapperTools;
+import org.matsim.pt2matsim.tools.ScheduleTools;
+
+import java.util.*;
+
+/**
+ * Reuses the mapping of a previously mapped schedule for transit routes that
+ * have not changed. A transit route is unchanged if the previous schedule contains
+ * a route with the same line and route id, the same transport mode and the same
+ * stop sequence (parent stop facility ids and stop coordinates), and if all links
+ * of its link sequence and child stop facilities are still in the network.
+ * <p>
+ * Unchanged routes are detached from the schedule before pseudo routing, so only
+ * changed or new routes are mapped. Afterwards they are reattached with their previous
+ * link sequence and child stop facilities. Offsets and departures are always taken
+ * from the new schedule.
+ * <p>
+ * Changed and new routes are mapped on the same network, i.e. the network the previous
+ * schedule has been mapped to. Links that have been removed while cleaning up the previous
+ * mapping (links not used by any transit route and without a mode to keep) are not
+ * available to them. Routes on such links (typically new or changed rail or tram routes)
+ * have to be mapped again with the full input network.
+ */
+public class IncrementalMapping {
+
+	protected static Logger log = LogManager.getLogger(IncrementalMapping.class);
+
+	private final TransitSchedule schedule;
+	private final TransitSchedule previousSchedule;
+	private final List<RoutePair> unchangedRoutes = new ArrayList<>();
+
+	/**
+	 * @param schedule         the unmapped schedule
+	 * @param previousSchedule the previously mapped schedule
+	 * @param network          the network the previous schedule has been mapped to
+	 */
+	public IncrementalMapping(TransitSchedule schedule, TransitSchedule previousSchedule, Network network) {
+		this.schedule = schedule;
+		this.previousSchedule = previousSchedule;
+
+		for(TransitLine transitLine : schedule.getTransitLines().values()) {
+			TransitLine previousLine = previousSchedule.getTransitLines().get(transitLine.getId());
+			if(previousLine == null) {
+				continue;
+			}
+			for(TransitRoute transitRoute : transitLine.getRoutes().values()) {
+				TransitRoute previousRoute = previousLine.getRoutes().get(transitRoute.getId());
+				if(previousRoute != null && isUnchanged(transitRoute, previousRoute, network)) {
+					unchangedRoutes.add(new RoutePair(transitLine, transitRoute, previousRoute));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return true if the previous mapping of the route can be reused
+	 */
+	public static boolean isUnchanged(TransitRoute transitRoute, TransitRoute previousRoute, Network network) {
+		if(previousRoute.getRoute() == null || !transitRoute.getTransportMode().equals(previousRoute.getTransportMode())) {
+			return false;
+		}
+		List<TransitRouteStop> stops = transitRoute.getStops();
+		List<TransitRouteStop> previousStops = previousRoute.getStops();
+		if(stops.size() != previousStops.size()) {
+			return false;
+		}
+		for(int i = 0; i < stops.size(); i++) {
+			TransitStopFacility stopFacility = stops.get(i).getStopFacility();
+			TransitStopFacility childStopFacility = previousStops.get(i).getStopFacility();
+			String parentId = ScheduleTools.getParentStopFacilityId(childStopFacility.getId().toString());
+			if(!stopFacility.getId().toString().equals(parentId)
+					|| !stopFacility.getCoord().equals(childStopFacility.getCoord())
+					|| childStopFacility.getLinkId() == null
+					|| !network.getLinks().containsKey(childStopFacility.getLinkId())) {
+				return false;
+			}
+		}
+		for(Id<Link> linkId : ScheduleTools.getTransitRouteLinkIds(previousRoute)) {
+			if(!network.getLinks().containsKey(linkId)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Removes the unchanged transit routes from the schedule.
+	 *
+	 * @return the number of removed routes
+	 */
+	public int detachUnchangedRoutes() {
+		for(RoutePair pair : unchangedRoutes) {
+			pair.transitLine.removeRoute(pair.transitRoute);
+		}
+		log.info(unchangedRoutes.size() + " unchanged transit routes keep their previous mapping");
+		return unchangedRoutes.size();
+	}
+
+	/**
+	 * Adds the unchanged transit routes to the schedule again, referencing the child stop
+	 * facilities and link sequence of the previous mapping. Missing child stop facilities
+	 * are copied from the previous schedule and minimal transfer times between parent
+	 * stop facilities are copied to them.
+	 */
+	public void reattachUnchangedRoutes() {
+		TransitScheduleFactory factory = schedule.getFactory();
+		Map<Id<TransitStopFacility>, Set<Id<TransitStopFacility>>> parentsToChildren = new HashMap<>();
+
+		for(RoutePair pair : unchangedRoutes) {
+			List<TransitRouteStop> stops = pair.transitRoute.getStops();
+			List<TransitRouteStop> previousStops = pair.previousRoute.getStops();
+			List<TransitRouteStop> newStops = new ArrayList<>(stops.size());
+
+			for(int i = 0; i < stops.size(); i++) {
+				TransitRouteStop routeStop = stops.get(i);
+				TransitStopFacility childStopFacility = getOrCopyStopFacility(previousStops.get(i).getStopFacility());
+				parentsToChildren.computeIfAbsent(routeStop.getStopFacility().getId(), k -> new HashSet<>()).add(childStopFacility.getId());
+
+				TransitRouteStop newRouteStop = factory.createTransitRouteStop(childStopFacility, routeStop.getArrivalOffset(), routeStop.getDepartureOffset());
+				newRouteStop.setAwaitDepartureTime(routeStop.isAwaitDepartureTime());
+				newStops.add(newRouteStop);
+			}
+
+			TransitRoute newTransitRoute = factory.createTransitRoute(pair.transitRoute.getId(), pair.previousRoute.getRoute().clone(), newStops, pair.transitRoute.getTransportMode());
+			pair.transitRoute.getDepartures().values().forEach(newTransitRoute::addDeparture);
+			newTransitRoute.setDescription(pair.transitRoute.getDescription());
+			pair.transitLine.addRoute(newTransitRoute);
+		}
+
+		PTMapperTools.copyMinimalTransferTimesToChildren(schedule, parentsToChildren);
+	}
+
+	private TransitStopFacility getOrCopyStopFacility(TransitStopFacility previousFacility) {
+		TransitStopFacility stopFacility = schedule.getFacilities().get(previousFacility.getId());
+		if(stopFacility == null) {
+			stopFacility = schedule.getFactory().createTransitStopFacility(previousFacility.getId(), previousFacility.getCoord(), previousFacility.getIsBlockingLane());
+			stopFacility.setLinkId(previousFacility.getLinkId());
+			stopFacility.setName(previousFacility.getName());
+			stopFacility.setStopAreaId(previousFacility.getStopAreaId());
+			schedule.addStopFacility(stopFacility);
+		}
+		return stopFacility;
+	}
+
+	public int getNumberOfUnchangedRoutes() {
+		return unchangedRoutes.size();
+	}
+
+	public TransitSchedule getPreviousSchedule() {
+		return previousSchedule;
+	}
+
+	private static class RoutePair {
+		private final TransitLine transitLine;
+		private final TransitRoute transitRoute;
+		private final TransitRoute previousRoute;
+
+		private RoutePair(TransitLine transitLine, TransitRoute transitRoute, TransitRoute previousRoute) {
+			this.transitLine = transitLine;
+			this.transitRoute = transitRoute;
+			this.previousRoute = previousRoute;
+		}
+	}
+}
@@ -17,7 +17,11 @@ import java.util.List;
  * The returned path of this calculator will be inverted again so it is valid on the actual non-inverted network.
  * <p>
  * The nodes in {@link #calcLeastCostPath(Node, Node, double, Person, Vehicle)} have to be pseudo nodes from the inverted network, i.e. link ids.
+ *
+ * @deprecated turn restricted routing is done with {@link org.matsim.pt2matsim.mapping.networkRouter.TurnGraphRouter}
+ * on a {@link org.matsim.pt2matsim.mapping.networkRouter.TurnGraph}, no inverted network is needed.
  */
+@Deprecated
 public class InvertedLeastPathCalculator implements LeastCostPathCalculator {
 
     private final Network network;
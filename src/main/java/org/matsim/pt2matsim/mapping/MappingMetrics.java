@@ -0,0 +1,367 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2016 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.pt2matsim.mapping;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects performance metrics of a mapping run: wall and CPU time per phase,
+ * busy time of worker threads, call counts and latency histograms (e.g. of
+ * router calls) and plain counts (e.g. number of artificial links). All methods except phase handling are thread safe.
+ * <p>
+ * {@link MappingMetricsListener}s are notified when phases start and finish
+ * and when the mapping is finished. The metrics can be written as JSON.
+ * <p>
+ * There are no cache metrics, the mapping routers calculate every path.
+ */
+public class MappingMetrics {
+
+	/**
+	 * Number of latency histogram buckets. Bucket 0 contains calls below 1 microsecond,
+	 * bucket i calls from 2^(i-1) to 2^i microseconds, the last bucket all longer calls.
+	 */
+	public static final int HISTOGRAM_BUCKETS = 32;
+
+	private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+	private final List<MappingMetricsListener> listeners = new CopyOnWriteArrayList<>();
+	private final List<Phase> phases = new ArrayList<>();
+	private Phase currentPhase = null;
+	private final Map<String, CallMetrics> calls = new ConcurrentHashMap<>();
+	private final Map<String, Long> counts = Collections.synchronizedMap(new LinkedHashMap<>());
+
+	public void addListener(MappingMetricsListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Starts a new phase, a currently running phase is finished
+	 */
+	public void startPhase(String name) {
+		if(currentPhase != null) {
+			finishPhase();
+		}
+		currentPhase = new Phase(name);
+		listeners.forEach(l -> l.phaseStarted(name));
+	}
+
+	/**
+	 * Finishes the current phase. The CPU time of the phase is the CPU time of the
+	 * calling thread plus the CPU time of all threads measured during the phase.
+	 */
+	public void finishPhase() {
+		if(currentPhase == null) {
+			return;
+		}
+		Phase phase = currentPhase;
+		currentPhase = null;
+		phase.finish();
+		phases.add(phase);
+		listeners.forEach(l -> l.phaseFinished(phase));
+	}
+
+	/**
+	 * Finishes the current phase and notifies the listeners that the mapping is finished
+	 */
+	public void finish() {
+		finishPhase();
+		listeners.forEach(l -> l.mappingFinished(this));
+	}
+
+	/**
+	 * @return a runnable that runs the given runnable and records the wall and CPU
+	 * time of the executing thread for the current phase.
+	 */
+	public Runnable measureThread(Runnable runnable) {
+		Phase phase = currentPhase;
+		if(phase == null) {
+			return runnable;
+		}
+		return () -> {
+			long wallStart = System.nanoTime();
+			long cpuStart = currentThreadCpuTime();
+			try {
+				runnable.run();
+			} finally {
+				phase.addThreadTiming(new ThreadTiming(Thread.currentThread().getName(), System.nanoTime() - wallStart, currentThreadCpuTime() - cpuStart));
+			}
+		};
+	}
+
+	/**
+	 * Records a call that started at <tt>startNanos</tt> ({@link System#nanoTime()}) and ends now
+	 */
+	public void recordCall(String name, long startNanos) {
+		calls.computeIfAbsent(name, k -> new CallMetrics()).record(System.nanoTime() - startNanos);
+	}
+
+	public void setCount(String name, long value) {
+		counts.put(name, value);
+	}
+
+	/**
+	 * Adds the metrics of another mapping, e.g. of a partition. Finished phases and counts
+	 * are summed up with the ones of the same name, calls are combined. Listeners are not
+	 * notified of the merged phases.
+	 */
+	public void merge(MappingMetrics other) {
+		for(Phase otherPhase : other.phases) {
+			Phase phase = null;
+			for(Phase p : phases) {
+				if(p.getName().equals(otherPhase.getName())) {
+					phase = p;
+					break;
+				}
+			}
+			if(phase == null) {
+				phase = new Phase(otherPhase.getName(), 0, 0);
+				phases.add(phase);
+			}
+			phase.wallNanos += otherPhase.getWallNanos();
+			phase.cpuNanos += otherPhase.getCpuNanos();
+			otherPhase.getThreadTimings().forEach(phase::addThreadTiming);
+		}
+		for(Map.Entry<String, CallMetrics> e : other.calls.entrySet()) {
+			calls.computeIfAbsent(e.getKey(), k -> new CallMetrics()).add(e.getValue());
+		}
+		for(Map.Entry<String, Long> e : other.getCounts().entrySet()) {
+			counts.merge(e.getKey(), e.getValue(), Long::sum);
+		}
+	}
+
+	public List<Phase> getPhases() {
+		return Collections.unmodifiableList(phases);
+	}
+
+	public Map<String, CallMetrics> getCalls() {
+		return Collections.unmodifiableMap(calls);
+	}
+
+	public Map<String, Long> getCounts() {
+		synchronized(counts) {
+			return new LinkedHashMap<>(counts);
+		}
+	}
+
+	private static long currentThreadCpuTime() {
+		return threadBean.isCurrentThreadCpuTimeSupported() ? Math.max(0, threadBean.getCurrentThreadCpuTime()) : 0;
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1e6;
+	}
+
+	/**
+	 * @return the metrics as nested maps and lists, times are in milliseconds
+	 */
+	public Map<String, Object> toMap() {
+		Map<String, Object> map = new LinkedHashMap<>();
+
+		List<Map<String, Object>> phaseList = new ArrayList<>();
+		for(Phase phase : phases) {
+			Map<String, Object> phaseMap = new LinkedHashMap<>();
+			phaseMap.put("name", phase.getName());
+			phaseMap.put("wallMs", millis(phase.getWallNanos()));
+			phaseMap.put("cpuMs", millis(phase.getCpuNanos()));
+			List<Map<String, Object>> threadList = new ArrayList<>();
+			for(ThreadTiming thread : phase.getThreadTimings()) {
+				Map<String, Object> threadMap = new LinkedHashMap<>();
+				threadMap.put("name", thread.getThreadName());
+				threadMap.put("wallMs", millis(thread.getWallNanos()));
+				threadMap.put("cpuMs", millis(thread.getCpuNanos()));
+				threadMap.put("utilisation", phase.getWallNanos() == 0 ? 0 : (double) thread.getCpuNanos() / phase.getWallNanos());
+				threadList.add(threadMap);
+			}
+			if(!threadList.isEmpty()) {
+				phaseMap.put("threads", threadList);
+			}
+			phaseList.add(phaseMap);
+		}
+		map.put("phases", phaseList);
+
+		Map<String, Object> callMap = new TreeMap<>();
+		for(Map.Entry<String, CallMetrics> e : calls.entrySet()) {
+			CallMetrics c = e.getValue();
+			Map<String, Object> m = new LinkedHashMap<>();
+			m.put("count", c.getCount());
+			m.put("totalMs", millis(c.getTotalNanos()));
+			m.put("meanUs", c.getCount() == 0 ? 0 : c.getTotalNanos() / 1e3 / c.getCount());
+			m.put("histogramUs", c.getHistogram());
+			callMap.put(e.getKey(), m);
+		}
+		map.put("calls", callMap);
+
+		map.put("counts", getCounts());
+		return map;
+	}
+
+	public void writeJson(String file) {
+		try {
+			new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(new File(file), toMap());
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Wall and CPU time of a mapping phase
+	 */
+	public static class Phase {
+
+		private final String name;
+		private final long wallStart;
+		private final long cpuStart;
+		private long wallNanos;
+		private long cpuNanos;
+		private final List<ThreadTiming> threadTimings = Collections.synchronizedList(new ArrayList<>());
+
+		Phase(String name) {
+			this.name = name;
+			this.wallStart = System.nanoTime();
+			this.cpuStart = currentThreadCpuTime();
+		}
+
+		/**
+		 * Finished phase with the given times
+		 */
+		private Phase(String name, long wallNanos, long cpuNanos) {
+			this.name = name;
+			this.wallStart = 0;
+			this.cpuStart = 0;
+			this.wallNanos = wallNanos;
+			this.cpuNanos = cpuNanos;
+		}
+
+		void finish() {
+			this.wallNanos = System.nanoTime() - wallStart;
+			this.cpuNanos = currentThreadCpuTime() - cpuStart;
+			synchronized(threadTimings) {
+				for(ThreadTiming threadTiming : threadTimings) {
+					cpuNanos += threadTiming.getCpuNanos();
+				}
+			}
+		}
+
+		void addThreadTiming(ThreadTiming threadTiming) {
+			threadTimings.add(threadTiming);
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getWallNanos() {
+			return wallNanos;
+		}
+
+		public long getCpuNanos() {
+			return cpuNanos;
+		}
+
+		public List<ThreadTiming> getThreadTimings() {
+			synchronized(threadTimings) {
+				return new ArrayList<>(threadTimings);
+			}
+		}
+	}
+
+	/**
+	 * Wall and CPU time of a worker thread within a phase
+	 */
+	public static class ThreadTiming {
+
+		private final String threadName;
+		private final long wallNanos;
+		private final long cpuNanos;
+
+		ThreadTiming(String threadName, long wallNanos, long cpuNanos) {
+			this.threadName = threadName;
+			this.wallNanos = wallNanos;
+			this.cpuNanos = cpuNanos;
+		}
+
+		public String getThreadName() {
+			return threadName;
+		}
+
+		public long getWallNanos() {
+			return wallNanos;
+		}
+
+		public long getCpuNanos() {
+			return cpuNanos;
+		}
+	}
+
+	/**
+	 * Number of calls, total time and latency histogram
+	 */
+	public static class CallMetrics {
+
+		private final LongAdder count = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+		private final AtomicLongArray histogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+
+		void record(long nanos) {
+			count.increment();
+			totalNanos.add(nanos);
+			long micros = nanos / 1000;
+			int bucket = Math.min(HISTOGRAM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+			histogram.incrementAndGet(bucket);
+		}
+
+		private void add(CallMetrics other) {
+			count.add(other.getCount());
+			totalNanos.add(other.getTotalNanos());
+			for(int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+				histogram.addAndGet(i, other.histogram.get(i));
+			}
+		}
+
+		public long getCount() {
+			return count.sum();
+		}
+
+		public long getTotalNanos() {
+			return totalNanos.sum();
+		}
+
+		/**
+		 * @return number of calls per bucket, see {@link #HISTOGRAM_BUCKETS}
+		 */
+		public long[] getHistogram() {
+			long[] h = new long[HISTOGRAM_BUCKETS];
+			for(int i = 0; i < h.length; i++) {
+				h[i] = histogram.get(i);
+			}
+			return h;
+		}
+	}
+}
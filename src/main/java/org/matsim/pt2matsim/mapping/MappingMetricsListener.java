@@ -0,0 +1,36 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2016 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.pt2matsim.mapping;
+
+/**
+ * Receives the {@link MappingMetrics} of a mapping run, e.g. to forward
+ * them to a monitoring system. Listeners are called from the thread running
+ * the mapping.
+ */
+public interface MappingMetricsListener {
+
+	default void phaseStarted(String phase) {
+	}
+
+	default void phaseFinished(MappingMetrics.Phase phase) {
+	}
+
+	default void mappingFinished(MappingMetrics metrics) {
+	}
+}
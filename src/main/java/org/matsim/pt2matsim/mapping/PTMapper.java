@@ -29,18 +29,17 @@ import org.apache.logging.log4j.Logger;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
-import org.matsim.api.core.v01.network.NetworkWriter;
 import org.matsim.core.config.Config;
 import org.matsim.lanes.Lanes;
 import org.matsim.pt.transitSchedule.api.TransitLine;
 import org.matsim.pt.transitSchedule.api.TransitRoute;
 import org.matsim.pt.transitSchedule.api.TransitSchedule;
-import org.matsim.pt.transitSchedule.api.TransitScheduleWriter;
 import org.matsim.pt.utils.TransitScheduleValidator;
 import org.matsim.pt2matsim.config.PublicTransitMappingConfigGroup;
 import org.matsim.pt2matsim.config.PublicTransitMappingStrings;
 import org.matsim.pt2matsim.mapping.linkCandidateCreation.LinkCandidateCreator;
 import org.matsim.pt2matsim.mapping.linkCandidateCreation.LinkCandidateCreatorStandard;
+import org.matsim.pt2matsim.mapping.networkRouter.MeasuredScheduleRouters;
 import org.matsim.pt2matsim.mapping.networkRouter.ScheduleRouters;
 import org.matsim.pt2matsim.mapping.networkRouter.ScheduleRoutersFactory;
 import org.matsim.pt2matsim.mapping.networkRouter.ScheduleRoutersStandard;
@@ -66,6 +65,10 @@ import org.matsim.pt2matsim.tools.debug.ScheduleCleaner;
  * {@link LinkCandidateCreator} is applied to find link candidates and
  * {@link ScheduleRouters} to find the shortest paths on the network.
  * </p>
+ * <p>
+ * Phase timings, router calls (see {@link #setMeasureRouterCalls(boolean)}) and
+ * other performance metrics are collected in {@link MappingMetrics}, see {@link #getMetrics()}.
+ * </p>
  *
  * @author polettif
  */
@@ -76,15 +79,39 @@ public class PTMapper {
 	private Network network;
 	private Lanes lanes;
 	private TransitSchedule schedule;
+	private TransitSchedule previousMappedSchedule = null;
+	private IncrementalMapping incrementalMapping = null;
+	private final MappingMetrics metrics = new MappingMetrics();
+	private boolean measureRouterCalls = false;
 
 	public static void mapScheduleToNetwork(TransitSchedule schedule, Network network,Lanes lanes, PublicTransitMappingConfigGroup config, Config mainConfig) {
+		mapScheduleToNetwork(schedule, network, lanes, null, config, mainConfig);
+	}
+
+	/**
+	 * Maps only changed or new transit routes, see {@link IncrementalMapping}. The network should
+	 * be the network the previous schedule has been mapped to, changed routes cannot use links
+	 * removed by the previous mapping. If a partition tile size is set in
+	 * the config, the schedule is mapped with {@link PartitionedPTMapper}.
+	 *
+	 * @param previousMappedSchedule previously mapped schedule, can be <tt>null</tt> to map all routes
+	 */
+	public static void mapScheduleToNetwork(TransitSchedule schedule, Network network, Lanes lanes, TransitSchedule previousMappedSchedule, PublicTransitMappingConfigGroup config, Config mainConfig) {
 		if(config.getInputNetworkFile() != null) {
 			log.warn("The input network file set in PublicTransitMappingConfigGroup is ignored");
 		}
 		if(config.getInputScheduleFile() != null) {
 			log.warn("The input schedule file set in PublicTransitMappingConfigGroup is ignored");
 		}
-		new PTMapper(schedule, network, lanes).run(config,mainConfig);
+		if(config.getPartitionTileSize() > 0) {
+			if(previousMappedSchedule != null || lanes != null || mainConfig.qsim().isUseLanes()) {
+				log.warn("Partitioned mapping is not available for incremental mapping or with lanes, the schedule is mapped at once");
+			} else {
+				new PartitionedPTMapper(schedule, network, config.getPartitionTileSize(), config.getPartitionBuffer()).run(config, mainConfig);
+				return;
+			}
+		}
+		new PTMapper(schedule, network, lanes, previousMappedSchedule).run(config,mainConfig);
 	}
 
 	/**
@@ -103,17 +130,24 @@ public class PTMapper {
 		this.lanes = lanes;
 	}
 
+	/**
+	 * Incremental mapping: transit routes that did not change compared to the previously
+	 * mapped schedule keep their link sequence and child stop facilities, only the other
+	 * routes are mapped, see {@link IncrementalMapping}.
+	 *
+	 * @param network the network the previous schedule has been mapped to, is modified
+	 */
+	public PTMapper(TransitSchedule schedule, Network network, Lanes lanes, TransitSchedule previousMappedSchedule) {
+		this(schedule, network, lanes);
+		this.previousMappedSchedule = previousMappedSchedule;
+	}
+
+	/**
+	 * Maps the schedule to the network with parameters defined in config. Routers
+	 * work on the network and lanes given in the constructor, the input files defined
+	 * in the configs are not read.
+	 */
 	public void run(PublicTransitMappingConfigGroup config, Config mainConfig) {
-		if(config.getInputNetworkFile()==null) {
-			String tempNetwork = "net.xml";
-			String tempSchedule = "ts.xml";
-			new NetworkWriter(this.network).write(tempNetwork);
-			new TransitScheduleWriter(this.schedule).writeFile(tempSchedule);
-			config.setInputNetworkFile(tempNetwork);
-			mainConfig.network().setInputFile(tempNetwork);
-			config.setInputScheduleFile(tempSchedule);
-			mainConfig.transit().setTransitScheduleFile(tempSchedule);
-		}
 		run(config,mainConfig, null, null);
 	}
 	
@@ -123,16 +157,18 @@ public class PTMapper {
 	public void run(PublicTransitMappingConfigGroup config,Config mainConfig, LinkCandidateCreator linkCandidateCreator, ScheduleRoutersFactory scheduleRoutersFactory) {
 		// use defaults
 		PTMapper.matchInfo(mainConfig, config);
+		// unchanged routes need no link candidates
+		detachUnchangedRoutes();
 		if(linkCandidateCreator == null) {
-			linkCandidateCreator = new LinkCandidateCreatorStandard(schedule, network,
-					config.getNLinkThreshold(),
-					config.getCandidateDistanceMultiplier(),
-					config.getMaxLinkCandidateDistance(),
-					config.getTransportModeAssignment());
+			metrics.startPhase("linkCandidates");
+			linkCandidateCreator = createLinkCandidateCreator(schedule, network, config);
 		}
 		
 		if(scheduleRoutersFactory == null) {
-			scheduleRoutersFactory = new ScheduleRoutersStandard.Factory(schedule,mainConfig, network, config.getTransportModeAssignment(), config.getTravelCostType(), config.getRoutingWithCandidateDistance());
+			scheduleRoutersFactory = createScheduleRoutersFactory(schedule, network, lanes, config, mainConfig);
+		}
+		if(config.getOutputMetricsFile() != null) {
+			measureRouterCalls = true;
 		}
 
 		run(linkCandidateCreator,
@@ -140,6 +176,10 @@ public class PTMapper {
 			config.getNumOfThreads(), config.getMaxTravelCostFactor(),
 			config.getScheduleFreespeedModes(), config.getModesToKeepOnCleanUp(),
 			config.getRemoveNotUsedStopFacilities());
+
+		if(config.getOutputMetricsFile() != null) {
+			metrics.writeJson(config.getOutputMetricsFile());
+		}
 	}
 
 	/**
@@ -172,6 +212,20 @@ public class PTMapper {
 		  Some schedule statistics
 		 */
 		int nStopFacilities = schedule.getFacilities().size();
+		detachUnchangedRoutes();
+
+		createLinkSequences(linkCandidates, scheduleRoutersFactory, numThreads, maxTravelCostFactor);
+		completeMapping(numThreads, scheduleFreespeedModes, modesToKeepOnCleanup, removeNotUsedStopFacilities, nStopFacilities);
+	}
+
+	/**
+	 * Steps [1] to [3] of the mapping: calculates the pseudo routes of all transit routes,
+	 * adds the necessary artificial links to the network and replaces the transit routes
+	 * with routes using child stop facilities and link sequences.
+	 */
+	void createLinkSequences(LinkCandidateCreator linkCandidates, ScheduleRoutersFactory scheduleRoutersFactory, int numThreads, double maxTravelCostFactor) {
+		ScheduleRoutersFactory routersFactory = measureRouterCalls ? new MeasuredScheduleRouters.Factory(scheduleRoutersFactory, metrics) : scheduleRoutersFactory;
+
 		int nTransitRoutes = 0;
 		for(TransitLine transitLine : this.schedule.getTransitLines().values()) {
 			nTransitRoutes += transitLine.getRoutes().size();
@@ -184,32 +238,33 @@ public class PTMapper {
 		 */
 		log.info("==================================");
 		log.info("Calculating pseudoTransitRoutes... (" + nTransitRoutes + " transit routes in " + schedule.getTransitLines().size() + " transit lines)");
+		metrics.startPhase("pseudoRouting");
 
-		Progress progress = new Progress(nTransitRoutes, "Calculating pseudoTransitRoutes ...");
-		
-		// initiate pseudoRouting
 		PseudoRouting[] pseudoRoutingRunnables = new PseudoRouting[numThreads];
-		for(int i = 0; i < numThreads; i++) {
-			pseudoRoutingRunnables[i] = new PseudoRoutingImpl(scheduleRoutersFactory, linkCandidates, maxTravelCostFactor, progress);
-		}
-		// spread transit lines on runnables
-		int thr = 0;
-		for(TransitLine transitLine : schedule.getTransitLines().values()) {
-			pseudoRoutingRunnables[thr++ % numThreads].addTransitLineToQueue(transitLine);
-		}
+		try(Progress progress = new Progress(nTransitRoutes, "Calculating pseudoTransitRoutes ...")) {
+			// initiate pseudoRouting
+			for(int i = 0; i < numThreads; i++) {
+				pseudoRoutingRunnables[i] = new PseudoRoutingImpl(routersFactory, linkCandidates, maxTravelCostFactor, progress);
+			}
+			// spread transit lines on runnables
+			int thr = 0;
+			for(TransitLine transitLine : schedule.getTransitLines().values()) {
+				pseudoRoutingRunnables[thr++ % numThreads].addTransitLineToQueue(transitLine);
+			}
 
-		Thread[] threads = new Thread[numThreads];
-		// start pseudoRouting
-		for(int i = 0; i < numThreads; i++) {
-			threads[i] = new Thread(pseudoRoutingRunnables[i]);
-			threads[i].start();
-		}
-		for(Thread thread : threads) {
-			try {
-				thread.join();
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-				throw new RuntimeException(e);
+			Thread[] threads = new Thread[numThreads];
+			// start pseudoRouting
+			for(int i = 0; i < numThreads; i++) {
+				threads[i] = new Thread(metrics.measureThread(pseudoRoutingRunnables[i]));
+				threads[i].start();
+			}
+			for(Thread thread : threads) {
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+					throw new RuntimeException(e);
+				}
 			}
 		}
 
@@ -220,11 +275,14 @@ public class PTMapper {
 		 */
 		log.info("=====================================");
 		log.info("Adding artificial links to network...");
+		metrics.startPhase("artificialLinks");
+		int nLinksBefore = network.getLinks().size();
 		for(PseudoRouting prt : pseudoRoutingRunnables) {
 			if(this.lanes == null)prt.addArtificialLinks(network);
 			else prt.addArtificialLinks(network, lanes);
 			pseudoSchedule.mergePseudoSchedule(prt.getPseudoSchedule());
 		}
+		metrics.setCount("artificialLinksAdded", network.getLinks().size() - nLinksBefore);
 
 
 		/* [3]
@@ -233,22 +291,40 @@ public class PTMapper {
 		 */
 		log.info("==========================================================================================");
 		log.info("Replacing parent StopFacilities in schedule, creating link sequences for transit routes...");
+		metrics.startPhase("linkSequences");
 		pseudoSchedule.createFacilitiesAndLinkSequences(schedule);
+	}
 
+	/**
+	 * Steps [4] to [7] of the mapping: pulls child stop facilities together, adds
+	 * transfers, cleans schedule and network and validates the schedule.
+	 *
+	 * @param nStopFacilities number of stop facilities before mapping, used for statistics
+	 */
+	void completeMapping(int numThreads, Set<String> scheduleFreespeedModes, Set<String> modesToKeepOnCleanup, boolean removeNotUsedStopFacilities, int nStopFacilities) {
 		/* [4]
 		  Now that all lines have been routed, it is possible that a route passes
 		  a link closer to a stop facility than its referenced link.
 		 */
 		log.info("================================");
 		log.info("Pulling child stop facilities...");
-		int nPulled = 1;
-		while(nPulled != 0) {
-			nPulled = PTMapperTools.pullChildStopFacilitiesTogether(this.schedule, this.network);
+		metrics.startPhase("pullChildStopFacilities");
+		PTMapperTools.pullChildStopFacilitiesTogether(this.schedule, this.network, numThreads);
+
+		/* [4.1]
+		  Add the unchanged routes with their previous mapping
+		 */
+		if(incrementalMapping != null) {
+			log.info("=================================================");
+			log.info("Adding transit routes with unchanged mapping... (" + incrementalMapping.getNumberOfUnchangedRoutes() + " transit routes)");
+			metrics.startPhase("reattachUnchangedRoutes");
+			incrementalMapping.reattachUnchangedRoutes();
 		}
 
 		/* [5] */
 		log.info("==========================================");
 		log.info("Add transfers for child stop facilities...");
+		metrics.startPhase("transfers");
 		PTMapperTools.addTransfersForChildStopFacilities(this.schedule);
 
 		/* [6]
@@ -258,6 +334,7 @@ public class PTMapper {
 		 */
 		log.info("=============================");
 		log.info("Clean schedule and network...");
+		metrics.startPhase("cleanScheduleAndNetwork");
 		cleanScheduleAndNetwork(scheduleFreespeedModes, modesToKeepOnCleanup, removeNotUsedStopFacilities);
 
 		/* [7]
@@ -265,7 +342,9 @@ public class PTMapper {
 		 */
 		log.info("======================");
 		log.info("Validating schedule...");
+		metrics.startPhase("validation");
 		printValidateSchedule();
+		metrics.finishPhase();
 
 		log.info("==================================================");
 		log.info("= Mapping transit schedule to network completed! =");
@@ -275,6 +354,31 @@ public class PTMapper {
 		  Statistics
 		 */
 		printStatistics(nStopFacilities);
+		metrics.finish();
+	}
+
+	static LinkCandidateCreator createLinkCandidateCreator(TransitSchedule schedule, Network network, PublicTransitMappingConfigGroup config) {
+		return new LinkCandidateCreatorStandard(schedule, network,
+				config.getNLinkThreshold(),
+				config.getCandidateDistanceMultiplier(),
+				config.getMaxLinkCandidateDistance(),
+				config.getTransportModeAssignment());
+	}
+
+	static ScheduleRoutersFactory createScheduleRoutersFactory(TransitSchedule schedule, Network network, Lanes lanes, PublicTransitMappingConfigGroup config, Config mainConfig) {
+		return new ScheduleRoutersStandard.Factory(schedule, mainConfig, network, lanes, config.getTransportModeAssignment(), config.getTravelCostType(), config.getRoutingWithCandidateDistance());
+	}
+
+	/**
+	 * Removes transit routes that keep their previous mapping from the schedule, so
+	 * that neither link candidates nor pseudo routes are created for them.
+	 */
+	private void detachUnchangedRoutes() {
+		if(previousMappedSchedule != null && incrementalMapping == null) {
+			log.info("Comparing schedule with previously mapped schedule...");
+			incrementalMapping = new IncrementalMapping(schedule, previousMappedSchedule, network);
+			incrementalMapping.detachUnchangedRoutes();
+		}
 	}
 
 	private void cleanScheduleAndNetwork(Set<String> scheduleFreespeedModes, Set<String> modesToKeepOnCleanup, boolean removeNotUsedStopFacilities) {
@@ -331,6 +435,7 @@ public class PTMapper {
 				nArtificialLinks++;
 			}
 		}
+		metrics.setCount("artificialLinks", nArtificialLinks);
 		int withoutArtificialLinks = 0;
 		int nRoutes = 0;
 		for(TransitLine transitLine : this.schedule.getTransitLines().values()) {
@@ -348,6 +453,9 @@ public class PTMapper {
 				}
 			}
 		}
+		metrics.setCount("transitRoutes", nRoutes);
+		metrics.setCount("transitRoutesWithoutArtificialLinks", withoutArtificialLinks);
+		metrics.setCount("stopFacilities", schedule.getFacilities().size());
 
 		StopFacilityHistogram histogram = new StopFacilityHistogram(schedule);
 
@@ -378,6 +486,29 @@ public class PTMapper {
 	public Network getNetwork() {
 		return network;
 	}
+
+	/**
+	 * @return the performance metrics of the mapping, updated while the mapping runs
+	 */
+	public MappingMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Router calls are measured if set to true or if an output metrics file is
+	 * configured. Measuring adds a small overhead to every router call.
+	 */
+	public void setMeasureRouterCalls(boolean measureRouterCalls) {
+		this.measureRouterCalls = measureRouterCalls;
+	}
+
+	boolean isMeasureRouterCalls() {
+		return measureRouterCalls;
+	}
+
+	public void addMetricsListener(MappingMetricsListener listener) {
+		metrics.addListener(listener);
+	}
 	
 	public static void matchInfo(Config config, PublicTransitMappingConfigGroup ptConfig) {
 		if(config.network().getInputFile()!=null && ptConfig.getInputNetworkFile()!=null && !config.network().getInputFile().equals(ptConfig.getInputNetworkFile())) {
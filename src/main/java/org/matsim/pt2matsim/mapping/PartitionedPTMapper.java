@@ -0,0 +1,324 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2016 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.pt2matsim.mapping;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.config.Config;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.utils.collections.QuadTree;
+import org.matsim.core.utils.collections.Tuple;
+import org.matsim.pt.transitSchedule.api.*;
+import org.matsim.pt2matsim.config.PublicTransitMappingConfigGroup;
+import org.matsim.pt2matsim.config.PublicTransitMappingStrings;
+import org.matsim.pt2matsim.tools.CoordTools;
+import org.matsim.pt2matsim.tools.NetworkTools;
+import org.matsim.pt2matsim.tools.PTMapperTools;
+import org.matsim.pt2matsim.tools.ScheduleTools;
+import org.matsim.utils.objectattributes.attributable.AttributesUtils;
+
+import java.util.*;
+
+/**
+ * Maps a schedule in geographic partitions to limit memory usage on large schedules.
+ * <p>
+ * Transit routes are grouped by the square tile that contains the center of their stop
+ * extent ({@link CoordTools#getExtent(TransitRoute)}). The routes of each partition are
+ * mapped separately (steps [1] to [3] of {@link PTMapper}) on a network cut containing
+ * all nodes within a buffer around the stop extents of the partition's routes. Link
+ * candidates, routers and pseudo graphs thus only exist for one partition at a time.
+ * <p>
+ * After each partition, the artificial links and child stop facilities are added to the
+ * full network and schedule. Their ids only depend on the referenced links and stop
+ * facilities, elements created by more than one partition are added once. Partitions
+ * are processed in tile order and routes keep their order within their transit line,
+ * the result does not depend on the number of threads. Pulling child stop facilities,
+ * transfers, clean up and validation are done on the full schedule and network.
+ * <p>
+ * Routes are only routed within their partition's network cut, the buffer should be
+ * large enough to contain detours. Long routes increase the network cut of their partition.
+ * Lanes are not supported.
+ * <p>
+ * The metrics of the partitions (pseudo routing, router calls, artificial links) are
+ * summed up in the metrics of the whole mapping.
+ */
+public class PartitionedPTMapper {
+
+	protected static Logger log = LogManager.getLogger(PartitionedPTMapper.class);
+
+	private final TransitSchedule schedule;
+	private final Network network;
+	private final double tileSize;
+	private final double buffer;
+	private final PTMapper ptMapper;
+
+	/**
+	 * @param tileSize size of the tiles used to partition the transit routes
+	 * @param buffer   distance around the stop extents of a partition within which network nodes are kept
+	 */
+	public PartitionedPTMapper(TransitSchedule schedule, Network network, double tileSize, double buffer) {
+		if(tileSize <= 0) throw new IllegalArgumentException("Tile size must be > 0");
+		this.schedule = schedule;
+		this.network = network;
+		this.tileSize = tileSize;
+		this.buffer = buffer;
+		this.ptMapper = new PTMapper(schedule, network, null);
+	}
+
+	/**
+	 * Maps the schedule to the network with parameters defined in config
+	 */
+	public void run(PublicTransitMappingConfigGroup config, Config mainConfig) {
+		if(schedule == null) throw new RuntimeException("No schedule defined!");
+		if(network == null) throw new RuntimeException("No network defined!");
+
+		if(ScheduleTools.idsContainChildStopString(schedule)) {
+			throw new RuntimeException("Some stopFacility ids contain the string \"" + PublicTransitMappingStrings.SUFFIX_CHILD_STOP_FACILITIES + "\"! Schedule cannot be mapped.");
+		}
+		if(schedule.getTransitLines().size() == 0) {
+			throw new IllegalArgumentException("No transit lines available in schedule");
+		}
+		if(schedule.getFacilities().size() == 0) {
+			throw new IllegalArgumentException("No stop facilities available in schedule");
+		}
+
+		PTMapper.matchInfo(mainConfig, config);
+		PTMapperTools.setLogLevels();
+		MappingMetrics metrics = ptMapper.getMetrics();
+		if(config.getOutputMetricsFile() != null) {
+			ptMapper.setMeasureRouterCalls(true);
+		}
+
+		log.info("==================================================");
+		log.info("Mapping transit schedule to network in partitions...");
+		int nStopFacilities = schedule.getFacilities().size();
+
+		metrics.startPhase("partitioning");
+		List<List<Tuple<TransitLine, TransitRoute>>> partitions = createPartitions();
+		QuadTree<Node> nodeQuadTree = createNodeQuadTree();
+		log.info(partitions.size() + " partitions with tile size " + tileSize);
+
+		metrics.startPhase("partitions");
+		Map<TransitRoute, TransitRoute> mappedRoutes = new IdentityHashMap<>();
+		Set<Id<TransitStopFacility>> childStopFacilities = new LinkedHashSet<>();
+		int nLinksBefore = network.getLinks().size();
+		int p = 0;
+		for(List<Tuple<TransitLine, TransitRoute>> partition : partitions) {
+			log.info("==================================================");
+			log.info("Mapping partition " + (++p) + "/" + partitions.size() + " (" + partition.size() + " transit routes)");
+			mapPartition(partition, nodeQuadTree, config, mainConfig, mappedRoutes, childStopFacilities);
+		}
+		metrics.setCount("partitions", partitions.size());
+		metrics.setCount("artificialLinksAdded", network.getLinks().size() - nLinksBefore);
+
+		metrics.startPhase("stitching");
+		replaceMappedRoutes(mappedRoutes);
+		copyMinimalTransferTimesToChildren(childStopFacilities);
+
+		ptMapper.completeMapping(config.getNumOfThreads(),
+				config.getScheduleFreespeedModes(), config.getModesToKeepOnCleanUp(),
+				config.getRemoveNotUsedStopFacilities(), nStopFacilities);
+
+		if(config.getOutputMetricsFile() != null) {
+			metrics.writeJson(config.getOutputMetricsFile());
+		}
+	}
+
+	public MappingMetrics getMetrics() {
+		return ptMapper.getMetrics();
+	}
+
+	/**
+	 * @see PTMapper#setMeasureRouterCalls(boolean)
+	 */
+	public void setMeasureRouterCalls(boolean measureRouterCalls) {
+		ptMapper.setMeasureRouterCalls(measureRouterCalls);
+	}
+
+	/**
+	 * Groups the transit routes by the tile of their stop extent center. Routes
+	 * without stops are not mapped.
+	 */
+	private List<List<Tuple<TransitLine, TransitRoute>>> createPartitions() {
+		Map<long[], List<Tuple<TransitLine, TransitRoute>>> tiles = new TreeMap<>(Comparator.<long[]>comparingLong(t -> t[0]).thenComparingLong(t -> t[1]));
+		for(TransitLine transitLine : schedule.getTransitLines().values()) {
+			for(TransitRoute transitRoute : transitLine.getRoutes().values()) {
+				if(transitRoute.getStops().size() == 0) {
+					continue;
+				}
+				Coord[] extent = CoordTools.getExtent(transitRoute);
+				double x = (extent[0].getX() + extent[1].getX()) / 2;
+				double y = (extent[0].getY() + extent[1].getY()) / 2;
+				long[] tile = new long[]{(long) Math.floor(x / tileSize), (long) Math.floor(y / tileSize)};
+				tiles.computeIfAbsent(tile, k -> new ArrayList<>()).add(new Tuple<>(transitLine, transitRoute));
+			}
+		}
+		return new ArrayList<>(tiles.values());
+	}
+
+	private QuadTree<Node> createNodeQuadTree() {
+		double[] bbox = NetworkUtils.getBoundingBox(network.getNodes().values());
+		QuadTree<Node> quadTree = new QuadTree<>(bbox[0], bbox[1], bbox[2], bbox[3]);
+		for(Node node : network.getNodes().values()) {
+			quadTree.put(node.getCoord().getX(), node.getCoord().getY(), node);
+		}
+		return quadTree;
+	}
+
+	/**
+	 * Maps the routes of a partition on a network cut and adds the resulting artificial
+	 * links and child stop facilities to the full network and schedule.
+	 */
+	private void mapPartition(List<Tuple<TransitLine, TransitRoute>> routes, QuadTree<Node> nodeQuadTree, PublicTransitMappingConfigGroup config, Config mainConfig, Map<TransitRoute, TransitRoute> mappedRoutes, Set<Id<TransitStopFacility>> childStopFacilities) {
+		TransitSchedule subSchedule = ScheduleTools.createSchedule();
+		TransitScheduleFactory scheduleFactory = subSchedule.getFactory();
+		Set<Node> nodesToKeep = new LinkedHashSet<>();
+
+		double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+		double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+		for(Tuple<TransitLine, TransitRoute> t : routes) {
+			TransitLine subLine = subSchedule.getTransitLines().get(t.getFirst().getId());
+			if(subLine == null) {
+				subLine = scheduleFactory.createTransitLine(t.getFirst().getId());
+				subSchedule.addTransitLine(subLine);
+			}
+			subLine.addRoute(t.getSecond());
+
+			for(TransitRouteStop routeStop : t.getSecond().getStops()) {
+				TransitStopFacility facility = routeStop.getStopFacility();
+				if(!subSchedule.getFacilities().containsKey(facility.getId())) {
+					subSchedule.addStopFacility(facility);
+				}
+				// links referenced before mapping have to be part of the network cut
+				Link link = facility.getLinkId() == null ? null : network.getLinks().get(facility.getLinkId());
+				if(link != null) {
+					nodesToKeep.add(link.getFromNode());
+					nodesToKeep.add(link.getToNode());
+				}
+				minX = Math.min(minX, facility.getCoord().getX());
+				minY = Math.min(minY, facility.getCoord().getY());
+				maxX = Math.max(maxX, facility.getCoord().getX());
+				maxY = Math.max(maxY, facility.getCoord().getY());
+			}
+		}
+		nodeQuadTree.getRectangle(minX - buffer, minY - buffer, maxX + buffer, maxY + buffer, nodesToKeep);
+		Network subNetwork = NetworkTools.createCutNetwork(network, nodesToKeep);
+		log.info("Network cut: " + subNetwork.getNodes().size() + " nodes, " + subNetwork.getLinks().size() + " links");
+
+		PTMapper subMapper = new PTMapper(subSchedule, subNetwork, null);
+		subMapper.setMeasureRouterCalls(ptMapper.isMeasureRouterCalls());
+		subMapper.createLinkSequences(
+				PTMapper.createLinkCandidateCreator(subSchedule, subNetwork, config),
+				PTMapper.createScheduleRoutersFactory(subSchedule, subNetwork, null, config, mainConfig),
+				config.getNumOfThreads(), config.getMaxTravelCostFactor());
+		subMapper.getMetrics().finishPhase();
+		ptMapper.getMetrics().merge(subMapper.getMetrics());
+
+		addNewNetworkElements(subNetwork);
+
+		// child stop facilities
+		for(TransitStopFacility facility : subSchedule.getFacilities().values()) {
+			if(!schedule.getFacilities().containsKey(facility.getId())) {
+				schedule.addStopFacility(facility);
+				childStopFacilities.add(facility.getId());
+			}
+		}
+
+		// mapped routes, stops reference the facilities of the full schedule
+		for(Tuple<TransitLine, TransitRoute> t : routes) {
+			TransitRoute mappedRoute = subSchedule.getTransitLines().get(t.getFirst().getId()).getRoutes().get(t.getSecond().getId());
+			if(mappedRoute != t.getSecond()) {
+				for(TransitRouteStop routeStop : mappedRoute.getStops()) {
+					TransitStopFacility facility = schedule.getFacilities().get(routeStop.getStopFacility().getId());
+					if(facility != routeStop.getStopFacility()) {
+						routeStop.setStopFacility(facility);
+					}
+				}
+				mappedRoutes.put(t.getSecond(), mappedRoute);
+			}
+		}
+	}
+
+	/**
+	 * Adds nodes and links of the network cut that are not in the full network, i.e.
+	 * artificial links and loop links created during mapping.
+	 */
+	private void addNewNetworkElements(Network subNetwork) {
+		NetworkFactory factory = network.getFactory();
+		for(Node node : subNetwork.getNodes().values()) {
+			if(!network.getNodes().containsKey(node.getId())) {
+				Node newNode = factory.createNode(node.getId(), node.getCoord());
+				AttributesUtils.copyAttributesFromTo(node, newNode);
+				network.addNode(newNode);
+			}
+		}
+		for(Link link : subNetwork.getLinks().values()) {
+			if(!network.getLinks().containsKey(link.getId())) {
+				Link newLink = factory.createLink(link.getId(),
+						network.getNodes().get(link.getFromNode().getId()),
+						network.getNodes().get(link.getToNode().getId()));
+				newLink.setLength(link.getLength());
+				newLink.setFreespeed(link.getFreespeed());
+				newLink.setCapacity(link.getCapacity());
+				newLink.setNumberOfLanes(link.getNumberOfLanes());
+				newLink.setAllowedModes(link.getAllowedModes());
+				AttributesUtils.copyAttributesFromTo(link, newLink);
+				network.addLink(newLink);
+			}
+		}
+	}
+
+	/**
+	 * Replaces the transit routes with their mapped routes, the order of routes
+	 * within a transit line is kept.
+	 */
+	private void replaceMappedRoutes(Map<TransitRoute, TransitRoute> mappedRoutes) {
+		for(TransitLine transitLine : schedule.getTransitLines().values()) {
+			List<TransitRoute> routes = new ArrayList<>(transitLine.getRoutes().values());
+			if(routes.stream().anyMatch(mappedRoutes::containsKey)) {
+				for(TransitRoute transitRoute : routes) {
+					transitLine.removeRoute(transitRoute);
+				}
+				for(TransitRoute transitRoute : routes) {
+					transitLine.addRoute(mappedRoutes.getOrDefault(transitRoute, transitRoute));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Minimal transfer times between parent stop facilities are copied to their child
+	 * stop facilities. Partitions are mapped without transfer times since children of
+	 * the same parents can be created by different partitions.
+	 */
+	private void copyMinimalTransferTimesToChildren(Set<Id<TransitStopFacility>> childStopFacilities) {
+		Map<Id<TransitStopFacility>, List<Id<TransitStopFacility>>> parentsToChildren = new HashMap<>();
+		for(Id<TransitStopFacility> childId : childStopFacilities) {
+			parentsToChildren.computeIfAbsent(ScheduleTools.createParentStopFacilityId(childId.toString()), k -> new ArrayList<>()).add(childId);
+		}
+
+		PTMapperTools.copyMinimalTransferTimesToChildren(schedule, parentsToChildren);
+	}
+}
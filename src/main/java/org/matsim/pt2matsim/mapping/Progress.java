@@ -3,41 +3,120 @@ package org.matsim.pt2matsim.mapping;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
-public class Progress {
-	private Logger logger = LogManager.getLogger(Progress.class);
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Logs the progress of a task with a known number of steps. Updates only
+ * increment a {@link LongAdder} and can be called from any number of threads
+ * without contention. A single background thread shared by all active
+ * progresses logs them once per {@link #REPORT_INTERVAL_MS}.
+ * <p>
+ * The final count is logged once the total is reached or when the progress is
+ * closed. Progresses that might not reach the total (e.g. if steps are skipped)
+ * should be closed, otherwise they are reported until the JVM exits.
+ */
+public class Progress implements AutoCloseable {
+
+	public static final long REPORT_INTERVAL_MS = 1000;
+
+	private static final Logger logger = LogManager.getLogger(Progress.class);
+
+	private static final List<Progress> active = new ArrayList<>();
+	private static Thread reporter = null;
 
 	private final long total;
 	private final String description;
-
-	private long current = 0;
-	private long lastOutput = 0;
-	
-	private Object lock = new Object();
+	private final LongAdder current = new LongAdder();
+	private volatile boolean done = false;
 
 	public Progress(long total, String description) {
 		this.total = total;
 		this.description = description;
-		print();
+		print(0);
+		if(total > 0) {
+			register(this);
+		} else {
+			done = true;
+		}
 	}
 
 	public void update(long count) {
-		synchronized(lock) {
-			current += count;
-			print();
-		}
+		current.add(count);
 	}
 
 	public void update() {
-		synchronized(lock) {
-			current += 1;
-			print();
+		current.increment();
+	}
+
+	public long getCurrent() {
+		return current.sum();
+	}
+
+	/**
+	 * Logs the final count if it has not been logged yet and stops reporting
+	 */
+	@Override
+	public void close() {
+		synchronized(active) {
+			if(done) {
+				return;
+			}
+			done = true;
+			active.remove(this);
+		}
+		print(current.sum());
+	}
+
+	private void print(long count) {
+		logger.info(String.format("%s %d/%d (%.2f%%)", description, count, total, total == 0 ? 100.0 : 100.0 * count / total));
+	}
+
+	private static void register(Progress progress) {
+		synchronized(active) {
+			active.add(progress);
+			if(reporter == null) {
+				reporter = new Thread(Progress::report, "progress-reporter");
+				reporter.setDaemon(true);
+				reporter.start();
+			}
 		}
 	}
 
-	private void print() {
-		if ((System.nanoTime() - lastOutput >= 1000000000L) || current == total) {
-			lastOutput = System.nanoTime();
-			logger.info(String.format("%s %d/%d (%.2f%%)", description, current, total, 100.0 * current / total));
+	/**
+	 * Reporter loop, ends if no progress is active or if interrupted. A new reporter
+	 * is started by the next registered progress.
+	 */
+	private static void report() {
+		while(true) {
+			try {
+				Thread.sleep(REPORT_INTERVAL_MS);
+			} catch (InterruptedException e) {
+				synchronized(active) {
+					if(reporter == Thread.currentThread()) {
+						reporter = null;
+					}
+				}
+				Thread.currentThread().interrupt();
+				return;
+			}
+			List<Progress> progresses;
+			synchronized(active) {
+				if(active.isEmpty()) {
+					reporter = null;
+					return;
+				}
+				progresses = new ArrayList<>(active);
+			}
+			for(Progress progress : progresses) {
+				long count = progress.current.sum();
+				if(count >= progress.total) {
+					progress.close();
+				} else if(!progress.done) {
+					progress.print(count);
+				}
+			}
 		}
 	}
 }
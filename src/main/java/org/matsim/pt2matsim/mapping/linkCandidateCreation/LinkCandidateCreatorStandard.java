@@ -35,6 +35,7 @@ import org.matsim.pt2matsim.mapping.Progress;
 import org.matsim.pt2matsim.tools.MiscUtils;
 import org.matsim.pt2matsim.tools.NetworkTools;
 import org.matsim.pt2matsim.tools.PTMapperTools;
+import org.matsim.pt2matsim.tools.lib.ModeFilteredNetworkView;
 
 import java.util.*;
 
@@ -58,6 +59,7 @@ public class LinkCandidateCreatorStandard implements LinkCandidateCreator {
 	private final double distanceMultiplier;
 	private final double maxDistance;
 	private final Map<String, Set<String>> transportModeAssignments;
+	private final Map<Set<String>, ModeFilteredNetworkView> networkViews = new HashMap<>();
 	private double nodeSearchRadius;
 
 
@@ -94,138 +96,140 @@ public class LinkCandidateCreatorStandard implements LinkCandidateCreator {
 			totalNumberOfRoutes += transitLine.getRoutes().size();
 		}
 		
-		Progress progress = new Progress(totalNumberOfRoutes, "Getting closest links ...");
-
-		/*
-		  get closest links for each stop facility (separated by mode)
-		 */
-		for(TransitLine transitLine : schedule.getTransitLines().values()) {
-			for(TransitRoute transitRoute : transitLine.getRoutes().values()) {
-				String scheduleTransportMode = transitRoute.getTransportMode();
-				Set<String> networkModes = transportModeAssignments.get(scheduleTransportMode);
-
-				// If no transportModes have been defined in the config, no links should be found by findClosestLink (which requires an empty set)
-				if(networkModes == null) {
-					log.warn("No transportModeAssignment found for schedule mode " + scheduleTransportMode);
-					networkModes = new HashSet<>();
-					transportModeAssignments.put(scheduleTransportMode, networkModes);
-				}
+		try(Progress progress = new Progress(totalNumberOfRoutes, "Getting closest links ...")) {
+
+			/*
+			  get closest links for each stop facility (separated by mode)
+			 */
+			for(TransitLine transitLine : schedule.getTransitLines().values()) {
+				for(TransitRoute transitRoute : transitLine.getRoutes().values()) {
+					String scheduleTransportMode = transitRoute.getTransportMode();
+					Set<String> networkModes = transportModeAssignments.get(scheduleTransportMode);
+
+					// If no transportModes have been defined in the config, no links should be found by findClosestLink (which requires an empty set)
+					if(networkModes == null) {
+						log.warn("No transportModeAssignment found for schedule mode " + scheduleTransportMode);
+						networkModes = new HashSet<>();
+						transportModeAssignments.put(scheduleTransportMode, networkModes);
+					}
 
-				TransitRouteStop previousRouteStop = transitRoute.getStops().get(0);
+					TransitRouteStop previousRouteStop = transitRoute.getStops().get(0);
 
-				stops.put(PublicTransitStop.createId(transitLine, transitRoute, previousRouteStop), new PublicTransitStopImpl(transitLine, transitRoute, previousRouteStop));
+					stops.put(PublicTransitStop.createId(transitLine, transitRoute, previousRouteStop), new PublicTransitStopImpl(transitLine, transitRoute, previousRouteStop));
 
-				Set<Link> tmpCloseLinks = MapUtils.getSet(getCloseLinksKey(transitRoute, previousRouteStop), closeLinksMap);
-				if(tmpCloseLinks.size() == 0) {
-					tmpCloseLinks.addAll(findClosestLinks(previousRouteStop.getStopFacility().getCoord(), networkModes));
-				}
+					Set<Link> tmpCloseLinks = MapUtils.getSet(getCloseLinksKey(transitRoute, previousRouteStop), closeLinksMap);
+					if(tmpCloseLinks.size() == 0) {
+						tmpCloseLinks.addAll(findClosestLinks(previousRouteStop.getStopFacility().getCoord(), networkModes));
+					}
 
-				Set<Link> previousLinks = new HashSet<>(tmpCloseLinks);
+					Set<Link> previousLinks = new HashSet<>(tmpCloseLinks);
 
-				for(int i = 1; i < transitRoute.getStops().size(); i++) {
-					TransitStopFacility previousStopFacility = previousRouteStop.getStopFacility();
-					TransitRouteStop currentRouteStop = transitRoute.getStops().get(i);
-					TransitStopFacility currentStopFacility = currentRouteStop.getStopFacility();
-					stops.put(PublicTransitStop.createId(transitLine, transitRoute, currentRouteStop), new PublicTransitStopImpl(transitLine, transitRoute, currentRouteStop));
+					for(int i = 1; i < transitRoute.getStops().size(); i++) {
+						TransitStopFacility previousStopFacility = previousRouteStop.getStopFacility();
+						TransitRouteStop currentRouteStop = transitRoute.getStops().get(i);
+						TransitStopFacility currentStopFacility = currentRouteStop.getStopFacility();
+						stops.put(PublicTransitStop.createId(transitLine, transitRoute, currentRouteStop), new PublicTransitStopImpl(transitLine, transitRoute, currentRouteStop));
 
-					Set<Link> currentLinks = new HashSet<>();
+						Set<Link> currentLinks = new HashSet<>();
 
-					/*
-					  if stop facility already has a referenced link
-					 */
-					if(currentStopFacility.getLinkId() != null) {
-						currentLinks.add(network.getLinks().get(currentStopFacility.getLinkId()));
-						if(previousLinks.contains(network.getLinks().get(currentStopFacility.getLinkId()))) {
-							previousLinks.remove(network.getLinks().get(currentStopFacility.getLinkId()));
+						/*
+						  if stop facility already has a referenced link
+						 */
+						if(currentStopFacility.getLinkId() != null) {
+							currentLinks.add(network.getLinks().get(currentStopFacility.getLinkId()));
+							if(previousLinks.contains(network.getLinks().get(currentStopFacility.getLinkId()))) {
+								previousLinks.remove(network.getLinks().get(currentStopFacility.getLinkId()));
+							}
 						}
-					}
-					/*
-					  look for links close to stop facility
-					 */
-					else {
-						Set<Link> closeLinks = MapUtils.getSet(getCloseLinksKey(transitRoute, currentRouteStop), closeLinksMap);
-
-						// look for closes links in network
-						if(closeLinks.size() == 0) {
-							closeLinks.addAll(findClosestLinks(currentRouteStop.getStopFacility().getCoord(), networkModes));
+						/*
+						  look for links close to stop facility
+						 */
+						else {
+							Set<Link> closeLinks = MapUtils.getSet(getCloseLinksKey(transitRoute, currentRouteStop), closeLinksMap);
+
+							// look for closes links in network
+							if(closeLinks.size() == 0) {
+								closeLinks.addAll(findClosestLinks(currentRouteStop.getStopFacility().getCoord(), networkModes));
+							}
+
+							currentLinks.addAll(closeLinks);
 						}
 
-						currentLinks.addAll(closeLinks);
-					}
-
-					/*
-					  Separate links that belong to two subsequent stops
-					 */
-					PTMapperTools.separateLinks(currentStopFacility.getCoord(), currentLinks, previousStopFacility.getCoord(), previousLinks);
+						/*
+						  Separate links that belong to two subsequent stops
+						 */
+						PTMapperTools.separateLinks(currentStopFacility.getCoord(), currentLinks, previousStopFacility.getCoord(), previousLinks);
 
-					candidates.put(PublicTransitStop.createId(transitLine, transitRoute, previousRouteStop), previousLinks);
-					candidates.put(PublicTransitStop.createId(transitLine, transitRoute, currentRouteStop), currentLinks);
+						candidates.put(PublicTransitStop.createId(transitLine, transitRoute, previousRouteStop), previousLinks);
+						candidates.put(PublicTransitStop.createId(transitLine, transitRoute, currentRouteStop), currentLinks);
 
-					previousLinks = currentLinks;
-					previousRouteStop = currentRouteStop;
-				}
+						previousLinks = currentLinks;
+						previousRouteStop = currentRouteStop;
+					}
 				
-				progress.update();
+					progress.update();
+				}
 			}
 		}
 
 		Map<Id<PublicTransitStop>, Double> maxStopDist = new HashMap<>();
 		Map<Id<PublicTransitStop>, Double> minStopDist = new HashMap<>();
-		
-		progress = new Progress(candidates.size(), "Creating link candidates ...");
+		try(Progress progress = new Progress(candidates.size(), "Creating link candidates ...")) {
 
-		/*
-		  create and store link candidates
-		 */
-		for(Map.Entry<Id<PublicTransitStop>, Set<Link>> c : candidates.entrySet()) {
-			PublicTransitStop stop = stops.get(c.getKey());
-			Set<Link> links = c.getValue();
-
-			if(links.size() > 0) {
-				NetworkTools.reduceSequencedLinks(links, stop.getStopFacility().getCoord());
-			} else {
-				// no links for this stop, create artificial loop link
-				links = new HashSet<>();
-				links.add(createLoopLink(stop.getStopFacility()));
-			}
+			/*
+			  create and store link candidates
+			 */
+			for(Map.Entry<Id<PublicTransitStop>, Set<Link>> c : candidates.entrySet()) {
+				PublicTransitStop stop = stops.get(c.getKey());
+				Set<Link> links = c.getValue();
 
-			double minDist = Double.MAX_VALUE;
-			double maxDist = 0.0;
+				if(links.size() > 0) {
+					NetworkTools.reduceSequencedLinks(links, stop.getStopFacility().getCoord());
+				} else {
+					// no links for this stop, create artificial loop link
+					links = new HashSet<>();
+					links.add(createLoopLink(stop.getStopFacility()));
+				}
 
-			for(Link link : links) {
-				LinkCandidate linkCandidate = new LinkCandidateImpl(link, stop);
-				MiscUtils.getSortedSet(stop.getId(), linkCandidates).add(linkCandidate);
+				double minDist = Double.MAX_VALUE;
+				double maxDist = 0.0;
 
-				if(linkCandidate.getStopFacilityDistance() > maxDist) maxDist = linkCandidate.getStopFacilityDistance();
-				if(linkCandidate.getStopFacilityDistance() < minDist) minDist = linkCandidate.getStopFacilityDistance();
-			}
+				for(Link link : links) {
+					LinkCandidate linkCandidate = new LinkCandidateImpl(link, stop);
+					MiscUtils.getSortedSet(stop.getId(), linkCandidates).add(linkCandidate);
 
-			maxStopDist.put(stop.getId(), maxDist);
-			minStopDist.put(stop.getId(), minDist);
+					if(linkCandidate.getStopFacilityDistance() > maxDist) maxDist = linkCandidate.getStopFacilityDistance();
+					if(linkCandidate.getStopFacilityDistance() < minDist) minDist = linkCandidate.getStopFacilityDistance();
+				}
+
+				maxStopDist.put(stop.getId(), maxDist);
+				minStopDist.put(stop.getId(), minDist);
 			
-			progress.update();
+				progress.update();
+			}
 		}
 
 		/*
 		Set priorities
 		 */
 		int nLC = 0;
-		progress = new Progress(linkCandidates.size(), "Setting candidate priorities ...");
-		
-		for(Map.Entry<Id<PublicTransitStop>, SortedSet<LinkCandidate>> entry : linkCandidates.entrySet()) {
-			double minDist = minStopDist.get(entry.getKey());
-			double maxDist = maxStopDist.get(entry.getKey());
-			double delta = maxDist - minDist;
-
-			for(LinkCandidate candidate : entry.getValue()) {
-				double d = candidate.getStopFacilityDistance();
-				if(delta > 0) {
-					candidate.setPriority(1 - ((d - minDist) / (maxDist - minDist)));
-				} else {
-					candidate.setPriority(1);
+		try(Progress progress = new Progress(linkCandidates.size(), "Setting candidate priorities ...")) {
+			for(Map.Entry<Id<PublicTransitStop>, SortedSet<LinkCandidate>> entry : linkCandidates.entrySet()) {
+				double minDist = minStopDist.get(entry.getKey());
+				double maxDist = maxStopDist.get(entry.getKey());
+				double delta = maxDist - minDist;
+
+				for(LinkCandidate candidate : entry.getValue()) {
+					double d = candidate.getStopFacilityDistance();
+					if(delta > 0) {
+						candidate.setPriority(1 - ((d - minDist) / (maxDist - minDist)));
+					} else {
+						candidate.setPriority(1);
+					}
 				}
+				nLC += entry.getValue().size();
+				progress.update();
 			}
-			nLC += entry.getValue().size();
 		}
 		if(linkCandidates.size() == 0) {
 			log.warn("No link candidates created!");
@@ -265,7 +269,8 @@ public class LinkCandidateCreatorStandard implements LinkCandidateCreator {
 	 */
 	private List<Link> findClosestLinks(Coord coord, Set<String> networkModes) {
 		List<Link> closestLinks = new ArrayList<>();
-		Map<Double, Set<Link>> sortedLinks = NetworkTools.findClosestLinks(network, coord, nodeSearchRadius, networkModes);
+		ModeFilteredNetworkView view = networkViews.computeIfAbsent(networkModes, modes -> new ModeFilteredNetworkView(network, modes));
+		Map<Double, Set<Link>> sortedLinks = NetworkTools.findClosestLinks(view, coord, nodeSearchRadius);
 
 		double distanceThreshold = this.maxDistance;
 		int nLink = 0;
@@ -0,0 +1,108 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2016 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.pt2matsim.mapping.networkRouter;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.pt.transitSchedule.api.TransitLine;
+import org.matsim.pt.transitSchedule.api.TransitRoute;
+import org.matsim.pt.transitSchedule.api.TransitRouteStop;
+import org.matsim.pt2matsim.mapping.MappingMetrics;
+import org.matsim.pt2matsim.mapping.linkCandidateCreation.LinkCandidate;
+
+/**
+ * Records call counts and latencies of the wrapped {@link ScheduleRouters} in
+ * {@link MappingMetrics}. Only used by {@link org.matsim.pt2matsim.mapping.PTMapper}
+ * if router calls should be measured.
+ */
+public class MeasuredScheduleRouters implements ScheduleRouters {
+
+	public static final String CALC_PATH = "calcLeastCostPath";
+	public static final String MIN_TRAVEL_COST = "getMinimalTravelCost";
+	public static final String LINK_CANDIDATE_COST = "getLinkCandidateTravelCost";
+
+	private final ScheduleRouters delegate;
+	private final MappingMetrics metrics;
+
+	public MeasuredScheduleRouters(ScheduleRouters delegate, MappingMetrics metrics) {
+		this.delegate = delegate;
+		this.metrics = metrics;
+	}
+
+	@Override
+	public LeastCostPathCalculator.Path calcLeastCostPath(LinkCandidate fromLinkCandidate, LinkCandidate toLinkCandidate, TransitLine transitLine, TransitRoute transitRoute) {
+		long start = System.nanoTime();
+		LeastCostPathCalculator.Path path = delegate.calcLeastCostPath(fromLinkCandidate, toLinkCandidate, transitLine, transitRoute);
+		metrics.recordCall(CALC_PATH, start);
+		return path;
+	}
+
+	@Override
+	public LeastCostPathCalculator.Path calcLeastCostPath(Link fromLink, Link toLink, TransitLine transitLine, TransitRoute transitRoute) {
+		long start = System.nanoTime();
+		LeastCostPathCalculator.Path path = delegate.calcLeastCostPath(fromLink, toLink, transitLine, transitRoute);
+		metrics.recordCall(CALC_PATH, start);
+		return path;
+	}
+
+	@Override
+	public LeastCostPathCalculator.Path calcLeastCostPath(Id<Node> fromNode, Id<Node> toNode, TransitLine transitLine, TransitRoute transitRoute) {
+		long start = System.nanoTime();
+		LeastCostPathCalculator.Path path = delegate.calcLeastCostPath(fromNode, toNode, transitLine, transitRoute);
+		metrics.recordCall(CALC_PATH, start);
+		return path;
+	}
+
+	@Override
+	public double getMinimalTravelCost(TransitRouteStop fromTransitRouteStop, TransitRouteStop toTransitRouteStop, TransitLine transitLine, TransitRoute transitRoute) {
+		long start = System.nanoTime();
+		double cost = delegate.getMinimalTravelCost(fromTransitRouteStop, toTransitRouteStop, transitLine, transitRoute);
+		metrics.recordCall(MIN_TRAVEL_COST, start);
+		return cost;
+	}
+
+	@Override
+	public double getLinkCandidateTravelCost(LinkCandidate linkCandidateCurrent) {
+		long start = System.nanoTime();
+		double cost = delegate.getLinkCandidateTravelCost(linkCandidateCurrent);
+		metrics.recordCall(LINK_CANDIDATE_COST, start);
+		return cost;
+	}
+
+	/**
+	 * Wraps the routers created by another factory
+	 */
+	public static class Factory implements ScheduleRoutersFactory {
+
+		private final ScheduleRoutersFactory delegate;
+		private final MappingMetrics metrics;
+
+		public Factory(ScheduleRoutersFactory delegate, MappingMetrics metrics) {
+			this.delegate = delegate;
+			this.metrics = metrics;
+		}
+
+		@Override
+		public ScheduleRouters createInstance() {
+			return new MeasuredScheduleRouters(delegate.createInstance(), metrics);
+		}
+	}
+}
@@ -25,10 +25,10 @@ import org.matsim.pt.transitSchedule.api.TransitRouteStop;
 import org.matsim.pt.transitSchedule.api.TransitSchedule;
 import org.matsim.pt2matsim.config.PublicTransitMappingConfigGroup;
 import org.matsim.pt2matsim.mapping.linkCandidateCreation.LinkCandidate;
-import org.matsim.pt2matsim.tools.NetworkTools;
 import org.matsim.pt2matsim.tools.PTMapperTools;
 import org.matsim.pt2matsim.tools.ScheduleTools;
 import org.matsim.pt2matsim.tools.ShapeTools;
+import org.matsim.pt2matsim.tools.lib.ModeFilteredNetworkView;
 import org.matsim.pt2matsim.tools.lib.RouteShape;
 import org.matsim.vehicles.Vehicle;
 
@@ -53,6 +53,7 @@ public class ScheduleRoutersGtfsShapes implements ScheduleRouters {
 	private final Map<Id<RouteShape>, PathCalculator> pathCalculatorsByShape = new HashMap<>();
 	private final Map<Id<RouteShape>, ShapeRouter> shapeRoutersByShape = new HashMap<>();
 	private final Map<Id<RouteShape>, Network> networksByShape = new HashMap<>();
+	private final Map<String, ModeFilteredNetworkView> networkViewsByMode = new HashMap<>();
 	// shape fields
 	private final Map<Id<RouteShape>, RouteShape> shapes;
 	private final double maxWeightDistance;
@@ -99,12 +100,12 @@ public class ScheduleRoutersGtfsShapes implements ScheduleRouters {
 					MapUtils.getMap(transitLine, mapArtificial).put(transitRoute, false);
 					pathCalculator = pathCalculatorsByShape.get(shapeId);
 					if(pathCalculator == null) {
-						Set<String> networkTransportModes = transportModeAssignment.get(transitRoute.getTransportMode());
+						ModeFilteredNetworkView view = networkViewsByMode.computeIfAbsent(transitRoute.getTransportMode(),
+								mode -> new ModeFilteredNetworkView(network, transportModeAssignment.get(mode)));
 
-						// todo this setup could be improved (i.e. don't recreate/filter networks all over again)
-						cutNetwork = NetworkTools.createFilteredNetworkByLinkMode(network, networkTransportModes);
-						Collection<Node> nodesWithinBuffer = ShapeTools.getNodesWithinBuffer(cutNetwork, shape, cutBuffer);
-						NetworkTools.cutNetwork(cutNetwork, nodesWithinBuffer);
+						// only the part of the mode filtered network within the buffer is copied
+						Collection<Node> nodesWithinBuffer = ShapeTools.getNodesWithinBuffer(network, shape, cutBuffer);
+						cutNetwork = view.createSubnetwork(nodesWithinBuffer);
 
 						ShapeRouter r = new ShapeRouter(shape);
 						pathCalculator = new PathCalculator(new FastAStarEuclideanFactory().createPathCalculator(cutNetwork, r, r));
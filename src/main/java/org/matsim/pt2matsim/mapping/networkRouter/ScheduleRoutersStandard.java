@@ -1,46 +1,40 @@
 package org.matsim.pt2matsim.mapping.networkRouter;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.api.core.v01.network.Node;
-import org.matsim.api.core.v01.population.Person;
 import org.matsim.core.config.Config;
-import org.matsim.core.network.algorithms.NetworkInverter;
+import org.matsim.core.network.algorithms.NetworkExpandNode.TurnInfo;
 import org.matsim.core.network.algorithms.NetworkTurnInfoBuilder;
-import org.matsim.core.network.algorithms.NetworkTurnInfoBuilderI;
-import org.matsim.core.router.FastAStarEuclideanFactory;
-import org.matsim.core.router.FastAStarLandmarksFactory;
-import org.matsim.core.router.FastDijkstraFactory;
-import org.matsim.core.router.costcalculators.TravelDisutilityFactory;
 import org.matsim.core.router.util.LeastCostPathCalculator;
-import org.matsim.core.router.util.LeastCostPathCalculatorFactory;
-import org.matsim.core.router.util.LinkToLinkTravelTime;
-import org.matsim.core.router.util.TravelDisutility;
-import org.matsim.core.router.util.TravelTime;
 import org.matsim.core.scenario.ScenarioUtils;
 import org.matsim.core.utils.geometry.CoordUtils;
+import org.matsim.lanes.Lanes;
+import org.matsim.lanes.LanesReader;
 import org.matsim.pt.transitSchedule.api.TransitLine;
 import org.matsim.pt.transitSchedule.api.TransitRoute;
 import org.matsim.pt.transitSchedule.api.TransitRouteStop;
 import org.matsim.pt.transitSchedule.api.TransitSchedule;
 import org.matsim.pt2matsim.config.PublicTransitMappingConfigGroup;
-import org.matsim.pt2matsim.mapping.InvertedLeastPathCalculator;
 import org.matsim.pt2matsim.mapping.linkCandidateCreation.LinkCandidate;
-import org.matsim.pt2matsim.tools.NetworkTools;
 import org.matsim.pt2matsim.tools.PTMapperTools;
-import org.matsim.vehicles.Vehicle;
 
 /**
  * Creates a Router for each transportMode of a schedule.
  * <p>
- * Default ScheduleRouters
+ * Default ScheduleRouters. Paths are calculated on a link-to-link {@link TurnGraph}
+ * that respects the allowed turns of the network. The graph is built once by the
+ * {@link Factory} and shared by all instances, each schedule mode uses a view of
+ * the graph that only contains links with one of its network modes.
  *
  * @author polettif
  */
@@ -53,107 +47,64 @@ public class ScheduleRoutersStandard implements ScheduleRouters {
 	private final Network network;
 	private final Map<String, Set<String>> transportModeAssignment;
 	private final PublicTransitMappingConfigGroup.TravelCostType travelCostType;
-	private final Config config;
-	// path calculators
-	private final Map<String, PathCalculator> pathCalculatorsByMode = new HashMap<>();
-	private final Map<String, Network> networksByMode = new HashMap<>();
+	private final TurnGraph turnGraph;
+	// mode views and the router of this instance
+	private final Map<String, Long> modeMasks = new HashMap<>();
+	private final TurnGraphRouter router;
 	private final boolean considerCandidateDist;
-	private final int nThreads;
-	private NetworkTurnInfoBuilderI networkTurninforBuilder;
 
-	private ScheduleRoutersStandard(TransitSchedule schedule, Config config,Network network, Map<String, Set<String>> transportModeAssignment, PublicTransitMappingConfigGroup.TravelCostType costType, boolean routingWithCandidateDistance) {
+	private ScheduleRoutersStandard(TransitSchedule schedule, Network network, TurnGraph turnGraph, Map<String, Set<String>> transportModeAssignment, PublicTransitMappingConfigGroup.TravelCostType costType, boolean routingWithCandidateDistance) {
 		this.schedule = schedule;
 		this.network = network;
 		this.transportModeAssignment = transportModeAssignment;
 		this.travelCostType = costType;
 		this.considerCandidateDist = routingWithCandidateDistance;
-		this.nThreads = 8;
-		this.config = config;
-		this.networkTurninforBuilder = new NetworkTurnInfoBuilder(ScenarioUtils.loadScenario(this.config));
-		load();
-	}
-
-	private ScheduleRoutersStandard(TransitSchedule schedule, Config config, Network network, Map<String, Set<String>> transportModeAssignment, PublicTransitMappingConfigGroup.TravelCostType costType, boolean routingWithCandidateDistance, int nThreads) {
-		this.schedule = schedule;
-		this.network = network;
-		this.transportModeAssignment = transportModeAssignment;
-		this.travelCostType = costType;
-		this.considerCandidateDist = routingWithCandidateDistance;
-		this.nThreads = nThreads;
-		this.config = config;
-		this.networkTurninforBuilder = new NetworkTurnInfoBuilder(ScenarioUtils.loadScenario(this.config));
+		this.turnGraph = turnGraph;
+		this.router = new TurnGraphRouter(turnGraph);
 		load();
 	}
 
 	/**
-	 * Load path calculators for all transit routes
+	 * Load the mode views for all transit routes
 	 */
 	private void load() {
 		log.info("==============================================");
 		log.info("Creating network routers for transit routes...");
-		log.info("Initiating network and router for transit routes...");
-		//LeastCostPathCalculatorFactory factory = new FastAStarLandmarksFactory(nThreads);
-		LeastCostPathCalculatorFactory factory = new FastAStarEuclideanFactory(nThreads);
-		
 		for(TransitLine transitLine : schedule.getTransitLines().values()) {
 			for(TransitRoute transitRoute : transitLine.getRoutes().values()) {
 				String scheduleMode = transitRoute.getTransportMode();
-				PathCalculator tmpRouter = pathCalculatorsByMode.get(scheduleMode);
-				if(tmpRouter == null) {
+				if(!modeMasks.containsKey(scheduleMode)) {
 					log.info("New router for schedule mode " + scheduleMode);
-					Set<String> networkTransportModes = transportModeAssignment.get(scheduleMode);
-
-					Network filteredNetwork = NetworkTools.createFilteredNetworkByLinkMode(this.network, networkTransportModes);
-					Network network = new NetworkInverter(filteredNetwork,this.networkTurninforBuilder.createAllowedTurnInfos()).getInvertedNetwork();
-					LocalRouter r = new LocalRouter();
-					TravelDisutilityFactory disutility = new TravelDisutilityFactory() {
-                        @Override
-                        public TravelDisutility createTravelDisutility(TravelTime timeCalculator) {
-                            return r;
-                        };
-                        };
-					InvertedLeastPathCalculator lpc = InvertedLeastPathCalculator.create(factory, disutility, filteredNetwork, network, r);
-					//tmpRouter = new PathCalculator(factory.createPathCalculator(filteredNetwork, r, r));
-					tmpRouter = new PathCalculator(lpc);
-					pathCalculatorsByMode.put(scheduleMode, tmpRouter);
-					networksByMode.put(scheduleMode, filteredNetwork);
+					modeMasks.put(scheduleMode, turnGraph.getModeMask(transportModeAssignment.get(scheduleMode)));
 				}
 			}
 		}
 	}
 
+	private long getModeMask(TransitRoute transitRoute) {
+		return modeMasks.computeIfAbsent(transitRoute.getTransportMode(), m -> turnGraph.getModeMask(transportModeAssignment.get(m)));
+	}
 
 	@Override
 	public LeastCostPathCalculator.Path calcLeastCostPath(LinkCandidate fromLinkCandidate, LinkCandidate toLinkCandidate, TransitLine transitLine, TransitRoute transitRoute) {
-		if(pathCalculatorsByMode.get(transitRoute.getTransportMode()).getLeastCostPathCalculator() instanceof InvertedLeastPathCalculator) {
-			InvertedLeastPathCalculator lpc = (InvertedLeastPathCalculator) pathCalculatorsByMode.get(transitRoute.getTransportMode()).getLeastCostPathCalculator();
-			Node fromNode = lpc.getInvertedNetwork().getNodes().get(Id.createNodeId(fromLinkCandidate.getLink().getId().toString()));
-			Node toNode = lpc.getInvertedNetwork().getNodes().get(Id.createNodeId(toLinkCandidate.getLink().getId().toString()));
-			return pathCalculatorsByMode.get(transitRoute.getTransportMode()).calcPath(fromNode,toNode);
-		}
-		return this.calcLeastCostPath(fromLinkCandidate.getLink().getToNode().getId(), toLinkCandidate.getLink().getFromNode().getId(), transitLine, transitRoute);
+		return calcLeastCostPath(fromLinkCandidate.getLink(), toLinkCandidate.getLink(), transitLine, transitRoute);
 	}
 	
 	@Override
 	public LeastCostPathCalculator.Path calcLeastCostPath(Link fromLinkCandidate, Link toLinkCandidate, TransitLine transitLine, TransitRoute transitRoute) {
-		if(pathCalculatorsByMode.get(transitRoute.getTransportMode()).getLeastCostPathCalculator() instanceof InvertedLeastPathCalculator) {
-			InvertedLeastPathCalculator lpc = (InvertedLeastPathCalculator) pathCalculatorsByMode.get(transitRoute.getTransportMode()).getLeastCostPathCalculator();
-			Node fromNode = lpc.getInvertedNetwork().getNodes().get(Id.createNodeId(fromLinkCandidate.getId().toString()));
-			Node toNode = lpc.getInvertedNetwork().getNodes().get(Id.createNodeId(toLinkCandidate.getId().toString()));
-			return pathCalculatorsByMode.get(transitRoute.getTransportMode()).calcPath(fromNode,toNode);
-		}
-		return this.calcLeastCostPath(fromLinkCandidate.getToNode().getId(), toLinkCandidate.getFromNode().getId(), transitLine, transitRoute);
+		return router.calcLeastCostPath(fromLinkCandidate, toLinkCandidate, getModeMask(transitRoute));
 	}
 
+	/**
+	 * Node to node paths are calculated on the turn graph as well: turns between the links
+	 * of the path are restricted, any link leaving the from node can be the first link.
+	 */
 	@Override
 	public LeastCostPathCalculator.Path calcLeastCostPath(Id<Node> fromNodeId, Id<Node> toNodeId, TransitLine transitLine, TransitRoute transitRoute) {
-		Network n = networksByMode.get(transitRoute.getTransportMode());
-		if(n == null) return null;
-
-		Node fromNode = n.getNodes().get(fromNodeId);
-		Node toNode = n.getNodes().get(toNodeId);
+		Node fromNode = network.getNodes().get(fromNodeId);
+		Node toNode = network.getNodes().get(toNodeId);
 		if(fromNode == null || toNode == null) return null;
-		return pathCalculatorsByMode.get(transitRoute.getTransportMode()).calcPath(fromNode, toNode);
+		return router.calcLeastCostPath(fromNode, toNode, getModeMask(transitRoute));
 	}
 
 	@Override
@@ -175,51 +126,36 @@ public class ScheduleRoutersStandard implements ScheduleRouters {
 	}
 
 	/**
-	 * Class is sent to path calculator factory
-	 */
-	private class LocalRouter implements TravelDisutility, TravelTime, LinkToLinkTravelTime {
-
-		@Override
-		public double getLinkTravelDisutility(Link link, double time, Person person, Vehicle vehicle) {
-			return this.getLinkMinimumTravelDisutility(link);
-		}
-
-		@Override
-		public double getLinkMinimumTravelDisutility(Link link) {
-			return PTMapperTools.calcTravelCost(link, travelCostType);
-		}
-
-		@Override
-		public double getLinkTravelTime(Link link, double time, Person person, Vehicle vehicle) {
-			return link.getLength() / link.getFreespeed();
-		}
-
-		@Override
-		public double getLinkToLinkTravelTime(Link fromLink, Link toLink, double time, Person person, Vehicle vehicle) {
-			
-			return this.getLinkTravelTime(fromLink, time, null, null);
-		}
-	}
-
-	/**
-	 * Factory for a ScheduleRoutersStandard instance
+	 * Factory for a ScheduleRoutersStandard instance. The turn graph is built once from
+	 * the in-memory network (and lanes) and shared by all instances.
 	 */
 	public static class Factory implements ScheduleRoutersFactory {
 		private final TransitSchedule schedule;
 		private final Network network;
+		private final Lanes lanes;
 		private final Config config;
 		private final Map<String, Set<String>> transportModeAssignment;
 		private final PublicTransitMappingConfigGroup.TravelCostType costType;
 		private boolean routingWithCandidateDistance;
-		
-		public Factory(TransitSchedule schedule, Config config, Network network, Map<String, Set<String>> transportModeAssignment, PublicTransitMappingConfigGroup.TravelCostType costType, boolean routingWithCandidateDistance) {
+		private TurnGraph turnGraph = null;
+
+		/**
+		 * @param lanes lane definitions restricting turns, can be <tt>null</tt>. If no lanes are given but the
+		 *              config uses lanes, they are read from the lane definitions file.
+		 */
+		public Factory(TransitSchedule schedule, Config config, Network network, Lanes lanes, Map<String, Set<String>> transportModeAssignment, PublicTransitMappingConfigGroup.TravelCostType costType, boolean routingWithCandidateDistance) {
 			this.schedule = schedule;
 			this.network = network;
+			this.lanes = lanes;
 			this.transportModeAssignment = transportModeAssignment;
 			this.costType = costType;
 			this.routingWithCandidateDistance = routingWithCandidateDistance;
 			this.config = config;
 		}
+
+		public Factory(TransitSchedule schedule, Config config, Network network, Map<String, Set<String>> transportModeAssignment, PublicTransitMappingConfigGroup.TravelCostType costType, boolean routingWithCandidateDistance) {
+			this(schedule, config, network, null, transportModeAssignment, costType, routingWithCandidateDistance);
+		}
 		
 		public Factory(TransitSchedule schedule, Config mainConfig, Network network, PublicTransitMappingConfigGroup config) {
 			this(schedule, mainConfig,network, config.getTransportModeAssignment(), config.getTravelCostType(), config.getRoutingWithCandidateDistance());
@@ -227,8 +163,24 @@ public class ScheduleRoutersStandard implements ScheduleRouters {
 
 		@Override
 		public ScheduleRouters createInstance() {
-			return new ScheduleRoutersStandard(schedule,this.config, network, transportModeAssignment, costType, routingWithCandidateDistance);
+			return new ScheduleRoutersStandard(schedule, network, getTurnGraph(), transportModeAssignment, costType, routingWithCandidateDistance);
 		}
 
+		private synchronized TurnGraph getTurnGraph() {
+			if(turnGraph == null) {
+				ScenarioUtils.ScenarioBuilder builder = new ScenarioUtils.ScenarioBuilder(config).setNetwork(network);
+				if(lanes != null) {
+					builder.setLanes(lanes);
+				}
+				Scenario scenario = builder.build();
+				if(lanes == null && config.qsim().isUseLanes() && config.network().getLaneDefinitionsFile() != null) {
+					new LanesReader(scenario).readFile(config.network().getLaneDefinitionsFile());
+				}
+				Map<Id<Link>, List<TurnInfo>> turnInfos = new NetworkTurnInfoBuilder(scenario).createAllowedTurnInfos();
+				turnGraph = TurnGraph.create(network, turnInfos, link -> PTMapperTools.calcTravelCost(link, costType));
+				log.info("Turn graph created: " + turnGraph.getNumberOfLinks() + " links, " + turnGraph.getNumberOfTurns() + " turns");
+			}
+			return turnGraph;
+		}
 	}
 }
@@ -0,0 +1,194 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2014 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.pt2matsim.mapping.networkRouter;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.network.algorithms.NetworkExpandNode.TurnInfo;
+import org.matsim.core.utils.geometry.CoordUtils;
+import org.matsim.pt2matsim.tools.lib.ModeBits;
+
+import java.util.*;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Edge-based (link-to-link) graph of a network: links are the vertices and allowed
+ * turns the edges, stored in compressed sparse row arrays. The graph is built once
+ * for all schedule modes and is immutable, so it can be shared by all threads.
+ * <p>
+ * The allowed network modes of each link are stored as a bitmask (see {@link ModeBits}). A mode specific
+ * view of the network (equivalent to {@link org.matsim.pt2matsim.tools.NetworkTools#createFilteredNetworkByLinkMode})
+ * is a mask of the modes it contains: a link belongs to the view if it allows at least
+ * one of them.
+ */
+public final class TurnGraph {
+
+	private final Link[] links;
+	private final Map<Id<Link>, Integer> linkIndices;
+	private final int[] turnOffsets;
+	private final int[] turnTargets;
+	private final long[] linkModes;
+	private final ModeBits modeBits = new ModeBits();
+
+	private final double[] linkCosts;
+	private final double[] linkTravelTimes;
+	private final double[] toNodeX;
+	private final double[] toNodeY;
+	private final double minCostPerDistance;
+
+	private TurnGraph(Network network, Map<Id<Link>, List<TurnInfo>> turnInfos, ToDoubleFunction<Link> linkCost) {
+		int n = network.getLinks().size();
+		links = new Link[n];
+		linkIndices = new HashMap<>(n * 2);
+		linkModes = new long[n];
+		linkCosts = new double[n];
+		linkTravelTimes = new double[n];
+		toNodeX = new double[n];
+		toNodeY = new double[n];
+
+		double minFactor = Double.POSITIVE_INFINITY;
+		int i = 0;
+		for(Link link : network.getLinks().values()) {
+			links[i] = link;
+			linkIndices.put(link.getId(), i);
+			linkModes[i] = modeBits.getOrCreateMask(link.getAllowedModes());
+			if(linkModes[i] == ModeBits.UNKNOWN_MASK) {
+				throw new IllegalStateException("The network contains more than " + Long.SIZE + " different link modes");
+			}
+			linkCosts[i] = linkCost.applyAsDouble(link);
+			linkTravelTimes[i] = link.getLength() / link.getFreespeed();
+			toNodeX[i] = link.getToNode().getCoord().getX();
+			toNodeY[i] = link.getToNode().getCoord().getY();
+
+			double beeline = CoordUtils.calcEuclideanDistance(link.getFromNode().getCoord(), link.getToNode().getCoord());
+			if(beeline > 0) {
+				minFactor = Math.min(minFactor, linkCosts[i] / beeline);
+			}
+			i++;
+		}
+		minCostPerDistance = Double.isInfinite(minFactor) ? 0 : minFactor;
+
+		// turns as CSR arrays
+		turnOffsets = new int[n + 1];
+		int[][] targets = new int[n][];
+		int nTurns = 0;
+		for(i = 0; i < n; i++) {
+			List<TurnInfo> turns = turnInfos.get(links[i].getId());
+			int[] t = new int[turns == null ? 0 : turns.size()];
+			int k = 0;
+			if(turns != null) {
+				for(TurnInfo turn : turns) {
+					Integer to = linkIndices.get(turn.getToLinkId());
+					if(to != null) {
+						t[k++] = to;
+					}
+				}
+			}
+			targets[i] = k == t.length ? t : Arrays.copyOf(t, k);
+			nTurns += k;
+		}
+		turnTargets = new int[nTurns];
+		int pos = 0;
+		for(i = 0; i < n; i++) {
+			turnOffsets[i] = pos;
+			System.arraycopy(targets[i], 0, turnTargets, pos, targets[i].length);
+			pos += targets[i].length;
+		}
+		turnOffsets[n] = pos;
+	}
+
+	/**
+	 * @param turnInfos allowed turns per from link, e.g. created by {@link org.matsim.core.network.algorithms.NetworkTurnInfoBuilder}
+	 * @param linkCost  travel cost of a link, must not be negative
+	 */
+	public static TurnGraph create(Network network, Map<Id<Link>, List<TurnInfo>> turnInfos, ToDoubleFunction<Link> linkCost) {
+		return new TurnGraph(network, turnInfos, linkCost);
+	}
+
+	/**
+	 * @return the mask of a mode specific view (modes ignore case), 0 if no link allows any of the modes
+	 */
+	public long getModeMask(Collection<String> modes) {
+		return modeBits.getMask(modes);
+	}
+
+	/**
+	 * @return true if the link is part of the view with the given mode mask
+	 */
+	public boolean isInView(int link, long modeMask) {
+		return (linkModes[link] & modeMask) != 0;
+	}
+
+	/**
+	 * @return the index of a link, -1 if the link is not in the graph
+	 */
+	public int getIndex(Id<Link> linkId) {
+		Integer index = linkIndices.get(linkId);
+		return index == null ? -1 : index;
+	}
+
+	public Link getLink(int index) {
+		return links[index];
+	}
+
+	public int getNumberOfLinks() {
+		return links.length;
+	}
+
+	public int getNumberOfTurns() {
+		return turnTargets.length;
+	}
+
+	int turnsStart(int link) {
+		return turnOffsets[link];
+	}
+
+	int turnsEnd(int link) {
+		return turnOffsets[link + 1];
+	}
+
+	int turnTarget(int turn) {
+		return turnTargets[turn];
+	}
+
+	double cost(int link) {
+		return linkCosts[link];
+	}
+
+	double travelTime(int link) {
+		return linkTravelTimes[link];
+	}
+
+	double toNodeX(int link) {
+		return toNodeX[link];
+	}
+
+	double toNodeY(int link) {
+		return toNodeY[link];
+	}
+
+	/**
+	 * @return the minimal ratio of link cost to beeline length, used for an admissible A* heuristic
+	 */
+	double getMinCostPerDistance() {
+		return minCostPerDistance;
+	}
+}
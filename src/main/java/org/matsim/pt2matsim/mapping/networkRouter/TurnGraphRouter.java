@@ -0,0 +1,210 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2014 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.pt2matsim.mapping.networkRouter;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A* least cost path search on a {@link TurnGraph}, restricted to a mode view. The
+ * cost of a path is the sum of the costs of its links (excluding the from link for
+ * link to link queries), i.e. the same as routing on an inverted network.
+ * <p>
+ * The search state is reused between queries, one router per thread is needed.
+ */
+public class TurnGraphRouter {
+
+	private final TurnGraph graph;
+
+	private final double[] costs;
+	private final int[] predecessors;
+	private final int[] visited;
+	private int generation = 0;
+
+	private double[] heapKeys = new double[64];
+	private int[] heapLinks = new int[64];
+	private int heapSize;
+
+	public TurnGraphRouter(TurnGraph graph) {
+		this.graph = graph;
+		int n = graph.getNumberOfLinks();
+		this.costs = new double[n];
+		this.predecessors = new int[n];
+		this.visited = new int[n];
+	}
+
+	/**
+	 * @return the least cost path starting after fromLink and ending with toLink (both links must be in
+	 * the view), <tt>null</tt> if there is no such path. If both links are the same, an empty path is returned.
+	 */
+	public LeastCostPathCalculator.Path calcLeastCostPath(Link fromLink, Link toLink, long modeMask) {
+		int from = graph.getIndex(fromLink.getId());
+		int to = graph.getIndex(toLink.getId());
+		if(from < 0 || to < 0 || !graph.isInView(from, modeMask) || !graph.isInView(to, modeMask)) {
+			return null;
+		}
+		if(from == to) {
+			return new LeastCostPathCalculator.Path(Collections.singletonList(fromLink.getToNode()), Collections.emptyList(), 0, 0);
+		}
+		Coord target = toLink.getFromNode().getCoord();
+
+		init();
+		visit(from, 0, -1, target);
+		int found = search(to, null, modeMask, target);
+		return found < 0 ? null : createPath(found, fromLink.getToNode());
+	}
+
+	/**
+	 * @return the least cost path from fromNode to toNode using links of the view, <tt>null</tt> if
+	 * there is no such path. If both nodes are the same, an empty path is returned. Only the turns
+	 * within the path are restricted, the path can start with any link leaving fromNode.
+	 */
+	public LeastCostPathCalculator.Path calcLeastCostPath(Node fromNode, Node toNode, long modeMask) {
+		if(fromNode == toNode) {
+			return new LeastCostPathCalculator.Path(Collections.singletonList(fromNode), Collections.emptyList(), 0, 0);
+		}
+		Coord target = toNode.getCoord();
+
+		init();
+		for(Link outLink : fromNode.getOutLinks().values()) {
+			int l = graph.getIndex(outLink.getId());
+			if(l >= 0 && graph.isInView(l, modeMask)) {
+				visit(l, graph.cost(l), -1, target);
+			}
+		}
+		int found = search(-1, toNode, modeMask, target);
+		return found < 0 ? null : createPath(found, null);
+	}
+
+	/**
+	 * Runs A* until the target link (or a link ending at the target node) is settled.
+	 *
+	 * @return the index of the last link of the path, -1 if the target cannot be reached
+	 */
+	private int search(int targetLink, Node targetNode, long modeMask, Coord target) {
+		while(heapSize > 0) {
+			double key = heapKeys[0];
+			int l = poll();
+			if(key > costs[l] + heuristic(l, target) + 1e-9) {
+				// outdated heap entry
+				continue;
+			}
+			if(l == targetLink || (targetNode != null && graph.getLink(l).getToNode() == targetNode)) {
+				return l;
+			}
+			for(int t = graph.turnsStart(l); t < graph.turnsEnd(l); t++) {
+				int next = graph.turnTarget(t);
+				if(graph.isInView(next, modeMask)) {
+					double cost = costs[l] + graph.cost(next);
+					if(visited[next] != generation || cost < costs[next]) {
+						visit(next, cost, l, target);
+					}
+				}
+			}
+		}
+		return -1;
+	}
+
+	private void init() {
+		generation++;
+		if(generation == Integer.MAX_VALUE) {
+			Arrays.fill(visited, 0);
+			generation = 1;
+		}
+		heapSize = 0;
+	}
+
+	private void visit(int l, double cost, int predecessor, Coord target) {
+		visited[l] = generation;
+		costs[l] = cost;
+		predecessors[l] = predecessor;
+		push(cost + heuristic(l, target), l);
+	}
+
+	private double heuristic(int l, Coord target) {
+		double dx = graph.toNodeX(l) - target.getX();
+		double dy = graph.toNodeY(l) - target.getY();
+		return Math.sqrt(dx * dx + dy * dy) * graph.getMinCostPerDistance();
+	}
+
+	/**
+	 * @param startNode the first node of the path, the from node of the first link if <tt>null</tt>
+	 */
+	private LeastCostPathCalculator.Path createPath(int last, Node startNode) {
+		List<Link> links = new ArrayList<>();
+		double travelTime = 0;
+		for(int l = last; l >= 0 && (startNode == null || predecessors[l] >= 0); l = predecessors[l]) {
+			links.add(graph.getLink(l));
+			travelTime += graph.travelTime(l);
+		}
+		Collections.reverse(links);
+
+		List<Node> nodes = new ArrayList<>(links.size() + 1);
+		nodes.add(startNode != null ? startNode : links.get(0).getFromNode());
+		for(Link link : links) {
+			nodes.add(link.getToNode());
+		}
+		return new LeastCostPathCalculator.Path(nodes, links, travelTime, costs[last]);
+	}
+
+	private void push(double key, int l) {
+		if(heapSize == heapKeys.length) {
+			heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+			heapLinks = Arrays.copyOf(heapLinks, heapSize * 2);
+		}
+		int i = heapSize++;
+		while(i > 0) {
+			int parent = (i - 1) >>> 1;
+			if(heapKeys[parent] <= key) break;
+			heapKeys[i] = heapKeys[parent];
+			heapLinks[i] = heapLinks[parent];
+			i = parent;
+		}
+		heapKeys[i] = key;
+		heapLinks[i] = l;
+	}
+
+	private int poll() {
+		int result = heapLinks[0];
+		heapSize--;
+		double key = heapKeys[heapSize];
+		int l = heapLinks[heapSize];
+		int i = 0;
+		while(true) {
+			int child = 2 * i + 1;
+			if(child >= heapSize) break;
+			if(child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) child++;
+			if(heapKeys[child] >= key) break;
+			heapKeys[i] = heapKeys[child];
+			heapLinks[i] = heapLinks[child];
+			i = child;
+		}
+		heapKeys[i] = key;
+		heapLinks[i] = l;
+		return result;
+	}
+}
@@ -21,6 +21,7 @@ package org.matsim.pt2matsim.mapping.pseudoRouter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -29,13 +30,14 @@ import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Link;
-import org.matsim.pt.transitSchedule.api.MinimalTransferTimes.MinimalTransferTimesIterator;
 import org.matsim.pt.transitSchedule.api.TransitLine;
 import org.matsim.pt.transitSchedule.api.TransitRoute;
 import org.matsim.pt.transitSchedule.api.TransitRouteStop;
 import org.matsim.pt.transitSchedule.api.TransitSchedule;
 import org.matsim.pt.transitSchedule.api.TransitScheduleFactory;
 import org.matsim.pt.transitSchedule.api.TransitStopFacility;
+import org.matsim.pt2matsim.mapping.Progress;
+import org.matsim.pt2matsim.tools.PTMapperTools;
 import org.matsim.pt2matsim.tools.ScheduleTools;
 
 /**
@@ -61,23 +63,26 @@ public class PseudoScheduleImpl implements PseudoSchedule {
 		pseudoSchedule.addAll(otherPseudoSchedule.getPseudoRoutes());
 	}
 
+	/**
+	 * Replaces the transit routes of the schedule with the mapped pseudo routes:
+	 * <ol>
+	 *     <li>child stop facilities are created for all pseudo stops</li>
+	 *     <li>the new transit routes are created and replace the old ones, in parallel per transit line</li>
+	 *     <li>minimal transfer times between parent stop facilities are copied to their
+	 *     child stop facilities in a single pass over the transfer times</li>
+	 * </ol>
+	 */
 	@Override
 	public void createFacilitiesAndLinkSequences(TransitSchedule schedule) {
 		TransitScheduleFactory scheduleFactory = schedule.getFactory();
 
-		Map<Id<TransitStopFacility>, Set<Id<TransitStopFacility>>> parentsToChildren = new HashMap<>();
-
 		Logger logger = LogManager.getLogger(PseudoScheduleImpl.class);
 
-		int totalNumber = pseudoSchedule.size();
-		int currentNumber = 0;
-		double lastUpdate = Double.NEGATIVE_INFINITY;
-
+		// create child stop facilities
+		Map<Id<TransitStopFacility>, Set<Id<TransitStopFacility>>> parentsToChildren = new HashMap<>();
+		Map<Id<TransitLine>, List<PseudoTransitRoute>> pseudoRoutesPerLine = new LinkedHashMap<>();
 		for (PseudoTransitRoute pseudoTransitRoute : pseudoSchedule) {
-			List<PseudoRouteStop> pseudoStopSequence = pseudoTransitRoute.getPseudoStops();
-			List<TransitRouteStop> newStopSequence = new ArrayList<>();
-
-			for (PseudoRouteStop pseudoStop : pseudoStopSequence) {
+			for (PseudoRouteStop pseudoStop : pseudoTransitRoute.getPseudoStops()) {
 				Id<TransitStopFacility> childStopFacilityId = ScheduleTools
 						.createChildStopFacilityId(pseudoStop.getParentStopFacilityId(), pseudoStop.getLinkId());
 
@@ -92,65 +97,69 @@ public class PseudoScheduleImpl implements PseudoSchedule {
 					schedule.addStopFacility(newFacility);
 				}
 
-				// create new TransitRouteStop and add it to the newStopSequence
-				TransitRouteStop newTransitRouteStop = scheduleFactory.createTransitRouteStop(
-						schedule.getFacilities().get(childStopFacilityId), pseudoStop.getArrivalOffset().seconds(),
-						pseudoStop.getDepartureOffset().seconds());
-				newTransitRouteStop.setAwaitDepartureTime(pseudoStop.awaitsDepartureTime());
-				newStopSequence.add(newTransitRouteStop);
-
-				parentsToChildren.computeIfAbsent(pseudoStop.getParentStopFacilityId(), id -> new HashSet<>());
-				parentsToChildren.get(pseudoStop.getParentStopFacilityId()).add(childStopFacilityId);
+				parentsToChildren.computeIfAbsent(pseudoStop.getParentStopFacilityId(), id -> new HashSet<>()).add(childStopFacilityId);
 			}
+			pseudoRoutesPerLine.computeIfAbsent(pseudoTransitRoute.getTransitLineId(), id -> new ArrayList<>()).add(pseudoTransitRoute);
+		}
+		logger.info("PseudoScheduleImpl::createFacilitiesAndLinkSequences " + schedule.getFacilities().size() + " stop facilities");
 
-			// create a new transitRoute
-			TransitRoute newTransitRoute = scheduleFactory.createTransitRoute(
-					pseudoTransitRoute.getTransitRoute().getId(), null, newStopSequence,
-					pseudoTransitRoute.getTransitRoute().getTransportMode());
-
-			// add departures
-			pseudoTransitRoute.getTransitRoute().getDepartures().values().forEach(newTransitRoute::addDeparture);
+		// replace transit routes, each transit line is only modified by one thread
+		try(Progress progress = new Progress(pseudoSchedule.size(), "Replacing transit routes ...")) {
+			pseudoRoutesPerLine.entrySet().parallelStream().forEach(e -> {
+				TransitLine transitLine = schedule.getTransitLines().get(e.getKey());
+				for (PseudoTransitRoute pseudoTransitRoute : e.getValue()) {
+					TransitRoute newTransitRoute = createTransitRoute(pseudoTransitRoute, schedule);
 
-			// add link sequence
-			List<Id<Link>> l = pseudoTransitRoute.getNetworkLinkIdList();
-			newTransitRoute.setRoute(new LinkSequence(l.get(0), l.subList(1, l.size() - 1), l.get(l.size() - 1)));
+					// remove the old route
+					transitLine.removeRoute(pseudoTransitRoute.getTransitRoute());
 
-			// add description
-			newTransitRoute.setDescription(pseudoTransitRoute.getTransitRoute().getDescription());
+					// add new route to container
+					transitLine.addRoute(newTransitRoute);
+					progress.update();
+				}
+			});
+		}
 
-			// remove the old route
-			schedule.getTransitLines().get(pseudoTransitRoute.getTransitLineId())
-					.removeRoute(pseudoTransitRoute.getTransitRoute());
+		// Recover minimal transfer times between child stop facilities from parent stop facilities
+		int nTransfers = PTMapperTools.copyMinimalTransferTimesToChildren(schedule, parentsToChildren);
+		logger.info("PseudoScheduleImpl::createFacilitiesAndLinkSequences " + nTransfers + " minimal transfer times");
+	}
 
-			// add new route to container
-			schedule.getTransitLines().get(pseudoTransitRoute.getTransitLineId()).addRoute(newTransitRoute);
-			// newRoutes.add(new Tuple<>(pseudoTransitRoute.getTransitLineId(), newRoute));
+	/**
+	 * Creates the transit route with child stop facilities and link sequence of a pseudo route. The
+	 * child stop facilities must already be in the schedule.
+	 */
+	private static TransitRoute createTransitRoute(PseudoTransitRoute pseudoTransitRoute, TransitSchedule schedule) {
+		TransitScheduleFactory scheduleFactory = schedule.getFactory();
+		List<TransitRouteStop> newStopSequence = new ArrayList<>();
+
+		for (PseudoRouteStop pseudoStop : pseudoTransitRoute.getPseudoStops()) {
+			Id<TransitStopFacility> childStopFacilityId = ScheduleTools
+					.createChildStopFacilityId(pseudoStop.getParentStopFacilityId(), pseudoStop.getLinkId());
+
+			// create new TransitRouteStop and add it to the newStopSequence
+			TransitRouteStop newTransitRouteStop = scheduleFactory.createTransitRouteStop(
+					schedule.getFacilities().get(childStopFacilityId), pseudoStop.getArrivalOffset().seconds(),
+					pseudoStop.getDepartureOffset().seconds());
+			newTransitRouteStop.setAwaitDepartureTime(pseudoStop.awaitsDepartureTime());
+			newStopSequence.add(newTransitRouteStop);
+		}
 
-			// Recover minimal transfer times between child stop facilities from parent stop
-			// facilities
-			MinimalTransferTimesIterator iterator = schedule.getMinimalTransferTimes().iterator();
+		// create a new transitRoute
+		TransitRoute newTransitRoute = scheduleFactory.createTransitRoute(
+				pseudoTransitRoute.getTransitRoute().getId(), null, newStopSequence,
+				pseudoTransitRoute.getTransitRoute().getTransportMode());
 
-			while (iterator.hasNext()) {
-				iterator.next();
+		// add departures
+		pseudoTransitRoute.getTransitRoute().getDepartures().values().forEach(newTransitRoute::addDeparture);
 
-				Id<TransitStopFacility> fromId = iterator.getFromStopId();
-				Id<TransitStopFacility> toId = iterator.getToStopId();
+		// add link sequence
+		List<Id<Link>> l = pseudoTransitRoute.getNetworkLinkIdList();
+		newTransitRoute.setRoute(new LinkSequence(l.get(0), l.subList(1, l.size() - 1), l.get(l.size() - 1)));
 
-				if (parentsToChildren.containsKey(fromId) && parentsToChildren.containsKey(toId)) {
-					for (Id<TransitStopFacility> childFromId : parentsToChildren.get(fromId)) {
-						for (Id<TransitStopFacility> childToId : parentsToChildren.get(toId)) {
-							schedule.getMinimalTransferTimes().set(childFromId, childToId, iterator.getSeconds());
-						}
-					}
-				}
-			}
+		// add description
+		newTransitRoute.setDescription(pseudoTransitRoute.getTransitRoute().getDescription());
 
-			currentNumber++;
-			if (System.currentTimeMillis() >= lastUpdate + 1000.0 || currentNumber == totalNumber) {
-				lastUpdate = System.currentTimeMillis();
-				logger.info(String.format("PseudoScheduleImpl::createFacilitiesAndLinkSequences %d/%d (%.2f%%)",
-						currentNumber, totalNumber, 100.0 * currentNumber / totalNumber));
-			}
-		}
+		return newTransitRoute;
 	}
 }
@@ -23,6 +23,7 @@ package org.matsim.pt2matsim.osm;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
+import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.TransportMode;
 import org.matsim.api.core.v01.network.Link;
@@ -37,11 +38,13 @@ import org.matsim.core.utils.geometry.CoordinateTransformation;
 import org.matsim.core.utils.geometry.transformations.IdentityTransformation;
 import org.matsim.core.utils.geometry.transformations.TransformationFactory;
 import org.matsim.pt2matsim.config.OsmConverterConfigGroup;
+import org.matsim.pt2matsim.mapping.Progress;
 import org.matsim.pt2matsim.osm.LinkGeometryExporter.LinkDefinition;
 import org.matsim.pt2matsim.osm.lib.AllowedTagsFilter;
 import org.matsim.pt2matsim.osm.lib.Osm;
 import org.matsim.pt2matsim.osm.lib.OsmData;
 import org.matsim.pt2matsim.tools.NetworkTools;
+import org.matsim.pt2matsim.tools.lib.BatchCoordinateTransformation;
 
 import java.io.IOException;
 import java.nio.file.Paths;
@@ -114,9 +117,9 @@ public class OsmMultimodalNetworkConverter {
 	public void convert(OsmConverterConfigGroup config) {
 		this.config = config;
 		this.geometryExporter = new LinkGeometryExporter();
-		CoordinateTransformation transformation = (config.getOutputCoordinateSystem() == null ?
-				new IdentityTransformation() :
-				TransformationFactory.getCoordinateTransformation(TransformationFactory.WGS84, config.getOutputCoordinateSystem()));
+		BatchCoordinateTransformation transformation = (config.getOutputCoordinateSystem() == null ?
+				new BatchCoordinateTransformation(new IdentityTransformation()) :
+				new BatchCoordinateTransformation(TransformationFactory.WGS84, config.getOutputCoordinateSystem()));
 
 		initPT();
 		readWayParams();
@@ -150,12 +153,16 @@ public class OsmMultimodalNetworkConverter {
 	 * Converts the parsed OSM data to MATSim nodes and links.
 	 */
 	protected void convertToNetwork(CoordinateTransformation transformation) {
+		convertToNetwork(new BatchCoordinateTransformation(transformation));
+	}
 
-		log.info("Converting OSM to MATSim network...");
+	/**
+	 * Converts the parsed OSM data to MATSim nodes and links. All node coordinates
+	 * are transformed in one batch.
+	 */
+	protected void convertToNetwork(BatchCoordinateTransformation transformation) {
 
-		if(transformation == null) {
-			transformation = TransformationFactory.getCoordinateTransformation("WGS84", "WGS84");
-		}
+		log.info("Converting OSM to MATSim network...");
 
 		this.network = NetworkTools.createNetwork();
 
@@ -166,8 +173,17 @@ public class OsmMultimodalNetworkConverter {
 		AllowedTagsFilter serviceRailTracksFilter = new AllowedTagsFilter();
 		serviceRailTracksFilter.add(Osm.ElementType.WAY, Osm.Key.SERVICE, null);
 
-		for(Osm.Node node : nodes.values()) {
-			node.setCoord(transformation.transform(node.getCoord()));
+		if(!transformation.isIdentity()) {
+			List<Osm.Node> nodeList = new ArrayList<>(nodes.values());
+			double[] xy = new double[2 * nodeList.size()];
+			for(int i = 0; i < nodeList.size(); i++) {
+				xy[2 * i] = nodeList.get(i).getCoord().getX();
+				xy[2 * i + 1] = nodeList.get(i).getCoord().getY();
+			}
+			transformation.transform(xy);
+			for(int i = 0; i < nodeList.size(); i++) {
+				nodeList.get(i).setCoord(new Coord(xy[2 * i], xy[2 * i + 1]));
+			}
 		}
 
 		// remove ways without default params
@@ -262,21 +278,24 @@ public class OsmMultimodalNetworkConverter {
 		// create the links
 		log.info("Creating links...");
 		this.id = 1;
-		for(Osm.Way way : ways.values()) {
-			Osm.Node fromNode = way.getNodes().get(0);
-			double length = 0.0;
-			Osm.Node lastToNode = fromNode;
-			if(!nodesToIgnore.contains(fromNode)) {
-				for(int i = 1, n = way.getNodes().size(); i < n; i++) {
-					Osm.Node toNode = way.getNodes().get(i);
-					if(toNode != lastToNode) {
-						length += CoordUtils.calcEuclideanDistance(lastToNode.getCoord(), toNode.getCoord());
-						if(!nodesToIgnore.contains(toNode)) {
-							createLink(way, fromNode, toNode, length);
-							fromNode = toNode;
-							length = 0.0;
+		try(Progress progress = new Progress(ways.size(), "Creating links ...")) {
+			for(Osm.Way way : ways.values()) {
+				progress.update();
+				Osm.Node fromNode = way.getNodes().get(0);
+				double length = 0.0;
+				Osm.Node lastToNode = fromNode;
+				if(!nodesToIgnore.contains(fromNode)) {
+					for(int i = 1, n = way.getNodes().size(); i < n; i++) {
+						Osm.Node toNode = way.getNodes().get(i);
+						if(toNode != lastToNode) {
+							length += CoordUtils.calcEuclideanDistance(lastToNode.getCoord(), toNode.getCoord());
+							if(!nodesToIgnore.contains(toNode)) {
+								createLink(way, fromNode, toNode, length);
+								fromNode = toNode;
+								length = 0.0;
+							}
+							lastToNode = toNode;
 						}
-						lastToNode = toNode;
 					}
 				}
 			}
@@ -772,7 +791,7 @@ public class OsmMultimodalNetworkConverter {
 	    
 	    log.info("Creating combined network");
 	    Network combinedNetwork = NetworkUtils.createNetwork();
-	    subnetworks.forEach(n -> NetworkTools.integrateNetwork(combinedNetwork, n, true));
+	    NetworkTools.integrateNetworks(combinedNetwork, subnetworks, true, Math.min(subnetworks.size(), Runtime.getRuntime().availableProcessors()));
 	    
 	    this.network = combinedNetwork;
 	}
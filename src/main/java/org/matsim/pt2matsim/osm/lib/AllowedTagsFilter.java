@@ -21,48 +21,44 @@ package org.matsim.pt2matsim.osm.lib;
 import org.matsim.core.utils.collections.CollectionUtils;
 import org.matsim.core.utils.collections.MapUtils;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
 
 /**
+ * Filters osm elements by their tags. Before the first element is checked, the
+ * filter is compiled: tag keys and values are replaced by integer symbols
+ * ({@link StringCache#symbol(String)}) and stored in a decision table per element type.
+ * An element is then checked in one pass over its tags. Adding tags to the filter
+ * discards the compiled table.
+ *
  * @author polettif
  */
 public class AllowedTagsFilter {
 
 	private static final String MATCH_ALL = "*";
-	private static final Set<String> MATCH_ALL_SET = CollectionUtils.stringToSet(MATCH_ALL);
+	private static final Set<String> MATCH_ALL_SET = Collections.unmodifiableSet(CollectionUtils.stringToSet(MATCH_ALL));
 	private final Map<Osm.ElementType, Map<String, Set<String>>> keyValuePairs = new HashMap<>();
 	private final Map<Osm.ElementType, Map<String, Set<String>>> keyValueExceptions = new HashMap<>();
 
+	private volatile DecisionTable decisionTable = null;
+
 	/**
-	 * @return <code>true</code> if at least one of the given tags matches any one of the specified filter-tags.
-	 * Also returns true if no tags have been defined for the given element type.
+	 * @return <code>true</code> if at least one of the given tags matches any one of the specified filter-tags
+	 * and none of the tags matches an exception. Also returns true if no tags have been defined for the given
+	 * element type.
 	 */
 	public boolean matches(Osm.Element element) {
-		Map<String, Set<String>> checkPairs = keyValuePairs.get(element.getType());
-		Map<String, Set<String>> checkExceptions = keyValueExceptions.get(element.getType());
-		Map<String, String> tags = element.getTags();
-
-		if(checkExceptions != null) {
-			// check for exceptions
-			for(Map.Entry<String, Set<String>> e : checkExceptions.entrySet()) {
-				if(tags.containsKey(e.getKey()) && (e.getValue().contains(tags.get(e.getKey())) || e.getValue().contains(MATCH_ALL))) {
-					return false;
-				}
-			}
-		}
-		if(checkPairs != null) {
-			// check for positive list
-			for(Map.Entry<String, Set<String>> e : checkPairs.entrySet()) {
-				if(tags.containsKey(e.getKey()) && (e.getValue().contains(tags.get(e.getKey())) || e.getValue().contains(MATCH_ALL))) {
-					return true;
-				}
-			}
+		DecisionTable table = decisionTable;
+		if(table == null) {
+			table = compile();
 		}
+		return table.matches(element.getType(), element.getTags());
+	}
 
-		// return true if no tags have been defined for the element type
-		return (checkPairs == null && checkExceptions == null);
+	private synchronized DecisionTable compile() {
+		if(decisionTable == null) {
+			decisionTable = new DecisionTable(keyValuePairs, keyValueExceptions);
+		}
+		return decisionTable;
 	}
 
 	/**
@@ -71,12 +67,7 @@ public class AllowedTagsFilter {
 	 * @param value       <code>null</code> if all values should be taken
 	 */
 	public void add(Osm.ElementType elementType, final String key, final String value) {
-		Map<String, Set<String>> map = MapUtils.getMap(elementType, keyValuePairs);
-		if(value == null) {
-			map.put(key, MATCH_ALL_SET);
-		} else {
-			MapUtils.getSet(key, map).add(value);
-		}
+		addTo(keyValuePairs, elementType, key, value);
 	}
 
 	/**
@@ -84,37 +75,131 @@ public class AllowedTagsFilter {
 	 * the filter will return false. Use <tt>null</tt> for all values.
 	 */
 	public void addException(Osm.ElementType elementType, final String key, final String value) {
-		Map<String, Set<String>> map = MapUtils.getMap(elementType, keyValueExceptions);
-		if(value == null) {
+		addTo(keyValueExceptions, elementType, key, value);
+	}
+
+	private synchronized void addTo(Map<Osm.ElementType, Map<String, Set<String>>> tags, Osm.ElementType elementType, final String key, final String value) {
+		Map<String, Set<String>> map = MapUtils.getMap(elementType, tags);
+		Set<String> values = map.get(key);
+		if(value == null || MATCH_ALL.equals(value)) {
 			map.put(key, MATCH_ALL_SET);
-		} else {
+		} else if(values != MATCH_ALL_SET) {
 			MapUtils.getSet(key, map).add(value);
 		}
+		decisionTable = null;
 	}
 
 	/**
 	 * Adds the tags and exceptions from otherFilter into this filter
 	 */
 	public void mergeFilter(AllowedTagsFilter otherFilter) {
-		for(Osm.ElementType t : otherFilter.keyValuePairs.keySet()) {
-			Map<String, Set<String>> tmpMap = MapUtils.getMap(t, keyValuePairs);
-			for(Map.Entry<String, Set<String>> pair : otherFilter.keyValuePairs.get(t).entrySet()) {
-				if(tmpMap.containsKey(pair.getKey())) {
-					tmpMap.get(pair.getKey()).addAll(pair.getValue());
-				} else {
-					tmpMap.put(pair.getKey(), pair.getValue());
+		mergeTags(otherFilter.keyValuePairs, keyValuePairs);
+		mergeTags(otherFilter.keyValueExceptions, keyValueExceptions);
+	}
+
+	private void mergeTags(Map<Osm.ElementType, Map<String, Set<String>>> from, Map<Osm.ElementType, Map<String, Set<String>>> to) {
+		for(Map.Entry<Osm.ElementType, Map<String, Set<String>>> t : from.entrySet()) {
+			MapUtils.getMap(t.getKey(), to);
+			for(Map.Entry<String, Set<String>> pair : t.getValue().entrySet()) {
+				for(String value : pair.getValue()) {
+					addTo(to, t.getKey(), pair.getKey(), value);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compiled filter. For each element type, the rules are stored in an array
+	 * indexed by the symbol of the tag key.
+	 */
+	private static final class DecisionTable {
+
+		/**
+		 * rules per element type and key symbol, <tt>null</tt> if no tags are defined for an element type
+		 */
+		private final Rule[][] rules = new Rule[Osm.ElementType.values().length][];
+		private final boolean[] hasExceptions = new boolean[Osm.ElementType.values().length];
+
+		private DecisionTable(Map<Osm.ElementType, Map<String, Set<String>>> keyValuePairs, Map<Osm.ElementType, Map<String, Set<String>>> keyValueExceptions) {
+			for(Osm.ElementType type : Osm.ElementType.values()) {
+				Map<String, Set<String>> pairs = keyValuePairs.getOrDefault(type, Collections.emptyMap());
+				Map<String, Set<String>> exceptions = keyValueExceptions.getOrDefault(type, Collections.emptyMap());
+				if(!keyValuePairs.containsKey(type) && !keyValueExceptions.containsKey(type)) {
+					continue;
+				}
+				hasExceptions[type.ordinal()] = !exceptions.isEmpty();
+				Set<String> keys = new HashSet<>(pairs.keySet());
+				keys.addAll(exceptions.keySet());
+
+				int maxSymbol = -1;
+				Map<Integer, Rule> typeRules = new HashMap<>();
+				for(String key : keys) {
+					if(key == null) {
+						continue;
+					}
+					int symbol = StringCache.symbol(key);
+					typeRules.put(symbol, new Rule(pairs.get(key), exceptions.get(key)));
+					maxSymbol = Math.max(maxSymbol, symbol);
 				}
+				rules[type.ordinal()] = new Rule[maxSymbol + 1];
+				typeRules.forEach((symbol, rule) -> rules[type.ordinal()][symbol] = rule);
 			}
 		}
-		for(Osm.ElementType t : otherFilter.keyValueExceptions.keySet()) {
-			Map<String, Set<String>> tmpMap = MapUtils.getMap(t, keyValueExceptions);
-			for(Map.Entry<String, Set<String>> pair : otherFilter.keyValueExceptions.get(t).entrySet()) {
-				if(tmpMap.containsKey(pair.getKey())) {
-					tmpMap.get(pair.getKey()).addAll(pair.getValue());
-				} else {
-					tmpMap.put(pair.getKey(), pair.getValue());
+
+		private boolean matches(Osm.ElementType type, Map<String, String> tags) {
+			Rule[] typeRules = rules[type.ordinal()];
+			if(typeRules == null) {
+				return true;
+			}
+			boolean match = false;
+			for(Map.Entry<String, String> tag : tags.entrySet()) {
+				int key = StringCache.lookupSymbol(tag.getKey());
+				if(key < 0 || key >= typeRules.length || typeRules[key] == null) {
+					continue;
+				}
+				Rule rule = typeRules[key];
+				int value = StringCache.lookupSymbol(tag.getValue());
+				if(rule.exception != null && rule.exception.contains(value)) {
+					return false;
+				}
+				if(rule.positive != null && rule.positive.contains(value)) {
+					if(!hasExceptions[type.ordinal()]) {
+						return true;
+					}
+					match = true;
 				}
 			}
+			return match;
+		}
+	}
+
+	/**
+	 * Positive and exception values of a tag key
+	 */
+	private static final class Rule {
+		private final ValueSet positive;
+		private final ValueSet exception;
+
+		private Rule(Set<String> positiveValues, Set<String> exceptionValues) {
+			this.positive = positiveValues == null ? null : new ValueSet(positiveValues);
+			this.exception = exceptionValues == null ? null : new ValueSet(exceptionValues);
+		}
+	}
+
+	/**
+	 * Sorted value symbols
+	 */
+	private static final class ValueSet {
+		private final boolean all;
+		private final int[] values;
+
+		private ValueSet(Set<String> values) {
+			this.all = values.contains(MATCH_ALL);
+			this.values = values.stream().mapToInt(StringCache::symbol).sorted().toArray();
+		}
+
+		private boolean contains(int value) {
+			return all || (value >= 0 && Arrays.binarySearch(values, value) >= 0);
 		}
 	}
 }
@@ -33,6 +33,9 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 /*package*/ class StringCache {
 	private static ConcurrentHashMap<String, String> cache = new ConcurrentHashMap<>(10000);
+	private static ConcurrentHashMap<String, Integer> symbols = new ConcurrentHashMap<>();
+	private static int nextSymbol = 0;
+
 	/**
 	 * Returns the cached version of the given String. If the strings was
 	 * not yet in the cache, it is added and returned as well.
@@ -47,4 +50,33 @@ import java.util.concurrent.ConcurrentHashMap;
 		}
 		return s;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Returns the integer symbol of the given String. Symbols are dense
+	 * (starting at 0) and only created for strings passed to this method,
+	 * e.g. the keys and values of a tag filter.
+	 *
+	 * @param string
+	 * @return symbol of the string
+	 */
+	public static int symbol(final String string) {
+		Integer symbol = symbols.get(string);
+		if (symbol != null) {
+			return symbol;
+		}
+		synchronized (symbols) {
+			return symbols.computeIfAbsent(string, s -> nextSymbol++);
+		}
+	}
+
+	/**
+	 * @return the symbol of the given String, -1 if it has no symbol
+	 */
+	public static int lookupSymbol(final String string) {
+		if (string == null) {
+			return -1;
+		}
+		Integer symbol = symbols.get(string);
+		return symbol == null ? -1 : symbol;
+	}
+}
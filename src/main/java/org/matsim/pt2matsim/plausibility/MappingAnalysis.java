@@ -55,7 +55,7 @@ public class MappingAnalysis {
 	private final Map<Id<RouteShape>, RouteShape> shapes;
 	private final Network network;
 
-	private final Map<Tuple<Id<TransitLine>, Id<TransitRoute>>, List<Double>> routeDistances = new HashMap<>();
+	private final Map<Tuple<Id<TransitLine>, Id<TransitRoute>>, double[]> routeDistances = new HashMap<>(); // sorted
 	private final Map<Id<TransitLine>, Map<Id<TransitRoute>, Double>> lengthRatios = new HashMap<>();
 	private final Map<Tuple<Id<TransitLine>, Id<TransitRoute>>, Id<RouteShape>> shapeAssignment = new HashMap<>();
 
@@ -108,6 +108,14 @@ public class MappingAnalysis {
 			}
 		}
 
+		// merge results of threads
+		for(MappingAnalyser analyser : mappingAnalyser) {
+			routeDistances.putAll(analyser.routeDistances);
+			for(Map.Entry<Tuple<Id<TransitLine>, Id<TransitRoute>>, Double> e : analyser.lengthRatios.entrySet()) {
+				MapUtils.getMap(e.getKey().getFirst(), this.lengthRatios).put(e.getKey().getSecond(), e.getValue());
+			}
+		}
+
 		if(noAnalysis.size() > 0) {
 			log.warn("No shapes defined for the following transit routes!");
 			for(Tuple<Id<TransitLine>, Id<TransitRoute>> n : noAnalysis) {
@@ -143,21 +151,20 @@ public class MappingAnalysis {
 				Id<TransitRoute> transitRouteId = transitRoute.getId();
 
 				if(!noAnalysis.contains(new Tuple<>(transitLine.getId(), transitRoute.getId()))) {
-					List<Double> values = routeDistances.get(new Tuple<>(transitLineId, transitRouteId));
-					values.sort(Double::compareTo);
+					double[] values = routeDistances.get(new Tuple<>(transitLineId, transitRouteId));
 					Double lengthRatio = lengthRatios.get(transitLineId).get(transitRouteId);
-					int n = values.size();
+					int n = values.length;
 
 					keyTable.put(new Tuple<>(line, 1), transitLineId.toString());
 					keyTable.put(new Tuple<>(line, 2), transitRouteId.toString());
 					keyTable.put(new Tuple<>(line, 3), shapeAssignment.get(new Tuple<>(transitLineId, transitRouteId)).toString());
 					keyTable.put(new Tuple<>(line, 4), lengthRatio.toString());
-					keyTable.put(new Tuple<>(line, 5), values.get((int) (n * 0.25)).toString());
-					keyTable.put(new Tuple<>(line, 6), values.get((int) (n * 0.50)).toString());
-					keyTable.put(new Tuple<>(line, 7), values.get((int) (n * 0.75)).toString());
-					keyTable.put(new Tuple<>(line, 8), values.get((int) (n * 0.85)).toString());
-					keyTable.put(new Tuple<>(line, 9), values.get((int) (n * 0.95)).toString());
-					keyTable.put(new Tuple<>(line, 10), values.get(n - 1).toString());
+					keyTable.put(new Tuple<>(line, 5), Double.toString(values[(int) (n * 0.25)]));
+					keyTable.put(new Tuple<>(line, 6), Double.toString(values[(int) (n * 0.50)]));
+					keyTable.put(new Tuple<>(line, 7), Double.toString(values[(int) (n * 0.75)]));
+					keyTable.put(new Tuple<>(line, 8), Double.toString(values[(int) (n * 0.85)]));
+					keyTable.put(new Tuple<>(line, 9), Double.toString(values[(int) (n * 0.95)]));
+					keyTable.put(new Tuple<>(line, 10), Double.toString(values[n - 1]));
 					line++;
 				}
 			}
@@ -183,11 +190,11 @@ public class MappingAnalysis {
 		keyTable.put(new Tuple<>(1, 3), "distances");
 
 		int line = 2;
-		for(Map.Entry<Tuple<Id<TransitLine>, Id<TransitRoute>>, List<Double>> e : routeDistances.entrySet()) {
-			for(Double dist : e.getValue()) {
+		for(Map.Entry<Tuple<Id<TransitLine>, Id<TransitRoute>>, double[]> e : routeDistances.entrySet()) {
+			for(double dist : e.getValue()) {
 				keyTable.put(new Tuple<>(line, 1), e.getKey().getFirst().toString());
 				keyTable.put(new Tuple<>(line, 2), e.getKey().getSecond().toString());
-				keyTable.put(new Tuple<>(line, 3), dist.toString());
+				keyTable.put(new Tuple<>(line, 3), Double.toString(dist));
 				line++;
 			}
 		}
@@ -218,9 +225,8 @@ public class MappingAnalysis {
 				Id<TransitRoute> transitRouteId = transitRoute.getId();
 
 				if(!noAnalysis.contains(new Tuple<>(transitLine.getId(), transitRoute.getId()))) {
-					List<Double> values = routeDistances.get(new Tuple<>(transitLineId, transitRouteId));
-					values.sort(Double::compareTo);
-					q.add(values.get((int) (values.size() * p)));
+					double[] values = routeDistances.get(new Tuple<>(transitLineId, transitRouteId));
+					q.add(values[(int) (values.length * p)]);
 				}
 			}
 		}
@@ -248,18 +254,17 @@ public class MappingAnalysis {
 	 * @return the quantiles for the distance between transitRoute and shape for the given transit transitRoute
 	 */
 	TreeMap<Integer, Double> getQuantiles(Id<TransitLine> transitLineId, Id<TransitRoute> transitRouteId) {
-		List<Double> values = routeDistances.get(new Tuple<>(transitLineId, transitRouteId));
-		values.sort(Double::compareTo);
-		int n = values.size();
+		double[] values = routeDistances.get(new Tuple<>(transitLineId, transitRouteId));
+		int n = values.length;
 
 		TreeMap<Integer, Double> quantiles = new TreeMap<>();
-		quantiles.put(0, values.get(0));
-		quantiles.put(25, values.get((int) (n * 0.25)));
-		quantiles.put(50, values.get((int) (n * 0.50)));
-		quantiles.put(75, values.get((int) (n * 0.75)));
-		quantiles.put(85, values.get((int) (n * 0.85)));
-		quantiles.put(95, values.get((int) (n * 0.95)));
-		quantiles.put(100, values.get(n - 1));
+		quantiles.put(0, values[0]);
+		quantiles.put(25, values[(int) (n * 0.25)]);
+		quantiles.put(50, values[(int) (n * 0.50)]);
+		quantiles.put(75, values[(int) (n * 0.75)]);
+		quantiles.put(85, values[(int) (n * 0.85)]);
+		quantiles.put(95, values[(int) (n * 0.95)]);
+		quantiles.put(100, values[n - 1]);
 
 		return quantiles;
 	}
@@ -272,12 +277,16 @@ public class MappingAnalysis {
 	}
 
 	/**
-	 * Calculates the distance between a transit route and shape
+	 * Calculates the distance between a transit route and shape. Results are stored
+	 * in the analyser and merged once all threads are finished.
 	 */
 	private class MappingAnalyser implements Runnable {
 
 		private Map<Tuple<TransitLine, TransitRoute>, RouteShape> queue = new HashMap<>();
 
+		private final Map<Tuple<Id<TransitLine>, Id<TransitRoute>>, double[]> routeDistances = new HashMap<>();
+		private final Map<Tuple<Id<TransitLine>, Id<TransitRoute>>, Double> lengthRatios = new HashMap<>();
+
 		public void addToQueue(TransitLine transitLine, TransitRoute transitRoute, RouteShape shape) {
 			if(queue.put(new Tuple<>(transitLine, transitRoute), shape) != null) {
 				throw new RuntimeException(transitRoute.getId() + " already added to queue");
@@ -297,22 +306,35 @@ public class MappingAnalysis {
 		 */
 		private void calcRouteShapeDistances(TransitLine transitLine, TransitRoute transitRoute, RouteShape shape) {
 			List<Link> links = NetworkTools.getLinksFromIds(network, ScheduleTools.getTransitRouteLinkIds(transitRoute));
+			ShapeTrack track = new ShapeTrack(shape);
+
+			double[] distances = new double[64];
+			int n = 0;
+
 			// we need an equivalent number of measurements for the whole transitRoute
 			double lengthOnLink = 0;
 			for(Link link : links) {
-				double azimuth = CoordTools.getAzimuth(link.getFromNode().getCoord(), link.getToNode().getCoord());
-				double linkLength = CoordUtils.calcEuclideanDistance(link.getFromNode().getCoord(), link.getToNode().getCoord());
+				Coord from = link.getFromNode().getCoord();
+				double azimuth = CoordTools.getAzimuth(from, link.getToNode().getCoord());
+				double linkLength = CoordUtils.calcEuclideanDistance(from, link.getToNode().getCoord());
+				double dE = Math.sin(azimuth);
+				double dN = Math.cos(azimuth);
 
 				while(lengthOnLink < linkLength) {
-					Coord currentPoint = CoordTools.calcNewPoint(link.getFromNode().getCoord(), azimuth, lengthOnLink);
-
 					// look for shortest distance to shape
-					double minDistanceToShape = ShapeTools.calcMinDistanceToShape(currentPoint, shape);
-					addMinDistance(transitLine.getId(), transitRoute.getId(), minDistanceToShape);
+					double minDistanceToShape = track.distance(from.getX() + dE * lengthOnLink, from.getY() + dN * lengthOnLink);
+					if(n == distances.length) {
+						distances = Arrays.copyOf(distances, n * 2);
+					}
+					distances[n++] = minDistanceToShape;
 					lengthOnLink += MEASURE_INTERVAL;
 				}
 				lengthOnLink = lengthOnLink - linkLength;
 			}
+
+			distances = Arrays.copyOf(distances, n);
+			Arrays.sort(distances);
+			routeDistances.put(new Tuple<>(transitLine.getId(), transitRoute.getId()), distances);
 		}
 
 
@@ -328,17 +350,131 @@ public class MappingAnalysis {
 				log.warn("Transit transitRoute " + transitRoute.getId() + " on transit transitLine " + transitLine.getId() + " is inconsistent, links not connected");
 			}
 			double ratio = (routeLength - shapeLength) / shapeLength;
-			putLengthRatio(transitLine.getId(), transitRoute.getId(), ratio);
+			lengthRatios.put(new Tuple<>(transitLine.getId(), transitRoute.getId()), ratio);
 		}
 	}
 
-	private synchronized void putLengthRatio(Id<TransitLine> lineId, Id<TransitRoute> routeId, double value) {
-		MapUtils.getMap(lineId, this.lengthRatios).put(routeId, value);
-	}
+	/**
+	 * Minimal distance from consecutive sample points along a route to a shape. Since the sample
+	 * points follow the shape, the shape segments within {@link #WINDOW} (shape length) of the
+	 * last closest segment are searched first. The remaining segments are grouped in blocks with
+	 * a bounding box and a block is only searched if its bounding box is closer than the distance
+	 * found so far, so the result is the same as searching the whole shape.
+	 */
+	static class ShapeTrack {
+
+		private static final double WINDOW = 200;
+		private static final int BLOCK_SIZE = 32;
+
+		private final double[] x;
+		private final double[] y;
+		private final double[] cumLength;
+		private final int nSegments;
+
+		// bounding boxes of blocks of segments
+		private final double[] minX, minY, maxX, maxY;
+
+		private int best = 0;
+
+		ShapeTrack(RouteShape shape) {
+			Collection<Coord> coords = shape.getCoordsSorted().values();
+			int n = coords.size();
+			this.x = new double[n];
+			this.y = new double[n];
+			this.cumLength = new double[n];
+			int i = 0;
+			for(Coord c : coords) {
+				x[i] = c.getX();
+				y[i] = c.getY();
+				if(i > 0) cumLength[i] = cumLength[i - 1] + length(x[i] - x[i - 1], y[i] - y[i - 1]);
+				i++;
+			}
+			this.nSegments = Math.max(n - 1, 0);
+
+			int nBlocks = (nSegments + BLOCK_SIZE - 1) / BLOCK_SIZE;
+			this.minX = new double[nBlocks];
+			this.minY = new double[nBlocks];
+			this.maxX = new double[nBlocks];
+			this.maxY = new double[nBlocks];
+			for(int b = 0; b < nBlocks; b++) {
+				minX[b] = minY[b] = Double.POSITIVE_INFINITY;
+				maxX[b] = maxY[b] = Double.NEGATIVE_INFINITY;
+				int last = Math.min((b + 1) * BLOCK_SIZE, nSegments);
+				for(int p = b * BLOCK_SIZE; p <= last; p++) {
+					minX[b] = Math.min(minX[b], x[p]);
+					minY[b] = Math.min(minY[b], y[p]);
+					maxX[b] = Math.max(maxX[b], x[p]);
+					maxY[b] = Math.max(maxY[b], y[p]);
+				}
+			}
+		}
 
-	private synchronized void addMinDistance(Id<TransitLine> lineId, Id<TransitRoute> routeId, double minDistanceToShape) {
-		MapUtils.getList(new Tuple<>(lineId, routeId), this.routeDistances).add(minDistanceToShape);
-	}
+		/**
+		 * @return the minimal distance between the point and the shape
+		 */
+		double distance(double px, double py) {
+			if(nSegments < 1) {
+				return Double.MAX_VALUE;
+			}
 
+			// segments around the last closest segment
+			int from = best;
+			while(from > 0 && cumLength[best] - cumLength[from - 1] < WINDOW) from--;
+			int to = best + 1;
+			while(to < nSegments && cumLength[to] - cumLength[best + 1] < WINDOW) to++;
+			double minDist = search(px, py, from, to, Double.MAX_VALUE);
+
+			// remaining segments
+			for(int b = 0; b < minX.length; b++) {
+				int blockFrom = b * BLOCK_SIZE;
+				int blockTo = Math.min(blockFrom + BLOCK_SIZE, nSegments);
+				if(blockFrom >= from && blockTo <= to) {
+					continue;
+				}
+				double dx = Math.max(Math.max(minX[b] - px, px - maxX[b]), 0);
+				double dy = Math.max(Math.max(minY[b] - py, py - maxY[b]), 0);
+				if(length(dx, dy) < minDist) {
+					minDist = search(px, py, blockFrom, blockTo, minDist);
+				}
+			}
+			return minDist;
+		}
+
+		/**
+		 * Searches the segments [from, to) for a distance smaller than minDist, sets the closest segment
+		 */
+		private double search(double px, double py, int from, int to, double minDist) {
+			for(int i = from; i < to; i++) {
+				double d = distancePointSegment(x[i], y[i], x[i + 1], y[i + 1], px, py);
+				if(d < minDist) {
+					minDist = d;
+					best = i;
+				}
+			}
+			return minDist;
+		}
 
+		/**
+		 * Same as {@link CoordUtils#distancePointLinesegment(Coord, Coord, Coord)} on primitives
+		 */
+		private static double distancePointSegment(double x1, double y1, double x2, double y2, double px, double py) {
+			double lineDX = x2 - x1;
+			double lineDY = y2 - y1;
+			if(lineDX == 0.0 && lineDY == 0.0) {
+				return length(px - x1, py - y1);
+			}
+			double u = ((px - x1) * lineDX + (py - y1) * lineDY) / (lineDX * lineDX + lineDY * lineDY);
+			if(u <= 0) {
+				return length(px - x1, py - y1);
+			}
+			if(u >= 1) {
+				return length(px - x2, py - y2);
+			}
+			return length(px - (x1 + u * lineDX), py - (y1 + u * lineDY));
+		}
+
+		private static double length(double dx, double dy) {
+			return Math.sqrt(dx * dx + dy * dy);
+		}
+	}
 }
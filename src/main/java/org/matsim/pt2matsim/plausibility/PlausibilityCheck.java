@@ -23,7 +23,6 @@ import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.core.config.Configurator;
 import org.apache.logging.log4j.LogManager;
 import org.geojson.Feature;
-import org.geojson.FeatureCollection;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
@@ -41,13 +40,18 @@ import org.matsim.pt.transitSchedule.api.TransitRoute;
 import org.matsim.pt.transitSchedule.api.TransitRouteStop;
 import org.matsim.pt.transitSchedule.api.TransitSchedule;
 import org.matsim.pt2matsim.config.PublicTransitMappingStrings;
+import org.matsim.pt2matsim.mapping.Progress;
 import org.matsim.pt2matsim.plausibility.log.*;
 import org.matsim.pt2matsim.tools.*;
 import org.opengis.feature.simple.SimpleFeature;
 
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
 
 import static org.matsim.pt2matsim.tools.ScheduleTools.getTransitRouteLinkIds;
 
@@ -127,90 +131,242 @@ public class PlausibilityCheck {
 	 * Performs the plausibility check on the schedule
 	 */
 	public void runCheck() {
+		runCheck(1);
+	}
+
+	/**
+	 * Performs the plausibility check on the schedule. Transit routes are checked in a fork-join pool
+	 * with the given number of threads. Warnings are collected per task and added to the containers
+	 * in schedule order afterwards, so the result does not depend on the number of threads.
+	 */
+	public void runCheck(int numThreads) {
 		AbstractPlausibilityWarning.setNetwork(network);
 
-		nRoutes = 0;
+		List<Tuple<TransitLine, TransitRoute>> routes = new ArrayList<>();
 		for(TransitLine transitLine : this.schedule.getTransitLines().values()) {
 			for(TransitRoute transitRoute : transitLine.getRoutes().values()) {
-				nRoutes++;
-
-				Double directionChangeThreshold = thresholds.get(transitRoute.getTransportMode());
-
-				Iterator<TransitRouteStop> stopsIterator = transitRoute.getStops().iterator();
-
-				List<Link> links = NetworkTools.getLinksFromIds(network, getTransitRouteLinkIds(transitRoute));
-				Map<Node, Tuple<Link, Link>> nodesInRoute = new HashMap<>();
-				Set<List<Id<Link>>> loops = new HashSet<>();
-
-				TransitRouteStop previousStop = stopsIterator.next();
-				TransitRouteStop nextStop = stopsIterator.next();
-				double ttActual = 0;
-				double departTime = previousStop.getDepartureOffset().seconds();
-
-				for(int i = 0; i < links.size() - 2; i++) {
-					Link linkFrom = links.get(i);
-					Link linkTo = links.get(i + 1);
-
-					// travel time check
-					ttActual += linkFrom.getLength() / linkFrom.getFreespeed();
-					if(nextStop.getStopFacility().getLinkId().equals(linkTo.getId())) {
-						double ttSchedule = nextStop.getArrivalOffset().seconds() - departTime;
-						double ttScheduleRange = ttSchedule + ttRange;
-						if(ttActual > ttScheduleRange && ttSchedule > 0) {
-							PlausibilityWarning warning = new TravelTimeWarning(transitLine, transitRoute, previousStop, nextStop, ttActual, ttSchedule);
-							addWarningToContainers(warning);
-						}
-						// reset
-						ttActual = 0;
-						previousStop = nextStop;
-						departTime = previousStop.getDepartureOffset().seconds();
-						if(!nextStop.equals(transitRoute.getStops().get(transitRoute.getStops().size() - 1))) {
-							nextStop = stopsIterator.next();
-						}
-					}
+				routes.add(new Tuple<>(transitLine, transitRoute));
+			}
+		}
+		nRoutes = routes.size();
+
+		WarningCollector collector;
+		try(Progress progress = new Progress(nRoutes, "Checking transit routes ...")) {
+			CheckTask task = new CheckTask(routes, 0, routes.size(), progress);
+			if(numThreads > 1) {
+				ForkJoinPool pool = new ForkJoinPool(numThreads);
+				try {
+					collector = pool.invoke(task);
+				} finally {
+					pool.shutdown();
+				}
+			} else {
+				collector = task.compute();
+			}
+		}
 
-					// loopcheck
-					Tuple<Link, Link> tuple = nodesInRoute.put(linkFrom.getToNode(), new Tuple<>(linkFrom, linkTo));
-					if(tuple != null && !linkFrom.equals(tuple.getSecond())) {
-						loops.add(ScheduleTools.getLoopSubRouteLinkIds(transitRoute, tuple.getSecond().getId(), linkFrom.getId()));
-					}
+		for(Supplier<PlausibilityWarning> warning : collector.warnings) {
+			addWarningToContainers(warning.get());
+		}
+	}
+
+	/**
+	 * Checks a transit route. Warnings are created once the collectors of all
+	 * routes have been merged, warning ids thus follow the schedule order.
+	 */
+	private void checkTransitRoute(TransitLine transitLine, TransitRoute transitRoute, WarningCollector collector) {
+		Double directionChangeThreshold = thresholds.get(transitRoute.getTransportMode());
+
+		Iterator<TransitRouteStop> stopsIterator = transitRoute.getStops().iterator();
+
+		List<Id<Link>> linkIds = getTransitRouteLinkIds(transitRoute);
+		List<Link> links = NetworkTools.getLinksFromIds(network, linkIds);
+		Map<Node, Integer> nodesInRoute = new HashMap<>();
+		Map<List<Id<Link>>, int[]> loops = new LinkedHashMap<>();
+		LinkIndex linkIndex = null;
+
+		TransitRouteStop previousStop = stopsIterator.next();
+		TransitRouteStop nextStop = stopsIterator.next();
+		double ttActual = 0;
+		double departTime = previousStop.getDepartureOffset().seconds();
+
+		for(int i = 0; i < links.size() - 2; i++) {
+			Link linkFrom = links.get(i);
+			Link linkTo = links.get(i + 1);
+
+			// travel time check
+			ttActual += linkFrom.getLength() / linkFrom.getFreespeed();
+			if(nextStop.getStopFacility().getLinkId().equals(linkTo.getId())) {
+				double ttSchedule = nextStop.getArrivalOffset().seconds() - departTime;
+				double ttScheduleRange = ttSchedule + ttRange;
+				if(ttActual > ttScheduleRange && ttSchedule > 0) {
+					TransitRouteStop fromStop = previousStop;
+					TransitRouteStop toStop = nextStop;
+					double tt = ttActual;
+					collector.add(() -> new TravelTimeWarning(transitLine, transitRoute, fromStop, toStop, tt, ttSchedule));
+				}
+				// reset
+				ttActual = 0;
+				previousStop = nextStop;
+				departTime = previousStop.getDepartureOffset().seconds();
+				if(!nextStop.equals(transitRoute.getStops().get(transitRoute.getStops().size() - 1))) {
+					nextStop = stopsIterator.next();
+				}
+			}
 
-					// angle check (check if one link has length 0)
-					if(directionChangeThreshold != null
-							&& !linkFrom.getFromNode().getCoord().equals(linkFrom.getToNode().getCoord())
-							&& !linkTo.getFromNode().getCoord().equals(linkTo.getToNode().getCoord())) {
+			// loopcheck
+			Integer loopStart = nodesInRoute.put(linkFrom.getToNode(), i + 1);
+			if(loopStart != null && !linkFrom.equals(links.get(loopStart))) {
+				if(linkIndex == null) {
+					linkIndex = new LinkIndex(linkIds);
+				}
+				// same sub route as ScheduleTools.getLoopSubRouteLinkIds
+				int from = linkIndex.firstIndex(linkIds.get(loopStart), 0);
+				int to = linkIndex.firstIndex(linkFrom.getId(), from);
+				loops.putIfAbsent(linkIds.subList(from, to), new int[]{from, to});
+			}
 
-						double angleDiff = Math.abs(CoordTools.getAngleDiff(linkFrom, linkTo));
-						if(angleDiff > directionChangeThreshold) {
-							PlausibilityWarning warning = new DirectionChangeWarning(transitLine, transitRoute, linkFrom, linkTo, angleDiff);
-							addWarningToContainers(warning);
-						}
-					}
+			// angle check (check if one link has length 0)
+			if(directionChangeThreshold != null
+					&& !linkFrom.getFromNode().getCoord().equals(linkFrom.getToNode().getCoord())
+					&& !linkTo.getFromNode().getCoord().equals(linkTo.getToNode().getCoord())) {
 
-					// artificial link check
-					if(linkFrom.getAllowedModes().contains(PublicTransitMappingStrings.ARTIFICIAL_LINK_MODE)) {
-						PlausibilityWarning warning = new ArtificialLinkWarning(transitLine, transitRoute, linkFrom);
-						addWarningToContainers(warning);
-					}
+				double angleDiff = Math.abs(CoordTools.getAngleDiff(linkFrom, linkTo));
+				if(angleDiff > directionChangeThreshold) {
+					collector.add(() -> new DirectionChangeWarning(transitLine, transitRoute, linkFrom, linkTo, angleDiff));
 				}
+			}
 
-				// catch "loops" that are part of a bigger loop
-				Set<List<Id<Link>>> subsetLoops = new HashSet<>();
-				for(List<Id<Link>> loop1 : loops) {
-					for(List<Id<Link>> loop2 : loops) {
-						if(!loop1.equals(loop2) && MiscUtils.listIsSubset(loop1, loop2)) {
-							subsetLoops.add(loop1);
-						}
-					}
+			// artificial link check
+			if(linkFrom.getAllowedModes().contains(PublicTransitMappingStrings.ARTIFICIAL_LINK_MODE)) {
+				collector.add(() -> new ArtificialLinkWarning(transitLine, transitRoute, linkFrom));
+			}
+		}
+
+		// add LoopWarning, "loops" that are part of a bigger loop are ignored
+		for(List<Id<Link>> loop : getOutermostLoops(loops)) {
+			collector.add(() -> new LoopWarning(transitLine, transitRoute, loop));
+		}
+	}
+
+	/**
+	 * @param loops link id lists of loops and their [from, to) interval in the route
+	 * @return the loops whose interval is not contained in the interval of another loop
+	 */
+	private static List<List<Id<Link>>> getOutermostLoops(Map<List<Id<Link>>, int[]> loops) {
+		List<Map.Entry<List<Id<Link>>, int[]>> sorted = new ArrayList<>(loops.entrySet());
+		// by start ascending, end descending: an interval is contained in a previous one if it does not end later
+		sorted.sort((e1, e2) -> e1.getValue()[0] != e2.getValue()[0] ?
+				Integer.compare(e1.getValue()[0], e2.getValue()[0]) :
+				Integer.compare(e2.getValue()[1], e1.getValue()[1]));
+
+		Set<List<Id<Link>>> outermost = new HashSet<>();
+		int maxEnd = -1;
+		for(Map.Entry<List<Id<Link>>, int[]> e : sorted) {
+			if(e.getValue()[1] > maxEnd) {
+				outermost.add(e.getKey());
+				maxEnd = e.getValue()[1];
+			}
+		}
+
+		List<List<Id<Link>>> result = new ArrayList<>();
+		for(List<Id<Link>> loop : loops.keySet()) {
+			if(outermost.contains(loop)) {
+				result.add(loop);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Index of the positions of link ids in a route
+	 */
+	private static class LinkIndex {
+
+		private final Map<Id<Link>, Integer> first = new HashMap<>();
+		private final int[] next;
+
+		LinkIndex(List<Id<Link>> linkIds) {
+			next = new int[linkIds.size()];
+			Map<Id<Link>, Integer> last = new HashMap<>();
+			for(int i = 0; i < linkIds.size(); i++) {
+				next[i] = -1;
+				Integer prev = last.put(linkIds.get(i), i);
+				if(prev == null) {
+					first.put(linkIds.get(i), i);
+				} else {
+					next[prev] = i;
 				}
-				// add LoopWarning
-				for(List<Id<Link>> loop : loops) {
-					if(!subsetLoops.contains(loop)) {
-						PlausibilityWarning warning = new LoopWarning(transitLine, transitRoute, loop);
-						addWarningToContainers(warning);
-					}
+			}
+		}
+
+		/**
+		 * @return the first position of the link id at or after fromIndex
+		 */
+		int firstIndex(Id<Link> linkId, int fromIndex) {
+			int i = first.get(linkId);
+			while(i < fromIndex) {
+				i = next[i];
+			}
+			return i;
+		}
+	}
+
+	/**
+	 * Warnings of a range of transit routes, in schedule order.
+	 */
+	private static class WarningCollector {
+
+		private final List<Supplier<PlausibilityWarning>> warnings = new ArrayList<>();
+
+		void add(Supplier<PlausibilityWarning> warning) {
+			warnings.add(warning);
+		}
+
+		/**
+		 * Appends the warnings of the other collector
+		 */
+		WarningCollector merge(WarningCollector other) {
+			warnings.addAll(other.warnings);
+			return this;
+		}
+	}
+
+	/**
+	 * Checks a range of transit routes, splits the range for large ranges.
+	 */
+	private class CheckTask extends RecursiveTask<WarningCollector> {
+
+		private static final int THRESHOLD = 64;
+
+		private final List<Tuple<TransitLine, TransitRoute>> routes;
+		private final int from;
+		private final int to;
+		private final Progress progress;
+
+		CheckTask(List<Tuple<TransitLine, TransitRoute>> routes, int from, int to, Progress progress) {
+			this.routes = routes;
+			this.from = from;
+			this.to = to;
+			this.progress = progress;
+		}
+
+		@Override
+		protected WarningCollector compute() {
+			if(to - from <= THRESHOLD || getPool() == null) {
+				WarningCollector collector = new WarningCollector();
+				for(int i = from; i < to; i++) {
+					checkTransitRoute(routes.get(i).getFirst(), routes.get(i).getSecond(), collector);
 				}
+				progress.update(to - from);
+				return collector;
 			}
+			int mid = (from + to) >>> 1;
+			CheckTask left = new CheckTask(routes, from, mid, progress);
+			CheckTask right = new CheckTask(routes, mid, to, progress);
+			left.fork();
+			WarningCollector rightWarnings = right.compute();
+			return left.join().merge(rightWarnings);
 		}
 	}
 
@@ -266,86 +422,93 @@ public class PlausibilityCheck {
 	public void writeResultsGeojson(String warningsFile) {
 		log.info("Writing warnings geojson file " + warningsFile + " ...");
 
-		FeatureCollection warnings = new FeatureCollection();
-
-		// route through all unique linkIdLists
-		for(Map.Entry<List<Id<Link>>, Set<PlausibilityWarning>> e : warningsPerUniqueLinkSet.entrySet()) {
-			boolean createLoopFeature = false;
-			boolean createTravelTimeFeature = false;
-			boolean createDirectionChangeFeature = false;
-			boolean createArtificialFeature = false;
+		try(GeojsonWriter writer = new GeojsonWriter(warningsFile)) {
+			// route through all unique linkIdLists
+			for(Map.Entry<List<Id<Link>>, Set<PlausibilityWarning>> e : warningsPerUniqueLinkSet.entrySet()) {
+				writer.add(createWarningFeature(e.getKey(), e.getValue()));
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
 
-			double diff = -1, diffPerc = -1, ttExpected = -1, ttActual = -1, azDiff = 0.0;
+	/**
+	 * Creates a feature for all warnings on a link id list
+	 */
+	private Feature createWarningFeature(List<Id<Link>> linkIds, Set<PlausibilityWarning> linkIdListWarnings) {
+		boolean createLoopFeature = false;
+		boolean createTravelTimeFeature = false;
+		boolean createDirectionChangeFeature = false;
+		boolean createArtificialFeature = false;
 
-			Set<Id<PlausibilityWarning>> warningIds = new HashSet<>();
-			Set<String> routeIds = new HashSet<>();
+		double diff = -1, diffPerc = -1, ttExpected = -1, ttActual = -1, azDiff = 0.0;
 
-			for(PlausibilityWarning w : e.getValue()) {
-				// Travel Time Warnings
-				if(w instanceof TravelTimeWarning) {
-					createTravelTimeFeature = true;
-					if(w.getExpected()/w.getActual() > diff) {
-						diff = w.getDifference();
-						ttActual = w.getActual();
-						ttExpected = w.getExpected();
-						diffPerc = ttActual / ttExpected - 1;
-					}
-					warningIds.add(w.getId());
-					routeIds.add(w.getTransitLine().getId() + ":" + w.getTransitRoute().getId());
-				}
+		Set<Id<PlausibilityWarning>> warningIds = new HashSet<>();
+		Set<String> routeIds = new HashSet<>();
 
-				// Direction Change Warnings
-				if(w instanceof DirectionChangeWarning) {
-					createDirectionChangeFeature = true;
-					warningIds.add(w.getId());
-					routeIds.add(w.getTransitLine().getId() + ":" + w.getTransitRoute().getId());
-					azDiff = w.getDifference();
+		for(PlausibilityWarning w : linkIdListWarnings) {
+			// Travel Time Warnings
+			if(w instanceof TravelTimeWarning) {
+				createTravelTimeFeature = true;
+				if(w.getExpected()/w.getActual() > diff) {
+					diff = w.getDifference();
+					ttActual = w.getActual();
+					ttExpected = w.getExpected();
+					diffPerc = ttActual / ttExpected - 1;
 				}
+				warningIds.add(w.getId());
+				routeIds.add(w.getTransitLine().getId() + ":" + w.getTransitRoute().getId());
+			}
 
-				// Loop Warnings
-				if(w instanceof LoopWarning) {
-					createLoopFeature = true;
-					warningIds.add(w.getId());
-					routeIds.add(w.getTransitLine().getId() + ":" + w.getTransitRoute().getId());
-				}
+			// Direction Change Warnings
+			if(w instanceof DirectionChangeWarning) {
+				createDirectionChangeFeature = true;
+				warningIds.add(w.getId());
+				routeIds.add(w.getTransitLine().getId() + ":" + w.getTransitRoute().getId());
+				azDiff = w.getDifference();
+			}
 
-				// Loop Warnings
-				if(w instanceof ArtificialLinkWarning) {
-					createArtificialFeature = true;
-					warningIds.add(w.getId());
-					routeIds.add(w.getTransitLine().getId() + ":" + w.getTransitRoute().getId());
-				}
+			// Loop Warnings
+			if(w instanceof LoopWarning) {
+				createLoopFeature = true;
+				warningIds.add(w.getId());
+				routeIds.add(w.getTransitLine().getId() + ":" + w.getTransitRoute().getId());
 			}
 
-			Feature feature = GeojsonTools.createLineFeature(GeojsonTools.links2Coords(NetworkTools.getLinksFromIds(network, e.getKey())));
+			// Loop Warnings
+			if(w instanceof ArtificialLinkWarning) {
+				createArtificialFeature = true;
+				warningIds.add(w.getId());
+				routeIds.add(w.getTransitLine().getId() + ":" + w.getTransitRoute().getId());
+			}
+		}
 
-			feature.setProperty(TRAVEL_TIME_WARNING, createTravelTimeFeature);
-			feature.setProperty(DIRECTION_CHANGE_WARNING, createDirectionChangeFeature);
-			feature.setProperty(LOOP_WARNING, createLoopFeature);
-			feature.setProperty(ARTIFICIAL_LINK_WARNING, createArtificialFeature);
+		Feature feature = GeojsonTools.createLineFeature(GeojsonTools.links2Coords(NetworkTools.getLinksFromIds(network, linkIds)));
 
-			feature.setProperty("warningIds", CollectionUtils.idSetToString(warningIds));
-			feature.setProperty("routeIds", CollectionUtils.setToString(routeIds));
-			feature.setProperty("linkIds", CollectionUtils.idSetToString(new HashSet<>(e.getKey())));
+		feature.setProperty(TRAVEL_TIME_WARNING, createTravelTimeFeature);
+		feature.setProperty(DIRECTION_CHANGE_WARNING, createDirectionChangeFeature);
+		feature.setProperty(LOOP_WARNING, createLoopFeature);
+		feature.setProperty(ARTIFICIAL_LINK_WARNING, createArtificialFeature);
 
-			// Travel Time Warnings
-			if(createTravelTimeFeature) {
-				feature.setProperty("ttDiff [s]", diff);
-				feature.setProperty("ttDiff [%]", diffPerc);
-				feature.setProperty("ttExpected", ttExpected);
-				feature.setProperty("ttActual", ttActual);
-			}
+		feature.setProperty("warningIds", CollectionUtils.idSetToString(warningIds));
+		feature.setProperty("routeIds", CollectionUtils.setToString(routeIds));
+		feature.setProperty("linkIds", CollectionUtils.idSetToString(new HashSet<>(linkIds)));
 
-			// Direction Change Warning
-			if(createDirectionChangeFeature) {
-				feature.setProperty("azDiff [rad]", azDiff);
-				feature.setProperty("azDiff [deg]", 180*azDiff/Math.PI);
-			}
+		// Travel Time Warnings
+		if(createTravelTimeFeature) {
+			feature.setProperty("ttDiff [s]", diff);
+			feature.setProperty("ttDiff [%]", diffPerc);
+			feature.setProperty("ttExpected", ttExpected);
+			feature.setProperty("ttActual", ttActual);
+		}
 
-			warnings.add(feature);
+		// Direction Change Warning
+		if(createDirectionChangeFeature) {
+			feature.setProperty("azDiff [rad]", azDiff);
+			feature.setProperty("azDiff [deg]", 180*azDiff/Math.PI);
 		}
 
-		GeojsonTools.writeFeatureCollectionToFile(warnings, warningsFile);
+		return feature;
 	}
 
 	/**
@@ -93,7 +93,7 @@ public final class CheckMappedSchedulePlausibility {
 
 		log.info("Start plausibility check...");
 		PlausibilityCheck check = new PlausibilityCheck(schedule, network, coordinateSystem);
-		check.runCheck();
+		check.runCheck(Runtime.getRuntime().availableProcessors());
 
 		if(!outputFolder.endsWith("/")) {
 			outputFolder = outputFolder + "/";
@@ -45,6 +45,7 @@ import org.matsim.pt.transitSchedule.api.TransitRoute;
 import org.matsim.pt.transitSchedule.api.TransitSchedule;
 import org.matsim.pt2matsim.config.PublicTransitMappingConfigGroup;
 import org.matsim.pt2matsim.mapping.PTMapper;
+import org.matsim.pt2matsim.tools.BinarySnapshot;
 import org.matsim.pt2matsim.tools.NetworkTools;
 import org.matsim.pt2matsim.tools.ScheduleTools;
 
@@ -101,6 +102,7 @@ public final class PublicTransitMapper {
 		// Load input schedule and network
 		TransitSchedule schedule = config.getInputScheduleFile() == null ? null : ScheduleTools.readTransitSchedule(config.getInputScheduleFile());
 		Network network = config.getInputNetworkFile() == null ? null : NetworkTools.readNetwork(config.getInputNetworkFile());
+		TransitSchedule previousMappedSchedule = config.getPreviousMappedScheduleFile() == null ? null : ScheduleTools.readTransitSchedule(config.getPreviousMappedScheduleFile());
 		Lanes lanes = null;
 		if(configAll.network().getLaneDefinitionsFile()!=null) {
 			Scenario scn = ScenarioUtils.createScenario(ConfigUtils.createConfig());
@@ -108,7 +110,7 @@ public final class PublicTransitMapper {
 			lanes = scn.getLanes();
 		}
 		// Run PTMapper
-		PTMapper.mapScheduleToNetwork(schedule, network, lanes, config,configAll);
+		PTMapper.mapScheduleToNetwork(schedule, network, lanes, previousMappedSchedule, config, configAll);
 		// or: new PTMapper(schedule, network).run(config);
 
 		// Write the schedule and network to output files (if defined in config)
@@ -128,6 +130,9 @@ public final class PublicTransitMapper {
 		} else {
 			log.info("No output paths defined, schedule and network are not written to files.");
 		}
+		if(config.getOutputSnapshotFile() != null) {
+			BinarySnapshot.write(config.getOutputSnapshotFile(), network, schedule);
+		}
 	}
 	public static int[] checkConsistensy(Network net,TransitSchedule ts,Lanes lanes) {
 		int wrongRoutes = 0;
@@ -0,0 +1,224 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2016 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.pt2matsim.run.gis;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.utils.collections.CollectionUtils;
+import org.matsim.core.utils.geometry.CoordinateTransformation;
+import org.matsim.core.utils.geometry.transformations.IdentityTransformation;
+import org.matsim.core.utils.geometry.transformations.TransformationFactory;
+import org.matsim.pt.transitSchedule.api.TransitLine;
+import org.matsim.pt.transitSchedule.api.TransitRoute;
+import org.matsim.pt.transitSchedule.api.TransitSchedule;
+import org.matsim.pt.transitSchedule.api.TransitStopFacility;
+import org.matsim.pt2matsim.plausibility.PlausibilityCheck;
+import org.matsim.pt2matsim.plausibility.log.PlausibilityWarning;
+import org.matsim.pt2matsim.tools.NetworkTools;
+import org.matsim.pt2matsim.tools.ScheduleTools;
+import org.matsim.pt2matsim.tools.lib.PMTilesWriter;
+import org.matsim.pt2matsim.tools.lib.VectorTiles;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Exports a network and optionally a mapped schedule (routes, stop facilities and
+ * plausibility warnings) to a PMTiles vector tile archive that can be opened in
+ * tile viewers without loading the whole network.
+ */
+public class Mapping2PMTiles {
+
+	protected static Logger log = LogManager.getLogger(Mapping2PMTiles.class);
+
+	public static final String LAYER_LINKS = "links";
+	public static final String LAYER_TRANSIT_ROUTES = "transitRoutes";
+	public static final String LAYER_STOP_FACILITIES = "stopFacilities";
+	public static final String LAYER_WARNINGS = "warnings";
+
+	private static final int DEFAULT_MIN_ZOOM = 6;
+	private static final int DEFAULT_MAX_ZOOM = 14;
+
+	/**
+	 * Converts a network and a mapped schedule to a PMTiles archive
+	 *
+	 * @param args [0] coordinate system of network and schedule (coordinates are transformed to WGS84)
+	 *             [1] input network file
+	 *             [2] input mapped schedule file (use "null" to export the network only)
+	 *             [3] output PMTiles file
+	 *             [4] max zoom level (optional, default 14)
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length == 4 || args.length == 5) {
+			Network network = NetworkTools.readNetwork(args[1]);
+			TransitSchedule schedule = args[2].equals("null") ? null : ScheduleTools.readTransitSchedule(args[2]);
+			int maxZoom = args.length == 5 ? Integer.parseInt(args[4]) : DEFAULT_MAX_ZOOM;
+			run(args[0], network, schedule, args[3], DEFAULT_MIN_ZOOM, maxZoom);
+		} else {
+			throw new RuntimeException("Incorrect number of arguments " + args.length);
+		}
+	}
+
+	/**
+	 * Writes links, transit routes, stop facilities and plausibility warnings as separate
+	 * layers. Links and stop facilities are only shown on higher zoom levels.
+	 *
+	 * @param schedule the mapped schedule, can be <tt>null</tt>
+	 */
+	public static void run(String coordSys, Network network, TransitSchedule schedule, String outputFile, int minZoom, int maxZoom) throws IOException {
+		Mapping2PMTiles m2t = new Mapping2PMTiles(coordSys, network, minZoom, maxZoom);
+		m2t.addLinks();
+		if(schedule != null) {
+			m2t.addTransitRoutes(schedule);
+			m2t.addStopFacilities(schedule);
+			m2t.addWarnings(schedule, coordSys);
+		}
+		m2t.write(outputFile);
+	}
+
+	private final VectorTiles tiles = new VectorTiles();
+	private final Network network;
+	private final CoordinateTransformation ct;
+	private final Map<Id<Node>, Coord> nodeCoords = new HashMap<>();
+	private final int minZoom;
+	private final int maxZoom;
+
+	public Mapping2PMTiles(String coordSys, Network network, int minZoom, int maxZoom) {
+		this.ct = coordSys == null ? new IdentityTransformation() : TransformationFactory.getCoordinateTransformation(coordSys, TransformationFactory.WGS84);
+		this.network = network;
+		this.minZoom = minZoom;
+		this.maxZoom = maxZoom;
+
+		tiles.addLayer(LAYER_WARNINGS, minZoom);
+		tiles.addLayer(LAYER_TRANSIT_ROUTES, minZoom);
+		tiles.addLayer(LAYER_LINKS, Math.max(minZoom, Math.min(maxZoom, 11)));
+		tiles.addLayer(LAYER_STOP_FACILITIES, Math.max(minZoom, Math.min(maxZoom, 12)));
+
+		// nodes are shared by links and routes, transform them only once
+		for(Node node : network.getNodes().values()) {
+			nodeCoords.put(node.getId(), ct.transform(node.getCoord()));
+		}
+	}
+
+	public void addLinks() {
+		for(Link link : network.getLinks().values()) {
+			Map<String, Object> p = new LinkedHashMap<>();
+			p.put("id", link.getId().toString());
+			p.put("length", link.getLength());
+			p.put("freespeed", link.getFreespeed());
+			p.put("capacity", link.getCapacity());
+			p.put("lanes", link.getNumberOfLanes());
+			p.put("modes", CollectionUtils.setToString(link.getAllowedModes()));
+			tiles.addLine(LAYER_LINKS, linkCoords(Collections.singletonList(link.getId())), p);
+		}
+	}
+
+	public void addTransitRoutes(TransitSchedule schedule) {
+		for(TransitLine transitLine : schedule.getTransitLines().values()) {
+			for(TransitRoute transitRoute : transitLine.getRoutes().values()) {
+				if(transitRoute.getRoute() == null) {
+					continue;
+				}
+				Map<String, Object> p = new LinkedHashMap<>();
+				p.put("transitLineId", transitLine.getId().toString());
+				p.put("transitRouteId", transitRoute.getId().toString());
+				p.put("transportMode", transitRoute.getTransportMode());
+				p.put("departures", transitRoute.getDepartures().size());
+				tiles.addLine(LAYER_TRANSIT_ROUTES, linkCoords(ScheduleTools.getTransitRouteLinkIds(transitRoute)), p);
+			}
+		}
+	}
+
+	public void addStopFacilities(TransitSchedule schedule) {
+		for(TransitStopFacility stopFacility : schedule.getFacilities().values()) {
+			Map<String, Object> p = new LinkedHashMap<>();
+			p.put("id", stopFacility.getId().toString());
+			p.put("name", stopFacility.getName());
+			p.put("linkId", stopFacility.getLinkId() == null ? null : stopFacility.getLinkId().toString());
+			tiles.addPoint(LAYER_STOP_FACILITIES, ct.transform(stopFacility.getCoord()), p);
+		}
+	}
+
+	public void addWarnings(TransitSchedule schedule, String coordSys) {
+		PlausibilityCheck check = new PlausibilityCheck(schedule, network, coordSys);
+		check.runCheck(Runtime.getRuntime().availableProcessors());
+		for(Set<PlausibilityWarning> warnings : check.getWarnings().values()) {
+			for(PlausibilityWarning warning : warnings) {
+				Map<String, Object> p = new LinkedHashMap<>();
+				p.put("type", warning.getType().toString());
+				p.put("transitLineId", warning.getTransitLine().getId().toString());
+				p.put("transitRouteId", warning.getTransitRoute().getId().toString());
+				p.put("fromId", warning.getFromId());
+				p.put("toId", warning.getToId());
+				p.put("difference", warning.getDifference());
+				tiles.addLine(LAYER_WARNINGS, linkCoords(warning.getLinkIds()), p);
+			}
+		}
+	}
+
+	public void write(String outputFile) throws IOException {
+		log.info("Creating vector tiles for zoom levels " + minZoom + " to " + maxZoom + "...");
+		SortedMap<Long, byte[]> tileData = tiles.createTiles(minZoom, maxZoom);
+		log.info("Writing " + tileData.size() + " tiles...");
+		PMTilesWriter.write(outputFile, tileData, minZoom, maxZoom, tiles.getBounds(), createMetadata());
+		log.info("PMTiles file (" + outputFile + ") written.");
+	}
+
+	/**
+	 * @return the coordinates of a link sequence, links not in the network are skipped
+	 */
+	private List<Coord> linkCoords(List<Id<Link>> linkIds) {
+		List<Coord> coords = new ArrayList<>(linkIds.size() + 1);
+		for(Id<Link> linkId : linkIds) {
+			Link link = network.getLinks().get(linkId);
+			if(link != null) {
+				if(coords.isEmpty()) {
+					coords.add(nodeCoords.get(link.getFromNode().getId()));
+				}
+				coords.add(nodeCoords.get(link.getToNode().getId()));
+			}
+		}
+		return coords;
+	}
+
+	private String createMetadata() throws IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		ObjectNode metadata = mapper.createObjectNode();
+		metadata.put("name", "pt2matsim");
+		metadata.put("format", "pbf");
+		ArrayNode vectorLayers = metadata.putArray("vector_layers");
+		for(String layer : tiles.getLayerNames()) {
+			ObjectNode l = vectorLayers.addObject();
+			l.put("id", layer);
+			l.put("minzoom", tiles.getLayerMinZoom(layer));
+			l.put("maxzoom", maxZoom);
+			ObjectNode fields = l.putObject("fields");
+			tiles.getLayerFields(layer).forEach(fields::put);
+		}
+		return mapper.writeValueAsString(metadata);
+	}
+}
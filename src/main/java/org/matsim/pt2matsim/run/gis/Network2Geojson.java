@@ -21,7 +21,6 @@ package org.matsim.pt2matsim.run.gis;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 import org.geojson.Feature;
-import org.geojson.FeatureCollection;
 import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
@@ -31,8 +30,10 @@ import org.matsim.core.utils.geometry.CoordinateTransformation;
 import org.matsim.core.utils.geometry.transformations.IdentityTransformation;
 import org.matsim.core.utils.geometry.transformations.TransformationFactory;
 import org.matsim.pt2matsim.tools.GeojsonTools;
+import org.matsim.pt2matsim.tools.GeojsonWriter;
 import org.matsim.pt2matsim.tools.NetworkTools;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -84,62 +85,62 @@ public class Network2Geojson {
 	protected static Logger log = LogManager.getLogger(Network2Geojson.class);
 	private final CoordinateTransformation ct;
 	private Network network;
-	private FeatureCollection linkFeatures = new FeatureCollection();
-	private FeatureCollection nodeFeatures = new FeatureCollection();
-	private FeatureCollection networkFeatureCollection;
 
+	/**
+	 * Features are created while writing, the network is not converted beforehand.
+	 */
 	public Network2Geojson(String networkCoordSystem, Network network) {
 		this.ct = networkCoordSystem == null ? new IdentityTransformation() : TransformationFactory.getCoordinateTransformation(networkCoordSystem, TransformationFactory.WGS84);
 		this.network = network;
-		convertLinks();
-		convertNodes();
-		combineFeatures();
 	}
 
 	public void writeNetwork(String networkOutputFile) {
-		GeojsonTools.writeFeatureCollectionToFile(networkFeatureCollection, networkOutputFile);
+		try(GeojsonWriter writer = new GeojsonWriter(networkOutputFile)) {
+			writer.addAllParallel(network.getLinks().values(), this::createLinkFeature);
+			writer.addAllParallel(network.getNodes().values(), this::createNodeFeature);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 		log.info("Network file (" + networkOutputFile + ") written.");
 	}
 
 	public void writeLinks(String linkOutputFile) {
-		GeojsonTools.writeFeatureCollectionToFile(linkFeatures, linkOutputFile);
+		try(GeojsonWriter writer = new GeojsonWriter(linkOutputFile)) {
+			writer.addAllParallel(network.getLinks().values(), this::createLinkFeature);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 		log.info("Network file (" + linkOutputFile + ") written.");
 	}
 
 	public void writeNodes(String nodeOutputFile) {
-		GeojsonTools.writeFeatureCollectionToFile(nodeFeatures, nodeOutputFile);
+		try(GeojsonWriter writer = new GeojsonWriter(nodeOutputFile)) {
+			writer.addAllParallel(network.getNodes().values(), this::createNodeFeature);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 		log.info("Network file (" + nodeOutputFile + ") written.");
 	}
 
-	private void combineFeatures() {
-		this.networkFeatureCollection = new FeatureCollection();
-		this.networkFeatureCollection.addAll(linkFeatures.getFeatures());
-		this.networkFeatureCollection.addAll(nodeFeatures.getFeatures());
+	private Feature createNodeFeature(Node node) {
+		Feature f = GeojsonTools.createPointFeature(ct.transform(node.getCoord()));
+		f.setProperty("id", node.getId().toString());
+//		f.setProperty("inLinks", MiscUtils.collectionToString(node.getInLinks().values()));
+//		f.setProperty("outLinks", MiscUtils.collectionToString(node.getOutLinks().values()));
+		return f;
 	}
 
-	private void convertNodes() {
-		for(Node node : network.getNodes().values()) {
-			Feature f = GeojsonTools.createPointFeature(ct.transform(node.getCoord()));
-			f.setProperty("id", node.getId().toString());
-//			f.setProperty("inLinks", MiscUtils.collectionToString(node.getInLinks().values()));
-//			f.setProperty("outLinks", MiscUtils.collectionToString(node.getOutLinks().values()));
-			this.nodeFeatures.add(f);
-		}
-	}
-
-	private void convertLinks() {
-		for(Link link : network.getLinks().values()) {
-			Feature f = createLineFeature(link);
-			f.setProperty("id", link.getId().toString());
-			f.setProperty("length", link.getLength());
-			f.setProperty("freespeed", link.getFreespeed());
-			f.setProperty("capacity", link.getCapacity());
-			f.setProperty("lanes", link.getNumberOfLanes());
-			f.setProperty("fromNode", link.getFromNode().getId().toString());
-			f.setProperty("toNode", link.getToNode().getId().toString());
-			f.setProperty("modes", CollectionUtils.setToString(link.getAllowedModes()));
-			this.linkFeatures.add(f);
-		}
+	private Feature createLinkFeature(Link link) {
+		Feature f = createLineFeature(link);
+		f.setProperty("id", link.getId().toString());
+		f.setProperty("length", link.getLength());
+		f.setProperty("freespeed", link.getFreespeed());
+		f.setProperty("capacity", link.getCapacity());
+		f.setProperty("lanes", link.getNumberOfLanes());
+		f.setProperty("fromNode", link.getFromNode().getId().toString());
+		f.setProperty("toNode", link.getToNode().getId().toString());
+		f.setProperty("modes", CollectionUtils.setToString(link.getAllowedModes()));
+		return f;
 	}
 
 	private Feature createLineFeature(Link link) {
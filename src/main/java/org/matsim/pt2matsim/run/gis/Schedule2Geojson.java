@@ -21,22 +21,24 @@ package org.matsim.pt2matsim.run.gis;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 import org.geojson.Feature;
-import org.geojson.FeatureCollection;
 import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.core.utils.collections.CollectionUtils;
 import org.matsim.core.utils.collections.MapUtils;
+import org.matsim.core.utils.collections.Tuple;
 import org.matsim.core.utils.geometry.CoordinateTransformation;
 import org.matsim.core.utils.geometry.transformations.IdentityTransformation;
 import org.matsim.core.utils.geometry.transformations.TransformationFactory;
 import org.matsim.core.utils.misc.Time;
 import org.matsim.pt.transitSchedule.api.*;
 import org.matsim.pt2matsim.tools.GeojsonTools;
+import org.matsim.pt2matsim.tools.GeojsonWriter;
 import org.matsim.pt2matsim.tools.NetworkTools;
 import org.matsim.pt2matsim.tools.ScheduleTools;
 
+import java.io.IOException;
 import java.util.*;
 
 /**
@@ -97,136 +99,150 @@ public class Schedule2Geojson {
 	private final TransitSchedule schedule;
 	private final Network network;
 	private final CoordinateTransformation ct;
+	private final boolean useNetworkLinks;
 	private Map<TransitStopFacility, Set<Id<TransitRoute>>> routesOnStopFacility = new HashMap<>();
 
-	private FeatureCollection transitRouteFeatures = new FeatureCollection();
-	private FeatureCollection stopFacilityFeatures = new FeatureCollection();
-	private FeatureCollection stopRefLinks = new FeatureCollection();
-	private FeatureCollection scheduleFeatureCollection;
-
 	public Schedule2Geojson(String originalCoordRefSys, final TransitSchedule schedule) {
-		this.ct = originalCoordRefSys == null ? new IdentityTransformation() : TransformationFactory.getCoordinateTransformation(originalCoordRefSys, TransformationFactory.WGS84);
-		this.schedule = schedule;
-		this.network = null;
-
-		convertTransitRoutes(false);
-		convertStopFacilities();
-		combineFeatures();
+		this(originalCoordRefSys, schedule, null);
 	}
 
+	/**
+	 * Features are created while writing, the schedule is not converted beforehand.
+	 */
 	public Schedule2Geojson(String originalCoordRefSys, final TransitSchedule schedule, final Network network) {
 		this.ct = originalCoordRefSys == null ? new IdentityTransformation() : TransformationFactory.getCoordinateTransformation(originalCoordRefSys, TransformationFactory.WGS84);
 		this.schedule = schedule;
 		this.network = network;
+		this.useNetworkLinks = network != null;
 
-		convertTransitRoutes(network != null);
-		convertStopFacilities();
-		combineFeatures();
+		for(TransitLine transitLine : schedule.getTransitLines().values()) {
+			for(TransitRoute transitRoute : transitLine.getRoutes().values()) {
+				for(TransitRouteStop stop : transitRoute.getStops()) {
+					MapUtils.getSet(stop.getStopFacility(), routesOnStopFacility).add(transitRoute.getId());
+				}
+			}
+		}
 	}
 
 	public void writeSchedule(String outputFile) {
-		GeojsonTools.writeFeatureCollectionToFile(this.scheduleFeatureCollection, outputFile);
+		try(GeojsonWriter writer = new GeojsonWriter(outputFile)) {
+			writer.addAllParallel(transitRoutes(), this::createTransitRouteFeature);
+			writer.addAllParallel(schedule.getFacilities().values(), this::createStopFacilityFeature);
+			// TODO set refLink as network attribute
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 	}
 
 	public void writeStopFacilities(String outputFile) {
-		GeojsonTools.writeFeatureCollectionToFile(this.stopFacilityFeatures, outputFile);
+		try(GeojsonWriter writer = new GeojsonWriter(outputFile)) {
+			writer.addAllParallel(schedule.getFacilities().values(), this::createStopFacilityFeature);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 	}
 
 	public void writeTransitRoutes(String outputFile) {
-		GeojsonTools.writeFeatureCollectionToFile(this.transitRouteFeatures, outputFile);
+		try(GeojsonWriter writer = new GeojsonWriter(outputFile)) {
+			writer.addAllParallel(transitRoutes(), this::createTransitRouteFeature);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 	}
 
 	public void writeStopRefLinks(String outputFile) {
-		GeojsonTools.writeFeatureCollectionToFile(this.stopRefLinks, outputFile);
+		try(GeojsonWriter writer = new GeojsonWriter(outputFile)) {
+			writer.addAllParallel(schedule.getFacilities().values(), this::createStopRefLinkFeature);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 	}
 
-	private void combineFeatures() {
-		this.scheduleFeatureCollection = new FeatureCollection();
-		this.scheduleFeatureCollection.addAll(transitRouteFeatures.getFeatures());
-		this.scheduleFeatureCollection.addAll(stopFacilityFeatures.getFeatures());
-		// TODO set refLink as network attribute
+	private Iterable<Tuple<TransitLine, TransitRoute>> transitRoutes() {
+		return () -> schedule.getTransitLines().values().stream()
+				.flatMap(l -> l.getRoutes().values().stream().map(r -> new Tuple<>(l, r)))
+				.iterator();
 	}
 
 	/**
-	 * Converts the stop facilities to points.
+	 * Converts a stop facility to a point.
 	 */
-	private void convertStopFacilities() {
-		for(TransitStopFacility stopFacility : schedule.getFacilities().values()) {
-			Coord stopCoord = stopFacility.getCoord();
+	private Feature createStopFacilityFeature(TransitStopFacility stopFacility) {
+		Coord stopCoord = stopFacility.getCoord();
 
-			Feature pf = GeojsonTools.createPointFeature(ct.transform(stopCoord));
-			pf.setProperty("stopFacilityId", stopFacility.getId().toString());
-			pf.setProperty("stopFacilityName", stopFacility.getName());
-			pf.setProperty("stopFacilityPostAreaId", stopFacility.getStopAreaId());
-			pf.setProperty("stopFacilityIsBlocking", stopFacility.getIsBlockingLane());
+		Feature pf = GeojsonTools.createPointFeature(ct.transform(stopCoord));
+		pf.setProperty("stopFacilityId", stopFacility.getId().toString());
+		pf.setProperty("stopFacilityName", stopFacility.getName());
+		pf.setProperty("stopFacilityPostAreaId", stopFacility.getStopAreaId());
+		pf.setProperty("stopFacilityIsBlocking", stopFacility.getIsBlockingLane());
 
-			if(stopFacility.getLinkId() != null) pf.setProperty("stopFacilityLinkId", stopFacility.getLinkId().toString());
+		if(stopFacility.getLinkId() != null) pf.setProperty("stopFacilityLinkId", stopFacility.getLinkId().toString());
 
-			if(routesOnStopFacility.get(stopFacility) != null) {
-				pf.setProperty("stopFacilityTransitRoutes", CollectionUtils.idSetToString(routesOnStopFacility.get(stopFacility)));
-			}
-			stopFacilityFeatures.add(pf);
-
-			// convert stop ref links (not written to combined file)
-			if(stopFacility.getLinkId() != null && this.network != null) {
-				Link refLink = network.getLinks().get(stopFacility.getLinkId());
-
-				List<Coord> coords = new ArrayList<>();
-				coords.add(this.ct.transform(refLink.getFromNode().getCoord()));
-				coords.add(this.ct.transform(refLink.getToNode().getCoord()));
-
-				Feature lf = GeojsonTools.createLineFeature(coords);
-				lf.setProperty("id", stopFacility.getId().toString());
-				lf.setProperty("name", stopFacility.getName());
-				lf.setProperty("linkId", stopFacility.getLinkId().toString());
-				lf.setProperty("postAreaId", stopFacility.getStopAreaId());
-				lf.setProperty("isBlocking", stopFacility.getIsBlockingLane());
-				stopRefLinks.add(lf);
-			}
+		if(routesOnStopFacility.get(stopFacility) != null) {
+			pf.setProperty("stopFacilityTransitRoutes", CollectionUtils.idSetToString(routesOnStopFacility.get(stopFacility)));
 		}
+		return pf;
 	}
 
 	/**
-	 * Converts the transit routes to polylines
+	 * Converts the reference link of a stop facility to a line (not written to combined file)
+	 *
+	 * @return <tt>null</tt> if the stop facility has no reference link or no network is available
 	 */
-	private void convertTransitRoutes(boolean useNetworkLinks) {
-		for(TransitLine transitLine : schedule.getTransitLines().values()) {
-			for(TransitRoute transitRoute : transitLine.getRoutes().values()) {
-
-				for(TransitRouteStop stop : transitRoute.getStops()) {
-					MapUtils.getSet(stop.getStopFacility(), routesOnStopFacility).add(transitRoute.getId());
-				}
-
-				// create coordinates
-				List<Coord> coords;
-				double simLength = 0.0;
-				if(useNetworkLinks) {
-					coords = getCoordFromRoute(transitRoute);
-					if(coords.size() == 0) {
-						log.warn("No links found for route " + transitRoute.getId() + " on line " + transitLine.getId());
-					}
-					simLength = getRouteLength(transitRoute);
-				} else {
-					coords = getCoordsFromStopFacilities(transitRoute);
-				}
-
-				// departures
-				Set<String> deps = new TreeSet<>();
-				for(Departure departure : transitRoute.getDepartures().values()) {
-					deps.add(Time.writeTime(departure.getDepartureTime()));
-				}
+	private Feature createStopRefLinkFeature(TransitStopFacility stopFacility) {
+		if(stopFacility.getLinkId() == null || this.network == null) {
+			return null;
+		}
+		Link refLink = network.getLinks().get(stopFacility.getLinkId());
+
+		List<Coord> coords = new ArrayList<>();
+		coords.add(this.ct.transform(refLink.getFromNode().getCoord()));
+		coords.add(this.ct.transform(refLink.getToNode().getCoord()));
+
+		Feature lf = GeojsonTools.createLineFeature(coords);
+		lf.setProperty("id", stopFacility.getId().toString());
+		lf.setProperty("name", stopFacility.getName());
+		lf.setProperty("linkId", stopFacility.getLinkId().toString());
+		lf.setProperty("postAreaId", stopFacility.getStopAreaId());
+		lf.setProperty("isBlocking", stopFacility.getIsBlockingLane());
+		return lf;
+	}
 
-				Feature f = GeojsonTools.createLineFeature(coords);
-				f.setProperty("transitLineId", transitLine.getId().toString());
-				f.setProperty("transitLineName", transitLine.getName());
-				f.setProperty("transitRouteId", transitRoute.getId().toString());
-				f.setProperty("transportMode", transitRoute.getTransportMode());
-				f.setProperty("transitRouteDescription", transitRoute.getDescription());
-				f.setProperty("transitRouteSimLength", simLength);
-				f.setProperty("departures", CollectionUtils.setToString(deps));
-				transitRouteFeatures.add(f);
+	/**
+	 * Converts a transit route to a polyline
+	 */
+	private Feature createTransitRouteFeature(Tuple<TransitLine, TransitRoute> lineRoute) {
+		TransitLine transitLine = lineRoute.getFirst();
+		TransitRoute transitRoute = lineRoute.getSecond();
+
+		// create coordinates
+		List<Coord> coords;
+		double simLength = 0.0;
+		if(useNetworkLinks) {
+			coords = getCoordFromRoute(transitRoute);
+			if(coords.size() == 0) {
+				log.warn("No links found for route " + transitRoute.getId() + " on line " + transitLine.getId());
 			}
+			simLength = getRouteLength(transitRoute);
+		} else {
+			coords = getCoordsFromStopFacilities(transitRoute);
+		}
+
+		// departures
+		Set<String> deps = new TreeSet<>();
+		for(Departure departure : transitRoute.getDepartures().values()) {
+			deps.add(Time.writeTime(departure.getDepartureTime()));
 		}
+
+		Feature f = GeojsonTools.createLineFeature(coords);
+		f.setProperty("transitLineId", transitLine.getId().toString());
+		f.setProperty("transitLineName", transitLine.getName());
+		f.setProperty("transitRouteId", transitRoute.getId().toString());
+		f.setProperty("transportMode", transitRoute.getTransportMode());
+		f.setProperty("transitRouteDescription", transitRoute.getDescription());
+		f.setProperty("transitRouteSimLength", simLength);
+		f.setProperty("departures", CollectionUtils.setToString(deps));
+		return f;
 	}
 
 	/**
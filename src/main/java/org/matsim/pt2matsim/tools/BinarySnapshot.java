@@ -0,0 +1,658 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2016 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.pt2matsim.tools;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.population.routes.RouteUtils;
+import org.matsim.core.utils.misc.OptionalTime;
+import org.matsim.pt.transitSchedule.api.*;
+import org.matsim.utils.objectattributes.attributable.Attributes;
+import org.matsim.utils.objectattributes.attributable.AttributesImpl;
+import org.matsim.vehicles.Vehicle;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Compact binary snapshot of a network and/or a transit schedule. Much faster to
+ * read than MATSim xml files, intended as intermediate format between the tools
+ * of this package.
+ * <p>
+ * All strings (ids, modes, names, attribute keys) are stored once in a string table
+ * and referenced by their index. Node coordinates and link attributes are written as
+ * columns and read in bulk from a memory-mapped file. Attributes with values of type
+ * String, Double, Integer, Long or Boolean are kept, others are skipped. This includes
+ * the attributes of the network and schedule containers (e.g. the coordinate reference
+ * system). Coordinates are stored in 2D. Snapshots are limited to 2 GB, writing fails
+ * before the limit is exceeded.
+ * <p>
+ * {@link NetworkTools#readNetwork(String)} and {@link ScheduleTools#readTransitSchedule(String)}
+ * recognize snapshots automatically, files ending with {@value #FILE_EXTENSION} are written as
+ * snapshot by {@link NetworkTools#writeNetwork(Network, String)} and
+ * {@link ScheduleTools#writeTransitSchedule(TransitSchedule, String)}.
+ */
+public final class BinarySnapshot {
+
+	protected static Logger log = LogManager.getLogger(BinarySnapshot.class);
+
+	public static final String FILE_EXTENSION = ".snapshot";
+
+	private static final byte[] MAGIC = "PT2MSNAP".getBytes(StandardCharsets.US_ASCII);
+	private static final int VERSION = 2;
+	private static final int NULL = -1;
+
+	private static final byte TYPE_STRING = 0;
+	private static final byte TYPE_DOUBLE = 1;
+	private static final byte TYPE_INT = 2;
+	private static final byte TYPE_LONG = 3;
+	private static final byte TYPE_BOOLEAN = 4;
+
+	private BinarySnapshot() {}
+
+	/**
+	 * @return true if the file starts with the snapshot header
+	 */
+	public static boolean isSnapshot(String file) {
+		File f = new File(file);
+		if(!f.isFile()) {
+			return false;
+		}
+		byte[] magic = new byte[MAGIC.length];
+		try(DataInputStream in = new DataInputStream(new FileInputStream(f))) {
+			in.readFully(magic);
+		} catch (IOException e) {
+			return false;
+		}
+		return Arrays.equals(magic, MAGIC);
+	}
+
+	/**
+	 * Writes a snapshot, network or schedule can be <tt>null</tt>.
+	 */
+	public static void write(String file, Network network, TransitSchedule schedule) {
+		log.info("Writing snapshot to file " + file);
+		StringTable strings = new StringTable();
+		if(network != null) strings.collect(network);
+		if(schedule != null) strings.collect(schedule);
+
+		try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(0);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new LimitedOutputStream(new FileOutputStream(raf.getFD())), 1 << 16));
+			out.write(MAGIC);
+			out.writeInt(VERSION);
+			int offsetsPos = out.size();
+			// section offsets: strings, network, schedule
+			out.writeLong(0);
+			out.writeLong(0);
+			out.writeLong(0);
+
+			long stringsOffset = out.size();
+			strings.write(out);
+			long networkOffset = 0;
+			if(network != null) {
+				networkOffset = out.size();
+				new Writer(out, strings).write(network);
+			}
+			long scheduleOffset = 0;
+			if(schedule != null) {
+				scheduleOffset = out.size();
+				new Writer(out, strings).write(schedule);
+			}
+			out.flush();
+
+			raf.seek(offsetsPos);
+			raf.writeLong(stringsOffset);
+			raf.writeLong(networkOffset);
+			raf.writeLong(scheduleOffset);
+		} catch (IOException e) {
+			new File(file).delete();
+			throw new UncheckedIOException(e);
+		}
+		log.info("done.");
+	}
+
+	public static Network readNetwork(String file) {
+		Reader reader = new Reader(file);
+		if(reader.networkOffset == 0) {
+			throw new IllegalArgumentException("Snapshot " + file + " does not contain a network");
+		}
+		return reader.readNetwork();
+	}
+
+	public static TransitSchedule readTransitSchedule(String file) {
+		Reader reader = new Reader(file);
+		if(reader.scheduleOffset == 0) {
+			throw new IllegalArgumentException("Snapshot " + file + " does not contain a transit schedule");
+		}
+		return reader.readSchedule();
+	}
+
+	/**
+	 * Fails before more bytes are written than a snapshot can hold
+	 */
+	private static class LimitedOutputStream extends FilterOutputStream {
+		private long written = 0;
+
+		private LimitedOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		private void reserve(int len) throws IOException {
+			if(written + len > Integer.MAX_VALUE) {
+				throw new IOException("Snapshot exceeds 2 GB");
+			}
+			written += len;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			reserve(1);
+			out.write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			reserve(len);
+			out.write(b, off, len);
+		}
+	}
+
+	/**
+	 * Maps strings to their index in the snapshot.
+	 */
+	private static class StringTable {
+		private final Map<String, Integer> index = new HashMap<>();
+		private final List<String> strings = new ArrayList<>();
+
+		private void add(Object o) {
+			if(o != null) {
+				index.computeIfAbsent(o.toString(), s -> {
+					strings.add(s);
+					return strings.size() - 1;
+				});
+			}
+		}
+
+		private int ref(Object o) {
+			return o == null ? NULL : index.get(o.toString());
+		}
+
+		private void addAttributes(Attributes attributes) {
+			for(Map.Entry<String, Object> e : attributes.getAsMap().entrySet()) {
+				add(e.getKey());
+				if(e.getValue() instanceof String) {
+					add(e.getValue());
+				}
+			}
+		}
+
+		private void collect(Network network) {
+			addAttributes(network.getAttributes());
+			for(Node node : network.getNodes().values()) {
+				add(node.getId());
+				addAttributes(node.getAttributes());
+			}
+			for(Link link : network.getLinks().values()) {
+				add(link.getId());
+				link.getAllowedModes().forEach(this::add);
+				addAttributes(link.getAttributes());
+			}
+		}
+
+		private void collect(TransitSchedule schedule) {
+			addAttributes(schedule.getAttributes());
+			for(TransitStopFacility stopFacility : schedule.getFacilities().values()) {
+				add(stopFacility.getId());
+				add(stopFacility.getLinkId());
+				add(stopFacility.getName());
+				add(stopFacility.getStopAreaId());
+				addAttributes(stopFacility.getAttributes());
+			}
+			for(TransitLine transitLine : schedule.getTransitLines().values()) {
+				add(transitLine.getId());
+				add(transitLine.getName());
+				addAttributes(transitLine.getAttributes());
+				for(TransitRoute transitRoute : transitLine.getRoutes().values()) {
+					add(transitRoute.getId());
+					add(transitRoute.getTransportMode());
+					add(transitRoute.getDescription());
+					addAttributes(transitRoute.getAttributes());
+					if(transitRoute.getRoute() != null) {
+						ScheduleTools.getTransitRouteLinkIds(transitRoute).forEach(this::add);
+					}
+					for(Departure departure : transitRoute.getDepartures().values()) {
+						add(departure.getId());
+						add(departure.getVehicleId());
+						addAttributes(departure.getAttributes());
+					}
+				}
+			}
+		}
+
+		private void write(DataOutputStream out) throws IOException {
+			byte[][] bytes = new byte[strings.size()][];
+			out.writeInt(strings.size());
+			for(int i = 0; i < bytes.length; i++) {
+				bytes[i] = strings.get(i).getBytes(StandardCharsets.UTF_8);
+				out.writeInt(bytes[i].length);
+			}
+			for(byte[] b : bytes) {
+				out.write(b);
+			}
+		}
+	}
+
+	private static class Writer {
+		private final DataOutputStream out;
+		private final StringTable strings;
+
+		private Writer(DataOutputStream out, StringTable strings) {
+			this.out = out;
+			this.strings = strings;
+		}
+
+		private void write(Network network) throws IOException {
+			out.writeDouble(network.getCapacityPeriod());
+			out.writeDouble(network.getEffectiveLaneWidth());
+			writeAttributes(network.getAttributes());
+
+			// nodes
+			List<Node> nodes = new ArrayList<>(network.getNodes().values());
+			Map<Node, Integer> nodeIndices = new HashMap<>();
+			out.writeInt(nodes.size());
+			for(Node node : nodes) {
+				nodeIndices.put(node, nodeIndices.size());
+				out.writeInt(strings.ref(node.getId()));
+			}
+			for(Node node : nodes) out.writeDouble(node.getCoord().getX());
+			for(Node node : nodes) out.writeDouble(node.getCoord().getY());
+			for(Node node : nodes) writeAttributes(node.getAttributes());
+
+			// distinct mode sets
+			Map<Set<String>, Integer> modeSets = new LinkedHashMap<>();
+			for(Link link : network.getLinks().values()) {
+				modeSets.putIfAbsent(link.getAllowedModes(), modeSets.size());
+			}
+			out.writeInt(modeSets.size());
+			for(Set<String> modes : modeSets.keySet()) {
+				out.writeInt(modes.size());
+				for(String mode : modes) out.writeInt(strings.ref(mode));
+			}
+
+			// links
+			Collection<? extends Link> links = network.getLinks().values();
+			out.writeInt(links.size());
+			for(Link link : links) out.writeInt(strings.ref(link.getId()));
+			for(Link link : links) out.writeInt(nodeIndices.get(link.getFromNode()));
+			for(Link link : links) out.writeInt(nodeIndices.get(link.getToNode()));
+			for(Link link : links) out.writeDouble(link.getLength());
+			for(Link link : links) out.writeDouble(link.getFreespeed());
+			for(Link link : links) out.writeDouble(link.getCapacity());
+			for(Link link : links) out.writeDouble(link.getNumberOfLanes());
+			for(Link link : links) out.writeInt(modeSets.get(link.getAllowedModes()));
+			for(Link link : links) writeAttributes(link.getAttributes());
+		}
+
+		private void write(TransitSchedule schedule) throws IOException {
+			writeAttributes(schedule.getAttributes());
+
+			// stop facilities
+			List<TransitStopFacility> facilities = new ArrayList<>(schedule.getFacilities().values());
+			Map<Id<TransitStopFacility>, Integer> facilityIndices = new HashMap<>();
+			out.writeInt(facilities.size());
+			for(TransitStopFacility f : facilities) {
+				facilityIndices.put(f.getId(), facilityIndices.size());
+				out.writeInt(strings.ref(f.getId()));
+			}
+			for(TransitStopFacility f : facilities) out.writeDouble(f.getCoord().getX());
+			for(TransitStopFacility f : facilities) out.writeDouble(f.getCoord().getY());
+			for(TransitStopFacility f : facilities) out.writeInt(strings.ref(f.getLinkId()));
+			for(TransitStopFacility f : facilities) out.writeInt(strings.ref(f.getName()));
+			for(TransitStopFacility f : facilities) out.writeInt(strings.ref(f.getStopAreaId()));
+			for(TransitStopFacility f : facilities) out.writeBoolean(f.getIsBlockingLane());
+			for(TransitStopFacility f : facilities) writeAttributes(f.getAttributes());
+
+			// minimal transfer times
+			List<double[]> transfers = new ArrayList<>();
+			MinimalTransferTimes.MinimalTransferTimesIterator iterator = schedule.getMinimalTransferTimes().iterator();
+			while(iterator.hasNext()) {
+				iterator.next();
+				Integer from = facilityIndices.get(iterator.getFromStopId());
+				Integer to = facilityIndices.get(iterator.getToStopId());
+				if(from != null && to != null) {
+					transfers.add(new double[]{from, to, iterator.getSeconds()});
+				}
+			}
+			out.writeInt(transfers.size());
+			for(double[] t : transfers) {
+				out.writeInt((int) t[0]);
+				out.writeInt((int) t[1]);
+				out.writeDouble(t[2]);
+			}
+
+			// transit lines
+			out.writeInt(schedule.getTransitLines().size());
+			for(TransitLine transitLine : schedule.getTransitLines().values()) {
+				out.writeInt(strings.ref(transitLine.getId()));
+				out.writeInt(strings.ref(transitLine.getName()));
+				writeAttributes(transitLine.getAttributes());
+				out.writeInt(transitLine.getRoutes().size());
+				for(TransitRoute transitRoute : transitLine.getRoutes().values()) {
+					out.writeInt(strings.ref(transitRoute.getId()));
+					out.writeInt(strings.ref(transitRoute.getTransportMode()));
+					out.writeInt(strings.ref(transitRoute.getDescription()));
+					writeAttributes(transitRoute.getAttributes());
+
+					out.writeInt(transitRoute.getStops().size());
+					for(TransitRouteStop routeStop : transitRoute.getStops()) {
+						out.writeInt(facilityIndices.get(routeStop.getStopFacility().getId()));
+						out.writeDouble(routeStop.getArrivalOffset().orElse(Double.NaN));
+						out.writeDouble(routeStop.getDepartureOffset().orElse(Double.NaN));
+						out.writeBoolean(routeStop.isAwaitDepartureTime());
+					}
+
+					if(transitRoute.getRoute() == null) {
+						out.writeInt(NULL);
+					} else {
+						List<Id<Link>> linkIds = ScheduleTools.getTransitRouteLinkIds(transitRoute);
+						out.writeInt(linkIds.size());
+						for(Id<Link> linkId : linkIds) out.writeInt(strings.ref(linkId));
+					}
+
+					out.writeInt(transitRoute.getDepartures().size());
+					for(Departure departure : transitRoute.getDepartures().values()) {
+						out.writeInt(strings.ref(departure.getId()));
+						out.writeDouble(departure.getDepartureTime());
+						out.writeInt(strings.ref(departure.getVehicleId()));
+						writeAttributes(departure.getAttributes());
+					}
+				}
+			}
+		}
+
+		private void writeAttributes(Attributes attributes) throws IOException {
+			Map<String, Object> map = attributes.getAsMap();
+			int n = 0;
+			for(Object value : map.values()) {
+				if(isSupported(value)) n++;
+			}
+			out.writeInt(n);
+			for(Map.Entry<String, Object> e : map.entrySet()) {
+				Object value = e.getValue();
+				if(!isSupported(value)) {
+					continue;
+				}
+				out.writeInt(strings.ref(e.getKey()));
+				if(value instanceof String) {
+					out.writeByte(TYPE_STRING);
+					out.writeInt(strings.ref(value));
+				} else if(value instanceof Double) {
+					out.writeByte(TYPE_DOUBLE);
+					out.writeDouble((Double) value);
+				} else if(value instanceof Integer) {
+					out.writeByte(TYPE_INT);
+					out.writeInt((Integer) value);
+				} else if(value instanceof Long) {
+					out.writeByte(TYPE_LONG);
+					out.writeLong((Long) value);
+				} else {
+					out.writeByte(TYPE_BOOLEAN);
+					out.writeBoolean((Boolean) value);
+				}
+			}
+		}
+
+		private static boolean isSupported(Object value) {
+			return value instanceof String || value instanceof Double || value instanceof Integer || value instanceof Long || value instanceof Boolean;
+		}
+	}
+
+	private static class Reader {
+		private final ByteBuffer buf;
+		private final String[] strings;
+		private final long networkOffset;
+		private final long scheduleOffset;
+
+		private Reader(String file) {
+			try(FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+				if(channel.size() > Integer.MAX_VALUE) {
+					throw new IOException("Snapshot exceeds 2 GB");
+				}
+				MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				this.buf = mapped;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+
+			byte[] magic = new byte[MAGIC.length];
+			buf.get(magic);
+			if(!Arrays.equals(magic, MAGIC)) {
+				throw new IllegalArgumentException(file + " is not a snapshot file");
+			}
+			int version = buf.getInt();
+			if(version != VERSION) {
+				throw new IllegalArgumentException("Unsupported snapshot version " + version);
+			}
+			long stringsOffset = buf.getLong();
+			this.networkOffset = buf.getLong();
+			this.scheduleOffset = buf.getLong();
+
+			buf.position((int) stringsOffset);
+			int[] lengths = readInts(buf.getInt());
+			this.strings = new String[lengths.length];
+			byte[] bytes = new byte[64];
+			for(int i = 0; i < lengths.length; i++) {
+				if(bytes.length < lengths[i]) bytes = new byte[lengths[i]];
+				buf.get(bytes, 0, lengths[i]);
+				strings[i] = new String(bytes, 0, lengths[i], StandardCharsets.UTF_8);
+			}
+		}
+
+		private String string(int ref) {
+			return ref == NULL ? null : strings[ref];
+		}
+
+		private <T> Id<T> id(int ref, Class<T> type) {
+			return ref == NULL ? null : Id.create(strings[ref], type);
+		}
+
+		private int[] readInts(int n) {
+			int[] values = new int[n];
+			buf.asIntBuffer().get(values);
+			buf.position(buf.position() + n * Integer.BYTES);
+			return values;
+		}
+
+		private double[] readDoubles(int n) {
+			double[] values = new double[n];
+			buf.asDoubleBuffer().get(values);
+			buf.position(buf.position() + n * Double.BYTES);
+			return values;
+		}
+
+		private Network readNetwork() {
+			buf.position((int) networkOffset);
+			Network network = NetworkTools.createNetwork();
+			NetworkFactory factory = network.getFactory();
+			network.setCapacityPeriod(buf.getDouble());
+			network.setEffectiveLaneWidth(buf.getDouble());
+			readAttributes(network.getAttributes());
+
+			int nNodes = buf.getInt();
+			int[] nodeIds = readInts(nNodes);
+			double[] x = readDoubles(nNodes);
+			double[] y = readDoubles(nNodes);
+			Node[] nodes = new Node[nNodes];
+			for(int i = 0; i < nNodes; i++) {
+				nodes[i] = factory.createNode(id(nodeIds[i], Node.class), new Coord(x[i], y[i]));
+				readAttributes(nodes[i].getAttributes());
+				network.addNode(nodes[i]);
+			}
+
+			List<Set<String>> modeSets = new ArrayList<>();
+			int nModeSets = buf.getInt();
+			for(int i = 0; i < nModeSets; i++) {
+				int[] refs = readInts(buf.getInt());
+				Set<String> modes = new HashSet<>();
+				for(int ref : refs) modes.add(strings[ref]);
+				modeSets.add(modes);
+			}
+
+			int nLinks = buf.getInt();
+			int[] linkIds = readInts(nLinks);
+			int[] from = readInts(nLinks);
+			int[] to = readInts(nLinks);
+			double[] length = readDoubles(nLinks);
+			double[] freespeed = readDoubles(nLinks);
+			double[] capacity = readDoubles(nLinks);
+			double[] lanes = readDoubles(nLinks);
+			int[] modes = readInts(nLinks);
+			for(int i = 0; i < nLinks; i++) {
+				Link link = factory.createLink(id(linkIds[i], Link.class), nodes[from[i]], nodes[to[i]]);
+				link.setLength(length[i]);
+				link.setFreespeed(freespeed[i]);
+				link.setCapacity(capacity[i]);
+				link.setNumberOfLanes(lanes[i]);
+				link.setAllowedModes(modeSets.get(modes[i]));
+				readAttributes(link.getAttributes());
+				network.addLink(link);
+			}
+			return network;
+		}
+
+		private TransitSchedule readSchedule() {
+			buf.position((int) scheduleOffset);
+			TransitSchedule schedule = ScheduleTools.createSchedule();
+			TransitScheduleFactory factory = schedule.getFactory();
+			readAttributes(schedule.getAttributes());
+
+			int nFacilities = buf.getInt();
+			int[] ids = readInts(nFacilities);
+			double[] x = readDoubles(nFacilities);
+			double[] y = readDoubles(nFacilities);
+			int[] linkIds = readInts(nFacilities);
+			int[] names = readInts(nFacilities);
+			int[] stopAreaIds = readInts(nFacilities);
+			TransitStopFacility[] facilities = new TransitStopFacility[nFacilities];
+			for(int i = 0; i < nFacilities; i++) {
+				facilities[i] = factory.createTransitStopFacility(id(ids[i], TransitStopFacility.class), new Coord(x[i], y[i]), buf.get() != 0);
+				facilities[i].setLinkId(id(linkIds[i], Link.class));
+				facilities[i].setName(string(names[i]));
+				facilities[i].setStopAreaId(id(stopAreaIds[i], TransitStopArea.class));
+			}
+			for(TransitStopFacility f : facilities) {
+				readAttributes(f.getAttributes());
+				schedule.addStopFacility(f);
+			}
+
+			int nTransfers = buf.getInt();
+			for(int i = 0; i < nTransfers; i++) {
+				int from = buf.getInt();
+				int to = buf.getInt();
+				schedule.getMinimalTransferTimes().set(facilities[from].getId(), facilities[to].getId(), buf.getDouble());
+			}
+
+			int nLines = buf.getInt();
+			for(int l = 0; l < nLines; l++) {
+				TransitLine transitLine = factory.createTransitLine(id(buf.getInt(), TransitLine.class));
+				transitLine.setName(string(buf.getInt()));
+				readAttributes(transitLine.getAttributes());
+
+				int nRoutes = buf.getInt();
+				for(int r = 0; r < nRoutes; r++) {
+					Id<TransitRoute> routeId = id(buf.getInt(), TransitRoute.class);
+					String mode = string(buf.getInt());
+					String description = string(buf.getInt());
+					Attributes routeAttributes = new AttributesImpl();
+					readAttributes(routeAttributes);
+
+					int nStops = buf.getInt();
+					List<TransitRouteStop> stops = new ArrayList<>(nStops);
+					for(int s = 0; s < nStops; s++) {
+						TransitStopFacility facility = facilities[buf.getInt()];
+						OptionalTime arrival = optionalTime(buf.getDouble());
+						OptionalTime departure = optionalTime(buf.getDouble());
+						TransitRouteStop routeStop = factory.createTransitRouteStop(facility, arrival, departure);
+						routeStop.setAwaitDepartureTime(buf.get() != 0);
+						stops.add(routeStop);
+					}
+
+					int nRouteLinks = buf.getInt();
+					NetworkRoute route = null;
+					if(nRouteLinks != NULL) {
+						List<Id<Link>> routeLinkIds = new ArrayList<>(nRouteLinks);
+						for(int ref : readInts(nRouteLinks)) routeLinkIds.add(id(ref, Link.class));
+						route = RouteUtils.createNetworkRoute(routeLinkIds);
+					}
+
+					TransitRoute transitRoute = factory.createTransitRoute(routeId, route, stops, mode);
+					transitRoute.setDescription(description);
+					routeAttributes.getAsMap().forEach(transitRoute.getAttributes()::putAttribute);
+
+					int nDepartures = buf.getInt();
+					for(int d = 0; d < nDepartures; d++) {
+						Departure departure = factory.createDeparture(id(buf.getInt(), Departure.class), buf.getDouble());
+						departure.setVehicleId(id(buf.getInt(), Vehicle.class));
+						readAttributes(departure.getAttributes());
+						transitRoute.addDeparture(departure);
+					}
+					transitLine.addRoute(transitRoute);
+				}
+				schedule.addTransitLine(transitLine);
+			}
+			return schedule;
+		}
+
+		private static OptionalTime optionalTime(double seconds) {
+			return Double.isNaN(seconds) ? OptionalTime.undefined() : OptionalTime.defined(seconds);
+		}
+
+		private void readAttributes(Attributes attributes) {
+			int n = buf.getInt();
+			for(int i = 0; i < n; i++) {
+				String key = strings[buf.getInt()];
+				byte type = buf.get();
+				Object value;
+				switch(type) {
+					case TYPE_STRING: value = strings[buf.getInt()]; break;
+					case TYPE_DOUBLE: value = buf.getDouble(); break;
+					case TYPE_INT: value = buf.getInt(); break;
+					case TYPE_LONG: value = buf.getLong(); break;
+					case TYPE_BOOLEAN: value = buf.get() != 0; break;
+					default: throw new IllegalStateException("Unknown attribute type " + type);
+				}
+				attributes.putAttribute(key, value);
+			}
+		}
+	}
+}
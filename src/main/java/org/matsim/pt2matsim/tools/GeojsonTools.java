@@ -18,12 +18,10 @@
 
 package org.matsim.pt2matsim.tools;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.geojson.*;
 import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.network.Link;
 
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -34,11 +32,10 @@ import java.util.List;
 public class GeojsonTools {
 
 	public static void writeFeatureCollectionToFile(FeatureCollection featureCollection, String outFile) {
-		try (FileWriter file = new FileWriter(outFile)) {
-			String json = new ObjectMapper().writeValueAsString(featureCollection);
-			file.write(json);
-			file.flush();
-
+		try (GeojsonWriter writer = new GeojsonWriter(outFile)) {
+			for(Feature feature : featureCollection) {
+				writer.add(feature);
+			}
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -0,0 +1,123 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2018 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.pt2matsim.tools;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.geojson.Feature;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * Writes a geojson FeatureCollection feature by feature. Features are serialized and written
+ * to the file as soon as they are added, so only the current feature (or chunk of features if
+ * written in parallel) is kept in memory.
+ * <p>
+ * <pre>
+ * try(GeojsonWriter writer = new GeojsonWriter(file)) {
+ *     writer.addAll(network.getLinks().values(), link -&gt; ...);
+ * }
+ * </pre>
+ */
+public class GeojsonWriter implements Closeable {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper().disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+	private static final int CHUNK_SIZE = 10000;
+
+	private final JsonGenerator generator;
+
+	public GeojsonWriter(String outFile) throws IOException {
+		this.generator = MAPPER.getFactory().createGenerator(new File(outFile), JsonEncoding.UTF8);
+		generator.writeStartObject();
+		generator.writeStringField("type", "FeatureCollection");
+		generator.writeArrayFieldStart("features");
+	}
+
+	public void add(Feature feature) throws IOException {
+		MAPPER.writeValue(generator, feature);
+	}
+
+	/**
+	 * Converts and writes the items one at a time. Items for which the converter returns <tt>null</tt> are skipped.
+	 */
+	public <T> void addAll(Iterable<T> items, Function<T, Feature> converter) throws IOException {
+		for(T item : items) {
+			Feature feature = converter.apply(item);
+			if(feature != null) {
+				add(feature);
+			}
+		}
+	}
+
+	/**
+	 * Converts the items in chunks and serializes the features of a chunk in parallel. Features are
+	 * written in the iteration order of the items. The converter is always called from the current thread.
+	 */
+	public <T> void addAllParallel(Iterable<T> items, Function<T, Feature> converter) throws IOException {
+		List<Feature> chunk = new ArrayList<>(CHUNK_SIZE);
+		for(T item : items) {
+			Feature feature = converter.apply(item);
+			if(feature != null) {
+				chunk.add(feature);
+			}
+			if(chunk.size() == CHUNK_SIZE) {
+				writeChunk(chunk);
+				chunk.clear();
+			}
+		}
+		writeChunk(chunk);
+	}
+
+	private void writeChunk(List<Feature> chunk) throws IOException {
+		String[] json = new String[chunk.size()];
+		try {
+			IntStream.range(0, json.length).parallel().forEach(i -> {
+				try {
+					json[i] = MAPPER.writeValueAsString(chunk.get(i));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		for(String f : json) {
+			generator.writeRawValue(f);
+		}
+	}
+
+	/**
+	 * Closes the feature collection and the file
+	 */
+	@Override
+	public void close() throws IOException {
+		generator.writeEndArray();
+		generator.writeEndObject();
+		generator.close();
+	}
+}
@@ -25,12 +25,15 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -44,20 +47,21 @@ import org.matsim.api.core.v01.network.Node;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.groups.NetworkConfigGroup;
 import org.matsim.core.network.NetworkUtils;
-import org.matsim.core.network.algorithms.NetworkTransform;
 import org.matsim.core.network.filter.NetworkFilterManager;
 import org.matsim.core.network.filter.NetworkLinkFilter;
 import org.matsim.core.network.io.MatsimNetworkReader;
 import org.matsim.core.network.io.NetworkWriter;
 import org.matsim.core.utils.collections.MapUtils;
 import org.matsim.core.utils.geometry.CoordUtils;
-import org.matsim.core.utils.geometry.transformations.TransformationFactory;
 import org.matsim.pt.transitSchedule.api.TransitLine;
 import org.matsim.pt.transitSchedule.api.TransitRoute;
 import org.matsim.pt.transitSchedule.api.TransitSchedule;
 import org.matsim.pt2matsim.config.PublicTransitMappingConfigGroup;
 import org.matsim.pt2matsim.mapping.networkRouter.ScheduleRoutersFactory;
 import org.matsim.pt2matsim.mapping.networkRouter.ScheduleRoutersStandard;
+import org.matsim.pt2matsim.tools.lib.BatchCoordinateTransformation;
+import org.matsim.pt2matsim.tools.lib.ModeFilteredNetworkView;
+import org.matsim.utils.objectattributes.attributable.AttributesUtils;
 
 /**
  * Provides Tools for analysing and manipulating networks.
@@ -71,15 +75,26 @@ public final class NetworkTools {
 	private NetworkTools() {}
 
 	/**
-	 * Reads and returns a network
+	 * Reads and returns a network, either from a MATSim network file or a {@link BinarySnapshot}
 	 */
 	public static Network readNetwork(String fileName) {
+		if(BinarySnapshot.isSnapshot(fileName)) {
+			return BinarySnapshot.readNetwork(fileName);
+		}
 		Network net = NetworkUtils.readNetwork(fileName);
 		return net;
 	}
 
+	/**
+	 * Writes the network to a MATSim network file or to a {@link BinarySnapshot} if the
+	 * file name ends with {@value BinarySnapshot#FILE_EXTENSION}.
+	 */
 	public static void writeNetwork(Network network, String fileName) {
-		new NetworkWriter(network).write(fileName);
+		if(fileName.endsWith(BinarySnapshot.FILE_EXTENSION)) {
+			BinarySnapshot.write(fileName, network, null);
+		} else {
+			new NetworkWriter(network).write(fileName);
+		}
 	}
 
 	public static Network createNetwork() {
@@ -87,7 +102,16 @@ public final class NetworkTools {
 	}
 
 	public static void transformNetwork(Network network, String fromCoordinateSystem, String toCoordinateSystem) {
-		new NetworkTransform(TransformationFactory.getCoordinateTransformation(fromCoordinateSystem, toCoordinateSystem)).run(network);
+		List<Node> nodes = new ArrayList<>(network.getNodes().values());
+		double[] xy = new double[2 * nodes.size()];
+		for(int i = 0; i < nodes.size(); i++) {
+			xy[2 * i] = nodes.get(i).getCoord().getX();
+			xy[2 * i + 1] = nodes.get(i).getCoord().getY();
+		}
+		new BatchCoordinateTransformation(fromCoordinateSystem, toCoordinateSystem).transform(xy);
+		for(int i = 0; i < nodes.size(); i++) {
+			nodes.get(i).setCoord(new Coord(xy[2 * i], xy[2 * i + 1]));
+		}
 	}
 
 	public static void transformNetworkFile(String networkFile, String fromCoordinateSystem, String toCoordinateSystem) {
@@ -187,6 +211,29 @@ public final class NetworkTools {
 		 return closestLinksSortedByDistance;
 	}
 
+	/**
+	 * See {@link #findClosestLinks}. Only links of the view are considered, no
+	 * modes have to be compared.
+	 */
+	public static Map<Double, Set<Link>> findClosestLinks(ModeFilteredNetworkView view, Coord coord, double nodeSearchRadius) {
+		Collection<Node> nearestNodes = NetworkUtils.getNearestNodes(view.getNetwork(), coord, nodeSearchRadius);
+		SortedMap<Double, Set<Link>> closestLinksSortedByDistance = new TreeMap<>();
+
+		// fetch every in- and outlink of each node
+		HashSet<Link> links = new HashSet<>();
+		for(Node node : nearestNodes) {
+			links.addAll(view.getOutLinks(node));
+			links.addAll(view.getInLinks(node));
+		}
+
+		// calculate lineSegmentDistance for all links
+		for(Link link : links) {
+			double lineSegmentDistance = CoordUtils.distancePointLinesegment(link.getFromNode().getCoord(), link.getToNode().getCoord(), coord);
+			MapUtils.getSet(lineSegmentDistance, closestLinksSortedByDistance).add(link);
+		}
+		return closestLinksSortedByDistance;
+	}
+
 	/**
 	 * See {@link #findClosestLinks}. Returns a list ordered ascending by distance to the coord.
 	 * For opposite links, the link which has the coordinate on its right side is sorted "closer" to the coordinate.
@@ -237,11 +284,7 @@ public final class NetworkTools {
 	 * @return the filtered new network
 	 */
 	public static Network createFilteredNetworkByLinkMode(Network network, Set<String> transportModes) {
-		NetworkFilterManager filterManager = new NetworkFilterManager(network, new NetworkConfigGroup());
-		filterManager.addLinkFilter(new LinkFilter(transportModes));
-		Network newNetwork = filterManager.applyFilters();
-		removeNotUsedNodes(newNetwork);
-		return newNetwork;
+		return new ModeFilteredNetworkView(network, transportModes).createNetwork();
 	}
 
 	public static Network createFilteredNetworkExceptLinkMode(Network network, Set<String> transportModes) {
@@ -344,9 +387,7 @@ public final class NetworkTools {
 		int numberOfLinksBefore = baseNetwork.getLinks().size();
 		int numberOfNodesBefore = baseNetwork.getNodes().size();
 
-		for(Network currentNetwork : networks) {
-			integrateNetwork(baseNetwork, currentNetwork, true);
-		}
+		integrateNetworks(baseNetwork, networks, true, 1);
 
 		log.info("... Total number of links added to network: " + (baseNetwork.getLinks().size() - numberOfLinksBefore));
 		log.info("... Total number of nodes added to network: " + (baseNetwork.getNodes().size() - numberOfNodesBefore));
@@ -359,57 +400,169 @@ public final class NetworkTools {
 	 * after integration.
 	 */
 	public static void integrateNetwork(final Network networkA, final Network networkB, boolean mergeModes) {
-		final NetworkFactory factory = networkA.getFactory();
+		integrateNetworks(networkA, Collections.singletonList(networkB), mergeModes, 1);
+	}
+
+	/**
+	 * Integrates all networks into <tt>targetNetwork</tt> in one pass, equivalent
+	 * to calling {@link #integrateNetwork} for each network in order. Node and link
+	 * ids are reused. If <tt>mergeModes</tt> is set, the allowed modes of links
+	 * present in multiple networks are merged, merged mode sets are shared between
+	 * links with the same mode combinations.
+	 * <p>
+	 * Links are partitioned by id on <tt>numThreads</tt> threads which create the
+	 * new links and merge the modes. The target network is only modified after all
+	 * threads have finished.
+	 */
+	public static void integrateNetworks(final Network targetNetwork, final Collection<Network> networks, boolean mergeModes, int numThreads) {
+		final NetworkFactory factory = targetNetwork.getFactory();
+		final Map<Id<Node>, ? extends Node> targetNodes = targetNetwork.getNodes();
 
 		// Nodes
-		for(Node node : networkB.getNodes().values()) {
-			Id<Node> nodeId = Id.create(node.getId().toString(), Node.class);
-			if(!networkA.getNodes().containsKey(nodeId)) {
-				Node newNode = factory.createNode(nodeId, node.getCoord());
-				networkA.addNode(newNode);
+		for(Network network : networks) {
+			for(Node node : network.getNodes().values()) {
+				if(!targetNodes.containsKey(node.getId())) {
+					targetNetwork.addNode(factory.createNode(node.getId(), node.getCoord()));
+				}
 			}
 		}
 
 		// Links
-		double capacityFactor = networkA.getCapacityPeriod() / networkB.getCapacityPeriod();
-		for(Link link : networkB.getLinks().values()) {
-			Id<Link> linkId = Id.create(link.getId().toString(), Link.class);
-			if(!networkA.getLinks().containsKey(linkId)) {
-				Id<Node> fromNodeId = Id.create(link.getFromNode().getId().toString(), Node.class);
-				Id<Node> toNodeId = Id.create(link.getToNode().getId().toString(), Node.class);
-				Link newLink = factory.createLink(linkId, networkA.getNodes().get(fromNodeId), networkA.getNodes().get(toNodeId));
-				newLink.setAllowedModes(link.getAllowedModes());
-				newLink.setCapacity(link.getCapacity() * capacityFactor);
-				newLink.setFreespeed(link.getFreespeed());
-				newLink.setLength(link.getLength());
-				newLink.setNumberOfLanes(link.getNumberOfLanes());
-				networkA.addLink(newLink);
-			} else if (mergeModes) {
-				Link existingLink = networkA.getLinks().get(linkId);
-				
-				Set<String> allowedModes = new HashSet<>();
-				allowedModes.addAll(existingLink.getAllowedModes());
-				allowedModes.addAll(link.getAllowedModes());
-				
-				existingLink.setAllowedModes(allowedModes);
-				
-				if (link.getCapacity() * capacityFactor != existingLink.getCapacity()) {
-					throw new IllegalStateException("Capacity must be equal for integration");
-				}
-				
-				if (link.getFreespeed() != existingLink.getFreespeed()) {
-					throw new IllegalStateException("Freespeed must be equal for integration");
-				}
-				
-				if (link.getLength() != existingLink.getLength()) {
-					throw new IllegalStateException("Length must be equal for integration");
+		Map<Set<String>, Map<Set<String>, Set<String>>> mergedModeSets = new ConcurrentHashMap<>();
+		LinkMerge[] merges = new LinkMerge[numThreads];
+		for(int i = 0; i < numThreads; i++) {
+			merges[i] = new LinkMerge(targetNetwork, networks, mergeModes, mergedModeSets, i, numThreads);
+		}
+
+		if(numThreads == 1) {
+			merges[0].run();
+		} else {
+			AtomicReference<RuntimeException> error = new AtomicReference<>();
+			Thread[] threads = new Thread[numThreads];
+			for(int i = 0; i < numThreads; i++) {
+				LinkMerge merge = merges[i];
+				threads[i] = new Thread(() -> {
+					try {
+						merge.run();
+					} catch (RuntimeException e) {
+						error.compareAndSet(null, e);
+					}
+				});
+				threads[i].start();
+			}
+			for(Thread thread : threads) {
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
 				}
-				
-				if (link.getNumberOfLanes() != existingLink.getNumberOfLanes()) {
-					throw new IllegalStateException("Number of lanes must be equal for integration");
+			}
+			if(error.get() != null) {
+				throw error.get();
+			}
+		}
+
+		for(LinkMerge merge : merges) {
+			merge.newLinks.values().forEach(targetNetwork::addLink);
+			merge.mergedModes.forEach(Link::setAllowedModes);
+		}
+	}
+
+	/**
+	 * Merges the links of one id partition into a target network. New links and mode
+	 * changes of existing target links are only collected, the target network is
+	 * read but not modified.
+	 */
+	private static class LinkMerge implements Runnable {
+
+		private final Network targetNetwork;
+		private final Collection<Network> networks;
+		private final boolean mergeModes;
+		private final Map<Set<String>, Map<Set<String>, Set<String>>> mergedModeSets;
+		private final int partition;
+		private final int numPartitions;
+
+		private final Map<Id<Link>, Link> newLinks = new LinkedHashMap<>();
+		private final Map<Link, Set<String>> mergedModes = new LinkedHashMap<>();
+
+		LinkMerge(Network targetNetwork, Collection<Network> networks, boolean mergeModes, Map<Set<String>, Map<Set<String>, Set<String>>> mergedModeSets, int partition, int numPartitions) {
+			this.targetNetwork = targetNetwork;
+			this.networks = networks;
+			this.mergeModes = mergeModes;
+			this.mergedModeSets = mergedModeSets;
+			this.partition = partition;
+			this.numPartitions = numPartitions;
+		}
+
+		@Override
+		public void run() {
+			NetworkFactory factory = targetNetwork.getFactory();
+			Map<Id<Link>, ? extends Link> targetLinks = targetNetwork.getLinks();
+			Map<Id<Node>, ? extends Node> targetNodes = targetNetwork.getNodes();
+
+			for(Network network : networks) {
+				double capacityFactor = targetNetwork.getCapacityPeriod() / network.getCapacityPeriod();
+				for(Link link : network.getLinks().values()) {
+					Id<Link> linkId = link.getId();
+					if(numPartitions > 1 && Math.floorMod(linkId.index(), numPartitions) != partition) {
+						continue;
+					}
+					Link existingLink = targetLinks.get(linkId);
+					if(existingLink == null) {
+						existingLink = newLinks.get(linkId);
+					}
+
+					if(existingLink == null) {
+						Link newLink = factory.createLink(linkId, targetNodes.get(link.getFromNode().getId()), targetNodes.get(link.getToNode().getId()));
+						newLink.setAllowedModes(link.getAllowedModes());
+						newLink.setCapacity(link.getCapacity() * capacityFactor);
+						newLink.setFreespeed(link.getFreespeed());
+						newLink.setLength(link.getLength());
+						newLink.setNumberOfLanes(link.getNumberOfLanes());
+						newLinks.put(linkId, newLink);
+					} else if(mergeModes) {
+						Set<String> currentModes = mergedModes.getOrDefault(existingLink, existingLink.getAllowedModes());
+						Set<String> allowedModes = mergeModeSets(currentModes, link.getAllowedModes());
+						if(newLinks.containsKey(linkId)) {
+							existingLink.setAllowedModes(allowedModes);
+						} else if(allowedModes != currentModes) {
+							mergedModes.put(existingLink, allowedModes);
+						}
+
+						if (link.getCapacity() * capacityFactor != existingLink.getCapacity()) {
+							throw new IllegalStateException("Capacity must be equal for integration");
+						}
+
+						if (link.getFreespeed() != existingLink.getFreespeed()) {
+							throw new IllegalStateException("Freespeed must be equal for integration");
+						}
+
+						if (link.getLength() != existingLink.getLength()) {
+							throw new IllegalStateException("Length must be equal for integration");
+						}
+
+						if (link.getNumberOfLanes() != existingLink.getNumberOfLanes()) {
+							throw new IllegalStateException("Number of lanes must be equal for integration");
+						}
+					}
 				}
 			}
 		}
+
+		/**
+		 * @return the union of both mode sets, <tt>modesA</tt> if it already contains all modes of
+		 * <tt>modesB</tt>. Unions are created once per combination and shared.
+		 */
+		private Set<String> mergeModeSets(Set<String> modesA, Set<String> modesB) {
+			if(modesA.containsAll(modesB)) {
+				return modesA;
+			}
+			return mergedModeSets.computeIfAbsent(modesA, k -> new ConcurrentHashMap<>()).computeIfAbsent(modesB, k -> {
+				Set<String> union = new HashSet<>(modesA);
+				union.addAll(modesB);
+				return Collections.unmodifiableSet(union);
+			});
+		}
 	}
 
 	public static void shortenLink(Link link, Node toNode) {
@@ -536,6 +689,42 @@ public final class NetworkTools {
 		}
 	}
 
+	/**
+	 * Creates a new network with copies of the given nodes and all links between
+	 * them. Same result as copying the network and cutting it with {@link #cutNetwork(Network, Collection)}
+	 * without copying the whole network. Node and link ids are kept.
+	 */
+	public static Network createCutNetwork(Network network, Collection<Node> nodesToKeep) {
+		Network cut = NetworkUtils.createNetwork();
+		cut.setCapacityPeriod(network.getCapacityPeriod());
+		cut.setEffectiveLaneWidth(network.getEffectiveLaneWidth());
+		NetworkFactory factory = cut.getFactory();
+
+		for(Node node : nodesToKeep) {
+			if(!cut.getNodes().containsKey(node.getId())) {
+				Node newNode = factory.createNode(node.getId(), node.getCoord());
+				AttributesUtils.copyAttributesFromTo(node, newNode);
+				cut.addNode(newNode);
+			}
+		}
+		for(Node node : nodesToKeep) {
+			for(Link link : node.getOutLinks().values()) {
+				Node toNode = cut.getNodes().get(link.getToNode().getId());
+				if(toNode != null && !cut.getLinks().containsKey(link.getId())) {
+					Link newLink = factory.createLink(link.getId(), cut.getNodes().get(node.getId()), toNode);
+					newLink.setLength(link.getLength());
+					newLink.setFreespeed(link.getFreespeed());
+					newLink.setCapacity(link.getCapacity());
+					newLink.setNumberOfLanes(link.getNumberOfLanes());
+					newLink.setAllowedModes(link.getAllowedModes());
+					AttributesUtils.copyAttributesFromTo(link, newLink);
+					cut.addLink(newLink);
+				}
+			}
+		}
+		return cut;
+	}
+
 	/**
 	 * Links that only have one preceding and succeeding link (ignoring opposite links)
 	 * are removed except the link in that sequence that is closest to the coordinate
@@ -725,20 +914,6 @@ public final class NetworkTools {
 	/**
 	 * Link filters by mode
 	 */
-	private static class LinkFilter implements NetworkLinkFilter {
-
-		private final Set<String> modes;
-
-		public LinkFilter(Set<String> modes) {
-			this.modes = modes;
-		}
-
-		@Override
-		public boolean judgeLink(Link l) {
-			return MiscUtils.collectionsShareMinOneStringEntry(l.getAllowedModes(), modes);
-		}
-	}
-
 	private static class InverseLinkFilter implements NetworkLinkFilter {
 
 		private final Set<String> modes;
@@ -38,6 +38,7 @@ import org.matsim.pt2matsim.mapping.linkCandidateCreation.LinkCandidate;
 import org.matsim.pt2matsim.mapping.pseudoRouter.ArtificialLinkImpl;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 /**
@@ -102,111 +103,248 @@ public final class PTMapperTools {
 	 * @return the number of child stop facilities pulled
 	 */
 	public static int pullChildStopFacilitiesTogether(TransitSchedule schedule, Network network) {
-		int nPulled = 0;
-		for(TransitLine line : schedule.getTransitLines().values()) {
-			for(TransitRoute transitRoute : line.getRoutes().values()) {
-				boolean hasStopLoop = ScheduleTools.routeHasStopSequenceLoop(transitRoute);
-				if(transitRoute.getRoute() != null && !hasStopLoop) {
-					TransitRouteStop currentStop;
-					List<TransitRouteStop> routeStops = transitRoute.getStops();
-
-					Iterator<TransitRouteStop> stopsIterator = routeStops.iterator();
-
-					List<Id<Link>> linkIdList = ScheduleTools.getTransitRouteLinkIds(transitRoute);
-					List<Link> linkList = NetworkTools.getLinksFromIds(network, linkIdList);
-
-					currentStop = stopsIterator.next();
-
-					// look for a closer link before the route's start
-					// only use links with closer fromNodes
-					Set<Link> inlinksWithSameMode = NetworkTools.filterLinkSetExactlyByModes(linkList.get(0).getFromNode().getInLinks().values(), linkList.get(0).getAllowedModes());
-					double firstDist = CoordUtils.calcEuclideanDistance(currentStop.getStopFacility().getCoord(), linkList.get(0).getFromNode().getCoord());
-					for(Link l : new HashSet<>(inlinksWithSameMode)) {
-						if(CoordUtils.calcEuclideanDistance(l.getFromNode().getCoord(), currentStop.getStopFacility().getCoord()) > firstDist) {
-							inlinksWithSameMode.remove(l);
-						}
-					}
-					Id<Link> closerLinkBefore = useCloserRefLinkForChildStopFacility(schedule, network, transitRoute, currentStop.getStopFacility(), inlinksWithSameMode);
-					if(closerLinkBefore != null) {
-						linkIdList.add(0, closerLinkBefore);
-						nPulled++;
-					}
-					currentStop = stopsIterator.next();
+		return commitPulls(schedule, evaluatePulls(getRoutesByLine(schedule), network, 1));
+	}
 
-					// optimize referenced links between start and end
-					for(int i = 1; i < linkList.size() - 1; i++) {
-						if(linkList.get(i).getId().equals(currentStop.getStopFacility().getLinkId())) {
-							Set<Link> testSet = new HashSet<>();
-							if(!(linkList.get(i) instanceof ArtificialLinkImpl)) testSet.add(linkList.get(i));
-							if(!(linkList.get(i - 1) instanceof ArtificialLinkImpl)) testSet.add(linkList.get(i - 1));
-							if(!(linkList.get(i + 1) instanceof ArtificialLinkImpl)) testSet.add(linkList.get(i + 1));
+	/**
+	 * Repeats {@link #pullChildStopFacilitiesTogether(TransitSchedule, Network)} until no more
+	 * child stop facilities can be pulled. Pulls only depend on a transit route's own link
+	 * sequence and stops, so only routes changed in the previous pass are evaluated again.
+	 * Routes are evaluated in parallel (lines are spread on threads), the changes are then
+	 * applied to the schedule sequentially.
+	 *
+	 * @return the total number of child stop facilities pulled
+	 */
+	public static int pullChildStopFacilitiesTogether(TransitSchedule schedule, Network network, int numThreads) {
+		List<List<TransitRoute>> worklist = getRoutesByLine(schedule);
+		int nPulled = 0;
+		int nPasses = 0;
+		while(!worklist.isEmpty()) {
+			List<List<RoutePull>> pulls = evaluatePulls(worklist, network, numThreads);
+			nPulled += commitPulls(schedule, pulls);
+			nPasses++;
+
+			worklist = new ArrayList<>();
+			for(List<RoutePull> linePulls : pulls) {
+				if(linePulls.size() > 0) {
+					worklist.add(linePulls.stream().map(pull -> pull.transitRoute).collect(Collectors.toList()));
+				}
+			}
+		}
+		log.info("... " + nPulled + " child stop facilities pulled in " + nPasses + " passes");
+		return nPulled;
+	}
 
-							Id<Link> check = useCloserRefLinkForChildStopFacility(schedule, network, transitRoute, currentStop.getStopFacility(), testSet);
+	private static List<List<TransitRoute>> getRoutesByLine(TransitSchedule schedule) {
+		List<List<TransitRoute>> routesByLine = new ArrayList<>();
+		for(TransitLine transitLine : schedule.getTransitLines().values()) {
+			routesByLine.add(new ArrayList<>(transitLine.getRoutes().values()));
+		}
+		return routesByLine;
+	}
 
-							if(check != null) nPulled++;
+	/**
+	 * Evaluates the pulls for the given routes without modifying the schedule
+	 *
+	 * @return the pulls of each line, routes without pulls are omitted
+	 */
+	private static List<List<RoutePull>> evaluatePulls(List<List<TransitRoute>> routesByLine, Network network, int numThreads) {
+		List<List<RoutePull>> pulls = new ArrayList<>(routesByLine.size());
+		for(int i = 0; i < routesByLine.size(); i++) {
+			pulls.add(new ArrayList<>());
+		}
 
-							if(stopsIterator.hasNext()) {
-								currentStop = stopsIterator.next();
+		int nThreads = Math.max(1, Math.min(numThreads, routesByLine.size()));
+		AtomicReference<RuntimeException> error = new AtomicReference<>();
+		Thread[] threads = new Thread[nThreads];
+		for(int t = 0; t < nThreads; t++) {
+			int thr = t;
+			Runnable runnable = () -> {
+				try {
+					for(int i = thr; i < routesByLine.size(); i += nThreads) {
+						for(TransitRoute transitRoute : routesByLine.get(i)) {
+							RoutePull pull = evaluatePull(transitRoute, network);
+							if(pull != null) {
+								pulls.get(i).add(pull);
 							}
 						}
 					}
+				} catch (RuntimeException e) {
+					error.compareAndSet(null, e);
+				}
+			};
+			if(nThreads == 1) {
+				runnable.run();
+			} else {
+				threads[t] = new Thread(runnable);
+				threads[t].start();
+			}
+		}
+		if(nThreads > 1) {
+			for(Thread thread : threads) {
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		}
+		if(error.get() != null) {
+			throw error.get();
+		}
+		return pulls;
+	}
 
-					// look for a closer link after the route's end
-					currentStop = routeStops.get(routeStops.size() - 1);
-					Set<Link> outlinksWithSameMode = NetworkTools.filterLinkSetExactlyByModes(linkList.get(linkList.size() - 1).getToNode().getOutLinks().values(), linkList.get(linkList.size() - 1).getAllowedModes());
-					Id<Link> closerLinkAfter = useCloserRefLinkForChildStopFacility(schedule, network, transitRoute, currentStop.getStopFacility(), outlinksWithSameMode);
-					if(closerLinkAfter != null) {
-						linkIdList.add(closerLinkAfter);
-						nPulled++;
-					}
-
-					// set the new link list
-					transitRoute.setRoute(RouteUtils.createNetworkRoute(linkIdList));
+	/**
+	 * Replaces the child stop facilities and sets the new link sequences
+	 *
+	 * @return the number of child stop facilities pulled
+	 */
+	private static int commitPulls(TransitSchedule schedule, List<List<RoutePull>> pulls) {
+		int nPulled = 0;
+		for(List<RoutePull> linePulls : pulls) {
+			for(RoutePull pull : linePulls) {
+				for(int i = 0; i < pull.stops.size(); i++) {
+					TransitRouteStop stop = pull.stops.get(i);
+					stop.setStopFacility(getChildStopFacility(schedule, stop.getStopFacility(), pull.closerLinks.get(i)));
 				}
+				pull.transitRoute.setRoute(RouteUtils.createNetworkRoute(pull.linkIds));
+				nPulled += pull.stops.size();
 			}
 		}
 		return nPulled;
 	}
 
-
 	/**
-	 * If a link of <tt>comparingLinks</tt> is closer to the stop facility than
-	 * its currently referenced link, the closest link is used.
+	 * Checks if the links before the start, between and after the end of the transit route
+	 * are closer to the stop facilities than the currently referenced links.
 	 *
-	 * @return The id of the new closest link or <tt>null</tt> if the existing ref link
-	 * was used.
+	 * @return the pulls for the transit route, <tt>null</tt> if no stop facility can be pulled
+	 * or the route has a stop sequence loop.
 	 */
-	private static Id<Link> useCloserRefLinkForChildStopFacility(TransitSchedule schedule, Network network, TransitRoute transitRoute, TransitStopFacility stopFacility, Collection<? extends Link> comparingLinks) {
-		// check if previous link is closer to stop facility
-		double minDist = CoordTools.distanceStopFacilityToLink(stopFacility, network.getLinks().get(stopFacility.getLinkId()));
-		Link minLink = null;
-
-		for(Link comparingLink : comparingLinks) {
-			double distCompare = CoordTools.distanceStopFacilityToLink(stopFacility, comparingLink);
-			if(distCompare < minDist) {
-				minDist = distCompare;
-				minLink = comparingLink;
+	private static RoutePull evaluatePull(TransitRoute transitRoute, Network network) {
+		if(transitRoute.getRoute() == null || ScheduleTools.routeHasStopSequenceLoop(transitRoute)) {
+			return null;
+		}
+		List<TransitRouteStop> routeStops = transitRoute.getStops();
+		List<Id<Link>> linkIdList = ScheduleTools.getTransitRouteLinkIds(transitRoute);
+		List<Link> linkList = NetworkTools.getLinksFromIds(network, linkIdList);
+		RoutePull pull = new RoutePull(transitRoute, linkIdList, network);
+
+		// look for a closer link before the route's start
+		// only use links with closer fromNodes
+		Link firstLink = linkList.get(0);
+		Coord firstCoord = routeStops.get(0).getStopFacility().getCoord();
+		double firstDist = CoordUtils.calcEuclideanDistance(firstCoord, firstLink.getFromNode().getCoord());
+		Set<Link> inlinksWithSameMode = NetworkTools.filterLinkSetExactlyByModes(firstLink.getFromNode().getInLinks().values(), firstLink.getAllowedModes());
+		inlinksWithSameMode.removeIf(l -> CoordUtils.calcEuclideanDistance(l.getFromNode().getCoord(), firstCoord) > firstDist);
+		Link closerLinkBefore = pull.pullStop(0, inlinksWithSameMode);
+
+		// optimize referenced links between start and end
+		int currentStop = 1;
+		for(int i = 1; i < linkList.size() - 1; i++) {
+			if(linkList.get(i).getId().equals(pull.refLinkIds[currentStop])) {
+				Set<Link> testSet = new HashSet<>();
+				if(!(linkList.get(i) instanceof ArtificialLinkImpl)) testSet.add(linkList.get(i));
+				if(!(linkList.get(i - 1) instanceof ArtificialLinkImpl)) testSet.add(linkList.get(i - 1));
+				if(!(linkList.get(i + 1) instanceof ArtificialLinkImpl)) testSet.add(linkList.get(i + 1));
+
+				pull.pullStop(currentStop, testSet);
+
+				if(currentStop < routeStops.size() - 1) {
+					currentStop++;
+				}
 			}
 		}
 
-		if(minLink != null) {
-			TransitStopFacility newChildStopFacility;
-			Id<TransitStopFacility> parentId = ScheduleTools.createParentStopFacilityId(stopFacility);
-			Id<TransitStopFacility> newChildStopFacilityId = ScheduleTools.createChildStopFacilityId(parentId, minLink.getId());
-			if(schedule.getFacilities().containsKey(newChildStopFacilityId)) {
-				newChildStopFacility = schedule.getFacilities().get(newChildStopFacilityId);
-			} else {
-				newChildStopFacility = schedule.getFactory().createTransitStopFacility(newChildStopFacilityId, stopFacility.getCoord(), false);
-				newChildStopFacility.setName(stopFacility.getName());
-				newChildStopFacility.setStopAreaId(stopFacility.getStopAreaId());
-				newChildStopFacility.setLinkId(minLink.getId());
-				schedule.addStopFacility(newChildStopFacility);
-			}
-			transitRoute.getStop(stopFacility).setStopFacility(newChildStopFacility);
-			return minLink.getId();
-		} else {
+		// look for a closer link after the route's end
+		Link lastLink = linkList.get(linkList.size() - 1);
+		Set<Link> outlinksWithSameMode = NetworkTools.filterLinkSetExactlyByModes(lastLink.getToNode().getOutLinks().values(), lastLink.getAllowedModes());
+		Link closerLinkAfter = pull.pullStop(routeStops.size() - 1, outlinksWithSameMode);
+
+		if(pull.stops.isEmpty()) {
 			return null;
 		}
+		if(closerLinkBefore != null) {
+			linkIdList.add(0, closerLinkBefore.getId());
+		}
+		if(closerLinkAfter != null) {
+			linkIdList.add(closerLinkAfter.getId());
+		}
+		return pull;
+	}
+
+	/**
+	 * @return the child stop facility of the stop facility's parent referencing the link,
+	 * the child stop facility is created and added to the schedule if necessary.
+	 */
+	private static TransitStopFacility getChildStopFacility(TransitSchedule schedule, TransitStopFacility stopFacility, Link link) {
+		Id<TransitStopFacility> parentId = ScheduleTools.createParentStopFacilityId(stopFacility);
+		Id<TransitStopFacility> newChildStopFacilityId = ScheduleTools.createChildStopFacilityId(parentId, link.getId());
+		TransitStopFacility newChildStopFacility = schedule.getFacilities().get(newChildStopFacilityId);
+		if(newChildStopFacility == null) {
+			newChildStopFacility = schedule.getFactory().createTransitStopFacility(newChildStopFacilityId, stopFacility.getCoord(), false);
+			newChildStopFacility.setName(stopFacility.getName());
+			newChildStopFacility.setStopAreaId(stopFacility.getStopAreaId());
+			newChildStopFacility.setLinkId(link.getId());
+			schedule.addStopFacility(newChildStopFacility);
+		}
+		return newChildStopFacility;
+	}
+
+	/**
+	 * The stops of a transit route that should reference a closer link and the
+	 * transit route's new link sequence.
+	 */
+	private static class RoutePull {
+
+		private final TransitRoute transitRoute;
+		private final List<Id<Link>> linkIds;
+		private final Network network;
+		/** the stops' referenced links including the pulls evaluated so far */
+		private final Id<Link>[] refLinkIds;
+
+		private final List<TransitRouteStop> stops = new ArrayList<>();
+		private final List<Link> closerLinks = new ArrayList<>();
+
+		@SuppressWarnings("unchecked")
+		RoutePull(TransitRoute transitRoute, List<Id<Link>> linkIds, Network network) {
+			this.transitRoute = transitRoute;
+			this.linkIds = linkIds;
+			this.network = network;
+			this.refLinkIds = new Id[transitRoute.getStops().size()];
+			for(int i = 0; i < refLinkIds.length; i++) {
+				refLinkIds[i] = transitRoute.getStops().get(i).getStopFacility().getLinkId();
+			}
+		}
+
+		/**
+		 * If a link of <tt>comparingLinks</tt> is closer to the stop facility than
+		 * its currently referenced link, the closest link is used.
+		 *
+		 * @return The new closest link or <tt>null</tt> if the existing ref link
+		 * was used.
+		 */
+		Link pullStop(int stopIndex, Collection<? extends Link> comparingLinks) {
+			TransitRouteStop stop = transitRoute.getStops().get(stopIndex);
+			double minDist = CoordTools.distanceStopFacilityToLink(stop.getStopFacility(), network.getLinks().get(refLinkIds[stopIndex]));
+			Link minLink = null;
+
+			for(Link comparingLink : comparingLinks) {
+				double distCompare = CoordTools.distanceStopFacilityToLink(stop.getStopFacility(), comparingLink);
+				if(distCompare < minDist) {
+					minDist = distCompare;
+					minLink = comparingLink;
+				}
+			}
+
+			if(minLink != null) {
+				stops.add(stop);
+				closerLinks.add(minLink);
+				refLinkIds[stopIndex] = minLink.getId();
+			}
+			return minLink;
+		}
 	}
 
 	public static void setLogLevels() {
@@ -307,4 +445,42 @@ public final class PTMapperTools {
 			}
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Copies the minimal transfer times between parent stop facilities to all pairs of
+	 * their child stop facilities.
+	 *
+	 * @return the number of parent transfer times that have been copied
+	 */
+	public static int copyMinimalTransferTimesToChildren(TransitSchedule schedule, Map<Id<TransitStopFacility>, ? extends Collection<Id<TransitStopFacility>>> parentsToChildren) {
+		// collect first, the transfer times cannot be modified while iterating
+		List<ParentTransfer> parentTransfers = new ArrayList<>();
+		MinimalTransferTimes.MinimalTransferTimesIterator iterator = schedule.getMinimalTransferTimes().iterator();
+		while(iterator.hasNext()) {
+			iterator.next();
+			if(parentsToChildren.containsKey(iterator.getFromStopId()) && parentsToChildren.containsKey(iterator.getToStopId())) {
+				parentTransfers.add(new ParentTransfer(iterator.getFromStopId(), iterator.getToStopId(), iterator.getSeconds()));
+			}
+		}
+		for(ParentTransfer transfer : parentTransfers) {
+			for(Id<TransitStopFacility> childFromId : parentsToChildren.get(transfer.fromParentId)) {
+				for(Id<TransitStopFacility> childToId : parentsToChildren.get(transfer.toParentId)) {
+					schedule.getMinimalTransferTimes().set(childFromId, childToId, transfer.seconds);
+				}
+			}
+		}
+		return parentTransfers.size();
+	}
+
+	private static final class ParentTransfer {
+		private final Id<TransitStopFacility> fromParentId;
+		private final Id<TransitStopFacility> toParentId;
+		private final double seconds;
+
+		private ParentTransfer(Id<TransitStopFacility> fromParentId, Id<TransitStopFacility> toParentId, double seconds) {
+			this.fromParentId = fromParentId;
+			this.toParentId = toParentId;
+			this.seconds = seconds;
+		}
+	}
+}
@@ -20,25 +20,37 @@ package org.matsim.pt2matsim.tools;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
+import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.TransportMode;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.population.routes.NetworkRoute;
 import org.matsim.core.population.routes.RouteUtils;
 import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.scenario.ProjectionUtils;
 import org.matsim.core.scenario.ScenarioUtils;
 import org.matsim.core.utils.collections.MapUtils;
 import org.matsim.core.utils.misc.Counter;
 import org.matsim.pt.transitSchedule.api.*;
 import org.matsim.pt2matsim.config.PublicTransitMappingStrings;
+import org.matsim.pt2matsim.mapping.Progress;
 import org.matsim.pt2matsim.mapping.networkRouter.ScheduleRouters;
+import org.matsim.pt2matsim.mapping.networkRouter.ScheduleRoutersFactory;
+import org.matsim.pt2matsim.mapping.networkRouter.ScheduleRoutersStandard;
+import org.matsim.pt2matsim.tools.lib.BatchCoordinateTransformation;
+import org.matsim.pt2matsim.tools.lib.LinkModeMasks;
 import org.matsim.pt2matsim.tools.lib.RouteShape;
 import org.matsim.vehicles.*;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 import static org.matsim.vehicles.VehicleUtils.createVehiclesContainer;
 
@@ -55,9 +67,12 @@ public final class ScheduleTools {
 	private ScheduleTools() {}
 
 	/**
-	 * @return the transitSchedule from scheduleFile.
+	 * @return the transitSchedule from scheduleFile (MATSim schedule file or {@link BinarySnapshot}).
 	 */
 	public static TransitSchedule readTransitSchedule(String fileName) {
+		if(BinarySnapshot.isSnapshot(fileName)) {
+			return BinarySnapshot.readTransitSchedule(fileName);
+		}
 		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
 		new TransitScheduleReader(scenario).readFile(fileName);
 		return scenario.getTransitSchedule();
@@ -72,9 +87,14 @@ public final class ScheduleTools {
 	}
 
 	/**
-	 * Writes the transit schedule to filePath.
+	 * Writes the transit schedule to filePath. A {@link BinarySnapshot} is written if
+	 * the file name ends with {@value BinarySnapshot#FILE_EXTENSION}.
 	 */
 	public static void writeTransitSchedule(TransitSchedule schedule, String fileName) {
+		if(fileName.endsWith(BinarySnapshot.FILE_EXTENSION)) {
+			BinarySnapshot.write(fileName, null, schedule);
+			return;
+		}
 		log.info("Writing transit schedule to file " + fileName);
 		new TransitScheduleWriter(schedule).writeFile(fileName);
 		log.info("done.");
@@ -260,6 +280,10 @@ public final class ScheduleTools {
 	 * Generates link sequences (network route) for all transit routes in
 	 * the schedule, modifies the schedule. All stopFacilities used by a
 	 * route must have a link referenced.
+	 * <p>
+	 * Paths between stop links are shared by all transit routes of a transport mode
+	 * if the routers only depend on the mode ({@link ScheduleRoutersStandard}). Other
+	 * routers (e.g. routing along a shape) calculate the paths for each transit route.
 	 *
 	 * @param schedule where transitRoutes should be routed
 	 * @param network  the network where the routes should be routed
@@ -275,56 +299,149 @@ public final class ScheduleTools {
 			return;
 		}
 
+		Map<PathKey, List<Id<Link>>> pathCache = routers instanceof ScheduleRoutersStandard ? new HashMap<>() : null;
 		for(TransitLine transitLine : schedule.getTransitLines().values()) {
 			for(TransitRoute transitRoute : transitLine.getRoutes().values()) {
-				if(transitRoute.getStops().size() > 0) {
-					counterRoute.incCounter();
-
-					List<TransitRouteStop> routeStops = transitRoute.getStops();
-					List<Id<Link>> linkIdSequence = new LinkedList<>();
-					linkIdSequence.add(routeStops.get(0).getStopFacility().getLinkId());
-
-					// route
-					for(int i = 0; i < routeStops.size() - 1; i++) {
-						if(routeStops.get(i).getStopFacility().getLinkId() == null) {
-							log.warn("stop facility " + routeStops.get(i).getStopFacility().getName() + " (" + routeStops.get(i).getStopFacility().getId() + ") not referenced!");
-							linkIdSequence = null;
-							break;
-						}
-						if(routeStops.get(i + 1).getStopFacility().getLinkId() == null) {
-							log.warn("stop facility " + routeStops.get(i - 1).getStopFacility().getName() + " (" + routeStops.get(i + 1).getStopFacility().getId() + " not referenced!");
-							linkIdSequence = null;
-							break;
-						}
-
-						Id<Link> currentLinkId = Id.createLinkId(routeStops.get(i).getStopFacility().getLinkId().toString());
-						Link currentLink = network.getLinks().get(currentLinkId);
-						Link nextLink = network.getLinks().get(routeStops.get(i + 1).getStopFacility().getLinkId());
+				counterRoute.incCounter();
+				routeTransitRoute(transitLine, transitRoute, network, routers, pathCache);
+			}
+		}
+		log.info("Routing all routes with referenced links... done");
+	}
 
-						LeastCostPathCalculator.Path leastCostPath = routers.calcLeastCostPath(currentLink.getToNode().getId(), nextLink.getFromNode().getId(), transitLine, transitRoute);
+	/**
+	 * Generates link sequences for all transit routes in the schedule like
+	 * {@link #routeSchedule(TransitSchedule, Network, ScheduleRouters)} but routes
+	 * transit lines concurrently. Each thread uses its own {@link ScheduleRouters}
+	 * instance. For {@link ScheduleRoutersStandard} the path between two stop links is
+	 * only calculated once per transport mode and shared by all threads.
+	 *
+	 * @param routersFactory creates the schedule routers for each thread
+	 * @param numThreads     number of threads
+	 */
+	public static void routeSchedule(TransitSchedule schedule, Network network, ScheduleRoutersFactory routersFactory, int numThreads) {
+		log.info("Routing all routes with referenced links (" + numThreads + " threads)...");
 
+		// spread transit lines on threads
+		List<List<TransitLine>> queues = new ArrayList<>();
+		for(int i = 0; i < numThreads; i++) {
+			queues.add(new ArrayList<>());
+		}
+		int thr = 0;
+		int nTransitRoutes = 0;
+		for(TransitLine transitLine : schedule.getTransitLines().values()) {
+			queues.get(thr++ % numThreads).add(transitLine);
+			nTransitRoutes += transitLine.getRoutes().size();
+		}
 
-						List<Id<Link>> path = null;
-						if(leastCostPath != null) {
-							path = PTMapperTools.getLinkIdsFromPath(leastCostPath);
+		Map<PathKey, List<Id<Link>>> pathCache = new ConcurrentHashMap<>();
+		AtomicReference<RuntimeException> error = new AtomicReference<>();
+		try(Progress progress = new Progress(nTransitRoutes, "Routing transit routes ...")) {
+			Thread[] threads = new Thread[numThreads];
+			for(int i = 0; i < numThreads; i++) {
+				List<TransitLine> queue = queues.get(i);
+				threads[i] = new Thread(() -> {
+					try {
+						ScheduleRouters routers = routersFactory.createInstance();
+						Map<PathKey, List<Id<Link>>> sharedPaths = routers instanceof ScheduleRoutersStandard ? pathCache : null;
+						for(TransitLine transitLine : queue) {
+							for(TransitRoute transitRoute : transitLine.getRoutes().values()) {
+								routeTransitRoute(transitLine, transitRoute, network, routers, sharedPaths);
+								progress.update();
+							}
 						}
+					} catch (RuntimeException e) {
+						error.compareAndSet(null, e);
+					}
+				});
+				threads[i].start();
+			}
+			for(Thread thread : threads) {
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		}
+		if(error.get() != null) {
+			throw error.get();
+		}
+		log.info("Routing all routes with referenced links... done");
+	}
 
-						if(path != null)
-							linkIdSequence.addAll(path);
+	/**
+	 * Routes a transit route between the links referenced by its stop facilities.
+	 * The route is not modified if a stop facility is not referenced.
+	 *
+	 * @param pathCache paths shared with other routes of the same mode, <tt>null</tt>
+	 *                  if the paths depend on the transit route
+	 */
+	private static void routeTransitRoute(TransitLine transitLine, TransitRoute transitRoute, Network network, ScheduleRouters routers, Map<PathKey, List<Id<Link>>> pathCache) {
+		List<TransitRouteStop> routeStops = transitRoute.getStops();
+		if(routeStops.size() == 0) {
+			log.warn("Route " + transitRoute.getId() + " on line " + transitLine.getId() + " has no stop sequence");
+			return;
+		}
 
-						linkIdSequence.add(nextLink.getId());
-					} // -for stops
+		Link[] stopLinks = new Link[routeStops.size()];
+		for(int i = 0; i < routeStops.size(); i++) {
+			TransitStopFacility stopFacility = routeStops.get(i).getStopFacility();
+			stopLinks[i] = stopFacility.getLinkId() == null ? null : network.getLinks().get(stopFacility.getLinkId());
+			if(stopLinks[i] == null) {
+				log.warn("stop facility " + stopFacility.getName() + " (" + stopFacility.getId() + ") not referenced!");
+				return;
+			}
+		}
 
-					// add link sequence to schedule
-					if(linkIdSequence != null) {
-						transitRoute.setRoute(RouteUtils.createNetworkRoute(linkIdSequence, network));
-					}
-				} else {
-					log.warn("Route " + transitRoute.getId() + " on line " + transitLine.getId() + " has no stop sequence");
+		List<Id<Link>> linkIdSequence = new ArrayList<>();
+		linkIdSequence.add(stopLinks[0].getId());
+		for(int i = 0; i < stopLinks.length - 1; i++) {
+			PathKey key = new PathKey(transitRoute.getTransportMode(), stopLinks[i].getToNode().getId(), stopLinks[i + 1].getFromNode().getId());
+			List<Id<Link>> path = pathCache == null ? null : pathCache.get(key);
+			if(path == null) {
+				LeastCostPathCalculator.Path leastCostPath = routers.calcLeastCostPath(key.fromNodeId, key.toNodeId, transitLine, transitRoute);
+				path = leastCostPath == null ? Collections.emptyList() : PTMapperTools.getLinkIdsFromPath(leastCostPath);
+				if(pathCache != null) {
+					pathCache.put(key, path);
 				}
-			} // -route
-		} // -line
-		log.info("Routing all routes with referenced links... done");
+			}
+			linkIdSequence.addAll(path);
+			linkIdSequence.add(stopLinks[i + 1].getId());
+		}
+
+		// add link sequence to schedule
+		transitRoute.setRoute(RouteUtils.createNetworkRoute(linkIdSequence, network));
+	}
+
+	/**
+	 * Key for cached paths between two nodes
+	 */
+	private static final class PathKey {
+		private final String mode;
+		private final Id<Node> fromNodeId;
+		private final Id<Node> toNodeId;
+		private final int hash;
+
+		private PathKey(String mode, Id<Node> fromNodeId, Id<Node> toNodeId) {
+			this.mode = mode;
+			this.fromNodeId = fromNodeId;
+			this.toNodeId = toNodeId;
+			this.hash = Objects.hash(mode, fromNodeId, toNodeId);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(this == o) return true;
+			if(!(o instanceof PathKey)) return false;
+			PathKey other = (PathKey) o;
+			return fromNodeId.equals(other.fromNodeId) && toNodeId.equals(other.toNodeId) && Objects.equals(mode, other.mode);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
 	}
 
 	/**
@@ -365,11 +482,32 @@ public final class ScheduleTools {
 	public static void transformScheduleFile(String scheduleFile, String fromCoordinateSystem, String toCoordinateSystem) {
 		log.info("... Transformig schedule from " + fromCoordinateSystem + " to " + toCoordinateSystem);
 		final Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
-		new TransitScheduleReader(fromCoordinateSystem, toCoordinateSystem, scenario).readFile(scheduleFile);
+		new TransitScheduleReader(scenario).readFile(scheduleFile);
 		TransitSchedule schedule = scenario.getTransitSchedule();
+		transformSchedule(schedule, fromCoordinateSystem, toCoordinateSystem);
 		new TransitScheduleWriter(schedule).writeFile(scheduleFile);
 	}
 
+	/**
+	 * Transforms the coordinates of all stop facilities of the schedule. If the schedule has a
+	 * coordinate reference system attribute, it is used instead of <tt>fromCoordinateSystem</tt>.
+	 * The attribute is set to <tt>toCoordinateSystem</tt> afterwards.
+	 */
+	public static void transformSchedule(TransitSchedule schedule, String fromCoordinateSystem, String toCoordinateSystem) {
+		String scheduleCoordinateSystem = ProjectionUtils.getCRS(schedule);
+		if(scheduleCoordinateSystem != null && !scheduleCoordinateSystem.equals(fromCoordinateSystem)) {
+			log.warn("Schedule coordinate reference system " + scheduleCoordinateSystem + " differs from " + fromCoordinateSystem + ", using " + scheduleCoordinateSystem);
+			fromCoordinateSystem = scheduleCoordinateSystem;
+		}
+		List<TransitStopFacility> stopFacilities = new ArrayList<>(schedule.getFacilities().values());
+		List<Coord> coords = new BatchCoordinateTransformation(fromCoordinateSystem, toCoordinateSystem).transform(
+				stopFacilities.stream().map(TransitStopFacility::getCoord).collect(Collectors.toList()));
+		for(int i = 0; i < stopFacilities.size(); i++) {
+			stopFacilities.get(i).setCoord(coords.get(i));
+		}
+		ProjectionUtils.putCRS(schedule, toCoordinateSystem);
+	}
+
 	/**
 	 * Adds a loop link at the routeStart
 	 */
@@ -624,8 +762,9 @@ public final class ScheduleTools {
 			}
 		}
 
+		Predicate<Link> hasNetworkMode = new LinkModeMasks(network).sharesMode(networkModes);
 		for(Link link : network.getLinks().values()) {
-			if(MiscUtils.collectionsShareMinOneStringEntry(link.getAllowedModes(), networkModes)) {
+			if(hasNetworkMode.test(link)) {
 				if(necessaryMinSpeeds.containsKey(link.getId())) {
 					double necessaryMinSpeed = necessaryMinSpeeds.get(link.getId());
 					if(necessaryMinSpeed > link.getFreespeed()) {
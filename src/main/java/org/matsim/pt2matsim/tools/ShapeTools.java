@@ -40,6 +40,7 @@ import org.matsim.pt2matsim.gtfs.lib.GtfsDefinitions;
 import org.matsim.pt2matsim.gtfs.lib.GtfsShape;
 import org.matsim.pt2matsim.gtfs.lib.Route;
 import org.matsim.pt2matsim.gtfs.lib.Trip;
+import org.matsim.pt2matsim.tools.lib.BatchCoordinateTransformation;
 import org.matsim.pt2matsim.tools.lib.RouteShape;
 import org.opengis.feature.simple.SimpleFeature;
 
@@ -294,10 +295,10 @@ public final class ShapeTools {
 	}
 
 	public static List<Coord> transformCoords(CoordinateTransformation ct, List<Coord> coords) {
-		List<Coord> transformed = new ArrayList<>();
-		for(Coord coord : coords) {
-			transformed.add(ct.transform(coord));
-		}
-		return transformed;
+		return new BatchCoordinateTransformation(ct).transform(coords);
+	}
+
+	public static List<Coord> transformCoords(String fromCoordinateSystem, String toCoordinateSystem, List<Coord> coords) {
+		return new BatchCoordinateTransformation(fromCoordinateSystem, toCoordinateSystem).transform(coords);
 	}
 }
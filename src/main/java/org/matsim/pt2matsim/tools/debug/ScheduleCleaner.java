@@ -26,7 +26,6 @@ import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.api.core.v01.network.Node;
 import org.matsim.core.population.routes.NetworkRoute;
-import org.matsim.core.utils.collections.MapUtils;
 import org.matsim.core.utils.collections.Tuple;
 import org.matsim.core.utils.geometry.CoordUtils;
 import org.matsim.pt.transitSchedule.api.*;
@@ -35,10 +34,12 @@ import org.matsim.pt2matsim.tools.CoordTools;
 import org.matsim.pt2matsim.tools.MiscUtils;
 import org.matsim.pt2matsim.tools.NetworkTools;
 import org.matsim.pt2matsim.tools.ScheduleTools;
+import org.matsim.pt2matsim.tools.lib.LinkModeMasks;
 import org.matsim.vehicles.Vehicle;
 import org.matsim.vehicles.Vehicles;
 
 import java.util.*;
+import java.util.function.Predicate;
 
 /**
  * Methods to clean transit schedules by removing
@@ -195,14 +196,16 @@ public final class ScheduleCleaner {
 		}
 
 		int linksRemoved = 0;
+		Predicate<Link> hasModeToKeep = new LinkModeMasks(network).sharesMode(modesToKeep);
 		for(Link link : new HashSet<>(network.getLinks().values())) {
+			boolean keepMode = hasModeToKeep.test(link);
 			// only remove link if there are only modes to remove on it
-			if(!org.matsim.pt2matsim.tools.MiscUtils.collectionsShareMinOneStringEntry(link.getAllowedModes(), modesToKeep) && !usedTransitLinkIds.contains(link.getId())) {
+			if(!keepMode && !usedTransitLinkIds.contains(link.getId())) {
 				network.removeLink(link.getId());
 				linksRemoved++;
 			}
 			// only retain modes that are actually used
-			else if(org.matsim.pt2matsim.tools.MiscUtils.collectionsShareMinOneStringEntry(link.getAllowedModes(), modesToKeep) && !usedTransitLinkIds.contains(link.getId())) {
+			else if(keepMode && !usedTransitLinkIds.contains(link.getId())) {
 				link.setAllowedModes(MiscUtils.getSharedSetStringEntries(link.getAllowedModes(), modesToKeep));
 			}
 		}
@@ -310,20 +313,10 @@ public final class ScheduleCleaner {
 	public static void combineIdenticalTransitRoutes(TransitSchedule schedule) {
 		log.info("Combining TransitRoutes with equal stop sequence and arrival/departure offsets...");
 		int combined = 0;
-		for(TransitLine transitLine : schedule.getTransitLines().values()) {
-			Map<List<String>, List<TransitRoute>> profiles = new HashMap<>();
-			for(TransitRoute transitRoute : transitLine.getRoutes().values()) {
-				List<String> sequence = new LinkedList<>();
-				for(TransitRouteStop routeStop : transitRoute.getStops()) {
-					String s = routeStop.getStopFacility().getId().toString()
-							+ "-" + (int) routeStop.getArrivalOffset().seconds()
-							+ "-" + (int) routeStop.getDepartureOffset().seconds();
-					sequence.add(s);
-				}
-				MapUtils.getList(sequence, profiles).add(transitRoute);
-			}
-
-			for(List<TransitRoute> routeList : profiles.values()) {
+		Map<TransitLine, List<List<TransitRoute>>> profiles = TransitRouteDeduplicator.groupIdenticalRoutes(schedule, true);
+		for(Map.Entry<TransitLine, List<List<TransitRoute>>> e : profiles.entrySet()) {
+			TransitLine transitLine = e.getKey();
+			for(List<TransitRoute> routeList : e.getValue()) {
 				if(routeList.size() > 1) {
 					TransitRoute finalRoute = routeList.get(0);
 					for(int i = 1; i < routeList.size(); i++) {
@@ -349,23 +342,17 @@ public final class ScheduleCleaner {
 		long totalNumberOfStops = 0;
 		long stopsWithChangedTimes = 0;
 		double changedTotalTimeAtStops = 0.;
-		List<Double> timeChanges = new ArrayList<>();
 
-		for(TransitLine line : schedule.getTransitLines().values()) {
-			// Collect all route profiles
-			final Map<String, List<TransitRoute>> routeProfiles = new HashMap<>();
-			for(TransitRoute transitRoute : line.getRoutes().values()) {
-				totalNumberOfDepartures += transitRoute.getDepartures().size();
-				totalNumberOfStops += transitRoute.getDepartures().size() * transitRoute.getStops().size();
-				String routeProfile = transitRoute.getStops().get(0).getStopFacility().getId().toString();
-				for(int i = 1; i < transitRoute.getStops().size(); i++) {
-					routeProfile = routeProfile + "-" + transitRoute.getStops().get(i).getStopFacility().getId().toString();
-				}
-				MapUtils.getList(routeProfile, routeProfiles).add(transitRoute);
-			}
+		Map<TransitLine, List<List<TransitRoute>>> routeProfiles = TransitRouteDeduplicator.groupIdenticalRoutes(schedule, false);
+		for(Map.Entry<TransitLine, List<List<TransitRoute>>> e : routeProfiles.entrySet()) {
+			TransitLine line = e.getKey();
 			// Check profiles and if the same, add latter to former.
-			for(List<TransitRoute> routesToUnite : routeProfiles.values()) {
+			for(List<TransitRoute> routesToUnite : e.getValue()) {
 				TransitRoute finalRoute = routesToUnite.get(0);
+				for(TransitRoute transitRoute : routesToUnite) {
+					totalNumberOfDepartures += transitRoute.getDepartures().size();
+					totalNumberOfStops += transitRoute.getDepartures().size() * transitRoute.getStops().size();
+				}
 				for(int i = 1; i < routesToUnite.size(); i++) {
 					TransitRoute routeToAdd = routesToUnite.get(i);
 					// unite departures
@@ -383,9 +370,6 @@ public final class ScheduleCleaner {
 						if(changedTotalTimeAtStop > 0) {
 							stopsWithChangedTimes += numberOfDepartures;
 							changedTotalTimeAtStops += changedTotalTimeAtStop * numberOfDepartures;
-							for(int k = 0; k < numberOfDepartures; k++) {
-								timeChanges.add(changedTotalTimeAtStop);
-							}
 							departureWithChangedDepartureTimes = true;
 						}
 					}
@@ -0,0 +1,185 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2016 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.pt2matsim.tools.debug;
+
+import org.matsim.core.utils.misc.OptionalTime;
+import org.matsim.pt.transitSchedule.api.TransitLine;
+import org.matsim.pt.transitSchedule.api.TransitRoute;
+import org.matsim.pt.transitSchedule.api.TransitRouteStop;
+import org.matsim.pt.transitSchedule.api.TransitSchedule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Groups the transit routes of a transit line by their stop profile. A profile is
+ * either the stop sequence alone or the stop sequence including arrival and
+ * departure offsets (in whole seconds).
+ * <p>
+ * Each profile is packed into an int array (interned stop facility id indices
+ * and offsets) and hashed to a 64-bit fingerprint. Routes sharing a fingerprint
+ * are compared on their packed profile, so hash collisions never merge different
+ * routes. Transit lines are independent of each other and are processed in parallel.
+ */
+public final class TransitRouteDeduplicator {
+
+	private static final int UNDEFINED_TIME = Integer.MIN_VALUE;
+
+	private TransitRouteDeduplicator() {}
+
+	/**
+	 * Groups the routes of all transit lines, see {@link #groupIdenticalRoutes(TransitLine, boolean)}.
+	 * Lines are processed in parallel, the result is ordered like the schedule's transit lines.
+	 */
+	public static Map<TransitLine, List<List<TransitRoute>>> groupIdenticalRoutes(TransitSchedule schedule, boolean compareOffsets) {
+		List<TransitLine> lines = new ArrayList<>(schedule.getTransitLines().values());
+		List<List<List<TransitRoute>>> groups = new ArrayList<>(lines.size());
+		lines.forEach(l -> groups.add(null));
+
+		IntStream.range(0, lines.size()).parallel()
+				.forEach(i -> groups.set(i, groupIdenticalRoutes(lines.get(i), compareOffsets)));
+
+		Map<TransitLine, List<List<TransitRoute>>> result = new LinkedHashMap<>();
+		for(int i = 0; i < lines.size(); i++) {
+			result.put(lines.get(i), groups.get(i));
+		}
+		return result;
+	}
+
+	/**
+	 * @return the transit routes of the line grouped by identical profiles. Groups and the routes within
+	 * a group keep the iteration order of the line's routes, i.e. the first route of a group is the one
+	 * that was added to the line first.
+	 */
+	public static List<List<TransitRoute>> groupIdenticalRoutes(TransitLine transitLine, boolean compareOffsets) {
+		Map<Long, List<Profile>> buckets = new HashMap<>();
+		List<List<TransitRoute>> groups = new ArrayList<>();
+
+		for(TransitRoute transitRoute : transitLine.getRoutes().values()) {
+			int[] packed = pack(transitRoute, compareOffsets);
+			long fingerprint = fingerprint(packed);
+
+			List<Profile> bucket = buckets.computeIfAbsent(fingerprint, k -> new ArrayList<>(1));
+			Profile match = null;
+			for(Profile profile : bucket) {
+				if(Arrays.equals(profile.packed, packed)) {
+					match = profile;
+					break;
+				}
+			}
+			if(match == null) {
+				match = new Profile(packed);
+				bucket.add(match);
+				groups.add(match.routes);
+			}
+			match.routes.add(transitRoute);
+		}
+		return groups;
+	}
+
+	/**
+	 * Packs the stop profile of a transit route into an int array. Stop facilities
+	 * are represented by their interned id index.
+	 */
+	static int[] pack(TransitRoute transitRoute, boolean compareOffsets) {
+		return pack(transitRoute.getStops(), compareOffsets);
+	}
+
+	/**
+	 * Packs a stop sequence into an int array, see {@link #pack(TransitRoute, boolean)}.
+	 */
+	public static int[] pack(List<TransitRouteStop> stops, boolean compareOffsets) {
+		int stride = compareOffsets ? 3 : 1;
+		int[] packed = new int[stops.size() * stride];
+		int i = 0;
+		for(TransitRouteStop routeStop : stops) {
+			packed[i++] = routeStop.getStopFacility().getId().index();
+			if(compareOffsets) {
+				packed[i++] = seconds(routeStop.getArrivalOffset());
+				packed[i++] = seconds(routeStop.getDepartureOffset());
+			}
+		}
+		return packed;
+	}
+
+	/**
+	 * 64-bit fingerprint of a packed profile (splitmix64 finalizer applied per value).
+	 */
+	static long fingerprint(int[] packed) {
+		long h = 0x9E3779B97F4A7C15L ^ packed.length;
+		for(int v : packed) {
+			h = mix(h + v);
+		}
+		return h;
+	}
+
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	private static int seconds(OptionalTime time) {
+		return time.isDefined() ? (int) time.seconds() : UNDEFINED_TIME;
+	}
+
+	/**
+	 * Incrementally filled lookup from packed profiles to transit routes. Used to
+	 * find the route a trip belongs to while a schedule is being created. Not thread safe.
+	 */
+	public static final class RouteIndex {
+
+		private final Map<Long, List<Profile>> buckets = new HashMap<>();
+
+		/**
+		 * @return the route with the given packed profile, <tt>null</tt> if no such route has been added
+		 */
+		public TransitRoute get(int[] packed) {
+			List<Profile> bucket = buckets.get(fingerprint(packed));
+			if(bucket != null) {
+				for(Profile profile : bucket) {
+					if(Arrays.equals(profile.packed, packed)) {
+						return profile.routes.get(0);
+					}
+				}
+			}
+			return null;
+		}
+
+		public void add(int[] packed, TransitRoute transitRoute) {
+			Profile profile = new Profile(packed);
+			profile.routes.add(transitRoute);
+			buckets.computeIfAbsent(fingerprint(packed), k -> new ArrayList<>(1)).add(profile);
+		}
+	}
+
+	private static class Profile {
+		private final int[] packed;
+		private final List<TransitRoute> routes = new ArrayList<>();
+
+		private Profile(int[] packed) {
+			this.packed = packed;
+		}
+	}
+}
@@ -0,0 +1,186 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2016 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.pt2matsim.tools.lib;
+
+import org.geotools.referencing.CRS;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.core.utils.geometry.CoordinateTransformation;
+import org.matsim.core.utils.geometry.geotools.MGC;
+import org.matsim.core.utils.geometry.transformations.GeotoolsTransformation;
+import org.matsim.core.utils.geometry.transformations.IdentityTransformation;
+import org.matsim.core.utils.geometry.transformations.TransformationFactory;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Transforms whole coordinate datasets at once. 2D coordinates are packed into a
+ * <tt>double[]</tt> (x0, y0, x1, y1, ...) and transformed in place in chunks
+ * on multiple threads.
+ * <p>
+ * If the transformation between the coordinate systems is done by GeoTools,
+ * the chunks are passed directly to the GeoTools math transform, no intermediate
+ * Coord or Point objects are created. Other transformations (e.g. the MATSim
+ * implementations for CH1903) are applied per coordinate.
+ */
+public class BatchCoordinateTransformation {
+
+	/** number of coordinates per chunk */
+	public static final int CHUNK_SIZE = 1 << 16;
+
+	private final CoordinateTransformation transformation;
+	private final MathTransform mathTransform;
+	private final boolean identity;
+
+	public BatchCoordinateTransformation(String fromCoordinateSystem, String toCoordinateSystem) {
+		this.transformation = TransformationFactory.getCoordinateTransformation(fromCoordinateSystem, toCoordinateSystem);
+		this.identity = transformation instanceof IdentityTransformation;
+		if(transformation instanceof GeotoolsTransformation) {
+			// same math transform as created by GeotoolsTransformation
+			MathTransform transform;
+			try {
+				transform = CRS.findMathTransform(MGC.getCRS(fromCoordinateSystem), MGC.getCRS(toCoordinateSystem), true);
+			} catch (FactoryException e) {
+				throw new RuntimeException(e);
+			}
+			this.mathTransform = transform.getSourceDimensions() == 2 && transform.getTargetDimensions() == 2 ? transform : null;
+		} else {
+			this.mathTransform = null;
+		}
+	}
+
+	/**
+	 * Transformation applied per coordinate, no coordinate systems are known.
+	 */
+	public BatchCoordinateTransformation(CoordinateTransformation transformation) {
+		this.transformation = transformation;
+		this.identity = transformation == null || transformation instanceof IdentityTransformation;
+		this.mathTransform = null;
+	}
+
+	public boolean isIdentity() {
+		return identity;
+	}
+
+	/**
+	 * Transforms the packed coordinates in place using all available processors
+	 */
+	public void transform(double[] xy) {
+		transform(xy, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Transforms the packed coordinates (x0, y0, x1, y1, ...) in place
+	 */
+	public void transform(double[] xy, int numThreads) {
+		if(identity) {
+			return;
+		}
+		int nCoords = xy.length / 2;
+		int nChunks = (nCoords + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		int nThreads = Math.max(1, Math.min(numThreads, nChunks));
+
+		if(nThreads == 1) {
+			for(int c = 0; c < nChunks; c++) {
+				transformChunk(xy, c);
+			}
+			return;
+		}
+
+		AtomicReference<RuntimeException> error = new AtomicReference<>();
+		Thread[] threads = new Thread[nThreads];
+		for(int t = 0; t < nThreads; t++) {
+			int thr = t;
+			threads[t] = new Thread(() -> {
+				try {
+					for(int c = thr; c < nChunks; c += nThreads) {
+						transformChunk(xy, c);
+					}
+				} catch (RuntimeException e) {
+					error.compareAndSet(null, e);
+				}
+			});
+			threads[t].start();
+		}
+		for(Thread thread : threads) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		if(error.get() != null) {
+			throw error.get();
+		}
+	}
+
+	private void transformChunk(double[] xy, int chunk) {
+		int from = chunk * CHUNK_SIZE;
+		int n = Math.min(CHUNK_SIZE, xy.length / 2 - from);
+		if(mathTransform != null) {
+			try {
+				mathTransform.transform(xy, 2 * from, xy, 2 * from, n);
+			} catch (TransformException e) {
+				throw new RuntimeException(e);
+			}
+		} else {
+			for(int i = 2 * from; i < 2 * (from + n); i += 2) {
+				Coord coord = transformation.transform(new Coord(xy[i], xy[i + 1]));
+				xy[i] = coord.getX();
+				xy[i + 1] = coord.getY();
+			}
+		}
+	}
+
+	/**
+	 * @return the transformed coordinates in the same order
+	 */
+	public List<Coord> transform(Collection<Coord> coords) {
+		double[] xy = pack(coords);
+		transform(xy);
+		return unpack(xy);
+	}
+
+	/**
+	 * @return the coordinates packed as (x0, y0, x1, y1, ...)
+	 */
+	public static double[] pack(Collection<Coord> coords) {
+		double[] xy = new double[2 * coords.size()];
+		int i = 0;
+		for(Coord coord : coords) {
+			xy[i++] = coord.getX();
+			xy[i++] = coord.getY();
+		}
+		return xy;
+	}
+
+	public static List<Coord> unpack(double[] xy) {
+		List<Coord> coords = new ArrayList<>(xy.length / 2);
+		for(int i = 0; i < xy.length; i += 2) {
+			coords.add(new Coord(xy[i], xy[i + 1]));
+		}
+		return coords;
+	}
+
+}
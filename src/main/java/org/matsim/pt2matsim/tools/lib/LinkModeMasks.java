@@ -0,0 +1,80 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2016 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.pt2matsim.tools.lib;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.pt2matsim.tools.MiscUtils;
+
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Bitmasks of the allowed modes of all links of a network, stored in an array indexed
+ * by link id. The masks are created once, checking whether a link allows one of the
+ * modes is then a single AND instead of comparing strings.
+ * <p>
+ * The masks are a snapshot: links added to the network afterwards and links with more
+ * than 64 different modes in the network fall back to comparing the modes directly.
+ * Changes of allowed modes after the masks have been created are not reflected.
+ */
+public final class LinkModeMasks {
+
+	private final ModeBits modeBits;
+	private final long[] linkMasks;
+	private final boolean[] indexed;
+
+	public LinkModeMasks(Network network) {
+		this(network, new ModeBits());
+	}
+
+	/**
+	 * @param modeBits the mode bit table, bits are assigned to the modes of the network
+	 */
+	public LinkModeMasks(Network network, ModeBits modeBits) {
+		this.modeBits = modeBits;
+		int n = Id.getNumberOfIds(Link.class);
+		this.linkMasks = new long[n];
+		this.indexed = new boolean[n];
+		for(Link link : network.getLinks().values()) {
+			int index = link.getId().index();
+			linkMasks[index] = modeBits.getOrCreateMask(link.getAllowedModes());
+			indexed[index] = true;
+		}
+	}
+
+	/**
+	 * @return a predicate that is true for links allowing at least one of the modes (ignoring case).
+	 * Is always false if modes is <tt>null</tt>.
+	 */
+	public Predicate<Link> sharesMode(Set<String> modes) {
+		if(modes == null) {
+			return link -> false;
+		}
+		long mask = modeBits.getMask(modes);
+		return link -> {
+			int index = link.getId().index();
+			if(index >= linkMasks.length || !indexed[index] || linkMasks[index] == ModeBits.UNKNOWN_MASK) {
+				return MiscUtils.collectionsShareMinOneStringEntry(link.getAllowedModes(), modes);
+			}
+			return (linkMasks[index] & mask) != 0;
+		};
+	}
+}
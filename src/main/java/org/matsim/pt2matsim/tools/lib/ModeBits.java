@@ -0,0 +1,81 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2016 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.pt2matsim.tools.lib;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Assigns one of 64 bits to each transport mode (ignoring case), so sets of modes
+ * can be compared with a bitwise AND. The table belongs to whoever creates it, e.g.
+ * the mode masks of one network. Bits are only assigned by {@link #getOrCreateMask},
+ * looking up a mask never assigns bits.
+ */
+public final class ModeBits {
+
+	/**
+	 * Mask of modes if one of them could not be assigned a bit, modes have to be compared directly
+	 */
+	public static final long UNKNOWN_MASK = -1L;
+
+	private final Map<String, Integer> bits = new HashMap<>();
+
+	/**
+	 * @return the mask of the modes, assigns bits to modes without one.
+	 * {@link #UNKNOWN_MASK} if there are more than 64 modes.
+	 */
+	public long getOrCreateMask(Collection<String> modes) {
+		long mask = 0;
+		for(String mode : modes) {
+			String key = mode.toLowerCase();
+			Integer bit = bits.get(key);
+			if(bit == null) {
+				if(bits.size() == Long.SIZE) {
+					return UNKNOWN_MASK;
+				}
+				bit = bits.size();
+				bits.put(key, bit);
+			}
+			mask |= 1L << bit;
+		}
+		return mask;
+	}
+
+	/**
+	 * @return the mask of the modes that have a bit, modes without a bit are ignored.
+	 * 0 for <tt>null</tt>.
+	 */
+	public long getMask(Collection<String> modes) {
+		long mask = 0;
+		if(modes != null) {
+			for(String mode : modes) {
+				Integer bit = bits.get(mode.toLowerCase());
+				if(bit != null) {
+					mask |= 1L << bit;
+				}
+			}
+		}
+		return mask;
+	}
+
+	public int size() {
+		return bits.size();
+	}
+}
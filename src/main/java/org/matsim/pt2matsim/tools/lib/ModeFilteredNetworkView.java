@@ -0,0 +1,269 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2016 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.pt2matsim.tools.lib;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.pt2matsim.tools.MiscUtils;
+import org.matsim.utils.objectattributes.attributable.AttributesUtils;
+
+import java.util.*;
+
+/**
+ * Read-only view on the links of a network that allow at least one of the given
+ * modes, and on the nodes used by these links. The view is a bitset over link
+ * indices with in- and out-link adjacency arrays per node, no links or nodes are
+ * copied. The view must not be used after the underlying network has been modified.
+ * <p>
+ * {@link #createNetwork()} creates an independent network with copies of the links
+ * and nodes in the view (equivalent to {@link org.matsim.pt2matsim.tools.NetworkTools#createFilteredNetworkByLinkMode}).
+ */
+public final class ModeFilteredNetworkView {
+
+	private final Network network;
+	private final Set<String> modes;
+
+	private final Node[] nodes;
+	private final Map<Id<Node>, Integer> nodeIndices;
+	private final Link[] links;
+	private final Map<Id<Link>, Integer> linkIndices;
+
+	private final BitSet linksInView;
+	private final BitSet nodesInView;
+
+	// view links per node as compressed sparse rows
+	private final int[] outOffsets;
+	private final int[] outLinks;
+	private final int[] inOffsets;
+	private final int[] inLinks;
+
+	/**
+	 * @param modes links that share at least one mode with this set are part of the view.
+	 *              The view is empty if <tt>null</tt>.
+	 */
+	public ModeFilteredNetworkView(Network network, Set<String> modes) {
+		this.network = network;
+		this.modes = modes == null ? Collections.emptySet() : Collections.unmodifiableSet(new HashSet<>(modes));
+
+		int nNodes = network.getNodes().size();
+		int nLinks = network.getLinks().size();
+		nodes = new Node[nNodes];
+		nodeIndices = new HashMap<>(nNodes * 2);
+		links = new Link[nLinks];
+		linkIndices = new HashMap<>(nLinks * 2);
+		linksInView = new BitSet(nLinks);
+		nodesInView = new BitSet(nNodes);
+
+		int n = 0;
+		for(Node node : network.getNodes().values()) {
+			nodes[n] = node;
+			nodeIndices.put(node.getId(), n++);
+		}
+
+		int[] outDegree = new int[nNodes + 1];
+		int[] inDegree = new int[nNodes + 1];
+		int l = 0;
+		for(Link link : network.getLinks().values()) {
+			links[l] = link;
+			linkIndices.put(link.getId(), l);
+			if(MiscUtils.collectionsShareMinOneStringEntry(link.getAllowedModes(), this.modes)) {
+				int from = nodeIndices.get(link.getFromNode().getId());
+				int to = nodeIndices.get(link.getToNode().getId());
+				linksInView.set(l);
+				nodesInView.set(from);
+				nodesInView.set(to);
+				outDegree[from]++;
+				inDegree[to]++;
+			}
+			l++;
+		}
+
+		outOffsets = toOffsets(outDegree);
+		inOffsets = toOffsets(inDegree);
+		outLinks = new int[outOffsets[nNodes]];
+		inLinks = new int[inOffsets[nNodes]];
+		int[] outPos = Arrays.copyOf(outOffsets, nNodes);
+		int[] inPos = Arrays.copyOf(inOffsets, nNodes);
+		for(l = linksInView.nextSetBit(0); l >= 0; l = linksInView.nextSetBit(l + 1)) {
+			outLinks[outPos[nodeIndices.get(links[l].getFromNode().getId())]++] = l;
+			inLinks[inPos[nodeIndices.get(links[l].getToNode().getId())]++] = l;
+		}
+	}
+
+	/**
+	 * Converts degrees to offsets in place, the last entry is the total
+	 */
+	private static int[] toOffsets(int[] degrees) {
+		int sum = 0;
+		for(int i = 0; i < degrees.length; i++) {
+			int d = degrees[i];
+			degrees[i] = sum;
+			sum += d;
+		}
+		return degrees;
+	}
+
+	/**
+	 * @return the underlying network
+	 */
+	public Network getNetwork() {
+		return network;
+	}
+
+	public Set<String> getModes() {
+		return modes;
+	}
+
+	public boolean containsLink(Id<Link> linkId) {
+		Integer index = linkIndices.get(linkId);
+		return index != null && linksInView.get(index);
+	}
+
+	public boolean containsNode(Id<Node> nodeId) {
+		Integer index = nodeIndices.get(nodeId);
+		return index != null && nodesInView.get(index);
+	}
+
+	/**
+	 * @return the link, <tt>null</tt> if it is not part of the view
+	 */
+	public Link getLink(Id<Link> linkId) {
+		return containsLink(linkId) ? links[linkIndices.get(linkId)] : null;
+	}
+
+	/**
+	 * @return the node, <tt>null</tt> if it is not part of the view
+	 */
+	public Node getNode(Id<Node> nodeId) {
+		return containsNode(nodeId) ? nodes[nodeIndices.get(nodeId)] : null;
+	}
+
+	public int getNumberOfLinks() {
+		return linksInView.cardinality();
+	}
+
+	public int getNumberOfNodes() {
+		return nodesInView.cardinality();
+	}
+
+	/**
+	 * @return the outgoing links of the node that are part of the view
+	 */
+	public List<Link> getOutLinks(Node node) {
+		return adjacentLinks(node, outOffsets, outLinks);
+	}
+
+	/**
+	 * @return the incoming links of the node that are part of the view
+	 */
+	public List<Link> getInLinks(Node node) {
+		return adjacentLinks(node, inOffsets, inLinks);
+	}
+
+	private List<Link> adjacentLinks(Node node, int[] offsets, int[] adjacent) {
+		Integer n = nodeIndices.get(node.getId());
+		if(n == null) {
+			return Collections.emptyList();
+		}
+		List<Link> list = new ArrayList<>(offsets[n + 1] - offsets[n]);
+		for(int i = offsets[n]; i < offsets[n + 1]; i++) {
+			list.add(links[adjacent[i]]);
+		}
+		return list;
+	}
+
+	/**
+	 * @return the links of the view in network order
+	 */
+	public List<Link> getLinks() {
+		List<Link> list = new ArrayList<>(linksInView.cardinality());
+		for(int l = linksInView.nextSetBit(0); l >= 0; l = linksInView.nextSetBit(l + 1)) {
+			list.add(links[l]);
+		}
+		return list;
+	}
+
+	/**
+	 * @return the nodes used by links of the view in network order
+	 */
+	public List<Node> getNodes() {
+		List<Node> list = new ArrayList<>(nodesInView.cardinality());
+		for(int n = nodesInView.nextSetBit(0); n >= 0; n = nodesInView.nextSetBit(n + 1)) {
+			list.add(nodes[n]);
+		}
+		return list;
+	}
+
+	/**
+	 * @return a new network with copies of all nodes and links of the view
+	 */
+	public Network createNetwork() {
+		return copy(nodesInView);
+	}
+
+	/**
+	 * @param nodesToKeep nodes outside of this collection and links connected to them are
+	 *                    not copied
+	 * @return a new network with copies of the nodes and links of the view within nodesToKeep
+	 */
+	public Network createSubnetwork(Collection<Node> nodesToKeep) {
+		BitSet keep = new BitSet(nodes.length);
+		for(Node node : nodesToKeep) {
+			Integer n = nodeIndices.get(node.getId());
+			if(n != null && nodesInView.get(n)) {
+				keep.set(n);
+			}
+		}
+		return copy(keep);
+	}
+
+	private Network copy(BitSet nodesToCopy) {
+		Network copy = NetworkUtils.createNetwork();
+		copy.setCapacityPeriod(network.getCapacityPeriod());
+		copy.setEffectiveLaneWidth(network.getEffectiveLaneWidth());
+		NetworkFactory factory = copy.getFactory();
+
+		Node[] copiedNodes = new Node[nodes.length];
+		for(int n = nodesToCopy.nextSetBit(0); n >= 0; n = nodesToCopy.nextSetBit(n + 1)) {
+			copiedNodes[n] = factory.createNode(nodes[n].getId(), nodes[n].getCoord());
+			AttributesUtils.copyAttributesFromTo(nodes[n], copiedNodes[n]);
+			copy.addNode(copiedNodes[n]);
+		}
+		for(int l = linksInView.nextSetBit(0); l >= 0; l = linksInView.nextSetBit(l + 1)) {
+			Link link = links[l];
+			Node fromNode = copiedNodes[nodeIndices.get(link.getFromNode().getId())];
+			Node toNode = copiedNodes[nodeIndices.get(link.getToNode().getId())];
+			if(fromNode != null && toNode != null) {
+				Link newLink = factory.createLink(link.getId(), fromNode, toNode);
+				newLink.setLength(link.getLength());
+				newLink.setFreespeed(link.getFreespeed());
+				newLink.setCapacity(link.getCapacity());
+				newLink.setNumberOfLanes(link.getNumberOfLanes());
+				newLink.setAllowedModes(new HashSet<>(link.getAllowedModes()));
+				AttributesUtils.copyAttributesFromTo(link, newLink);
+				copy.addLink(newLink);
+			}
+		}
+		return copy;
+	}
+}
@@ -0,0 +1,169 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2016 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.pt2matsim.tools.lib;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes gzipped MVT tiles to a single-file PMTiles (version 3) archive. Tiles
+ * are stored in tile id order (clustered). The root directory is split into leaf
+ * directories if it does not fit into the first 16 KiB of the archive.
+ */
+public final class PMTilesWriter {
+
+	private static final int HEADER_LENGTH = 127;
+	private static final int MAX_ROOT_LENGTH = 16384 - HEADER_LENGTH;
+	private static final byte COMPRESSION_GZIP = 2;
+	private static final byte TILE_TYPE_MVT = 1;
+
+	private PMTilesWriter() {}
+
+	/**
+	 * @param tiles    gzipped MVT tiles sorted by tile id, see {@link VectorTiles#tileId(int, long, long)}
+	 * @param bounds   [minLon, minLat, maxLon, maxLat]
+	 * @param metadata JSON metadata (uncompressed)
+	 */
+	public static void write(String outputFile, SortedMap<Long, byte[]> tiles, int minZoom, int maxZoom, double[] bounds, String metadata) throws IOException {
+		List<long[]> entries = new ArrayList<>(tiles.size());
+		long tileDataLength = 0;
+		for(Map.Entry<Long, byte[]> e : tiles.entrySet()) {
+			entries.add(new long[]{e.getKey(), tileDataLength, e.getValue().length, 1});
+			tileDataLength += e.getValue().length;
+		}
+
+		byte[] root = gzip(serializeDirectory(entries));
+		ByteArrayOutputStream leaves = new ByteArrayOutputStream();
+		for(int leafSize = 4096; root.length > MAX_ROOT_LENGTH; leafSize *= 2) {
+			leaves.reset();
+			List<long[]> rootEntries = new ArrayList<>();
+			for(int i = 0; i < entries.size(); i += leafSize) {
+				List<long[]> leafEntries = entries.subList(i, Math.min(i + leafSize, entries.size()));
+				byte[] leaf = gzip(serializeDirectory(leafEntries));
+				rootEntries.add(new long[]{leafEntries.get(0)[0], leaves.size(), leaf.length, 0});
+				leaves.write(leaf);
+			}
+			root = gzip(serializeDirectory(rootEntries));
+		}
+		byte[] meta = gzip(metadata.getBytes(StandardCharsets.UTF_8));
+
+		long rootOffset = HEADER_LENGTH;
+		long metadataOffset = rootOffset + root.length;
+		long leavesOffset = metadataOffset + meta.length;
+		long tileDataOffset = leavesOffset + leaves.size();
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+		header.put("PMTiles".getBytes(StandardCharsets.US_ASCII));
+		header.put((byte) 3);
+		header.putLong(rootOffset);
+		header.putLong(root.length);
+		header.putLong(metadataOffset);
+		header.putLong(meta.length);
+		header.putLong(leavesOffset);
+		header.putLong(leaves.size());
+		header.putLong(tileDataOffset);
+		header.putLong(tileDataLength);
+		header.putLong(entries.size()); // addressed tiles
+		header.putLong(entries.size()); // tile entries
+		header.putLong(entries.size()); // tile contents
+		header.put((byte) 1); // clustered
+		header.put(COMPRESSION_GZIP); // internal compression
+		header.put(COMPRESSION_GZIP); // tile compression
+		header.put(TILE_TYPE_MVT);
+		header.put((byte) minZoom);
+		header.put((byte) maxZoom);
+		header.putInt(e7(bounds[0]));
+		header.putInt(e7(bounds[1]));
+		header.putInt(e7(bounds[2]));
+		header.putInt(e7(bounds[3]));
+		header.put((byte) minZoom);
+		header.putInt(e7((bounds[0] + bounds[2]) / 2));
+		header.putInt(e7((bounds[1] + bounds[3]) / 2));
+
+		try(OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile), 1 << 16)) {
+			out.write(header.array());
+			out.write(root);
+			out.write(meta);
+			leaves.writeTo(out);
+			for(byte[] tile : tiles.values()) {
+				out.write(tile);
+			}
+		}
+	}
+
+	/**
+	 * Serializes directory entries {tileId, offset, length, runLength}: tile ids are delta
+	 * encoded and an offset is written as 0 if the entry directly follows the previous one.
+	 */
+	static byte[] serializeDirectory(List<long[]> entries) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeVarint(out, entries.size());
+		long lastId = 0;
+		for(long[] e : entries) {
+			writeVarint(out, e[0] - lastId);
+			lastId = e[0];
+		}
+		for(long[] e : entries) {
+			writeVarint(out, e[3]);
+		}
+		for(long[] e : entries) {
+			writeVarint(out, e[2]);
+		}
+		for(int i = 0; i < entries.size(); i++) {
+			long[] e = entries.get(i);
+			if(i > 0 && e[1] == entries.get(i - 1)[1] + entries.get(i - 1)[2]) {
+				writeVarint(out, 0);
+			} else {
+				writeVarint(out, e[1] + 1);
+			}
+		}
+		return out.toByteArray();
+	}
+
+	private static void writeVarint(ByteArrayOutputStream out, long v) {
+		while((v & ~0x7FL) != 0) {
+			out.write((int) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		out.write((int) v);
+	}
+
+	private static int e7(double degrees) {
+		return (int) Math.round(degrees * 1e7);
+	}
+
+	private static byte[] gzip(byte[] data) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try(GZIPOutputStream gz = new GZIPOutputStream(out)) {
+			gz.write(data);
+		}
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,577 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2016 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.pt2matsim.tools.lib;
+
+import org.matsim.api.core.v01.Coord;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Collects point and line features (in WGS84) in named layers and cuts them into
+ * gzipped Mapbox Vector Tiles (MVT 2.1).
+ * <p>
+ * Coordinates are projected to web mercator once when a feature is added. Zoom levels
+ * are tiled in parallel. Per zoom level, lines are simplified with Douglas-Peucker using
+ * a tolerance of one pixel and each segment is clipped only against the tiles its
+ * bounding box touches, so long routes do not scan all tiles of their extent.
+ */
+public class VectorTiles {
+
+	public static final int EXTENT = 4096;
+	private static final int BUFFER = 64;
+	private static final double MAX_LAT = 85.0511287798;
+
+	private final List<Layer> layers = new ArrayList<>();
+	private final Map<String, Layer> layersByName = new HashMap<>();
+
+	private double minLon = Double.POSITIVE_INFINITY;
+	private double minLat = Double.POSITIVE_INFINITY;
+	private double maxLon = Double.NEGATIVE_INFINITY;
+	private double maxLat = Double.NEGATIVE_INFINITY;
+
+	/**
+	 * Adds a layer. Features of the layer are only contained in tiles with zoom level
+	 * minZoom or higher. Layers are written to tiles in the order they are added.
+	 */
+	public void addLayer(String name, int minZoom) {
+		if(layersByName.containsKey(name)) {
+			throw new IllegalArgumentException("Layer " + name + " already exists");
+		}
+		Layer layer = new Layer(name, minZoom);
+		layers.add(layer);
+		layersByName.put(name, layer);
+	}
+
+	public void addPoint(String layerName, Coord wgs84, Map<String, Object> properties) {
+		addFeature(layerName, Collections.singletonList(wgs84), properties, true);
+	}
+
+	/**
+	 * Adds a line feature. Lines with less than two coordinates are ignored.
+	 */
+	public void addLine(String layerName, List<Coord> wgs84, Map<String, Object> properties) {
+		if(wgs84.size() >= 2) {
+			addFeature(layerName, wgs84, properties, false);
+		}
+	}
+
+	private void addFeature(String layerName, List<Coord> wgs84, Map<String, Object> properties, boolean point) {
+		Layer layer = layersByName.get(layerName);
+		if(layer == null) {
+			throw new IllegalArgumentException("Layer " + layerName + " does not exist");
+		}
+		double[] x = new double[wgs84.size()];
+		double[] y = new double[wgs84.size()];
+		for(int i = 0; i < x.length; i++) {
+			Coord c = wgs84.get(i);
+			double lat = Math.max(-MAX_LAT, Math.min(MAX_LAT, c.getY()));
+			x[i] = (c.getX() + 180) / 360;
+			y[i] = 0.5 - Math.log(Math.tan(Math.PI / 4 + Math.toRadians(lat) / 2)) / (2 * Math.PI);
+
+			minLon = Math.min(minLon, c.getX());
+			maxLon = Math.max(maxLon, c.getX());
+			minLat = Math.min(minLat, lat);
+			maxLat = Math.max(maxLat, lat);
+		}
+		for(String key : properties.keySet()) {
+			layer.fields.put(key, properties.get(key) instanceof Number ? "Number" : "String");
+		}
+		layer.features.add(new TileFeature(x, y, properties, point));
+	}
+
+	/**
+	 * @return the bounds of all features as [minLon, minLat, maxLon, maxLat]
+	 */
+	public double[] getBounds() {
+		return new double[]{minLon, minLat, maxLon, maxLat};
+	}
+
+	public List<String> getLayerNames() {
+		return layers.stream().map(l -> l.name).collect(Collectors.toList());
+	}
+
+	public int getLayerMinZoom(String layerName) {
+		return layersByName.get(layerName).minZoom;
+	}
+
+	/**
+	 * @return the property names of a layer and their type ("Number" or "String")
+	 */
+	public Map<String, String> getLayerFields(String layerName) {
+		return Collections.unmodifiableMap(layersByName.get(layerName).fields);
+	}
+
+	/**
+	 * Creates the tiles of all zoom levels between minZoom and maxZoom. Empty tiles are omitted.
+	 *
+	 * @return the gzipped tiles sorted by their PMTiles tile id, see {@link #tileId(int, long, long)}
+	 */
+	public SortedMap<Long, byte[]> createTiles(int minZoom, int maxZoom) {
+		SortedMap<Long, byte[]> tiles = new ConcurrentSkipListMap<>();
+		IntStream.rangeClosed(minZoom, maxZoom).parallel().forEach(z -> createTiles(z, tiles));
+		return tiles;
+	}
+
+	private void createTiles(int z, Map<Long, byte[]> tiles) {
+		long n = 1L << z;
+		Map<Long, TileContent> contents = new HashMap<>();
+
+		for(int l = 0; l < layers.size(); l++) {
+			Layer layer = layers.get(l);
+			if(layer.minZoom > z) {
+				continue;
+			}
+			for(TileFeature feature : layer.features) {
+				if(feature.point) {
+					double u = feature.x[0] * n;
+					double v = feature.y[0] * n;
+					long tx = clamp((long) Math.floor(u), n);
+					long ty = clamp((long) Math.floor(v), n);
+					int[] part = {(int) Math.round((u - tx) * EXTENT), (int) Math.round((v - ty) * EXTENT)};
+					contents.computeIfAbsent(tx * n + ty, k -> new TileContent(layers.size())).add(l, feature, Collections.singletonList(part));
+				} else {
+					for(Map.Entry<Long, LineClip> e : clipLine(feature, n).entrySet()) {
+						List<int[]> parts = e.getValue().getParts();
+						if(!parts.isEmpty()) {
+							contents.computeIfAbsent(e.getKey(), k -> new TileContent(layers.size())).add(l, feature, parts);
+						}
+					}
+				}
+			}
+		}
+
+		contents.entrySet().parallelStream().forEach(e -> {
+			long tx = e.getKey() / n;
+			long ty = e.getKey() % n;
+			tiles.put(tileId(z, tx, ty), gzip(encode(e.getValue())));
+		});
+	}
+
+	/**
+	 * Simplifies the line at zoom level n = 2^z and clips each remaining segment against the
+	 * (buffered) tiles it touches.
+	 *
+	 * @return the clipped parts in tile coordinates per tile (key = x * n + y)
+	 */
+	private static Map<Long, LineClip> clipLine(TileFeature feature, long n) {
+		int[] keep = simplify(feature.x, feature.y, n);
+		double b = (double) BUFFER / EXTENT;
+		Map<Long, LineClip> clips = new HashMap<>();
+
+		for(int s = 0; s < keep.length - 1; s++) {
+			double u0 = feature.x[keep[s]] * n;
+			double v0 = feature.y[keep[s]] * n;
+			double u1 = feature.x[keep[s + 1]] * n;
+			double v1 = feature.y[keep[s + 1]] * n;
+
+			long txMin = clamp((long) Math.floor(Math.min(u0, u1) - b), n);
+			long txMax = clamp((long) Math.floor(Math.max(u0, u1) + b), n);
+			long tyMin = clamp((long) Math.floor(Math.min(v0, v1) - b), n);
+			long tyMax = clamp((long) Math.floor(Math.max(v0, v1) + b), n);
+
+			for(long tx = txMin; tx <= txMax; tx++) {
+				for(long ty = tyMin; ty <= tyMax; ty++) {
+					double[] t = clipSegment(u0, v0, u1, v1, tx - b, ty - b, tx + 1 + b, ty + 1 + b);
+					if(t != null) {
+						int x0 = (int) Math.round((u0 + t[0] * (u1 - u0) - tx) * EXTENT);
+						int y0 = (int) Math.round((v0 + t[0] * (v1 - v0) - ty) * EXTENT);
+						int x1 = (int) Math.round((u0 + t[1] * (u1 - u0) - tx) * EXTENT);
+						int y1 = (int) Math.round((v0 + t[1] * (v1 - v0) - ty) * EXTENT);
+						clips.computeIfAbsent(tx * n + ty, k -> new LineClip()).add(s, t[0] == 0, t[1] == 1, x0, y0, x1, y1);
+					}
+				}
+			}
+		}
+		return clips;
+	}
+
+	/**
+	 * Liang-Barsky clipping of a segment against a box.
+	 *
+	 * @return the start and end parameter of the clipped segment, <tt>null</tt> if the segment is outside the box
+	 */
+	static double[] clipSegment(double x0, double y0, double x1, double y1, double minX, double minY, double maxX, double maxY) {
+		double dx = x1 - x0;
+		double dy = y1 - y0;
+		double[] p = {-dx, dx, -dy, dy};
+		double[] q = {x0 - minX, maxX - x0, y0 - minY, maxY - y0};
+		double t0 = 0;
+		double t1 = 1;
+		for(int i = 0; i < 4; i++) {
+			if(p[i] == 0) {
+				if(q[i] < 0) return null;
+			} else {
+				double r = q[i] / p[i];
+				if(p[i] < 0) {
+					if(r > t1) return null;
+					if(r > t0) t0 = r;
+				} else {
+					if(r < t0) return null;
+					if(r < t1) t1 = r;
+				}
+			}
+		}
+		return new double[]{t0, t1};
+	}
+
+	/**
+	 * Douglas-Peucker simplification with a tolerance of one pixel (1/256 of a tile) at zoom level n = 2^z.
+	 *
+	 * @return the indices of the points to keep
+	 */
+	static int[] simplify(double[] x, double[] y, long n) {
+		int size = x.length;
+		if(size <= 2) {
+			return IntStream.range(0, size).toArray();
+		}
+		double tolerance = 1.0 / (256 * n);
+		double sqTolerance = tolerance * tolerance;
+		boolean[] keep = new boolean[size];
+		keep[0] = true;
+		keep[size - 1] = true;
+
+		Deque<int[]> stack = new ArrayDeque<>();
+		stack.push(new int[]{0, size - 1});
+		while(!stack.isEmpty()) {
+			int[] range = stack.pop();
+			int first = range[0];
+			int last = range[1];
+			double maxSqDist = 0;
+			int index = -1;
+			for(int i = first + 1; i < last; i++) {
+				double d = sqDistPointSegment(x[i], y[i], x[first], y[first], x[last], y[last]);
+				if(d > maxSqDist) {
+					maxSqDist = d;
+					index = i;
+				}
+			}
+			if(maxSqDist > sqTolerance) {
+				keep[index] = true;
+				stack.push(new int[]{first, index});
+				stack.push(new int[]{index, last});
+			}
+		}
+		return IntStream.range(0, size).filter(i -> keep[i]).toArray();
+	}
+
+	private static double sqDistPointSegment(double px, double py, double ax, double ay, double bx, double by) {
+		double dx = bx - ax;
+		double dy = by - ay;
+		if(dx != 0 || dy != 0) {
+			double t = ((px - ax) * dx + (py - ay) * dy) / (dx * dx + dy * dy);
+			if(t > 1) {
+				ax = bx;
+				ay = by;
+			} else if(t > 0) {
+				ax += dx * t;
+				ay += dy * t;
+			}
+		}
+		dx = px - ax;
+		dy = py - ay;
+		return dx * dx + dy * dy;
+	}
+
+	private static long clamp(long t, long n) {
+		return Math.max(0, Math.min(n - 1, t));
+	}
+
+	/**
+	 * @return the PMTiles tile id of a tile, i.e. the number of tiles on lower zoom levels
+	 * plus the position of the tile on the Hilbert curve of its zoom level.
+	 */
+	public static long tileId(int z, long x, long y) {
+		long acc = ((1L << (2 * z)) - 1) / 3;
+		long n = 1L << z;
+		long d = 0;
+		for(long s = n / 2; s > 0; s /= 2) {
+			long rx = (x & s) > 0 ? 1 : 0;
+			long ry = (y & s) > 0 ? 1 : 0;
+			d += s * s * ((3 * rx) ^ ry);
+			// rotate quadrant
+			if(ry == 0) {
+				if(rx == 1) {
+					x = s - 1 - x;
+					y = s - 1 - y;
+				}
+				long t = x;
+				x = y;
+				y = t;
+			}
+		}
+		return acc + d;
+	}
+
+	/**
+	 * Encodes the content of a tile as MVT protobuf message.
+	 */
+	private byte[] encode(TileContent content) {
+		Pbf tile = new Pbf();
+		for(int l = 0; l < layers.size(); l++) {
+			List<TileContent.Entry> entries = content.entries.get(l);
+			if(entries == null) {
+				continue;
+			}
+			Map<String, Integer> keys = new LinkedHashMap<>();
+			Map<Object, Integer> values = new LinkedHashMap<>();
+
+			Pbf layer = new Pbf();
+			layer.writeVarintField(15, 2);
+			layer.writeString(1, layers.get(l).name);
+			for(TileContent.Entry entry : entries) {
+				List<Integer> tags = new ArrayList<>();
+				for(Map.Entry<String, Object> p : entry.feature.properties.entrySet()) {
+					if(p.getValue() != null) {
+						tags.add(keys.computeIfAbsent(p.getKey(), k -> keys.size()));
+						tags.add(values.computeIfAbsent(p.getValue(), k -> values.size()));
+					}
+				}
+				Pbf f = new Pbf();
+				f.writePacked(2, tags.stream().mapToInt(Integer::intValue).toArray());
+				f.writeVarintField(3, entry.feature.point ? 1 : 2);
+				f.writePacked(4, encodeGeometry(entry.parts, entry.feature.point));
+				layer.writeBytes(2, f.toByteArray());
+			}
+			for(String key : keys.keySet()) {
+				layer.writeString(3, key);
+			}
+			for(Object value : values.keySet()) {
+				Pbf v = new Pbf();
+				if(value instanceof Double || value instanceof Float) {
+					v.writeTag(3, 1);
+					v.writeDouble(((Number) value).doubleValue());
+				} else if(value instanceof Number) {
+					v.writeVarintField(6, zigzag(((Number) value).longValue()));
+				} else if(value instanceof Boolean) {
+					v.writeVarintField(7, (Boolean) value ? 1 : 0);
+				} else {
+					v.writeString(1, value.toString());
+				}
+				layer.writeBytes(4, v.toByteArray());
+			}
+			layer.writeVarintField(5, EXTENT);
+			tile.writeBytes(3, layer.toByteArray());
+		}
+		return tile.toByteArray();
+	}
+
+	private static int[] encodeGeometry(List<int[]> parts, boolean point) {
+		int length = 0;
+		for(int[] part : parts) {
+			length += part.length + 2;
+		}
+		int[] geometry = new int[length];
+		int i = 0;
+		int cx = 0;
+		int cy = 0;
+		for(int[] part : parts) {
+			// MoveTo(1)
+			geometry[i++] = command(1, 1);
+			geometry[i++] = (int) zigzag(part[0] - cx);
+			geometry[i++] = (int) zigzag(part[1] - cy);
+			cx = part[0];
+			cy = part[1];
+			if(!point) {
+				geometry[i++] = command(2, part.length / 2 - 1);
+				for(int j = 2; j < part.length; j += 2) {
+					geometry[i++] = (int) zigzag(part[j] - cx);
+					geometry[i++] = (int) zigzag(part[j + 1] - cy);
+					cx = part[j];
+					cy = part[j + 1];
+				}
+			}
+		}
+		return Arrays.copyOf(geometry, i);
+	}
+
+	private static int command(int id, int count) {
+		return (id & 0x7) | (count << 3);
+	}
+
+	private static long zigzag(long v) {
+		return (v << 1) ^ (v >> 63);
+	}
+
+	private static byte[] gzip(byte[] data) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 16);
+		try(GZIPOutputStream gz = new GZIPOutputStream(out)) {
+			gz.write(data);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return out.toByteArray();
+	}
+
+	private static class Layer {
+		private final String name;
+		private final int minZoom;
+		private final List<TileFeature> features = new ArrayList<>();
+		private final Map<String, String> fields = new LinkedHashMap<>();
+
+		private Layer(String name, int minZoom) {
+			this.name = name;
+			this.minZoom = minZoom;
+		}
+	}
+
+	private static class TileFeature {
+		private final double[] x;
+		private final double[] y;
+		private final Map<String, Object> properties;
+		private final boolean point;
+
+		private TileFeature(double[] x, double[] y, Map<String, Object> properties, boolean point) {
+			this.x = x;
+			this.y = y;
+			this.properties = properties;
+			this.point = point;
+		}
+	}
+
+	/**
+	 * Features of one tile per layer.
+	 */
+	private static class TileContent {
+		private final List<List<Entry>> entries;
+
+		private TileContent(int numLayers) {
+			entries = new ArrayList<>(Collections.nCopies(numLayers, null));
+		}
+
+		private void add(int layer, TileFeature feature, List<int[]> parts) {
+			if(entries.get(layer) == null) {
+				entries.set(layer, new ArrayList<>());
+			}
+			entries.get(layer).add(new Entry(feature, parts));
+		}
+
+		private static class Entry {
+			private final TileFeature feature;
+			private final List<int[]> parts;
+
+			private Entry(TileFeature feature, List<int[]> parts) {
+				this.feature = feature;
+				this.parts = parts;
+			}
+		}
+	}
+
+	/**
+	 * Joins the clipped segments of a line within one tile to parts. A clipped segment
+	 * continues the current part if it directly follows the previous segment and neither
+	 * of them has been cut at their common point.
+	 */
+	private static class LineClip {
+		private final List<int[]> parts = new ArrayList<>();
+		private int[] current = new int[8];
+		private int size = 0;
+		private int lastSegment = -2;
+		private boolean lastEndKept = false;
+
+		private void add(int segment, boolean startKept, boolean endKept, int x0, int y0, int x1, int y1) {
+			if(segment != lastSegment + 1 || !lastEndKept || !startKept) {
+				finishPart();
+				append(x0, y0);
+			}
+			append(x1, y1);
+			lastSegment = segment;
+			lastEndKept = endKept;
+		}
+
+		private void append(int x, int y) {
+			// skip points that collapse onto the previous point
+			if(size > 0 && current[size - 2] == x && current[size - 1] == y) {
+				return;
+			}
+			if(size == current.length) {
+				current = Arrays.copyOf(current, size * 2);
+			}
+			current[size++] = x;
+			current[size++] = y;
+		}
+
+		private void finishPart() {
+			if(size >= 4) {
+				parts.add(Arrays.copyOf(current, size));
+			}
+			size = 0;
+		}
+
+		private List<int[]> getParts() {
+			finishPart();
+			return parts;
+		}
+	}
+
+	/**
+	 * Minimal protobuf writer for the MVT messages.
+	 */
+	private static class Pbf extends ByteArrayOutputStream {
+
+		private void writeVarint(long v) {
+			while((v & ~0x7FL) != 0) {
+				write((int) ((v & 0x7F) | 0x80));
+				v >>>= 7;
+			}
+			write((int) v);
+		}
+
+		private void writeTag(int field, int wireType) {
+			writeVarint(((long) field << 3) | wireType);
+		}
+
+		private void writeVarintField(int field, long v) {
+			writeTag(field, 0);
+			writeVarint(v);
+		}
+
+		private void writeDouble(double d) {
+			long bits = Double.doubleToLongBits(d);
+			for(int i = 0; i < 8; i++) {
+				write((int) (bits >>> (8 * i)) & 0xFF);
+			}
+		}
+
+		private void writeBytes(int field, byte[] bytes) {
+			writeTag(field, 2);
+			writeVarint(bytes.length);
+			write(bytes, 0, bytes.length);
+		}
+
+		private void writeString(int field, String s) {
+			writeBytes(field, s.getBytes(StandardCharsets.UTF_8));
+		}
+
+		private void writePacked(int field, int[] values) {
+			Pbf packed = new Pbf();
+			for(int v : values) {
+				packed.writeVarint(v & 0xFFFFFFFFL);
+			}
+			writeBytes(field, packed.toByteArray());
+		}
+	}
+}
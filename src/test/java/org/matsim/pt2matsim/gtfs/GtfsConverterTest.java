@@ -6,10 +6,12 @@ import org.junit.Test;
 import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.core.utils.geometry.transformations.TransformationFactory;
+import org.matsim.pt2matsim.gtfs.lib.*;
 import org.matsim.pt.transitSchedule.api.*;
 import org.matsim.pt.utils.TransitScheduleValidator;
 import org.matsim.pt2matsim.tools.ScheduleTools;
 import org.matsim.pt2matsim.tools.ScheduleToolsTest;
+import org.matsim.pt2matsim.tools.debug.ScheduleCleaner;
 
 import java.util.*;
 
@@ -143,6 +145,42 @@ public class GtfsConverterTest {
 		Assert.assertEquals(2, line.getRoutes().size());
 	}
 
+	@Test
+	public void groupTripsWithIdenticalStopSequences() {
+		// evening trip with the same stop sequence and offsets as routeA1
+		Route gtfsRoute = gtfsFeed.getRoutes().get("lineA");
+		Trip trip = gtfsRoute.getTrips().get("routeA1");
+		TripImpl eveningTrip = new TripImpl("routeA1_evening", gtfsRoute, trip.getService(), trip.getShape());
+		for(StopTime stopTime : trip.getStopTimes()) {
+			eveningTrip.addStopTime(new StopTimeImpl(stopTime.getSequencePosition(), stopTime.getArrivalTime() + 72000, stopTime.getDepartureTime() + 72000, stopTime.getStop(), eveningTrip));
+		}
+		((RouteImpl) gtfsRoute).addTrip(eveningTrip);
+
+		TransitSchedule schedule = gtfsConverter.convert(GtfsConverter.ALL_SERVICE_IDS, coordSystem);
+
+		// create a route per trip and combine them afterwards
+		TransitSchedule expected = ScheduleTools.createSchedule();
+		for(Route route : gtfsFeed.getRoutes().values()) {
+			TransitLine transitLine = expected.getFactory().createTransitLine(Id.create(route.getId(), TransitLine.class));
+			expected.addTransitLine(transitLine);
+			for(Trip t : route.getTrips().values()) {
+				transitLine.addRoute(gtfsConverter.createTransitRoute(t, gtfsConverter.createTransitRouteStops(t, schedule.getFacilities())));
+			}
+		}
+		ScheduleCleaner.combineIdenticalTransitRoutes(expected);
+
+		TransitLine lineA = schedule.getTransitLines().get(Id.create("lineA", TransitLine.class));
+		Assert.assertEquals(4, lineA.getRoutes().size());
+		Assert.assertFalse(lineA.getRoutes().containsKey(Id.create("routeA1_evening", TransitRoute.class)));
+		for(TransitLine expectedLine : expected.getTransitLines().values()) {
+			TransitLine transitLine = schedule.getTransitLines().get(expectedLine.getId());
+			Assert.assertEquals(expectedLine.getRoutes().keySet(), transitLine.getRoutes().keySet());
+			for(TransitRoute expectedRoute : expectedLine.getRoutes().values()) {
+				Assert.assertEquals(expectedRoute.getDepartures().keySet(), transitLine.getRoutes().get(expectedRoute.getId()).getDepartures().keySet());
+			}
+		}
+	}
+
 	@Test
 	public void testTransfers() {
 		Set<String> expectedTransferTimes = new TreeSet<>();
@@ -7,6 +7,8 @@ import org.matsim.api.core.v01.Id;
 import org.matsim.core.utils.geometry.CoordinateTransformation;
 import org.matsim.core.utils.geometry.transformations.TransformationFactory;
 import org.matsim.pt.transitSchedule.api.*;
+import org.matsim.pt2matsim.hafas.lib.BitfeldAnalyzer;
+import org.matsim.pt2matsim.hafas.lib.BitfeldTable;
 import org.matsim.pt2matsim.tools.ScheduleTools;
 import org.matsim.vehicles.VehicleUtils;
 import org.matsim.vehicles.Vehicles;
@@ -75,4 +77,30 @@ public class HafasConverterTest {
 		Assert.assertEquals(3, schedule.getFacilities().size());
 	}
 
+	@Test
+	public void multipleDays() throws IOException {
+		String hafasFolder = "test/BrienzRothornBahn-HAFAS/";
+		// bitfeld 003499 is valid on the first two days
+		BitfeldTable bitfeldTable = BitfeldTable.read(hafasFolder + "BITFELD");
+		Assert.assertTrue(bitfeldTable.isValid(3499, 0));
+		Assert.assertTrue(bitfeldTable.isValid(3499, 1));
+		Assert.assertFalse(bitfeldTable.isValid(3499, 2));
+		Assert.assertFalse(BitfeldAnalyzer.getBitfieldsAtValidDay(2, hafasFolder).contains(3499));
+
+		TransitSchedule multiDaySchedule = ScheduleTools.createSchedule();
+		Vehicles multiDayVehicles = VehicleUtils.createVehiclesContainer();
+		HafasConverter.run(hafasFolder, multiDaySchedule, null, multiDayVehicles, new int[]{0, 1, 2});
+
+		int nDepartures = 0;
+		for(TransitLine tl : multiDaySchedule.getTransitLines().values()) {
+			for(TransitRoute tr : tl.getRoutes().values()) {
+				for(Departure departure : tr.getDepartures().values()) {
+					Assert.assertEquals("0,1", departure.getAttributes().getAttribute(HafasConverter.DEPARTURE_ATTRIBUTE_VALID_DAYS));
+					nDepartures++;
+				}
+			}
+		}
+		Assert.assertEquals(2, nDepartures);
+	}
+
 }
\ No newline at end of file
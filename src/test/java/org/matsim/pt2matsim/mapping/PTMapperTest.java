@@ -1,12 +1,22 @@
 package org.matsim.pt2matsim.mapping;
 
+import static org.matsim.pt2matsim.tools.ScheduleToolsTest.LINE_A;
+import static org.matsim.pt2matsim.tools.ScheduleToolsTest.LINE_B;
+import static org.matsim.pt2matsim.tools.ScheduleToolsTest.ROUTE_A1;
+import static org.matsim.pt2matsim.tools.ScheduleToolsTest.ROUTE_A2;
 import static org.matsim.pt2matsim.tools.ScheduleToolsTest.ROUTE_B;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
@@ -15,12 +25,14 @@ import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.pt.transitSchedule.api.TransitLine;
 import org.matsim.pt.transitSchedule.api.TransitRoute;
+import org.matsim.pt.transitSchedule.api.TransitRouteStop;
 import org.matsim.pt.transitSchedule.api.TransitSchedule;
 import org.matsim.pt.transitSchedule.api.TransitScheduleWriter;
 import org.matsim.pt.transitSchedule.api.TransitStopFacility;
 import org.matsim.pt.utils.TransitScheduleValidator;
 import org.matsim.pt2matsim.config.PublicTransitMappingConfigGroup;
 import org.matsim.pt2matsim.config.PublicTransitMappingStrings;
+import org.matsim.pt2matsim.mapping.networkRouter.MeasuredScheduleRouters;
 import org.matsim.pt2matsim.run.CreateDefaultPTMapperConfig;
 import org.matsim.pt2matsim.tools.NetworkToolsTest;
 import org.matsim.pt2matsim.tools.ScheduleTools;
@@ -31,6 +43,9 @@ import org.matsim.pt2matsim.tools.ScheduleToolsTest;
  */
 public class PTMapperTest {
 
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
 	public Network network;
 	public TransitSchedule schedule;
 	public PublicTransitMappingConfigGroup ptmConfig;
@@ -98,6 +113,171 @@ public class PTMapperTest {
 		}
 	}
 
+	@Test
+	public void incrementalMapping() {
+		Config config = ConfigUtils.createConfig();
+		PublicTransitMappingConfigGroup ptmConfig2 = initPTMConfig();
+		PTMapper.matchInfo(config, ptmConfig2);
+
+		// all routes are unchanged, their link sequences are kept
+		TransitSchedule schedule2 = ScheduleToolsTest.initUnmappedSchedule();
+		new PTMapper(schedule2, network, null, schedule).run(ptmConfig2, config);
+
+		Assert.assertTrue(TransitScheduleValidator.validateAll(schedule2, network).isValid());
+		for(TransitLine l : schedule.getTransitLines().values()) {
+			for(TransitRoute r : l.getRoutes().values()) {
+				TransitRoute r2 = schedule2.getTransitLines().get(l.getId()).getRoutes().get(r.getId());
+				Assert.assertEquals(ScheduleTools.getTransitRouteLinkIds(r), ScheduleTools.getTransitRouteLinkIds(r2));
+				Assert.assertEquals(r.getStops().get(0).getStopFacility().getId(), r2.getStops().get(0).getStopFacility().getId());
+			}
+		}
+	}
+
+	@Test
+	public void incrementalMappingStopMoved() {
+		TransitSchedule schedule2 = ScheduleToolsTest.initUnmappedSchedule();
+		TransitRoute routeB = schedule2.getTransitLines().get(LINE_B).getRoutes().get(ROUTE_B);
+		TransitStopFacility stop5 = routeB.getStops().get(2).getStopFacility();
+		Coord movedCoord = new Coord(stop5.getCoord().getX() + 1.0, stop5.getCoord().getY());
+		stop5.setCoord(movedCoord);
+		Assert.assertFalse(IncrementalMapping.isUnchanged(routeB, getRoute(schedule, LINE_B, ROUTE_B), network));
+
+		runIncrementalMapping(schedule2, network);
+
+		// stop 5 is only served by route B, which is mapped again
+		Assert.assertEquals(movedCoord, getRoute(schedule2, LINE_B, ROUTE_B).getStops().get(2).getStopFacility().getCoord());
+		assertPreviousMapping(schedule2, LINE_A, ROUTE_A1);
+		assertPreviousMapping(schedule2, LINE_A, ROUTE_A2);
+	}
+
+	@Test
+	public void incrementalMappingStopSequenceChanged() {
+		TransitSchedule schedule2 = ScheduleToolsTest.initUnmappedSchedule();
+		TransitLine lineA = schedule2.getTransitLines().get(LINE_A);
+		TransitRoute routeA2 = lineA.getRoutes().get(ROUTE_A2);
+		List<TransitRouteStop> stops = new ArrayList<>(routeA2.getStops());
+		stops.remove(2);
+		TransitRoute changedRouteA2 = schedule2.getFactory().createTransitRoute(ROUTE_A2, null, stops, routeA2.getTransportMode());
+		routeA2.getDepartures().values().forEach(changedRouteA2::addDeparture);
+		lineA.removeRoute(routeA2);
+		lineA.addRoute(changedRouteA2);
+		Assert.assertFalse(IncrementalMapping.isUnchanged(changedRouteA2, getRoute(schedule, LINE_A, ROUTE_A2), network));
+
+		runIncrementalMapping(schedule2, network);
+
+		TransitRoute mappedRouteA2 = getRoute(schedule2, LINE_A, ROUTE_A2);
+		Assert.assertEquals(3, mappedRouteA2.getStops().size());
+		Assert.assertNotNull(mappedRouteA2.getRoute());
+		assertPreviousMapping(schedule2, LINE_A, ROUTE_A1);
+		assertPreviousMapping(schedule2, LINE_B, ROUTE_B);
+	}
+
+	@Test
+	public void incrementalMappingLinkRemoved() {
+		// remove a link only used by route B
+		List<Id<Link>> linkIdsB = new ArrayList<>(ScheduleTools.getTransitRouteLinkIds(getRoute(schedule, LINE_B, ROUTE_B)));
+		linkIdsB.removeAll(ScheduleTools.getTransitRouteLinkIds(getRoute(schedule, LINE_A, ROUTE_A1)));
+		linkIdsB.removeAll(ScheduleTools.getTransitRouteLinkIds(getRoute(schedule, LINE_A, ROUTE_A2)));
+		Id<Link> removedLinkId = linkIdsB.get(0);
+
+		TransitSchedule schedule2 = ScheduleToolsTest.initUnmappedSchedule();
+		TransitRoute routeB = getRoute(schedule2, LINE_B, ROUTE_B);
+		Assert.assertTrue(IncrementalMapping.isUnchanged(routeB, getRoute(schedule, LINE_B, ROUTE_B), network));
+		network.removeLink(removedLinkId);
+		Assert.assertFalse(IncrementalMapping.isUnchanged(routeB, getRoute(schedule, LINE_B, ROUTE_B), network));
+
+		runIncrementalMapping(schedule2, network);
+
+		Assert.assertFalse(ScheduleTools.getTransitRouteLinkIds(getRoute(schedule2, LINE_B, ROUTE_B)).contains(removedLinkId));
+		assertPreviousMapping(schedule2, LINE_A, ROUTE_A1);
+		assertPreviousMapping(schedule2, LINE_A, ROUTE_A2);
+	}
+
+	private void runIncrementalMapping(TransitSchedule schedule2, Network network2) {
+		Config config = ConfigUtils.createConfig();
+		PublicTransitMappingConfigGroup ptmConfig2 = initPTMConfig();
+		PTMapper.matchInfo(config, ptmConfig2);
+		new PTMapper(schedule2, network2, null, schedule).run(ptmConfig2, config);
+		Assert.assertTrue(TransitScheduleValidator.validateAll(schedule2, network2).isValid());
+	}
+
+	/**
+	 * Asserts that the route keeps the link sequence and child stop facilities of the previous mapping
+	 */
+	private void assertPreviousMapping(TransitSchedule schedule2, Id<TransitLine> lineId, Id<TransitRoute> routeId) {
+		TransitRoute previousRoute = getRoute(schedule, lineId, routeId);
+		TransitRoute route = getRoute(schedule2, lineId, routeId);
+		Assert.assertEquals(ScheduleTools.getTransitRouteLinkIds(previousRoute), ScheduleTools.getTransitRouteLinkIds(route));
+		Assert.assertEquals(
+				previousRoute.getStops().stream().map(s -> s.getStopFacility().getId()).collect(Collectors.toList()),
+				route.getStops().stream().map(s -> s.getStopFacility().getId()).collect(Collectors.toList()));
+	}
+
+	private static TransitRoute getRoute(TransitSchedule schedule, Id<TransitLine> lineId, Id<TransitRoute> routeId) {
+		return schedule.getTransitLines().get(lineId).getRoutes().get(routeId);
+	}
+
+	@Test
+	public void partitionedMapping() {
+		Config config = ConfigUtils.createConfig();
+		PublicTransitMappingConfigGroup ptmConfig2 = initPTMConfig();
+		ptmConfig2.setPartitionTileSize(1);
+		ptmConfig2.setPartitionBuffer(1000);
+
+		TransitSchedule schedule2 = ScheduleToolsTest.initUnmappedSchedule();
+		Network network2 = NetworkToolsTest.initNetwork();
+		PartitionedPTMapper partitionedMapper = new PartitionedPTMapper(schedule2, network2, ptmConfig2.getPartitionTileSize(), ptmConfig2.getPartitionBuffer());
+		partitionedMapper.setMeasureRouterCalls(true);
+		partitionedMapper.run(ptmConfig2, config);
+
+		// the metrics of the partitions are merged
+		MappingMetrics metrics = partitionedMapper.getMetrics();
+		Assert.assertTrue(metrics.getCounts().get("partitions") > 1);
+		Assert.assertTrue(metrics.getPhases().stream().anyMatch(p -> p.getName().equals("pseudoRouting") && !p.getThreadTimings().isEmpty()));
+		Assert.assertTrue(metrics.getCalls().get(MeasuredScheduleRouters.CALC_PATH).getCount() > 0);
+		Assert.assertTrue(TransitScheduleValidator.validateAll(schedule2, network2).isValid());
+		// the network cuts contain the whole network, the result is the same as mapping at once
+		Assert.assertEquals(network.getLinks().keySet(), network2.getLinks().keySet());
+		for(TransitLine l : schedule.getTransitLines().values()) {
+			for(TransitRoute r : l.getRoutes().values()) {
+				TransitRoute r2 = schedule2.getTransitLines().get(l.getId()).getRoutes().get(r.getId());
+				Assert.assertEquals(ScheduleTools.getTransitRouteLinkIds(r), ScheduleTools.getTransitRouteLinkIds(r2));
+			}
+		}
+	}
+
+	@Test
+	public void metrics() {
+		PublicTransitMappingConfigGroup ptmConfig2 = initPTMConfig();
+		Config config = ConfigUtils.createConfig();
+		PTMapper.matchInfo(config, ptmConfig2);
+		String metricsFile = temporaryFolder.getRoot() + "/metricsTest.json";
+		ptmConfig2.setOutputMetricsFile(metricsFile);
+
+		List<String> finishedPhases = new ArrayList<>();
+		PTMapper ptMapper = new PTMapper(ScheduleToolsTest.initUnmappedSchedule(), NetworkToolsTest.initNetwork(), null);
+		ptMapper.addMetricsListener(new MappingMetricsListener() {
+			@Override
+			public void phaseFinished(MappingMetrics.Phase phase) {
+				finishedPhases.add(phase.getName());
+			}
+		});
+		ptMapper.run(ptmConfig2, config);
+
+		MappingMetrics metrics = ptMapper.getMetrics();
+		Assert.assertEquals(finishedPhases, metrics.getPhases().stream().map(MappingMetrics.Phase::getName).collect(Collectors.toList()));
+		Assert.assertTrue(finishedPhases.contains("pseudoRouting"));
+		Assert.assertEquals(2, metrics.getPhases().get(finishedPhases.indexOf("pseudoRouting")).getThreadTimings().size());
+		Assert.assertTrue(metrics.getCalls().get(MeasuredScheduleRouters.CALC_PATH).getCount() > 0);
+		Assert.assertTrue(metrics.getCounts().containsKey("artificialLinks"));
+		Assert.assertTrue(new File(metricsFile).exists());
+
+		// router calls are only measured if requested
+		PTMapper unmeasured = new PTMapper(ScheduleToolsTest.initUnmappedSchedule(), NetworkToolsTest.initNetwork(), null);
+		unmeasured.run(initPTMConfig(), config);
+		Assert.assertFalse(unmeasured.getMetrics().getCalls().containsKey(MeasuredScheduleRouters.CALC_PATH));
+	}
+
 	@Test
 	public void artificialLinks() {
 		PublicTransitMappingConfigGroup ptmConfig2 = initPTMConfig();
@@ -0,0 +1,202 @@
+package org.matsim.pt2matsim.mapping.networkRouter;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.algorithms.NetworkExpandNode.TurnInfo;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.pt2matsim.tools.NetworkToolsTest;
+
+import java.util.*;
+
+/**
+ * Compares the turn graph router with a plain Dijkstra on the links of the test network
+ */
+public class TurnGraphRouterTest {
+
+	private static final Set<String> FORBIDDEN_TURNS = new HashSet<>(Arrays.asList("AX-XB", "DA-AB", "CX-XA", "ED-DC", "HZ-ZI"));
+
+	private Network network;
+	private Map<Id<Link>, List<TurnInfo>> turnInfos;
+	private TurnGraph turnGraph;
+	private long carMask;
+
+	@Before
+	public void prepare() {
+		network = NetworkToolsTest.initNetwork();
+		network.getLinks().get(Id.createLinkId("XC")).setAllowedModes(Collections.singleton("bus"));
+
+		// all turns at the to node except the forbidden ones
+		turnInfos = new HashMap<>();
+		for(Link link : network.getLinks().values()) {
+			List<TurnInfo> turns = new ArrayList<>();
+			for(Link outLink : link.getToNode().getOutLinks().values()) {
+				if(!FORBIDDEN_TURNS.contains(link.getId() + "-" + outLink.getId())) {
+					turns.add(new TurnInfo(link.getId(), outLink.getId()));
+				}
+			}
+			turnInfos.put(link.getId(), turns);
+		}
+		turnGraph = TurnGraph.create(network, turnInfos, Link::getLength);
+		carMask = turnGraph.getModeMask(Collections.singleton("car"));
+	}
+
+	@Test
+	public void modeViews() {
+		Assert.assertEquals(network.getLinks().size(), turnGraph.getNumberOfLinks());
+		Assert.assertEquals(0, turnGraph.getModeMask(Collections.singleton("rail")));
+		long busMask = turnGraph.getModeMask(Collections.singleton("bus"));
+		int xc = turnGraph.getIndex(Id.createLinkId("XC"));
+		int ab = turnGraph.getIndex(Id.createLinkId("AB"));
+		Assert.assertTrue(turnGraph.isInView(xc, busMask));
+		Assert.assertFalse(turnGraph.isInView(xc, carMask));
+		Assert.assertTrue(turnGraph.isInView(ab, carMask));
+		Assert.assertFalse(turnGraph.isInView(ab, busMask));
+		Assert.assertTrue(turnGraph.isInView(xc, turnGraph.getModeMask(Arrays.asList("car", "bus"))));
+		// modes ignore case
+		Assert.assertEquals(busMask, turnGraph.getModeMask(Collections.singleton("Bus")));
+	}
+
+	@Test
+	public void forbiddenTurnIsAvoided() {
+		Map<Id<Link>, List<TurnInfo>> allTurns = new HashMap<>();
+		for(Link link : network.getLinks().values()) {
+			List<TurnInfo> turns = new ArrayList<>();
+			link.getToNode().getOutLinks().values().forEach(outLink -> turns.add(new TurnInfo(link.getId(), outLink.getId())));
+			allTurns.put(link.getId(), turns);
+		}
+		TurnGraph unrestricted = TurnGraph.create(network, allTurns, Link::getLength);
+		LeastCostPathCalculator.Path path = new TurnGraphRouter(unrestricted).calcLeastCostPath(link("AX"), link("BI"), carMask);
+		Assert.assertEquals(Arrays.asList(link("XB"), link("BI")), path.links);
+
+		// AX-XB is forbidden and XC is not in the view, the path turns back on XA
+		path = new TurnGraphRouter(turnGraph).calcLeastCostPath(link("AX"), link("BI"), carMask);
+		Assert.assertEquals(Arrays.asList(link("XA"), link("AB"), link("BI")), path.links);
+	}
+
+	@Test
+	public void linkToLinkEqualsDijkstra() {
+		TurnGraphRouter router = new TurnGraphRouter(turnGraph);
+		for(Link fromLink : network.getLinks().values()) {
+			for(Link toLink : network.getLinks().values()) {
+				LeastCostPathCalculator.Path path = router.calcLeastCostPath(fromLink, toLink, carMask);
+				if(!isCar(fromLink) || !isCar(toLink)) {
+					Assert.assertNull(path);
+					continue;
+				}
+				if(fromLink == toLink) {
+					Assert.assertTrue(path.links.isEmpty());
+					continue;
+				}
+				double expected = dijkstra(Collections.singletonMap(fromLink, 0.0), Collections.singleton(toLink));
+				assertPath(expected, path, fromLink.getToNode());
+				if(path != null) {
+					Assert.assertEquals(toLink, path.links.get(path.links.size() - 1));
+					assertTurnsAllowed(fromLink, path.links);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void nodeToNodeEqualsDijkstra() {
+		TurnGraphRouter router = new TurnGraphRouter(turnGraph);
+		for(Node fromNode : network.getNodes().values()) {
+			for(Node toNode : network.getNodes().values()) {
+				LeastCostPathCalculator.Path path = router.calcLeastCostPath(fromNode, toNode, carMask);
+				if(fromNode == toNode) {
+					Assert.assertTrue(path.links.isEmpty());
+					continue;
+				}
+				Map<Link, Double> start = new HashMap<>();
+				for(Link outLink : fromNode.getOutLinks().values()) {
+					if(isCar(outLink)) {
+						start.put(outLink, outLink.getLength());
+					}
+				}
+				Set<Link> targets = new HashSet<>();
+				for(Link inLink : toNode.getInLinks().values()) {
+					targets.add(inLink);
+				}
+				double expected = dijkstra(start, targets);
+				assertPath(expected, path, fromNode);
+				if(path != null) {
+					Assert.assertEquals(toNode, path.nodes.get(path.nodes.size() - 1));
+					assertTurnsAllowed(null, path.links);
+				}
+			}
+		}
+	}
+
+	private void assertPath(double expectedCost, LeastCostPathCalculator.Path path, Node startNode) {
+		if(Double.isInfinite(expectedCost)) {
+			Assert.assertNull(path);
+			return;
+		}
+		Assert.assertNotNull(path);
+		Assert.assertEquals(expectedCost, path.travelCost, 1e-9);
+		double sum = 0;
+		for(Link link : path.links) {
+			Assert.assertTrue(isCar(link));
+			sum += link.getLength();
+		}
+		Assert.assertEquals(expectedCost, sum, 1e-9);
+		Assert.assertEquals(startNode, path.nodes.get(0));
+		Assert.assertEquals(path.links.size() + 1, path.nodes.size());
+	}
+
+	private void assertTurnsAllowed(Link fromLink, List<Link> links) {
+		Link prev = fromLink;
+		for(Link link : links) {
+			if(prev != null) {
+				Assert.assertEquals(prev.getToNode(), link.getFromNode());
+				Assert.assertFalse(FORBIDDEN_TURNS.contains(prev.getId() + "-" + link.getId()));
+			}
+			prev = link;
+		}
+	}
+
+	/**
+	 * Plain Dijkstra on links with allowed turns
+	 *
+	 * @return the least cost to reach one of the target links, infinity if none can be reached
+	 */
+	private double dijkstra(Map<Link, Double> start, Set<Link> targets) {
+		Map<Link, Double> costs = new HashMap<>(start);
+		Set<Link> settled = new HashSet<>();
+		while(true) {
+			Link current = null;
+			for(Map.Entry<Link, Double> e : costs.entrySet()) {
+				if(!settled.contains(e.getKey()) && (current == null || e.getValue() < costs.get(current))) {
+					current = e.getKey();
+				}
+			}
+			if(current == null) {
+				return Double.POSITIVE_INFINITY;
+			}
+			if(targets.contains(current)) {
+				return costs.get(current);
+			}
+			settled.add(current);
+			for(TurnInfo turn : turnInfos.get(current.getId())) {
+				Link next = network.getLinks().get(turn.getToLinkId());
+				double cost = costs.get(current) + next.getLength();
+				if(isCar(next) && cost < costs.getOrDefault(next, Double.POSITIVE_INFINITY)) {
+					costs.put(next, cost);
+				}
+			}
+		}
+	}
+
+	private static boolean isCar(Link link) {
+		return link.getAllowedModes().contains("car");
+	}
+
+	private Link link(String id) {
+		return network.getLinks().get(Id.createLinkId(id));
+	}
+}
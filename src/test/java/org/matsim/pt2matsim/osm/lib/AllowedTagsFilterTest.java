@@ -102,4 +102,14 @@ public class AllowedTagsFilterTest {
 		Assert.assertFalse(merged123.matches(way22));
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void addAfterMatching() {
+		Assert.assertFalse(filter2.matches(way11));
+		filter2.add(Osm.ElementType.WAY, "key", "value1");
+		Assert.assertTrue(filter2.matches(way11));
+
+		filter3.addException(Osm.ElementType.WAY, "otherKey", null);
+		Assert.assertFalse(filter3.matches(way11));
+	}
+
+}
@@ -51,6 +51,18 @@ public class PlausibilityCheckTest {
 		Assert.equals(0, warnings.get(PlausibilityWarning.Type.TravelTimeWarning).size());
 	}
 
+	@Test
+	public void parallelCheck() {
+		PlausibilityCheck parallelCheck = new PlausibilityCheck(ScheduleToolsTest.initSchedule(), NetworkToolsTest.initNetwork(), null);
+		parallelCheck.setDirectionChangeThreshold("bus", Math.PI * 95 / 180);
+		parallelCheck.setTtRange(0);
+		parallelCheck.runCheck(4);
+
+		for(PlausibilityWarning.Type type : PlausibilityWarning.Type.values()) {
+			Assert.equals(check.getWarnings().get(type), parallelCheck.getWarnings().get(type));
+		}
+	}
+
 	@Test
 	public void writeGeojson() {
 		check.writeResultsGeojson(testDir + "plausibility.geojson");
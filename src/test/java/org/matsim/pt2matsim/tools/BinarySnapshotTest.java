@@ -0,0 +1,73 @@
+package org.matsim.pt2matsim.tools;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.pt.transitSchedule.api.*;
+
+public class BinarySnapshotTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void writeAndRead() {
+		String file = temporaryFolder.getRoot() + "/snapshotTest" + BinarySnapshot.FILE_EXTENSION;
+
+		Network network = NetworkToolsTest.initNetwork();
+		TransitSchedule schedule = ScheduleToolsTest.initSchedule();
+		network.getLinks().values().iterator().next().getAttributes().putAttribute("osm:way:id", 42L);
+		network.getAttributes().putAttribute("coordinateReferenceSystem", "EPSG:2056");
+		schedule.getAttributes().putAttribute("coordinateReferenceSystem", "EPSG:2056");
+
+		BinarySnapshot.write(file, network, schedule);
+		Assert.assertTrue(BinarySnapshot.isSnapshot(file));
+
+		Network network2 = NetworkTools.readNetwork(file);
+		Assert.assertEquals("EPSG:2056", network2.getAttributes().getAttribute("coordinateReferenceSystem"));
+		Assert.assertEquals(network.getNodes().size(), network2.getNodes().size());
+		Assert.assertEquals(network.getLinks().size(), network2.getLinks().size());
+		for(Link link : network.getLinks().values()) {
+			Link link2 = network2.getLinks().get(link.getId());
+			Assert.assertEquals(link.getFromNode().getId(), link2.getFromNode().getId());
+			Assert.assertEquals(link.getToNode().getCoord(), link2.getToNode().getCoord());
+			Assert.assertEquals(link.getLength(), link2.getLength(), 0);
+			Assert.assertEquals(link.getFreespeed(), link2.getFreespeed(), 0);
+			Assert.assertEquals(link.getAllowedModes(), link2.getAllowedModes());
+			Assert.assertEquals(link.getAttributes().getAsMap(), link2.getAttributes().getAsMap());
+		}
+
+		TransitSchedule schedule2 = ScheduleTools.readTransitSchedule(file);
+		Assert.assertEquals("EPSG:2056", schedule2.getAttributes().getAttribute("coordinateReferenceSystem"));
+		Assert.assertEquals(schedule.getFacilities().keySet(), schedule2.getFacilities().keySet());
+		for(TransitLine transitLine : schedule.getTransitLines().values()) {
+			for(TransitRoute transitRoute : transitLine.getRoutes().values()) {
+				TransitRoute transitRoute2 = schedule2.getTransitLines().get(transitLine.getId()).getRoutes().get(transitRoute.getId());
+				Assert.assertEquals(transitRoute.getTransportMode(), transitRoute2.getTransportMode());
+				Assert.assertEquals(ScheduleTools.getTransitRouteLinkIds(transitRoute), ScheduleTools.getTransitRouteLinkIds(transitRoute2));
+				Assert.assertEquals(transitRoute.getStops().size(), transitRoute2.getStops().size());
+				for(int i = 0; i < transitRoute.getStops().size(); i++) {
+					TransitRouteStop stop = transitRoute.getStops().get(i);
+					TransitRouteStop stop2 = transitRoute2.getStops().get(i);
+					Assert.assertEquals(stop.getStopFacility().getId(), stop2.getStopFacility().getId());
+					Assert.assertEquals(stop.getArrivalOffset(), stop2.getArrivalOffset());
+					Assert.assertEquals(stop.getDepartureOffset(), stop2.getDepartureOffset());
+				}
+				Assert.assertEquals(transitRoute.getDepartures().keySet(), transitRoute2.getDepartures().keySet());
+			}
+		}
+
+		// routes read from a snapshot can be modified
+		ScheduleTools.addLoopLinkAtRouteStart(schedule2, network2);
+		for(TransitLine transitLine : schedule2.getTransitLines().values()) {
+			for(TransitRoute transitRoute2 : transitLine.getRoutes().values()) {
+				Link startLink = network2.getLinks().get(transitRoute2.getRoute().getStartLinkId());
+				Assert.assertEquals(startLink.getFromNode(), startLink.getToNode());
+			}
+		}
+	}
+
+}
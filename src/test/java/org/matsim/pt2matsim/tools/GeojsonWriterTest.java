@@ -0,0 +1,47 @@
+package org.matsim.pt2matsim.tools;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.geojson.Feature;
+import org.geojson.FeatureCollection;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.api.core.v01.Coord;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class GeojsonWriterTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void writeFeatures() throws IOException {
+		String file = temporaryFolder.getRoot() + "/features.geojson";
+
+		List<Integer> items = new ArrayList<>();
+		for(int i = 0; i < 25000; i++) {
+			items.add(i);
+		}
+
+		try(GeojsonWriter writer = new GeojsonWriter(file)) {
+			writer.add(GeojsonTools.createPointFeature(new Coord(-1, -1)));
+			writer.addAllParallel(items, i -> {
+				Feature f = GeojsonTools.createPointFeature(new Coord(i, i));
+				f.setProperty("id", i);
+				return f;
+			});
+			writer.addAll(items, i -> i % 2 == 0 ? GeojsonTools.createPointFeature(new Coord(i, 0)) : null);
+		}
+
+		FeatureCollection features = new ObjectMapper().readValue(new File(file), FeatureCollection.class);
+		Assert.assertEquals(1 + 25000 + 12500, features.getFeatures().size());
+		for(int i = 0; i < 25000; i++) {
+			Assert.assertEquals(Integer.valueOf(i), features.getFeatures().get(i + 1).getProperty("id"));
+		}
+	}
+}
@@ -11,6 +11,7 @@ import org.matsim.api.core.v01.network.NetworkFactory;
 import org.matsim.api.core.v01.network.Node;
 import org.matsim.core.network.NetworkUtils;
 import org.matsim.core.utils.geometry.CoordUtils;
+import org.matsim.pt2matsim.tools.lib.ModeFilteredNetworkView;
 
 import java.util.*;
 
@@ -262,6 +263,56 @@ public class NetworkToolsTest {
 
 	}
 
+	@Test
+	public void integrateNetworks() {
+		Network busNetwork = initNetwork();
+		busNetwork.getLinks().values().forEach(l -> l.setAllowedModes(Collections.singleton("bus")));
+		Network extraNetwork = NetworkTools.createNetwork();
+		Node nodeA = extraNetwork.getFactory().createNode(Id.createNodeId("A"), coordA);
+		Node nodeQ = extraNetwork.getFactory().createNode(Id.createNodeId("Q"), new Coord(0, 0));
+		extraNetwork.addNode(nodeA);
+		extraNetwork.addNode(nodeQ);
+		NetworkUtils.createAndAddLink(extraNetwork, Id.createLinkId("AQ"), nodeA, nodeQ, 10, 1, 1, 1);
+
+		Network merged = NetworkTools.createNetwork();
+		NetworkTools.integrateNetworks(merged, Arrays.asList(network, busNetwork, extraNetwork), true, 3);
+
+		Assert.assertEquals(network.getNodes().size() + 1, merged.getNodes().size());
+		Assert.assertEquals(network.getLinks().size() + 1, merged.getLinks().size());
+		Set<String> carBus = new HashSet<>(Arrays.asList("car", "bus"));
+		for(Link link : network.getLinks().values()) {
+			Assert.assertEquals(carBus, merged.getLinks().get(link.getId()).getAllowedModes());
+		}
+		Link linkAQ = merged.getLinks().get(Id.createLinkId("AQ"));
+		Assert.assertEquals(merged.getNodes().get(Id.createNodeId("A")), linkAQ.getFromNode());
+		Assert.assertEquals(Collections.singleton("car"), linkAQ.getAllowedModes());
+	}
+
+	@Test
+	public void modeFilteredNetworkView() {
+		getLink("AB").setAllowedModes(Collections.singleton("bus"));
+		getLink("BA").setAllowedModes(Collections.singleton("bus"));
+
+		ModeFilteredNetworkView busView = new ModeFilteredNetworkView(network, Collections.singleton("bus"));
+		Assert.assertEquals(2, busView.getNumberOfLinks());
+		Assert.assertEquals(2, busView.getNumberOfNodes());
+		Assert.assertTrue(busView.containsLink(Id.createLinkId("AB")));
+		Assert.assertNull(busView.getLink(Id.createLinkId("AD")));
+
+		ModeFilteredNetworkView carView = new ModeFilteredNetworkView(network, Collections.singleton("car"));
+		Node nodeA = network.getNodes().get(Id.createNodeId("A"));
+		Assert.assertEquals(3, carView.getOutLinks(nodeA).size());
+		Assert.assertEquals(2, carView.getInLinks(nodeA).size());
+
+		Network carNetwork = carView.createNetwork();
+		Assert.assertEquals(network.getLinks().size() - 2, carNetwork.getLinks().size());
+		Assert.assertFalse(carNetwork.getLinks().containsKey(Id.createLinkId("AB")));
+
+		Network subNetwork = carView.createSubnetwork(Arrays.asList(nodeA, network.getNodes().get(Id.createNodeId("D"))));
+		Assert.assertEquals(2, subNetwork.getNodes().size());
+		Assert.assertEquals(2, subNetwork.getLinks().size());
+	}
+
 
 
 }
\ No newline at end of file
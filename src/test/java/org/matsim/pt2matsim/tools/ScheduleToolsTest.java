@@ -2,16 +2,25 @@
 package org.matsim.pt2matsim.tools;
 
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.scenario.ProjectionUtils;
+import org.matsim.core.utils.geometry.CoordUtils;
+import org.matsim.core.utils.geometry.transformations.TransformationFactory;
 import org.matsim.pt.transitSchedule.api.*;
 import org.matsim.pt.utils.TransitScheduleValidator;
 import org.matsim.pt.utils.TransitScheduleValidator.ValidationResult;
 import org.matsim.pt.utils.TransitScheduleValidator.ValidationResult.ValidationIssue;
+import org.matsim.pt2matsim.config.PublicTransitMappingConfigGroup;
+import org.matsim.pt2matsim.mapping.networkRouter.ScheduleRoutersGtfsShapes;
+import org.matsim.pt2matsim.mapping.networkRouter.ScheduleRoutersStandard;
 import org.matsim.pt2matsim.mapping.pseudoRouter.LinkSequence;
 import org.matsim.pt2matsim.tools.debug.ScheduleCleaner;
 import org.matsim.pt2matsim.tools.lib.RouteShape;
@@ -23,6 +32,9 @@ import java.util.*;
  */
 public class ScheduleToolsTest {
 
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
 	public static final Id<TransitLine> LINE_A = Id.create("lineA", TransitLine.class);
 	public static final Id<TransitLine> LINE_B = Id.create("lineB", TransitLine.class);
 	public static final Id<TransitRoute> ROUTE_A1 = Id.create("routeA1", TransitRoute.class);
@@ -187,6 +199,85 @@ public class ScheduleToolsTest {
 		Assert.assertTrue(result.isValid());
 	}
 
+	@Test
+	public void routeScheduleParallel() {
+		Network network = NetworkToolsTest.initNetwork();
+		Map<String, Set<String>> tma = Collections.singletonMap("bus", new HashSet<>(Arrays.asList("car", "bus")));
+
+		TransitSchedule schedule = initSchedule();
+		ScheduleTools.routeSchedule(schedule, network, new ScheduleRoutersStandard.Factory(schedule, ConfigUtils.createConfig(), network, tma, PublicTransitMappingConfigGroup.TravelCostType.linkLength, false).createInstance());
+
+		TransitSchedule parallelSchedule = initSchedule();
+		ScheduleTools.routeSchedule(parallelSchedule, network, new ScheduleRoutersStandard.Factory(parallelSchedule, ConfigUtils.createConfig(), network, tma, PublicTransitMappingConfigGroup.TravelCostType.linkLength, false), 2);
+
+		for(TransitLine transitLine : schedule.getTransitLines().values()) {
+			for(TransitRoute transitRoute : transitLine.getRoutes().values()) {
+				TransitRoute parallelRoute = parallelSchedule.getTransitLines().get(transitLine.getId()).getRoutes().get(transitRoute.getId());
+				Assert.assertEquals(ScheduleTools.getTransitRouteLinkIds(transitRoute), ScheduleTools.getTransitRouteLinkIds(parallelRoute));
+			}
+		}
+	}
+
+	@Test
+	public void routeScheduleAlongShapes() {
+		Network network = NetworkToolsTest.initNetwork();
+		Map<String, Set<String>> tma = Collections.singletonMap("bus", new HashSet<>(Arrays.asList("car", "bus")));
+
+		TransitSchedule schedule = ScheduleTools.createSchedule();
+		TransitScheduleFactory fac = schedule.getFactory();
+		TransitStopFacility stopED = fac.createTransitStopFacility(Id.create("stop.link:ED", TransitStopFacility.class), new Coord(2600021, 1200060), false);
+		TransitStopFacility stopBI = fac.createTransitStopFacility(Id.create("stop.link:BI", TransitStopFacility.class), new Coord(2600065, 1200022), false);
+		stopED.setLinkId(Id.createLinkId("ED"));
+		stopBI.setLinkId(Id.createLinkId("BI"));
+		schedule.addStopFacility(stopED);
+		schedule.addStopFacility(stopBI);
+
+		// two routes with the same stops but different shapes
+		TransitLine line = fac.createTransitLine(LINE_A);
+		List<TransitRouteStop> stops = new ArrayList<>();
+		stops.add(fac.createTransitRouteStop(stopED, 0.0, 0.0));
+		stops.add(fac.createTransitRouteStop(stopBI, 120.0, 120.0));
+		TransitRoute routeA = fac.createTransitRoute(ROUTE_A1, null, stops, "bus");
+		TransitRoute routeB = fac.createTransitRoute(ROUTE_B, null, stops, "bus");
+		ScheduleTools.setShapeId(routeA, Id.create("A1", RouteShape.class));
+		ScheduleTools.setShapeId(routeB, Id.create("B", RouteShape.class));
+		line.addRoute(routeA);
+		line.addRoute(routeB);
+		schedule.addTransitLine(line);
+
+		ScheduleRoutersGtfsShapes.Factory factory = new ScheduleRoutersGtfsShapes.Factory(schedule, ConfigUtils.createConfig(), network, ShapeToolsTest.initShapes(), tma, PublicTransitMappingConfigGroup.TravelCostType.linkLength, 10.0, 99);
+		ScheduleTools.routeSchedule(schedule, network, factory.createInstance());
+
+		List<Id<Link>> expectedA = Arrays.asList(Id.createLinkId("ED"), Id.createLinkId("DA"), Id.createLinkId("AX"), Id.createLinkId("XB"), Id.createLinkId("BI"));
+		List<Id<Link>> expectedB = Arrays.asList(Id.createLinkId("ED"), Id.createLinkId("DC"), Id.createLinkId("CX"), Id.createLinkId("XB"), Id.createLinkId("BI"));
+		Assert.assertEquals(expectedA, ScheduleTools.getTransitRouteLinkIds(routeA));
+		Assert.assertEquals(expectedB, ScheduleTools.getTransitRouteLinkIds(routeB));
+	}
+
+	@Test
+	public void transformScheduleFile() {
+		TransitSchedule schedule = initSchedule();
+		ProjectionUtils.putCRS(schedule, "EPSG:2056");
+		String scheduleFile = temporaryFolder.getRoot() + "/schedule.xml";
+		new TransitScheduleWriter(schedule).writeFile(scheduleFile);
+
+		// the crs attribute of the file is used instead of the given one
+		ScheduleTools.transformScheduleFile(scheduleFile, "EPSG:21781", TransformationFactory.WGS84);
+		TransitSchedule wgs84 = ScheduleTools.readTransitSchedule(scheduleFile);
+		Assert.assertEquals(TransformationFactory.WGS84, ProjectionUtils.getCRS(wgs84));
+		for(TransitStopFacility stop : schedule.getFacilities().values()) {
+			Coord expected = TransformationFactory.getCoordinateTransformation("EPSG:2056", TransformationFactory.WGS84).transform(stop.getCoord());
+			Assert.assertEquals(0.0, CoordUtils.calcEuclideanDistance(expected, wgs84.getFacilities().get(stop.getId()).getCoord()), 1e-7);
+		}
+
+		ScheduleTools.transformScheduleFile(scheduleFile, TransformationFactory.WGS84, "EPSG:2056");
+		TransitSchedule back = ScheduleTools.readTransitSchedule(scheduleFile);
+		Assert.assertEquals("EPSG:2056", ProjectionUtils.getCRS(back));
+		for(TransitStopFacility stop : schedule.getFacilities().values()) {
+			Assert.assertEquals(0.0, CoordUtils.calcEuclideanDistance(stop.getCoord(), back.getFacilities().get(stop.getId()).getCoord()), 0.01);
+		}
+	}
+
 	@Test
 	public void mergeSchedules() {
 		TransitSchedule testSchedule = initSchedule();
@@ -0,0 +1,71 @@
+package org.matsim.pt2matsim.tools.debug;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.pt.transitSchedule.api.*;
+import org.matsim.pt2matsim.tools.ScheduleToolsTest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TransitRouteDeduplicatorTest {
+
+	private TransitSchedule initScheduleWithCopies() {
+		TransitSchedule schedule = ScheduleToolsTest.initSchedule();
+		TransitScheduleFactory fac = schedule.getFactory();
+		TransitLine lineA = schedule.getTransitLines().get(ScheduleToolsTest.LINE_A);
+		TransitRoute routeA1 = lineA.getRoutes().get(ScheduleToolsTest.ROUTE_A1);
+
+		// identical stop sequence and offsets
+		TransitRoute copy = fac.createTransitRoute(Id.create("routeA1copy", TransitRoute.class), null, new ArrayList<>(routeA1.getStops()), "bus");
+		copy.addDeparture(fac.createDeparture(Id.create("a1c_1", Departure.class), 18 * 3600));
+		lineA.addRoute(copy);
+
+		// identical stop sequence, different offsets
+		List<TransitRouteStop> slowStops = new ArrayList<>();
+		for(TransitRouteStop s : routeA1.getStops()) {
+			slowStops.add(fac.createTransitRouteStop(s.getStopFacility(), s.getArrivalOffset().seconds() * 2, s.getDepartureOffset().seconds() * 2));
+		}
+		TransitRoute slow = fac.createTransitRoute(Id.create("routeA1slow", TransitRoute.class), null, slowStops, "bus");
+		slow.addDeparture(fac.createDeparture(Id.create("a1s_1", Departure.class), 20 * 3600));
+		lineA.addRoute(slow);
+
+		return schedule;
+	}
+
+	@Test
+	public void combineIdenticalTransitRoutes() {
+		TransitSchedule schedule = initScheduleWithCopies();
+		ScheduleCleaner.combineIdenticalTransitRoutes(schedule);
+
+		TransitLine lineA = schedule.getTransitLines().get(ScheduleToolsTest.LINE_A);
+		Assert.assertEquals(3, lineA.getRoutes().size());
+		Assert.assertEquals(4, lineA.getRoutes().get(ScheduleToolsTest.ROUTE_A1).getDepartures().size());
+		Assert.assertTrue(lineA.getRoutes().containsKey(Id.create("routeA1slow", TransitRoute.class)));
+		Assert.assertEquals(1, schedule.getTransitLines().get(ScheduleToolsTest.LINE_B).getRoutes().size());
+	}
+
+	@Test
+	public void uniteSameRoutesWithJustDifferentDepartures() {
+		TransitSchedule schedule = initScheduleWithCopies();
+		ScheduleCleaner.uniteSameRoutesWithJustDifferentDepartures(schedule);
+
+		TransitLine lineA = schedule.getTransitLines().get(ScheduleToolsTest.LINE_A);
+		Assert.assertEquals(2, lineA.getRoutes().size());
+		Assert.assertEquals(5, lineA.getRoutes().get(ScheduleToolsTest.ROUTE_A1).getDepartures().size());
+	}
+
+	@Test
+	public void fingerprintIsOrderSensitive() {
+		TransitSchedule schedule = ScheduleToolsTest.initSchedule();
+		TransitRoute routeA1 = schedule.getTransitLines().get(ScheduleToolsTest.LINE_A).getRoutes().get(ScheduleToolsTest.ROUTE_A1);
+		int[] packed = TransitRouteDeduplicator.pack(routeA1, false);
+		int[] reversed = new int[packed.length];
+		for(int i = 0; i < packed.length; i++) {
+			reversed[i] = packed[packed.length - 1 - i];
+		}
+		Assert.assertEquals(TransitRouteDeduplicator.fingerprint(packed), TransitRouteDeduplicator.fingerprint(packed.clone()));
+		Assert.assertNotEquals(TransitRouteDeduplicator.fingerprint(packed), TransitRouteDeduplicator.fingerprint(reversed));
+	}
+}
@@ -0,0 +1,59 @@
+package org.matsim.pt2matsim.tools.lib;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.core.utils.geometry.CoordinateTransformation;
+import org.matsim.core.utils.geometry.transformations.TransformationFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class BatchCoordinateTransformationTest {
+
+	private static List<Coord> createCoords(int n) {
+		Random random = new Random(42);
+		List<Coord> coords = new ArrayList<>(n);
+		for(int i = 0; i < n; i++) {
+			coords.add(new Coord(7.0 + random.nextDouble(), 46.5 + random.nextDouble()));
+		}
+		return coords;
+	}
+
+	private static void assertSameAsCoordinateTransformation(String fromCoordinateSystem, String toCoordinateSystem) {
+		List<Coord> coords = createCoords(BatchCoordinateTransformation.CHUNK_SIZE * 2 + 7);
+		CoordinateTransformation ct = TransformationFactory.getCoordinateTransformation(fromCoordinateSystem, toCoordinateSystem);
+
+		double[] xy = BatchCoordinateTransformation.pack(coords);
+		new BatchCoordinateTransformation(fromCoordinateSystem, toCoordinateSystem).transform(xy, 3);
+		List<Coord> transformed = BatchCoordinateTransformation.unpack(xy);
+
+		Assert.assertEquals(coords.size(), transformed.size());
+		for(int i = 0; i < coords.size(); i++) {
+			Coord expected = ct.transform(coords.get(i));
+			Assert.assertEquals(expected.getX(), transformed.get(i).getX(), 0.001);
+			Assert.assertEquals(expected.getY(), transformed.get(i).getY(), 0.001);
+		}
+	}
+
+	@Test
+	public void geotoolsTransformation() {
+		assertSameAsCoordinateTransformation(TransformationFactory.WGS84, "EPSG:2056");
+	}
+
+	@Test
+	public void matsimTransformation() {
+		assertSameAsCoordinateTransformation(TransformationFactory.WGS84, TransformationFactory.CH1903_LV03_Plus);
+	}
+
+	@Test
+	public void identity() {
+		BatchCoordinateTransformation transformation = new BatchCoordinateTransformation(TransformationFactory.WGS84, TransformationFactory.WGS84);
+		Assert.assertTrue(transformation.isIdentity());
+		double[] xy = {7.5, 47.0};
+		transformation.transform(xy);
+		Assert.assertArrayEquals(new double[]{7.5, 47.0}, xy, 0);
+	}
+
+}
@@ -0,0 +1,67 @@
+package org.matsim.pt2matsim.tools.lib;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.pt2matsim.tools.MiscUtils;
+import org.matsim.pt2matsim.tools.NetworkToolsTest;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+public class LinkModeMasksTest {
+
+	@Test
+	public void modeBits() {
+		ModeBits modeBits = new ModeBits();
+		long carBus = modeBits.getOrCreateMask(Arrays.asList("car", "bus"));
+		Assert.assertEquals(carBus, modeBits.getOrCreateMask(Arrays.asList("Bus", "CAR")));
+		Assert.assertEquals(2, modeBits.size());
+
+		// looking up masks does not assign bits
+		Assert.assertEquals(0, modeBits.getMask(Collections.singleton("tram")));
+		Assert.assertEquals(modeBits.getMask(Collections.singleton("bus")), modeBits.getMask(Arrays.asList("bus", "tram")));
+		Assert.assertEquals(2, modeBits.size());
+		Assert.assertEquals(0, modeBits.getMask(null));
+	}
+
+	@Test
+	public void sharesModeEqualsStringComparison() {
+		Network network = NetworkToolsTest.initNetwork();
+		network.getLinks().get(Id.createLinkId("XC")).setAllowedModes(Collections.singleton("Bus"));
+		network.getLinks().get(Id.createLinkId("AB")).setAllowedModes(new HashSet<>(Arrays.asList("rail", "tram")));
+		LinkModeMasks masks = new LinkModeMasks(network);
+
+		for(Set<String> modes : Arrays.asList(Collections.singleton("bus"), Collections.singleton("Car"), Collections.singleton("ship"), new HashSet<>(Arrays.asList("tram", "car")), Collections.<String>emptySet())) {
+			Predicate<Link> sharesMode = masks.sharesMode(modes);
+			for(Link link : network.getLinks().values()) {
+				Assert.assertEquals(MiscUtils.collectionsShareMinOneStringEntry(link.getAllowedModes(), modes), sharesMode.test(link));
+			}
+		}
+		Assert.assertFalse(masks.sharesMode(null).test(network.getLinks().get(Id.createLinkId("AB"))));
+	}
+
+	@Test
+	public void moreModesThanBits() {
+		Network network = NetworkToolsTest.initNetwork();
+		List<Link> links = new ArrayList<>(network.getLinks().values());
+		for(int i = 0; i < links.size(); i++) {
+			Set<String> modes = new HashSet<>();
+			for(int m = 0; m < 6; m++) {
+				modes.add("mode" + (i * 6 + m));
+			}
+			links.get(i).setAllowedModes(modes);
+		}
+		LinkModeMasks masks = new LinkModeMasks(network);
+
+		for(int m = 0; m < links.size() * 6; m += 5) {
+			Set<String> modes = Collections.singleton("MODE" + m);
+			Predicate<Link> sharesMode = masks.sharesMode(modes);
+			for(Link link : links) {
+				Assert.assertEquals(MiscUtils.collectionsShareMinOneStringEntry(link.getAllowedModes(), modes), sharesMode.test(link));
+			}
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package org.matsim.pt2matsim.tools.lib;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.SortedMap;
+
+public class VectorTilesTest {
+
+	@Test
+	public void tileId() {
+		Assert.assertEquals(0, VectorTiles.tileId(0, 0, 0));
+		Assert.assertEquals(1, VectorTiles.tileId(1, 0, 0));
+		Assert.assertEquals(2, VectorTiles.tileId(1, 0, 1));
+		Assert.assertEquals(3, VectorTiles.tileId(1, 1, 1));
+		Assert.assertEquals(4, VectorTiles.tileId(1, 1, 0));
+		Assert.assertEquals(5, VectorTiles.tileId(2, 0, 0));
+		Assert.assertEquals(19078479, VectorTiles.tileId(12, 3423, 1763));
+	}
+
+	@Test
+	public void clipSegment() {
+		Assert.assertArrayEquals(new double[]{0.25, 0.75}, VectorTiles.clipSegment(-1, 0.5, 3, 0.5, 0, 0, 2, 1), 1e-9);
+		Assert.assertNull(VectorTiles.clipSegment(-1, 2, 3, 2, 0, 0, 2, 1));
+	}
+
+	@Test
+	public void simplify() {
+		double[] x = {0, 0.25, 0.5, 0.75, 1};
+		double[] y = {0, 1e-6, 0, 0.2, 0};
+		Assert.assertArrayEquals(new int[]{0, 2, 3, 4}, VectorTiles.simplify(x, y, 1));
+	}
+
+	@Test
+	public void createTiles() {
+		VectorTiles vt = new VectorTiles();
+		vt.addLayer("links", 0);
+		vt.addLayer("stops", 2);
+		vt.addLine("links", Arrays.asList(new Coord(8.5, 47.3), new Coord(8.6, 47.4)), Collections.singletonMap("id", "a"));
+		vt.addPoint("stops", new Coord(8.5, 47.3), Collections.singletonMap("id", "s"));
+
+		SortedMap<Long, byte[]> tiles = vt.createTiles(0, 3);
+		Assert.assertEquals(4, tiles.size());
+		Assert.assertEquals(0, (long) tiles.firstKey());
+		Assert.assertEquals(8.5, vt.getBounds()[0], 1e-9);
+	}
+}